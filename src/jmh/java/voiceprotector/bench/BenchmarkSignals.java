@@ -0,0 +1,97 @@
+package voiceprotector.bench;
+
+import java.util.SplittableRandom;
+
+/**
+ * BenchmarkSignals generates the test signals used by the benchmarks. Speech
+ * makes data-dependent branches (clipping, holes) behave realistically, while
+ * random noise is the worst case for them.
+ */
+public final class BenchmarkSignals {
+
+    private BenchmarkSignals() {
+    }
+
+    /**
+     * Creates a signal of the given kind.
+     *
+     * @param kind   "speech" or "random"
+     * @param frames The number of stereo frames
+     * @param seed   The random seed
+     * @return Planar stereo samples
+     */
+    public static short[][] create(String kind, int frames, long seed) {
+        return switch (kind) {
+            case "speech" -> speechLike(frames, seed);
+            case "random" -> random(frames, seed);
+            default -> throw new IllegalArgumentException("Unknown signal: " + kind);
+        };
+    }
+
+    /**
+     * Creates a speech-like signal: a 120 Hz glottal pulse train shaped by three
+     * formant resonances, with a syllable-rate envelope and a little breath
+     * noise. The right channel is a slightly attenuated copy, as from a headset.
+     *
+     * @param frames The number of stereo frames
+     * @param seed   The random seed
+     * @return Planar stereo samples at 48 kHz
+     */
+    public static short[][] speechLike(int frames, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        double fs = 48000;
+        double[] formants = { 700, 1220, 2600 };
+        double[] gains = { 1.0, 0.5, 0.25 };
+        short[][] out = new short[2][frames];
+
+        for (int i = 0; i < frames; i++) {
+            double t = i / fs;
+            double f0 = 120 + 10 * Math.sin(2 * Math.PI * 3 * t);
+            double v = 0;
+            for (int h = 1; h * f0 < 4000; h++) {
+                double f = h * f0;
+                double shape = 0;
+                for (int k = 0; k < formants.length; k++) {
+                    double d = (f - formants[k]) / 150;
+                    shape += gains[k] / (1 + d * d);
+                }
+                v += shape / h * Math.sin(2 * Math.PI * f * t);
+            }
+            double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * 4 * t);
+            double sample = 6000 * envelope * v + 200 * (rnd.nextDouble() - 0.5);
+            out[0][i] = (short) Math.max(Math.min(sample, 32767), -32768);
+            out[1][i] = (short) (out[0][i] * 0.9);
+        }
+        return out;
+    }
+
+    /**
+     * Creates uniformly distributed full-scale noise.
+     *
+     * @param frames The number of stereo frames
+     * @param seed   The random seed
+     * @return Planar stereo samples
+     */
+    public static short[][] random(int frames, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        short[][] out = new short[2][frames];
+        for (int ch = 0; ch < 2; ch++) {
+            for (int i = 0; i < frames; i++) {
+                out[ch][i] = (short) rnd.nextInt(-32768, 32768);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Copies planar samples into another planar buffer of the same size.
+     *
+     * @param src The source
+     * @param dst The destination
+     */
+    public static void copy(short[][] src, short[][] dst) {
+        for (int ch = 0; ch < src.length; ch++) {
+            System.arraycopy(src[ch], 0, dst[ch], 0, src[ch].length);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package voiceprotector.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.StereoFilterChain;
+
+/**
+ * Measures StereoFilterChain with different filter subsets and processing
+ * modes:
+ * <ul>
+ * <li>short: 16-bit path, each filter a separate pass</li>
+ * <li>float: float32 path with a single quantization at the end</li>
+ * </ul>
+ * The planar benchmark restores the input block before each call; the
+ * interleaved one runs on PCM bytes like the capture loop does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChainBenchmark {
+
+    /**
+     * Filter subsets, as comma-separated simple class names
+     */
+    private static final String ALL = "XorObfuscationStereo,NoiseFilterStereo,AIFormantScramblerStereo,"
+            + "LPCWarpStereo,ChaoticPhaseStereo,SpectralHoleStereo";
+    private static final String POINTWISE = "XorObfuscationStereo,NoiseFilterStereo,AIFormantScramblerStereo,"
+            + "SpectralHoleStereo";
+    private static final String STATEFUL = "LPCWarpStereo,ChaoticPhaseStereo";
+
+    @Param({ "all", "pointwise", "stateful" })
+    public String subset;
+
+    @Param({ "short", "float" })
+    public String mode;
+
+    @Param({ "64", "256", "1024", "4096", "8192" })
+    public int frames;
+
+    @Param({ "speech", "random" })
+    public String signal;
+
+    private StereoFilterChain chain;
+    private short[][] source;
+    private short[][] block;
+    private byte[] pcmSource;
+    private byte[] pcm;
+
+    @Setup
+    public void setup() {
+        String names = switch (subset) {
+            case "all" -> ALL;
+            case "pointwise" -> POINTWISE;
+            case "stateful" -> STATEFUL;
+            default -> throw new IllegalArgumentException("Unknown subset: " + subset);
+        };
+        chain = new StereoFilterChain();
+        for (String name : names.split(",")) {
+            chain.add(FilterBenchmark.create(name));
+        }
+        chain.setFloatProcessing("float".equals(mode));
+
+        source = BenchmarkSignals.create(signal, frames, 42);
+        block = new short[2][frames];
+        pcmSource = AudioUtils.encodePCM16Stereo(source);
+        pcm = new byte[pcmSource.length];
+    }
+
+    @Benchmark
+    public short[][] planar() {
+        BenchmarkSignals.copy(source, block);
+        chain.process(block);
+        return block;
+    }
+
+    @Benchmark
+    public byte[] interleaved() {
+        System.arraycopy(pcmSource, 0, pcm, 0, pcm.length);
+        chain.processInterleaved(pcm, pcm.length);
+        return pcm;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package voiceprotector.bench;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import voiceprotector.graph.FilterGraph;
+
+/**
+ * Measures a FilterGraph with parallel branches: the input is split into
+ * {@code branches} paths of LPCWarpStereo and ChaoticPhaseStereo, mixed with
+ * equal weights and passed through SpectralHoleStereo. Compares running each
+ * level sequentially with running its nodes on the common pool, to find the
+ * block size from which parallel levels pay off on a machine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphBenchmark {
+
+    @Param({ "2", "4" })
+    public int branches;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    @Param({ "128", "512", "2048", "8192" })
+    public int frames;
+
+    private FilterGraph graph;
+    private short[][] source;
+    private short[][] block;
+
+    @Setup
+    public void setup() {
+        graph = new FilterGraph(2, ForkJoinPool.commonPool());
+        graph.setParallelThreshold(parallel ? 0 : Integer.MAX_VALUE);
+        FilterGraph.Node[] paths = new FilterGraph.Node[branches];
+        float[] weights = new float[branches];
+        for (int k = 0; k < branches; k++) {
+            paths[k] = graph.chain(graph.input(), FilterBenchmark.create("LPCWarpStereo"),
+                    FilterBenchmark.create("ChaoticPhaseStereo"));
+            weights[k] = 1f / branches;
+        }
+        graph.setOutput(graph.add(FilterBenchmark.create("SpectralHoleStereo"), graph.mix(weights, paths)));
+
+        source = BenchmarkSignals.create("speech", frames, 42);
+        block = new short[2][frames];
+    }
+
+    @Benchmark
+    public short[][] process() {
+        BenchmarkSignals.copy(source, block);
+        graph.process(block);
+        return block;
+    }
+}
\ No newline at end of file
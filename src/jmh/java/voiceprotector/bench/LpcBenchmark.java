@@ -0,0 +1,86 @@
+package voiceprotector.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.filters.LPCWarpStereo;
+
+/**
+ * Measures the frame-based LPC engine of LPCWarpStereo on many concurrent
+ * streams. Each thread owns 'streams' independent filters and processes one
+ * block of each per operation, so the working set grows with the stream count
+ * as it would on a server. One operation covers 'frames' / 48000 s of audio for
+ * every stream: at 1024 frames the whole set keeps up with real time while the
+ * score stays below 21333 us, and 21333 / score is the real-time headroom per
+ * thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LpcBenchmark {
+
+    @Param({ "8", "16", "32" })
+    public int order;
+
+    @Param({ "512", "1024", "2048" })
+    public int frameSize;
+
+    @Param({ "1", "32" })
+    public int streams;
+
+    @Param({ "1024" })
+    public int frames;
+
+    private LPCWarpStereo[] filters;
+    private float[][] input;
+    private float[][] block;
+
+    @Setup
+    public void setup() {
+        filters = new LPCWarpStereo[streams];
+        for (int s = 0; s < streams; s++) {
+            filters[s] = new LPCWarpStereo(order, frameSize);
+            filters[s].setWarpAmount(0.5f);
+        }
+        input = new float[2][frames];
+        AudioUtils.toFloat(BenchmarkSignals.create("speech", frames, 42), input, frames);
+        block = new float[2][frames];
+    }
+
+    private float[][] run() {
+        for (LPCWarpStereo filter : filters) {
+            for (int ch = 0; ch < 2; ch++)
+                System.arraycopy(input[ch], 0, block[ch], 0, frames);
+            filter.processFloat(block, frames);
+        }
+        return block;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public float[][] threads1() {
+        return run();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public float[][] threadsMax() {
+        return run();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+package voiceprotector.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.StereoFilterChain;
+import voiceprotector.monitor.SignalMonitor;
+import voiceprotector.monitor.SpectrumAnalyzer;
+
+/**
+ * Measures what the level and spectrum taps cost the audio thread: the full
+ * chain without a monitor, with a monitor nobody reads, and with a monitor
+ * polled and analysed at 60 Hz by a second thread like the GUI does. Run with
+ * the gc profiler to check that the taps allocate nothing per block.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonitorBenchmark {
+
+    private static final String ALL = "XorObfuscationStereo,NoiseFilterStereo,AIFormantScramblerStereo,"
+            + "LPCWarpStereo,ChaoticPhaseStereo,SpectralHoleStereo";
+
+    @Param({ "off", "unread", "polled" })
+    public String monitor;
+
+    @Param({ "128", "1024" })
+    public int frames;
+
+    @Param({ "short", "float" })
+    public String mode;
+
+    private StereoFilterChain chain;
+    private short[][] source;
+    private short[][] block;
+    private byte[] pcmSource;
+    private byte[] pcm;
+    private Thread reader;
+
+    @Setup
+    public void setup() {
+        chain = new StereoFilterChain();
+        for (String name : ALL.split(",")) {
+            chain.add(FilterBenchmark.create(name));
+        }
+        chain.setFloatProcessing("float".equals(mode));
+
+        if (!"off".equals(monitor)) {
+            SignalMonitor m = new SignalMonitor(chain.getSampleRate());
+            chain.setMonitor(m);
+            if ("polled".equals(monitor)) {
+                reader = new Thread(() -> poll(m), "monitor-reader");
+                reader.setDaemon(true);
+                reader.start();
+            }
+        }
+
+        source = BenchmarkSignals.create("speech", frames, 42);
+        block = new short[2][frames];
+        pcmSource = AudioUtils.encodePCM16Stereo(source);
+        pcm = new byte[pcmSource.length];
+    }
+
+    /**
+     * Reads and analyses both taps at display rate until interrupted.
+     *
+     * @param m The monitor
+     */
+    private static void poll(SignalMonitor m) {
+        SpectrumAnalyzer in = new SpectrumAnalyzer(), out = new SpectrumAnalyzer();
+        try {
+            while (true) {
+                in.analyze(m.getInput().acquire());
+                out.analyze(m.getOutput().acquire());
+                Thread.sleep(16);
+            }
+        } catch (InterruptedException e) {
+            // done
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (reader != null)
+            reader.interrupt();
+    }
+
+    @Benchmark
+    public short[][] planar() {
+        BenchmarkSignals.copy(source, block);
+        chain.process(block);
+        return block;
+    }
+
+    @Benchmark
+    public byte[] interleaved() {
+        System.arraycopy(pcmSource, 0, pcm, 0, pcm.length);
+        chain.processInterleaved(pcm, pcm.length);
+        return pcm;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+package voiceprotector.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.filters.NoiseFilterStereo;
+import voiceprotector.noise.NoiseColor;
+
+/**
+ * Measures NoiseFilterStereo with its per-instance generator and noise banks
+ * against the previous Math.random() implementation, at 1, 4 and all available
+ * threads. Every thread owns its filter (one stream per thread), so any loss of
+ * per-thread throughput as threads are added comes from shared state, i.e. the
+ * AtomicLong seed behind Math.random(). Compare the scores of one method across
+ * thread counts on a multi-core host.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoiseBenchmark {
+
+    /**
+     * The amplitude used for all variants
+     */
+    private static final int AMPLITUDE = 500;
+
+    @Param({ "legacy", "WHITE", "PINK", "SPEECH" })
+    public String source;
+
+    @Param({ "1024" })
+    public int frames;
+
+    private NoiseFilterStereo filter;
+    private short[][] input;
+    private short[][] block;
+
+    @Setup
+    public void setup() {
+        filter = new NoiseFilterStereo();
+        filter.setAmplitude(AMPLITUDE);
+        if (!source.equals("legacy"))
+            filter.setColor(NoiseColor.valueOf(source));
+        input = BenchmarkSignals.create("speech", frames, 42);
+        block = new short[2][frames];
+    }
+
+    /**
+     * The noise loop as it was before the per-instance generator.
+     *
+     * @param samples The block
+     */
+    private static void legacy(short[][] samples) {
+        for (short[] channel : samples) {
+            for (int i = 0; i < channel.length; i++) {
+                int noise = (int) ((Math.random() * AMPLITUDE * 2) - AMPLITUDE);
+                channel[i] = AudioUtils.clip16(channel[i] + noise);
+            }
+        }
+    }
+
+    private short[][] run() {
+        BenchmarkSignals.copy(input, block);
+        if (!source.equals("legacy"))
+            filter.process(block);
+        else
+            legacy(block);
+        return block;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public short[][] threads1() {
+        return run();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public short[][] threads4() {
+        return run();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public short[][] threadsMax() {
+        return run();
+    }
+}
\ No newline at end of file
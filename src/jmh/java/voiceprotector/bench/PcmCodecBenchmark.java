@@ -0,0 +1,72 @@
+package voiceprotector.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import voiceprotector.AudioUtils;
+
+/**
+ * Measures the PCM16 stereo codec in AudioUtils, both the allocating variants
+ * and the ones writing into caller-supplied buffers. Run with -prof gc to see
+ * the allocation difference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PcmCodecBenchmark {
+
+    @Param({ "64", "256", "1024", "4096", "8192" })
+    public int frames;
+
+    @Param({ "speech", "random" })
+    public String signal;
+
+    private byte[] pcm;
+    private short[][] samples;
+    private byte[] pcmOut;
+    private short[][] samplesOut;
+
+    @Setup
+    public void setup() {
+        samples = BenchmarkSignals.create(signal, frames, 42);
+        pcm = AudioUtils.encodePCM16Stereo(samples);
+        pcmOut = new byte[pcm.length];
+        samplesOut = new short[2][frames];
+    }
+
+    @Benchmark
+    public short[][] decodeAllocating() {
+        return AudioUtils.decodePCM16Stereo(pcm, pcm.length);
+    }
+
+    @Benchmark
+    public short[][] decodeIntoBuffer() {
+        AudioUtils.decodePCM16Stereo(pcm, pcm.length, samplesOut);
+        return samplesOut;
+    }
+
+    @Benchmark
+    public byte[] encodeAllocating() {
+        return AudioUtils.encodePCM16Stereo(samples);
+    }
+
+    @Benchmark
+    public byte[] encodeIntoBuffer() {
+        AudioUtils.encodePCM16Stereo(samples, frames, pcmOut);
+        return pcmOut;
+    }
+}
\ No newline at end of file
@@ -1,21 +1,49 @@
 package voiceprotector;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.Mixer;
 import javax.sound.sampled.SourceDataLine;
 import javax.sound.sampled.TargetDataLine;
 
+import voiceprotector.device.DeviceRegistry;
+
 /**
  * AudioDeviceFinder provides utility methods for locating and opening specific
  * audio input and output lines.
  * It can be used to find microphone (mic) inputs and Voicemeeter AUX outputs on
  * the system.
+ * <p>
+ * The requested format is a preference: each line is opened in the format the
+ * device supports that comes closest to it (see {@link #negotiate}), so a
+ * device that runs at 44.1 kHz or 24 bits is used natively instead of failing
+ * or going through the operating system's converter. Callers read the actual
+ * format from {@code line.getFormat()} and convert with
+ * {@link voiceprotector.format.FormatConverter}.
+ * <p>
+ * Lines are opened through the shared {@link DeviceRegistry}, which probes all
+ * mixers once and in parallel and tries the last working mixer first.
  */
 public class AudioDeviceFinder {
 
+    /**
+     * Sample rates tried, after the requested one, when a device accepts any
+     * rate
+     */
+    private static final float[] RATES = { 48000, 44100, 32000, 24000, 22050, 16000 };
+
+    /**
+     * Sample sizes a format may have, in bits
+     */
+    private static final int[] BITS = { 16, 24, 32 };
+
     /**
      * Opens a TargetDataLine representing a microphone input with the specified
      * audio format.
@@ -25,16 +53,23 @@ public class AudioDeviceFinder {
      * @throws LineUnavailableException If no suitable microphone line is available
      */
     public static TargetDataLine openMic(AudioFormat format) throws LineUnavailableException {
-        DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
-        for (Mixer.Info m : AudioSystem.getMixerInfo()) {
-            Mixer mixer = AudioSystem.getMixer(m);
-            if (mixer.isLineSupported(info)) {
-                TargetDataLine line = (TargetDataLine) mixer.getLine(info);
-                line.open(format);
-                return line;
-            }
-        }
-        throw new LineUnavailableException("Ingen mikrofon hittades!");
+        return openMic(format, AudioSystem.NOT_SPECIFIED);
+    }
+
+    /**
+     * Opens a TargetDataLine representing a microphone input in the supported
+     * format closest to the specified one, with a buffer of the same duration as
+     * requested.
+     *
+     * @param format      The preferred audio format for the microphone input
+     * @param bufferBytes The requested line buffer size in bytes of the preferred
+     *                    format, or {@link AudioSystem#NOT_SPECIFIED} for the
+     *                    device default
+     * @return A TargetDataLine instance configured to capture microphone audio
+     * @throws LineUnavailableException If no suitable microphone line is available
+     */
+    public static TargetDataLine openMic(AudioFormat format, int bufferBytes) throws LineUnavailableException {
+        return DeviceRegistry.system().openCapture("microphone", d -> true, format, bufferBytes);
     }
 
     /**
@@ -48,17 +83,117 @@ public class AudioDeviceFinder {
      *                                  available
      */
     public static SourceDataLine openVoicemeeterAUX(AudioFormat format) throws LineUnavailableException {
-        DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
-        for (Mixer.Info m : AudioSystem.getMixerInfo()) {
-            if (m.getName().toLowerCase().contains("voicemeeter aux input")) {
-                Mixer mixer = AudioSystem.getMixer(m);
-                if (mixer.isLineSupported(info)) {
-                    SourceDataLine line = (SourceDataLine) mixer.getLine(info);
-                    line.open(format);
-                    return line;
+        return openVoicemeeterAUX(format, AudioSystem.NOT_SPECIFIED);
+    }
+
+    /**
+     * Opens a SourceDataLine representing the Voicemeeter AUX input in the
+     * supported format closest to the specified one, with a buffer of the same
+     * duration as requested.
+     *
+     * @param format      The preferred audio format for the Voicemeeter AUX output
+     * @param bufferBytes The requested line buffer size in bytes of the preferred
+     *                    format, or {@link AudioSystem#NOT_SPECIFIED} for the
+     *                    device default
+     * @return A SourceDataLine instance configured to play audio to the Voicemeeter
+     *         AUX input
+     * @throws LineUnavailableException If no suitable Voicemeeter AUX line is
+     *                                  available
+     */
+    public static SourceDataLine openVoicemeeterAUX(AudioFormat format, int bufferBytes)
+            throws LineUnavailableException {
+        return DeviceRegistry.system().openPlayback("voicemeeter",
+                d -> d.name().toLowerCase().contains("voicemeeter aux input"), format, bufferBytes);
+    }
+
+    /**
+     * Finds the format a mixer supports for a line type that comes closest to
+     * the preferred format. Candidates are the signed PCM formats the mixer
+     * lists with 16, 24 or 32 bits and one or two channels; where it lists a
+     * wildcard, the preferred value and the common sample rates are tried. The
+     * best candidate has the preferred rate, else the nearest rate not below it,
+     * else the nearest rate below it; then the preferred channel count, the
+     * preferred sample size (else the largest) and the preferred byte order.
+     *
+     * @param mixer     The mixer
+     * @param lineClass {@link TargetDataLine} or {@link SourceDataLine}
+     * @param preferred The preferred format
+     * @return The best supported format, or null if the mixer has no usable line
+     */
+    public static AudioFormat negotiate(Mixer mixer, Class<? extends DataLine> lineClass, AudioFormat preferred) {
+        Comparator<AudioFormat> order = Comparator
+                .comparing((AudioFormat f) -> f.getSampleRate() != preferred.getSampleRate())
+                .thenComparing(f -> f.getSampleRate() < preferred.getSampleRate())
+                .thenComparingDouble(f -> Math.abs(f.getSampleRate() - preferred.getSampleRate()))
+                .thenComparing(f -> f.getChannels() != preferred.getChannels())
+                .thenComparing(f -> f.getSampleSizeInBits() != preferred.getSampleSizeInBits())
+                .thenComparing(f -> -f.getSampleSizeInBits())
+                .thenComparing(f -> f.isBigEndian() != preferred.isBigEndian());
+
+        Line.Info[] infos = TargetDataLine.class.isAssignableFrom(lineClass) ? mixer.getTargetLineInfo()
+                : mixer.getSourceLineInfo();
+        AudioFormat best = null;
+        for (Line.Info info : infos) {
+            if (!(info instanceof DataLine.Info d) || !lineClass.isAssignableFrom(d.getLineClass()))
+                continue;
+            for (AudioFormat f : d.getFormats()) {
+                if (f.getEncoding() != AudioFormat.Encoding.PCM_SIGNED)
+                    continue;
+                for (AudioFormat c : candidates(f, preferred)) {
+                    if ((best == null || order.compare(c, best) < 0)
+                            && mixer.isLineSupported(new DataLine.Info(lineClass, c)))
+                        best = c;
                 }
             }
         }
-        throw new LineUnavailableException("Voicemeeter AUX Input not found!");
+        // Mixers that list no formats may still accept the preferred one
+        if (best == null && mixer.isLineSupported(new DataLine.Info(lineClass, preferred)))
+            best = preferred;
+        return best;
+    }
+
+    /**
+     * Expands a listed format into concrete formats, replacing every
+     * unspecified value by the preferred value and the alternatives.
+     *
+     * @param f         A format listed by a mixer
+     * @param preferred The preferred format
+     * @return The concrete candidates
+     */
+    private static AudioFormat[] candidates(AudioFormat f, AudioFormat preferred) {
+        float[] rates = f.getSampleRate() != AudioSystem.NOT_SPECIFIED ? new float[] { f.getSampleRate() }
+                : prepend(preferred.getSampleRate(), RATES);
+        int[] bits = f.getSampleSizeInBits() != AudioSystem.NOT_SPECIFIED ? new int[] { f.getSampleSizeInBits() }
+                : BITS;
+        int[] channels = f.getChannels() != AudioSystem.NOT_SPECIFIED ? new int[] { f.getChannels() }
+                : new int[] { preferred.getChannels(), 3 - preferred.getChannels() };
+
+        List<AudioFormat> out = new ArrayList<>();
+        for (float rate : rates) {
+            for (int b : bits) {
+                for (int ch : channels) {
+                    if ((b != 16 && b != 24 && b != 32) || ch < 1 || ch > 2)
+                        continue;
+                    boolean bigEndian = b > 8 && f.isBigEndian();
+                    out.add(new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, b, ch, ch * b / 8, rate,
+                            bigEndian));
+                }
+            }
+        }
+        return out.toArray(new AudioFormat[0]);
+    }
+
+    /**
+     * Puts a value in front of an array.
+     *
+     * @param first The first value
+     * @param rest  The other values
+     * @return first followed by rest
+     */
+    private static float[] prepend(float first, float[] rest) {
+        float[] all = new float[rest.length + 1];
+        all[0] = first;
+        System.arraycopy(rest, 0, all, 1, rest.length);
+        return all;
     }
 }
\ No newline at end of file
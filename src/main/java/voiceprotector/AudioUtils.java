@@ -1,11 +1,22 @@
 package voiceprotector;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
 /**
  * AudioUtils provides utility methods for decoding and encoding PCM16 stereo
  * audio data.
  */
 public class AudioUtils {
 
+    /**
+     * Little-endian 16-bit view over a byte array, used to read and write
+     * interleaved PCM16 samples in place without a decode/encode step.
+     */
+    private static final VarHandle PCM16_LE = MethodHandles.byteArrayViewVarHandle(short[].class,
+            ByteOrder.LITTLE_ENDIAN);
+
     /**
      * Decodes a byte array containing PCM16 stereo audio data into separate left
      * and right channel samples.
@@ -18,12 +29,30 @@ public class AudioUtils {
      */
     public static short[][] decodePCM16Stereo(byte[] data, int length) {
         short[][] samples = new short[2][length / 4]; // 2 channels
+        decodePCM16Stereo(data, length, samples);
+        return samples;
+    }
 
-        for (int i = 0, s = 0; i < length; i += 4, s++) {
-            samples[0][s] = (short) ((data[i] & 0xFF) | (data[i + 1] << 8));
-            samples[1][s] = (short) ((data[i + 2] & 0xFF) | (data[i + 3] << 8));
+    /**
+     * Decodes a byte array containing PCM16 stereo audio data into caller-supplied
+     * channel arrays. Nothing is allocated.
+     *
+     * @param data    The byte array containing PCM16 stereo audio data
+     * @param length  The total number of bytes in the input data
+     * @param samples Destination arrays (left=0, right=1), each at least
+     *                length / 4 samples long
+     * @return The number of stereo frames decoded
+     */
+    public static int decodePCM16Stereo(byte[] data, int length, short[][] samples) {
+        short[] L = samples[0];
+        short[] R = samples[1];
+        int frames = length / 4;
+
+        for (int i = 0, s = 0; s < frames; i += 4, s++) {
+            L[s] = (short) ((data[i] & 0xFF) | (data[i + 1] << 8));
+            R[s] = (short) ((data[i + 2] & 0xFF) | (data[i + 3] << 8));
         }
-        return samples;
+        return frames;
     }
 
     /**
@@ -38,16 +67,280 @@ public class AudioUtils {
     public static byte[] encodePCM16Stereo(short[][] channels) {
         int frames = channels[0].length;
         byte[] data = new byte[frames * 4];
+        encodePCM16Stereo(channels, frames, data);
+        return data;
+    }
+
+    /**
+     * Encodes the first {@code frames} stereo samples into a caller-supplied byte
+     * array. Nothing is allocated.
+     *
+     * @param channels Source arrays (left=0, right=1)
+     * @param frames   The number of stereo frames to encode
+     * @param data     Destination array, at least frames * 4 bytes long
+     * @return The number of bytes written
+     */
+    public static int encodePCM16Stereo(short[][] channels, int frames, byte[] data) {
+        short[] L = channels[0];
+        short[] R = channels[1];
 
         for (int s = 0, i = 0; s < frames; s++) {
-            short L = channels[0][s];
-            short R = channels[1][s];
+            short l = L[s];
+            short r = R[s];
 
-            data[i++] = (byte) (L & 0xFF); // Lower byte of left sample
-            data[i++] = (byte) (L >> 8); // Higher byte of left sample
-            data[i++] = (byte) (R & 0xFF); // Lower byte of right sample
-            data[i++] = (byte) (R >> 8); // Higher byte of right sample
+            data[i++] = (byte) (l & 0xFF); // Lower byte of left sample
+            data[i++] = (byte) (l >> 8); // Higher byte of left sample
+            data[i++] = (byte) (r & 0xFF); // Lower byte of right sample
+            data[i++] = (byte) (r >> 8); // Higher byte of right sample
         }
-        return data;
+        return frames * 4;
+    }
+
+    /**
+     * Decodes PCM16 stereo data into caller-supplied float arrays. The float
+     * samples keep the 16-bit scale (-32768..32767) so filter parameters mean the
+     * same thing on the float and the short path.
+     *
+     * @param data    The byte array containing PCM16 stereo audio data
+     * @param length  The total number of bytes in the input data
+     * @param samples Destination arrays (left=0, right=1)
+     * @return The number of stereo frames decoded
+     */
+    public static int decodePCM16StereoFloat(byte[] data, int length, float[][] samples) {
+        float[] L = samples[0];
+        float[] R = samples[1];
+        int frames = length / 4;
+
+        for (int i = 0, s = 0; s < frames; i += 4, s++) {
+            L[s] = (short) ((data[i] & 0xFF) | (data[i + 1] << 8));
+            R[s] = (short) ((data[i + 2] & 0xFF) | (data[i + 3] << 8));
+        }
+        return frames;
+    }
+
+    /**
+     * Quantizes float samples (16-bit scale) once, with rounding and clipping, and
+     * encodes them as PCM16 stereo into a caller-supplied byte array.
+     *
+     * @param channels Source arrays (left=0, right=1)
+     * @param frames   The number of stereo frames to encode
+     * @param data     Destination array, at least frames * 4 bytes long
+     * @return The number of bytes written
+     */
+    public static int encodePCM16Stereo(float[][] channels, int frames, byte[] data) {
+        float[] L = channels[0];
+        float[] R = channels[1];
+
+        for (int s = 0, i = 0; s < frames; s++) {
+            short l = quantize16(L[s]);
+            short r = quantize16(R[s]);
+
+            data[i++] = (byte) (l & 0xFF);
+            data[i++] = (byte) (l >> 8);
+            data[i++] = (byte) (r & 0xFF);
+            data[i++] = (byte) (r >> 8);
+        }
+        return frames * 4;
+    }
+
+    /**
+     * Decodes interleaved PCM16 data with any number of channels into
+     * caller-supplied channel arrays. Nothing is allocated.
+     *
+     * @param data    Interleaved little-endian PCM16 data
+     * @param length  The total number of bytes in the input data
+     * @param samples Destination arrays, one per channel
+     * @return The number of frames decoded
+     */
+    public static int decodePCM16(byte[] data, int length, short[][] samples) {
+        int channels = samples.length;
+        if (channels == 2)
+            return decodePCM16Stereo(data, length, samples);
+
+        int frames = length / (2 * channels);
+        for (int ch = 0; ch < channels; ch++) {
+            short[] dst = samples[ch];
+            for (int s = 0, i = 2 * ch; s < frames; s++, i += 2 * channels) {
+                dst[s] = (short) ((data[i] & 0xFF) | (data[i + 1] << 8));
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Encodes planar samples with any number of channels as interleaved PCM16
+     * into a caller-supplied byte array. Nothing is allocated.
+     *
+     * @param channels Source arrays, one per channel
+     * @param frames   The number of frames to encode
+     * @param data     Destination array, at least frames * 2 * channels bytes
+     * @return The number of bytes written
+     */
+    public static int encodePCM16(short[][] channels, int frames, byte[] data) {
+        int n = channels.length;
+        if (n == 2)
+            return encodePCM16Stereo(channels, frames, data);
+
+        for (int ch = 0; ch < n; ch++) {
+            short[] src = channels[ch];
+            for (int s = 0, i = 2 * ch; s < frames; s++, i += 2 * n) {
+                data[i] = (byte) (src[s] & 0xFF);
+                data[i + 1] = (byte) (src[s] >> 8);
+            }
+        }
+        return frames * 2 * n;
+    }
+
+    /**
+     * Decodes interleaved PCM16 data with any number of channels into
+     * caller-supplied float arrays on the 16-bit scale.
+     *
+     * @param data    Interleaved little-endian PCM16 data
+     * @param length  The total number of bytes in the input data
+     * @param samples Destination arrays, one per channel
+     * @return The number of frames decoded
+     */
+    public static int decodePCM16Float(byte[] data, int length, float[][] samples) {
+        int channels = samples.length;
+        if (channels == 2)
+            return decodePCM16StereoFloat(data, length, samples);
+
+        int frames = length / (2 * channels);
+        for (int ch = 0; ch < channels; ch++) {
+            float[] dst = samples[ch];
+            for (int s = 0, i = 2 * ch; s < frames; s++, i += 2 * channels) {
+                dst[s] = (short) ((data[i] & 0xFF) | (data[i + 1] << 8));
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Quantizes float samples (16-bit scale) with any number of channels once
+     * and encodes them as interleaved PCM16 into a caller-supplied byte array.
+     *
+     * @param channels Source arrays, one per channel
+     * @param frames   The number of frames to encode
+     * @param data     Destination array, at least frames * 2 * channels bytes
+     * @return The number of bytes written
+     */
+    public static int encodePCM16(float[][] channels, int frames, byte[] data) {
+        int n = channels.length;
+        if (n == 2)
+            return encodePCM16Stereo(channels, frames, data);
+
+        for (int ch = 0; ch < n; ch++) {
+            float[] src = channels[ch];
+            for (int s = 0, i = 2 * ch; s < frames; s++, i += 2 * n) {
+                short v = quantize16(src[s]);
+                data[i] = (byte) (v & 0xFF);
+                data[i + 1] = (byte) (v >> 8);
+            }
+        }
+        return frames * 2 * n;
+    }
+
+    /**
+     * Converts short samples to float samples on the same 16-bit scale.
+     *
+     * @param in     Source arrays
+     * @param out    Destination arrays
+     * @param frames The number of samples per channel to convert
+     */
+    public static void toFloat(short[][] in, float[][] out, int frames) {
+        toFloat(in, 0, out, frames);
+    }
+
+    /**
+     * Converts a range of short samples to float samples on the same 16-bit
+     * scale, starting at index 0 of the destination.
+     *
+     * @param in     Source arrays
+     * @param offset The first source index
+     * @param out    Destination arrays
+     * @param frames The number of samples per channel to convert
+     */
+    public static void toFloat(short[][] in, int offset, float[][] out, int frames) {
+        for (int ch = 0; ch < in.length; ch++) {
+            short[] src = in[ch];
+            float[] dst = out[ch];
+            for (int i = 0; i < frames; i++) {
+                dst[i] = src[offset + i];
+            }
+        }
+    }
+
+    /**
+     * Quantizes float samples (16-bit scale) back to shorts with rounding and
+     * clipping.
+     *
+     * @param in     Source arrays
+     * @param out    Destination arrays
+     * @param frames The number of samples per channel to convert
+     */
+    public static void toShort(float[][] in, short[][] out, int frames) {
+        toShort(in, out, 0, frames);
+    }
+
+    /**
+     * Quantizes float samples (16-bit scale) starting at index 0 into a range
+     * of short arrays, with rounding and clipping.
+     *
+     * @param in     Source arrays
+     * @param out    Destination arrays
+     * @param offset The first destination index
+     * @param frames The number of samples per channel to convert
+     */
+    public static void toShort(float[][] in, short[][] out, int offset, int frames) {
+        for (int ch = 0; ch < in.length; ch++) {
+            float[] src = in[ch];
+            short[] dst = out[ch];
+            for (int i = 0; i < frames; i++) {
+                dst[offset + i] = quantize16(src[i]);
+            }
+        }
+    }
+
+    /**
+     * Rounds a float sample to the nearest integer and clips it to the signed
+     * 16-bit range.
+     *
+     * @param v The sample on the 16-bit scale
+     * @return The quantized sample
+     */
+    public static short quantize16(float v) {
+        return clip16(Math.round(v));
+    }
+
+    /**
+     * Reads one little-endian PCM16 sample directly from an interleaved buffer.
+     *
+     * @param data      Interleaved PCM16 data
+     * @param byteIndex Byte offset of the sample (must be even)
+     * @return The sample value
+     */
+    public static short getSample(byte[] data, int byteIndex) {
+        return (short) PCM16_LE.get(data, byteIndex);
+    }
+
+    /**
+     * Writes one little-endian PCM16 sample directly into an interleaved buffer.
+     *
+     * @param data      Interleaved PCM16 data
+     * @param byteIndex Byte offset of the sample (must be even)
+     * @param value     The sample value
+     */
+    public static void setSample(byte[] data, int byteIndex, short value) {
+        PCM16_LE.set(data, byteIndex, value);
+    }
+
+    /**
+     * Clips an int to the signed 16-bit range.
+     *
+     * @param v The value to clip
+     * @return v limited to [-32768, 32767]
+     */
+    public static short clip16(int v) {
+        return (short) Math.max(Math.min(v, 32767), -32768);
     }
 }
\ No newline at end of file
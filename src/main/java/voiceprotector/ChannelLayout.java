@@ -0,0 +1,155 @@
+package voiceprotector;
+
+/**
+ * ChannelLayout describes how the channels of a block are laid out and how
+ * many of them the filters actually process.
+ * <ul>
+ * <li>{@link #STEREO}: two independent channels, both processed.</li>
+ * <li>{@link #LINKED_MONO}: two channels carrying the same signal, as most
+ * headset microphones deliver. Only the left channel is processed and the
+ * result is copied to the right, which halves the cost and keeps the channels
+ * identical.</li>
+ * <li>{@link #MONO}: a single captured channel (PCM16 mono, 2 bytes per
+ * frame).</li>
+ * <li>{@link #multi(int)}: any number of independent channels, e.g. from a
+ * microphone array.</li>
+ * </ul>
+ */
+public final class ChannelLayout {
+
+    /**
+     * Two independent channels
+     */
+    public static final ChannelLayout STEREO = new ChannelLayout("stereo", 2, 2);
+
+    /**
+     * Two channels with the same content, processed once
+     */
+    public static final ChannelLayout LINKED_MONO = new ChannelLayout("linked-mono", 2, 1);
+
+    /**
+     * One channel
+     */
+    public static final ChannelLayout MONO = new ChannelLayout("mono", 1, 1);
+
+    /**
+     * The name of the layout
+     */
+    private final String name;
+
+    /**
+     * Channels per frame in the block
+     */
+    private final int channels;
+
+    /**
+     * Channels the filters process
+     */
+    private final int processedChannels;
+
+    /**
+     * Creates a layout.
+     *
+     * @param name              The name of the layout
+     * @param channels          Channels per frame in the block
+     * @param processedChannels Channels the filters process
+     */
+    private ChannelLayout(String name, int channels, int processedChannels) {
+        this.name = name;
+        this.channels = channels;
+        this.processedChannels = processedChannels;
+    }
+
+    /**
+     * Returns the layout for the given number of independent channels.
+     *
+     * @param channels Channels per frame, at least 1
+     * @return {@link #MONO} for 1, {@link #STEREO} for 2, otherwise a new
+     *         N-channel layout
+     * @throws IllegalArgumentException If channels is less than 1
+     */
+    public static ChannelLayout multi(int channels) {
+        if (channels < 1)
+            throw new IllegalArgumentException("A layout needs at least one channel: " + channels);
+        if (channels == 1)
+            return MONO;
+        if (channels == 2)
+            return STEREO;
+        return new ChannelLayout(channels + "ch", channels, channels);
+    }
+
+    /**
+     * Parses a layout name as printed by {@link #toString()}: "stereo",
+     * "linked-mono", "mono" or a channel count such as "4" or "4ch".
+     *
+     * @param name The layout name
+     * @return The layout
+     * @throws IllegalArgumentException If the name is not a layout
+     */
+    public static ChannelLayout parse(String name) {
+        String s = name.trim().toLowerCase();
+        return switch (s) {
+            case "stereo" -> STEREO;
+            case "linked-mono", "linked" -> LINKED_MONO;
+            case "mono" -> MONO;
+            default -> {
+                try {
+                    yield multi(Integer.parseInt(s.endsWith("ch") ? s.substring(0, s.length() - 2) : s));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Unknown channel layout: " + name);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the number of channels per frame in a block.
+     *
+     * @return The channel count of the audio data
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Returns the number of channels the filters process.
+     *
+     * @return 1 for mono and linked mono, otherwise {@link #getChannels()}
+     */
+    public int getProcessedChannels() {
+        return processedChannels;
+    }
+
+    /**
+     * Checks whether one processed channel is copied to all channels.
+     *
+     * @return true for {@link #LINKED_MONO}
+     */
+    public boolean isLinked() {
+        return processedChannels < channels;
+    }
+
+    /**
+     * Returns the size of one interleaved PCM16 frame.
+     *
+     * @return 2 bytes per channel
+     */
+    public int getFrameBytes() {
+        return 2 * channels;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ChannelLayout l && l.channels == channels && l.processedChannels == processedChannels;
+    }
+
+    @Override
+    public int hashCode() {
+        return channels * 31 + processedChannels;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
\ No newline at end of file
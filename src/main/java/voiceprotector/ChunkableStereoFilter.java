@@ -0,0 +1,46 @@
+package voiceprotector;
+
+/**
+ * Optional extension of {@link StereoAudioFilter} for filters whose output can
+ * be reproduced when a long recording is split into chunks that are processed
+ * independently, e.g. on several threads. A filter declares how its state at a
+ * chunk boundary is recovered:
+ * <ul>
+ * <li>State that depends only on the position in the stream (oscillator phase,
+ * parameter ramps) is handed over explicitly by {@link #seek(long)}.</li>
+ * <li>State that depends on earlier audio is rebuilt by processing
+ * {@link #getWarmupFrames()} frames before the chunk and discarding that
+ * output.</li>
+ * </ul>
+ * Filters that do not implement this interface force sequential processing.
+ */
+public interface ChunkableStereoFilter extends StereoAudioFilter {
+
+    /**
+     * Returns how many frames of preceding input the filter must see for its
+     * state to be identical to sequential processing. 0 if the filter keeps no
+     * signal-dependent state across blocks.
+     *
+     * @return The warm-up length in frames
+     */
+    int getWarmupFrames();
+
+    /**
+     * Sets all position-dependent state to what it would be after processing
+     * the given number of frames sequentially with the current parameters. Called
+     * before the first block of a chunk (including its warm-up).
+     *
+     * @param frame The stream position of the next frame to be processed
+     */
+    void seek(long frame);
+
+    /**
+     * Seeks to the start of the stream. Together with the warm-up, seeking
+     * restores all state a chunk boundary needs, so it is also the state of a
+     * new stream.
+     */
+    @Override
+    default void reset() {
+        seek(0);
+    }
+}
\ No newline at end of file
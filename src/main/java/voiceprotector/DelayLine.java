@@ -0,0 +1,225 @@
+package voiceprotector;
+
+import java.util.Arrays;
+
+/**
+ * DelayLine delays planar or interleaved audio by a whole number of frames.
+ * {@link StereoFilterChain} and {@link voiceprotector.graph.FilterGraph} use it
+ * to compensate latency: a path whose filters add less latency than another
+ * is delayed by the difference, so the paths stay aligned in time.
+ * <p>
+ * Every channel keeps its own write position, so channels can be processed in
+ * separate calls. Storage is allocated when the delay grows beyond anything
+ * set before (or reserved with {@link #reserve(int)}); growing clears the
+ * history, so the next {@code delay} output frames are silence. Changing the
+ * delay within the reserved capacity keeps the history.
+ */
+public final class DelayLine {
+
+    /**
+     * The history of each channel, a ring of at least delay + 1 samples
+     */
+    private float[][] rings;
+
+    /**
+     * The write position in each channel's ring
+     */
+    private final int[] positions;
+
+    /**
+     * The delay in frames
+     */
+    private int delay;
+
+    /**
+     * Creates a line with no delay.
+     *
+     * @param channels The number of channels
+     */
+    public DelayLine(int channels) {
+        this.rings = new float[channels][1];
+        this.positions = new int[channels];
+    }
+
+    /**
+     * Allocates storage for delays up to a length, so setting them later does
+     * not allocate.
+     *
+     * @param maxDelay The largest delay in frames
+     */
+    public void reserve(int maxDelay) {
+        if (maxDelay + 1 > rings[0].length) {
+            rings = new float[rings.length][maxDelay + 1];
+            Arrays.fill(positions, 0);
+        }
+    }
+
+    /**
+     * Sets the delay. Takes effect with the next sample processed.
+     *
+     * @param frames The delay in frames, at least 0
+     * @throws IllegalArgumentException If the delay is negative
+     */
+    public void setDelay(int frames) {
+        if (frames < 0)
+            throw new IllegalArgumentException("Negative delay: " + frames);
+        reserve(frames);
+        delay = frames;
+    }
+
+    /**
+     * Returns the delay.
+     *
+     * @return The delay in frames
+     */
+    public int getDelay() {
+        return delay;
+    }
+
+    /**
+     * Returns the number of channels.
+     *
+     * @return The channel count
+     */
+    public int getChannels() {
+        return rings.length;
+    }
+
+    /**
+     * Clears the history, so the next {@link #getDelay()} output frames are
+     * silence.
+     */
+    public void reset() {
+        for (float[] r : rings)
+            Arrays.fill(r, 0f);
+        Arrays.fill(positions, 0);
+    }
+
+    /**
+     * Delays one channel, from an input array into an output array, which may
+     * be the same.
+     *
+     * @param channel The channel
+     * @param in      The input samples
+     * @param out     The output samples
+     * @param frames  The number of samples
+     */
+    public void process(int channel, short[] in, short[] out, int frames) {
+        process(channel, in, 0, out, frames);
+    }
+
+    /**
+     * Delays one channel, from a range of an input array into the start of an
+     * output array.
+     *
+     * @param channel  The channel
+     * @param in       The input samples
+     * @param inOffset The index of the first input sample
+     * @param out      The output samples, written from index 0
+     * @param frames   The number of samples
+     */
+    public void process(int channel, short[] in, int inOffset, short[] out, int frames) {
+        float[] r = rings[channel];
+        int cap = r.length;
+        int p = positions[channel];
+        for (int i = 0; i < frames; i++) {
+            r[p] = in[inOffset + i];
+            int q = p - delay;
+            out[i] = (short) r[q < 0 ? q + cap : q];
+            if (++p == cap)
+                p = 0;
+        }
+        positions[channel] = p;
+    }
+
+    /**
+     * Delays one channel of float samples in place.
+     *
+     * @param channel The channel
+     * @param x       The samples
+     * @param frames  The number of samples
+     */
+    public void process(int channel, float[] x, int frames) {
+        float[] r = rings[channel];
+        int cap = r.length;
+        int p = positions[channel];
+        for (int i = 0; i < frames; i++) {
+            r[p] = x[i];
+            int q = p - delay;
+            x[i] = r[q < 0 ? q + cap : q];
+            if (++p == cap)
+                p = 0;
+        }
+        positions[channel] = p;
+    }
+
+    /**
+     * Delays planar samples in place.
+     *
+     * @param samples One array per channel of the line
+     * @param frames  The number of samples per channel
+     */
+    public void process(short[][] samples, int frames) {
+        process(samples, 0, frames);
+    }
+
+    /**
+     * Delays a range of planar samples in place.
+     *
+     * @param samples One array per channel of the line
+     * @param offset  The first frame of the range
+     * @param frames  The number of frames
+     */
+    public void process(short[][] samples, int offset, int frames) {
+        for (int ch = 0; ch < samples.length; ch++) {
+            short[] x = samples[ch];
+            float[] r = rings[ch];
+            int cap = r.length;
+            int p = positions[ch];
+            for (int i = offset; i < offset + frames; i++) {
+                r[p] = x[i];
+                int q = p - delay;
+                x[i] = (short) r[q < 0 ? q + cap : q];
+                if (++p == cap)
+                    p = 0;
+            }
+            positions[ch] = p;
+        }
+    }
+
+    /**
+     * Delays planar float samples in place.
+     *
+     * @param samples One array per channel of the line
+     * @param frames  The number of samples per channel
+     */
+    public void process(float[][] samples, int frames) {
+        for (int ch = 0; ch < samples.length; ch++)
+            process(ch, samples[ch], frames);
+    }
+
+    /**
+     * Delays interleaved PCM16 data in place.
+     *
+     * @param data   Interleaved little-endian PCM16 data with as many channels
+     *               as the line
+     * @param length The number of valid bytes in data
+     */
+    public void processInterleaved(byte[] data, int length) {
+        int channels = rings.length;
+        int frames = length / (2 * channels);
+        for (int ch = 0; ch < channels; ch++) {
+            float[] r = rings[ch];
+            int cap = r.length;
+            int p = positions[ch];
+            for (int i = 0, b = 2 * ch; i < frames; i++, b += 2 * channels) {
+                r[p] = AudioUtils.getSample(data, b);
+                int q = p - delay;
+                AudioUtils.setSample(data, b, (short) r[q < 0 ? q + cap : q]);
+                if (++p == cap)
+                    p = 0;
+            }
+            positions[ch] = p;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,22 @@
+package voiceprotector;
+
+/**
+ * Float variant of {@link StereoAudioFilter}. Filters implementing it can run
+ * in the floating-point mode of {@link StereoFilterChain}, where samples are
+ * converted to float once when entering the chain and quantized once when
+ * leaving it, instead of being clipped back to 16 bits after every filter.
+ * <p>
+ * Samples keep the 16-bit scale (-32768..32767) but are not clipped between
+ * filters, so intermediate values may exceed that range.
+ */
+public interface FloatStereoAudioFilter extends StereoAudioFilter {
+
+    /**
+     * Processes planar float stereo samples in place.
+     *
+     * @param samples a 2D array of float values where samples[0] contains left
+     *                channel data and samples[1] contains right channel data
+     * @param frames  the number of valid samples in each channel array
+     */
+    void processFloat(float[][] samples, int frames);
+}
\ No newline at end of file
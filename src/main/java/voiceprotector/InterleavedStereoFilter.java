@@ -0,0 +1,18 @@
+package voiceprotector;
+
+/**
+ * Optional extension of {@link StereoAudioFilter} for filters that can work
+ * directly on interleaved little-endian PCM16 bytes. When every enabled filter
+ * in a {@link StereoFilterChain} implements this interface, the chain skips the
+ * decode/encode step entirely.
+ */
+public interface InterleavedStereoFilter extends StereoAudioFilter {
+
+    /**
+     * Processes interleaved PCM16 stereo data in place.
+     *
+     * @param data   Interleaved little-endian PCM16 data (L, R, L, R, ...)
+     * @param length The number of valid bytes in data
+     */
+    void processInterleaved(byte[] data, int length);
+}
\ No newline at end of file
@@ -1,9 +1,12 @@
 package voiceprotector;
 
+import java.nio.file.Path;
+
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.SourceDataLine;
 import javax.sound.sampled.TargetDataLine;
 
+import voiceprotector.daemon.ProcessStats;
 import voiceprotector.filters.AIFormantScramblerStereo;
 import voiceprotector.filters.ChaoticPhaseStereo;
 import voiceprotector.filters.LPCWarpStereo;
@@ -11,6 +14,11 @@ import voiceprotector.filters.NoiseFilterStereo;
 import voiceprotector.filters.SpectralHoleStereo;
 import voiceprotector.filters.XorObfuscationStereo;
 import voiceprotector.gui.StereoFilterGUI;
+import voiceprotector.metrics.ChainMetrics;
+import voiceprotector.metrics.PrometheusExporter;
+import voiceprotector.pipeline.LatencyConfig;
+import voiceprotector.pipeline.LiveAudioLoop;
+import voiceprotector.recorder.FlightRecorder;
 
 /**
  * Main class for running VoiceProtector with VoiceMeeter (e.g., VoiceMeeter
@@ -24,6 +32,31 @@ public class Main {
     /**
      * The main entry point of the application. Initializes the filter chain, GUI,
      * and audio devices, then starts processing audio data.
+     * <p>
+     * If the system property {@code voiceprotector.metrics.port} is set, the
+     * chain is instrumented, its metrics are registered as an MBean and served in
+     * the Prometheus text format on {@code http://127.0.0.1:<port>/metrics}.
+     * <p>
+     * If the system property {@code voiceprotector.recorder} names a file, the
+     * blocks entering and leaving the chain are kept there in a ring of
+     * {@code voiceprotector.recorder.sizeMB} megabytes (default 64) for
+     * {@link voiceprotector.recorder.ReplayMain}.
+     * <p>
+     * Block size, line buffers and latency target come from the system
+     * properties described in {@link LatencyConfig}; the achieved latency is
+     * printed every 10 seconds.
+     * <p>
+     * The system property {@code voiceprotector.channels} selects the
+     * {@link ChannelLayout}: {@code stereo} (default), {@code linked-mono},
+     * which processes the left channel only and sends it on both channels, for
+     * headset microphones that deliver the same signal twice, or {@code mono},
+     * which mixes the captured channels down and sends the result on both
+     * output channels.
+     * <p>
+     * The devices are opened in their native format closest to 48 kHz stereo
+     * PCM16. The system property {@code voiceprotector.processingRate} sets the
+     * rate the chain runs at (default 48000); at 16000 the filters do a third
+     * of the work and the audio is resampled to and from the device rates.
      *
      * @param args Command-line arguments (not used)
      * @throws Exception If an error occurs during initialization or execution
@@ -39,28 +72,52 @@ public class Main {
         chain.add(new ChaoticPhaseStereo());
         chain.add(new SpectralHoleStereo());
 
-        new StereoFilterGUI(chain);
-
-        AudioFormat format = new AudioFormat(48000, 16, 2, true, false);
+        ChannelLayout layout = ChannelLayout.parse(System.getProperty("voiceprotector.channels", "stereo"));
+        if (layout.getChannels() > 2)
+            throw new IllegalArgumentException("The audio lines have at most two channels: " + layout);
+        chain.setChannelLayout(layout);
+        chain.setSampleRate(Float.parseFloat(System.getProperty("voiceprotector.processingRate", "48000")));
 
-        TargetDataLine mic = AudioDeviceFinder.openMic(format);
-        SourceDataLine vmAux = AudioDeviceFinder.openVoicemeeterAUX(format);
+        new StereoFilterGUI(chain);
 
-        mic.start();
-        vmAux.start();
+        String metricsPort = System.getProperty("voiceprotector.metrics.port");
+        ChainMetrics metrics = null;
+        if (metricsPort != null) {
+            metrics = new ChainMetrics(chain.getSampleRate());
+            chain.setMetrics(metrics);
+            metrics.register("main");
+            int port = new PrometheusExporter(metrics).start(Integer.parseInt(metricsPort));
+            System.out.println("Metrics on http://127.0.0.1:" + port + "/metrics");
+        }
 
-        byte[] buffer = new byte[4096];
+        String recording = System.getProperty("voiceprotector.recorder");
+        FlightRecorder recorder = null;
+        if (recording != null) {
+            recorder = FlightRecorder.create(chain, Path.of(recording),
+                    Long.getLong("voiceprotector.recorder.sizeMB", 64) << 20);
+            System.out.println("Recording to " + recording);
+        }
 
-        while (true) {
-            int read = mic.read(buffer, 0, buffer.length);
+        AudioFormat format = new AudioFormat(48000, 16, 2, true, false);
 
-            short[][] samples = AudioUtils.decodePCM16Stereo(buffer, read);
+        LatencyConfig latency = LatencyConfig.fromSystemProperties();
+        System.out.println("Latency mode: " + latency);
 
-            chain.process(samples);
+        TargetDataLine mic = AudioDeviceFinder.openMic(format,
+                latency.getCaptureBufferFrames() * LatencyConfig.FRAME_BYTES);
+        SourceDataLine vmAux = AudioDeviceFinder.openVoicemeeterAUX(format,
+                latency.getPlaybackBufferFrames() * LatencyConfig.FRAME_BYTES);
 
-            byte[] out = AudioUtils.encodePCM16Stereo(samples);
+        mic.start();
+        vmAux.start();
 
-            vmAux.write(out, 0, out.length);
-        }
+        LiveAudioLoop loop = new LiveAudioLoop(chain, mic, vmAux, latency);
+        System.out.println("Processing at " + chain.getSampleRate() + " Hz, conversion: "
+                + loop.describeConversion());
+        System.out.println(ProcessStats.describe("GUI"));
+        loop.setMetrics(metrics);
+        loop.setRecorder(recorder);
+        loop.startReporter(10);
+        loop.run();
     }
 }
\ No newline at end of file
@@ -0,0 +1,263 @@
+package voiceprotector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+import voiceprotector.params.ParameterSnapshot;
+import voiceprotector.params.ParameterStore;
+
+/**
+ * MultiChannelChain processes blocks with any number of channels, e.g. from a
+ * microphone array, by splitting them into lanes of two channels (the last lane
+ * holds one channel if the count is odd). Every lane has its own
+ * {@link StereoFilterChain} from the factory, so lanes share no filter state
+ * and can run on different threads.
+ * <p>
+ * Lane 0 is the control chain: its filters' parameters are mirrored to the
+ * other lanes at the start of every block in which they changed, so a GUI or
+ * config only needs to talk to {@link #getControlChain()}. Enabled flags and
+ * noise seeds are not mirrored.
+ * <p>
+ * Lanes run in parallel on the pool when a block holds at least
+ * {@link #getParallelThreshold()} samples across all channels; smaller blocks
+ * are processed on the calling thread, where the hand-off would cost more than
+ * it saves. No arrays or tasks are allocated per block.
+ */
+public class MultiChannelChain {
+
+    /**
+     * Default number of samples (frames times channels) from which lanes run in
+     * parallel
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * One chain per lane
+     */
+    private final StereoFilterChain[] lanes;
+
+    /**
+     * Per lane, the views of the block's channels handed to the lane's chain
+     */
+    private final short[][][] laneSamples;
+
+    /**
+     * The parallel task of each lane, reused for every block
+     */
+    private final LaneTask[] tasks;
+
+    /**
+     * Channels per frame
+     */
+    private final int channels;
+
+    /**
+     * The pool lanes run on in parallel
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Per filter of the control chain, the parameter version last mirrored
+     */
+    private final long[] mirrored;
+
+    /**
+     * Samples per block from which lanes run in parallel
+     */
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /**
+     * Planar block buffers for interleaved data
+     */
+    private short[][] scratch;
+
+    /**
+     * Creates a chain.
+     *
+     * @param chainFactory Creates the chain of one lane; every chain must hold
+     *                     the same filters in the same order
+     * @param channels     Channels per frame, at least 1
+     * @param pool         The pool to run lanes on in parallel
+     * @throws IllegalArgumentException If channels is less than 1 or the lanes'
+     *                                  filter lists differ in length
+     */
+    public MultiChannelChain(Supplier<StereoFilterChain> chainFactory, int channels, ForkJoinPool pool) {
+        if (channels < 1)
+            throw new IllegalArgumentException("A chain needs at least one channel: " + channels);
+        this.channels = channels;
+        this.pool = pool;
+
+        int n = (channels + 1) / 2;
+        lanes = new StereoFilterChain[n];
+        laneSamples = new short[n][][];
+        tasks = new LaneTask[n];
+        for (int k = 0; k < n; k++) {
+            int width = Math.min(2, channels - 2 * k);
+            lanes[k] = chainFactory.get();
+            lanes[k].setChannelLayout(ChannelLayout.multi(width));
+            laneSamples[k] = new short[width][];
+            tasks[k] = new LaneTask(k);
+            if (lanes[k].getFilters().size() != lanes[0].getFilters().size())
+                throw new IllegalArgumentException("Every lane chain must hold the same filters");
+        }
+        mirrored = new long[lanes[0].getFilters().size()];
+        Arrays.fill(mirrored, -1);
+    }
+
+    /**
+     * Processes a block in place.
+     *
+     * @param samples Planar samples, one array of the same length per channel
+     * @throws IllegalArgumentException If the block has a different channel count
+     */
+    public void process(short[][] samples) {
+        if (samples.length != channels)
+            throw new IllegalArgumentException("Block has " + samples.length + " channels, chain has " + channels);
+
+        mirrorParameters();
+        for (int k = 0; k < lanes.length; k++) {
+            short[][] view = laneSamples[k];
+            for (int c = 0; c < view.length; c++)
+                view[c] = samples[2 * k + c];
+        }
+
+        if (lanes.length > 1 && pool.getParallelism() > 1
+                && (long) samples[0].length * channels >= parallelThreshold) {
+            for (int k = 1; k < lanes.length; k++) {
+                tasks[k].reinitialize();
+                pool.execute(tasks[k]);
+            }
+            runLane(0);
+            for (int k = 1; k < lanes.length; k++)
+                tasks[k].join();
+        } else {
+            for (int k = 0; k < lanes.length; k++)
+                runLane(k);
+        }
+
+        for (short[][] view : laneSamples)
+            Arrays.fill(view, null);
+    }
+
+    /**
+     * Processes interleaved PCM16 data with {@link #getChannels()} channels in
+     * place.
+     *
+     * @param data   Interleaved little-endian PCM16 data
+     * @param length The number of valid bytes in data
+     */
+    public void processInterleaved(byte[] data, int length) {
+        int frames = length / (2 * channels);
+        if (scratch == null || scratch[0].length != frames)
+            scratch = new short[channels][frames];
+
+        AudioUtils.decodePCM16(data, length, scratch);
+        process(scratch);
+        AudioUtils.encodePCM16(scratch, frames, data);
+    }
+
+    /**
+     * Runs the current block through one lane.
+     *
+     * @param k The lane
+     */
+    private void runLane(int k) {
+        lanes[k].process(laneSamples[k]);
+    }
+
+    /**
+     * Copies the parameters of every control filter that changed since the last
+     * block to the same filter of the other lanes.
+     */
+    private void mirrorParameters() {
+        List<StereoAudioFilter> control = lanes[0].getFilters();
+        for (int i = 0; i < mirrored.length; i++) {
+            ParameterSnapshot p = control.get(i).getParameters().snapshot();
+            if (p.version() == mirrored[i])
+                continue;
+            for (int k = 1; k < lanes.length; k++) {
+                ParameterStore store = lanes[k].getFilters().get(i).getParameters();
+                for (int j = 0; j < p.size(); j++)
+                    store.set(j, p.get(j));
+            }
+            mirrored[i] = p.version();
+        }
+    }
+
+    /**
+     * Returns the chain whose parameters all lanes follow.
+     *
+     * @return The chain of lane 0
+     */
+    public StereoFilterChain getControlChain() {
+        return lanes[0];
+    }
+
+    /**
+     * Returns the chain of every lane, e.g. to attach metrics.
+     *
+     * @return The lane chains; lane k processes channels 2k and 2k + 1
+     */
+    public StereoFilterChain[] getLanes() {
+        return lanes.clone();
+    }
+
+    /**
+     * Returns the number of channels per frame.
+     *
+     * @return The channel count
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Returns the block size from which lanes run in parallel.
+     *
+     * @return Samples per block across all channels
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the block size from which lanes run in parallel.
+     *
+     * @param parallelThreshold Samples per block across all channels; 0 runs
+     *                          lanes in parallel whenever the pool has more than
+     *                          one thread, {@link Integer#MAX_VALUE} never
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Runs one lane of the current block on the pool.
+     */
+    private class LaneTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The lane
+         */
+        private final int lane;
+
+        /**
+         * Creates the task of a lane.
+         *
+         * @param lane The lane
+         */
+        LaneTask(int lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        protected void compute() {
+            runLane(lane);
+        }
+    }
+}
\ No newline at end of file
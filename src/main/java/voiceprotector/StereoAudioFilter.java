@@ -1,11 +1,37 @@
 package voiceprotector;
 
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.params.ParameterStore;
+
 /**
  * Interface defining a stereo audio filter that processes audio samples in
  * real-time.
+ * <p>
+ * Samples are planar: one array per channel. Filters process two channels
+ * unless they declare more through {@link #supportsChannels(int)}, which lets
+ * {@link StereoFilterChain} run them on the channel count of its
+ * {@link ChannelLayout}.
+ * <p>
+ * Filters are designed for {@link #DEFAULT_SAMPLE_RATE}. Filters whose
+ * behavior depends on time or frequency (modulation rates, analysis frames,
+ * frequency bands) keep it at other rates through
+ * {@link #setSampleRate(float)}.
+ * <p>
+ * Lifecycle: before a stream starts, {@link #prepare(AudioFormat, int)} tells
+ * a filter the format and the largest block it will see, so it can allocate
+ * its buffers up front instead of on the audio thread. {@link #reset()} starts
+ * a new stream, and {@link #getLatencyFrames()} reports how far the filter
+ * delays its input, for latency compensation. All lifecycle methods have
+ * defaults, so a filter only overrides what applies to it.
  */
 public interface StereoAudioFilter {
 
+    /**
+     * The sample rate filters run at unless told otherwise, in Hz
+     */
+    float DEFAULT_SAMPLE_RATE = 48000f;
+
     /**
      * Processes stereo audio samples.
      *
@@ -21,4 +47,102 @@ public interface StereoAudioFilter {
      * @return true if the filter is enabled, false otherwise
      */
     boolean isEnabled();
+
+    /**
+     * Returns the store through which the filter's parameters are published to
+     * the audio thread. Control code (GUI, config) must change parameters through
+     * this store or the filter's setters, never by writing fields directly.
+     *
+     * @return The parameter store, {@link ParameterStore#EMPTY} if the filter has
+     *         no parameters
+     */
+    default ParameterStore getParameters() {
+        return ParameterStore.EMPTY;
+    }
+
+    /**
+     * Checks whether the filter can process the given number of channels in
+     * one call. Every channel is processed independently with the same
+     * parameters; channel-dependent state (noise, analysis history) is kept
+     * per channel.
+     *
+     * @param channels The number of planar channels
+     * @return true if {@link #process(short[][])} accepts that many channels
+     */
+    default boolean supportsChannels(int channels) {
+        return channels == 2;
+    }
+
+    /**
+     * Tells the filter the sample rate of the blocks it will process, so rates
+     * in Hz and durations keep their meaning. Must not be called while a block
+     * is being processed; state that depends on the rate is rebuilt, so the
+     * filter starts over as if the stream began with the next block. Filters
+     * that work per sample ignore it.
+     *
+     * @param sampleRate The sample rate in Hz
+     */
+    default void setSampleRate(float sampleRate) {
+    }
+
+    /**
+     * Prepares the filter for a stream: tells it the sample rate and the
+     * number of planar channels it will process, and the largest block it will
+     * be given. Filters allocate their per-block buffers here, so processing
+     * blocks up to that size does not allocate. Must not be called while a
+     * block is being processed. The default only sets the sample rate.
+     *
+     * @param format         The format of the blocks; only the sample rate and
+     *                       channel count are used
+     * @param maxBlockFrames The largest number of frames per block
+     */
+    default void prepare(AudioFormat format, int maxBlockFrames) {
+        setSampleRate(format.getSampleRate());
+    }
+
+    /**
+     * Returns the filter to the state of a new stream at position 0: history
+     * is cleared and parameter ramps settle at the published values. Buffers
+     * and parameters are kept. Must not be called while a block is being
+     * processed. The default does nothing, which suits filters that keep no
+     * state across blocks.
+     */
+    default void reset() {
+    }
+
+    /**
+     * Returns how many frames the filter delays its input, e.g. the frame of an
+     * overlap-add transform.
+     *
+     * @return The latency in frames, 0 by default
+     */
+    default int getLatencyFrames() {
+        return 0;
+    }
+
+    /**
+     * Processes a range of each channel in place, as one block of length
+     * frames. {@link StereoFilterChain} passes every block to its filters this
+     * way, so it can keep buffers sized for the largest block. All filters in
+     * this project work on the range directly. The default only exists so
+     * filters written against {@link #process(short[][])} keep working: it
+     * copies a partial range into new arrays on every call, so such filters
+     * allocate on the audio thread and should override this method.
+     *
+     * @param samples Planar samples
+     * @param offset  The first frame of the range
+     * @param length  The number of frames
+     */
+    default void process(short[][] samples, int offset, int length) {
+        if (offset == 0 && length == samples[0].length) {
+            process(samples);
+            return;
+        }
+        short[][] range = new short[samples.length][length];
+        for (int ch = 0; ch < samples.length; ch++)
+            System.arraycopy(samples[ch], offset, range[ch], 0, length);
+        process(range);
+        for (int ch = 0; ch < samples.length; ch++)
+            System.arraycopy(range[ch], 0, samples[ch], offset, length);
+    }
 }
\ No newline at end of file
@@ -3,11 +3,32 @@ package voiceprotector;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.metrics.ChainMetrics;
+import voiceprotector.metrics.LatencyHistogram;
+import voiceprotector.monitor.SignalMonitor;
+
 /**
  * StereoFilterChain manages a collection of audio filters that process stereo
  * audio data.
  * It allows for adding filters, processing audio samples through the chain, and
  * retrieving the list of filters.
+ * <p>
+ * The {@link ChannelLayout} decides how many channels a block has and how many
+ * the filters process. In {@link ChannelLayout#LINKED_MONO} only the left
+ * channel runs through the filters and is copied to the right. A filter that
+ * only supports two channels sees a mono channel on both inputs and its left
+ * output is kept; layouts with more channels require every enabled filter to
+ * support them (see {@link MultiChannelChain} for processing them in
+ * parallel).
+ * <p>
+ * {@link #prepare(AudioFormat, int)} prepares every filter for the stream and
+ * allocates the chain's scratch buffers, so the first blocks do not allocate.
+ * The chain delays its input by the sum of the enabled filters' latencies
+ * ({@link #getLatencyFrames()}). With latency compensation the output is also
+ * delayed by the latency of the disabled filters, so the total stays the same
+ * when filters are enabled or disabled.
  */
 public class StereoFilterChain {
 
@@ -17,11 +38,132 @@ public class StereoFilterChain {
     private final List<StereoAudioFilter> filters = new ArrayList<>();
 
     /**
-     * Adds a new filter to the chain.
+     * Planar short scratch buffers for decoded and quantized blocks, at least
+     * as long as the largest block seen
+     */
+    private short[][] shortScratch = new short[2][0];
+
+    /**
+     * Stereo pair through which a mono channel is fed to a two-channel filter,
+     * at least as long as the largest block seen
+     */
+    private short[][] pairScratch = new short[2][0];
+
+    /**
+     * Planar float scratch buffers used by the floating-point mode
+     */
+    private float[][] floatScratch = new float[2][0];
+
+    /**
+     * Single-channel views of the processed channel in linked mono
+     */
+    private final short[][] linkedShort = new short[1][];
+
+    /**
+     * Single-channel views of the processed channel in linked mono (float)
+     */
+    private final float[][] linkedFloat = new float[1][];
+
+    /**
+     * The channel layout of the blocks
+     */
+    private volatile ChannelLayout layout = ChannelLayout.STEREO;
+
+    /**
+     * The sample rate of the blocks in Hz
+     */
+    private float sampleRate = StereoAudioFilter.DEFAULT_SAMPLE_RATE;
+
+    /**
+     * The layout the current stages were validated for
+     */
+    private ChannelLayout compiledLayout;
+
+    /**
+     * When true, blocks are converted to float once, processed by the float
+     * variants of the filters and quantized once at the end of the chain
+     */
+    private volatile boolean floatProcessing;
+
+    /**
+     * When true, TPDF dither is added before the final quantization in
+     * floating-point mode
+     */
+    private volatile boolean dither;
+
+    /**
+     * Initial state of the dither generator
+     */
+    private static final int DITHER_SEED = 0x9E3779B9;
+
+    /**
+     * State of the xorshift generator used for dither
+     */
+    private int ditherSeed = DITHER_SEED;
+
+    /**
+     * When true, the output is delayed by the latency of the disabled filters
+     */
+    private volatile boolean latencyCompensation;
+
+    /**
+     * Delays the output for latency compensation, created on first use
+     */
+    private DelayLine compensation;
+
+    /**
+     * The compiled processing stages: the enabled filters in order
+     */
+    private StereoAudioFilter[] stages;
+
+    /**
+     * The filters the current stages were compiled from
+     */
+    private StereoAudioFilter[] compiledFilters = new StereoAudioFilter[0];
+
+    /**
+     * The enabled state of each filter when the current stages were compiled
+     */
+    private boolean[] compiledEnabled = new boolean[0];
+
+    /**
+     * Optional instrumentation, null when disabled
+     */
+    private volatile ChainMetrics metrics;
+
+    /**
+     * Optional level and spectrum taps, null when disabled
+     */
+    private volatile SignalMonitor monitor;
+
+    /**
+     * The metrics the current histograms were resolved from
+     */
+    private ChainMetrics compiledMetrics;
+
+    /**
+     * The processing mode the current histograms were resolved for
+     */
+    private boolean compiledFloat;
+
+    /**
+     * Latency histogram per compiled stage, null without metrics
+     */
+    private LatencyHistogram[] stageHistograms;
+
+    /**
+     * Latency histogram per filter (used by the float path), null without metrics
+     */
+    private LatencyHistogram[] filterHistograms;
+
+    /**
+     * Adds a new filter to the chain. The filter is told the chain's sample
+     * rate.
      *
      * @param filter The StereoAudioFilter to be added to the chain
      */
     public void add(StereoAudioFilter filter) {
+        filter.setSampleRate(sampleRate);
         filters.add(filter);
     }
 
@@ -31,13 +173,681 @@ public class StereoFilterChain {
      * @param samples A 2D short array containing left and right channel samples,
      *                where the first dimension represents channels (left=0,
      *                right=1)
-     *                and the second dimension represents the samples
+     *                and the second dimension represents the samples; it must
+     *                hold as many channels as the channel layout
      */
     public void process(short[][] samples) {
+        process(samples, 0, samples[0].length);
+    }
+
+    /**
+     * Processes a range of each channel in place, as one block of length
+     * frames. The range is passed on to every filter, so the arrays may be
+     * larger than the block, e.g. buffers sized for the largest block.
+     *
+     * @param samples Planar samples with as many channels as the channel
+     *                layout
+     * @param offset  The first frame of the range
+     * @param length  The number of frames
+     */
+    public void process(short[][] samples, int offset, int length) {
+        ChainMetrics m = metrics;
+        long t0 = m != null ? System.nanoTime() : 0;
+
+        SignalMonitor mon = monitor;
+        if (mon != null)
+            mon.getInput().record(samples, offset, length);
+
+        ChannelLayout l = checkLayout(samples.length);
+        runShort(samples, offset, length, l);
+        DelayLine d = compensation(l);
+        if (d != null)
+            d.process(samples, offset, length);
+
+        if (mon != null)
+            mon.getOutput().record(samples, offset, length);
+        if (m != null)
+            m.recordBlock(System.nanoTime() - t0, length);
+    }
+
+    /**
+     * Returns the delay line for the current block with the delay set to the
+     * latency of the disabled filters. Must be called after the stages of the
+     * block were resolved.
+     *
+     * @param l The channel layout of the block
+     * @return The delay line, or null if there is nothing to compensate
+     */
+    private DelayLine compensation(ChannelLayout l) {
+        if (!latencyCompensation)
+            return null;
+        int delay = 0;
+        for (int i = 0; i < compiledFilters.length; i++) {
+            if (!compiledEnabled[i])
+                delay += compiledFilters[i].getLatencyFrames();
+        }
+        if (delay == 0)
+            return null;
+        if (compensation == null || compensation.getChannels() != l.getChannels())
+            compensation = new DelayLine(l.getChannels());
+        compensation.setDelay(delay);
+        return compensation;
+    }
+
+    /**
+     * Runs a range of planar short samples through the chain.
+     *
+     * @param samples Planar short samples
+     * @param offset  The first frame of the block
+     * @param frames  The number of frames
+     * @param l       The channel layout of the block
+     */
+    private void runShort(short[][] samples, int offset, int frames, ChannelLayout l) {
+        if (floatProcessing) {
+            float[][] buf = floatBuffers(frames, samples.length);
+            AudioUtils.toFloat(samples, offset, buf, frames);
+            runFloat(buf, frames, l);
+            AudioUtils.toShort(buf, samples, offset, frames);
+            return;
+        }
+
+        short[][] processed = samples;
+        if (l.isLinked()) {
+            linkedShort[0] = samples[0];
+            processed = linkedShort;
+        }
+
+        StereoAudioFilter[] s = stages(l);
+        LatencyHistogram[] h = stageHistograms;
+        for (int i = 0; i < s.length; i++) {
+            if (h == null) {
+                processStage(s[i], processed, offset, frames);
+            } else {
+                long t = System.nanoTime();
+                processStage(s[i], processed, offset, frames);
+                h[i].record(System.nanoTime() - t);
+            }
+        }
+
+        if (l.isLinked()) {
+            short[] mono = samples[0];
+            for (int ch = 1; ch < samples.length; ch++)
+                System.arraycopy(mono, offset, samples[ch], offset, frames);
+            linkedShort[0] = null;
+        }
+    }
+
+    /**
+     * Runs one stage on a range of a block. A mono block is fed to a filter
+     * that only supports two channels as a pair of identical channels, and the
+     * left output is kept.
+     *
+     * @param f       The stage
+     * @param samples Planar short samples
+     * @param offset  The first frame of the block
+     * @param frames  The number of frames
+     */
+    private void processStage(StereoAudioFilter f, short[][] samples, int offset, int frames) {
+        if (samples.length != 1 || f.supportsChannels(1)) {
+            f.process(samples, offset, frames);
+            return;
+        }
+
+        short[] mono = samples[0];
+        if (pairScratch[0].length < frames)
+            pairScratch = new short[2][frames];
+        System.arraycopy(mono, offset, pairScratch[0], 0, frames);
+        System.arraycopy(mono, offset, pairScratch[1], 0, frames);
+        f.process(pairScratch, 0, frames);
+        System.arraycopy(pairScratch[0], 0, mono, offset, frames);
+    }
+
+    /**
+     * Checks that a block matches the channel layout.
+     *
+     * @param channels The number of channels in the block
+     * @return The layout to process the block with
+     * @throws IllegalArgumentException If the block has a different channel count
+     */
+    private ChannelLayout checkLayout(int channels) {
+        ChannelLayout l = layout;
+        if (channels != l.getChannels())
+            throw new IllegalArgumentException(
+                    "Block has " + channels + " channels, layout " + l + " has " + l.getChannels());
+        return l;
+    }
+
+    /**
+     * Processes interleaved PCM16 stereo data in place. If every enabled filter
+     * implements {@link InterleavedStereoFilter}, the filters work directly on the
+     * bytes. Otherwise the block is decoded into reusable scratch buffers,
+     * processed and encoded back into the same array. No arrays are allocated
+     * for blocks up to the size given to {@link #prepare(AudioFormat, int)} or
+     * the largest block seen before.
+     * <p>
+     * The data holds as many interleaved channels as the channel layout: 2 bytes
+     * per frame for {@link ChannelLayout#MONO}. The interleaved fast path is only
+     * used for {@link ChannelLayout#STEREO}.
+     *
+     * @param data   Interleaved little-endian PCM16 data
+     * @param length The number of valid bytes in data
+     */
+    public void processInterleaved(byte[] data, int length) {
+        ChainMetrics m = metrics;
+        long t0 = m != null ? System.nanoTime() : 0;
+
+        ChannelLayout l = layout;
+        SignalMonitor mon = monitor;
+        if (mon != null)
+            mon.getInput().recordInterleaved(data, length, l.getChannels());
+
+        runInterleaved(data, length, l);
+        DelayLine d = compensation(l);
+        if (d != null)
+            d.processInterleaved(data, length);
+
+        if (mon != null)
+            mon.getOutput().recordInterleaved(data, length, l.getChannels());
+        if (m != null)
+            m.recordBlock(System.nanoTime() - t0, length / l.getFrameBytes());
+    }
+
+    /**
+     * Runs interleaved PCM16 data through the chain.
+     *
+     * @param data   Interleaved little-endian PCM16 data
+     * @param length The number of valid bytes in data
+     * @param l      The channel layout of the data
+     */
+    private void runInterleaved(byte[] data, int length, ChannelLayout l) {
+        int frames = length / l.getFrameBytes();
+        if (floatProcessing) {
+            float[][] buf = floatBuffers(frames, l.getChannels());
+            AudioUtils.decodePCM16Float(data, length, buf);
+            runFloat(buf, frames, l);
+            AudioUtils.encodePCM16(buf, frames, data);
+            return;
+        }
+
+        StereoAudioFilter[] s = stages(l);
+        if (l == ChannelLayout.STEREO && allInterleaved(s)) {
+            LatencyHistogram[] h = stageHistograms;
+            for (int i = 0; i < s.length; i++) {
+                if (h == null) {
+                    ((InterleavedStereoFilter) s[i]).processInterleaved(data, length);
+                } else {
+                    long t = System.nanoTime();
+                    ((InterleavedStereoFilter) s[i]).processInterleaved(data, length);
+                    h[i].record(System.nanoTime() - t);
+                }
+            }
+            return;
+        }
+
+        short[][] samples = shortBuffers(frames, l.getChannels());
+        AudioUtils.decodePCM16(data, length, samples);
+        runShort(samples, 0, frames, l);
+        AudioUtils.encodePCM16(samples, frames, data);
+    }
+
+    /**
+     * Runs planar float samples through all enabled filters without clipping in
+     * between. Filters that only implement the short interface are still
+     * supported: the block is quantized for them and converted back afterwards.
+     * If dither is enabled, TPDF dither is added at the end so the caller's
+     * single quantization step is dithered.
+     *
+     * @param samples Planar float samples on the 16-bit scale, as many channels
+     *                as the channel layout
+     * @param frames  The number of valid samples per channel
+     */
+    public void processFloat(float[][] samples, int frames) {
+        ChainMetrics m = metrics;
+        long t0 = m != null ? System.nanoTime() : 0;
+
+        SignalMonitor mon = monitor;
+        if (mon != null)
+            mon.getInput().record(samples, frames);
+
+        ChannelLayout l = checkLayout(samples.length);
+        runFloat(samples, frames, l);
+        DelayLine d = compensation(l);
+        if (d != null)
+            d.process(samples, frames);
+
+        if (mon != null)
+            mon.getOutput().record(samples, frames);
+        if (m != null)
+            m.recordBlock(System.nanoTime() - t0, frames);
+    }
+
+    /**
+     * Runs planar float samples through all enabled filters.
+     *
+     * @param samples Planar float samples on the 16-bit scale
+     * @param frames  The number of valid samples per channel
+     * @param l       The channel layout of the block
+     */
+    private void runFloat(float[][] samples, int frames, ChannelLayout l) {
+        float[][] processed = samples;
+        if (l.isLinked()) {
+            linkedFloat[0] = samples[0];
+            processed = linkedFloat;
+        }
+
+        stages(l);
+        StereoAudioFilter[] fs = compiledFilters;
+        LatencyHistogram[] h = filterHistograms;
+        for (int i = 0; i < fs.length; i++) {
+            StereoAudioFilter f = fs[i];
+            if (!compiledEnabled[i])
+                continue;
+
+            long t = h != null ? System.nanoTime() : 0;
+            if (f instanceof FloatStereoAudioFilter ff && f.supportsChannels(processed.length)) {
+                ff.processFloat(processed, frames);
+            } else {
+                short[][] tmp = shortBuffers(frames, processed.length);
+                AudioUtils.toShort(processed, tmp, frames);
+                processStage(f, tmp, 0, frames);
+                AudioUtils.toFloat(tmp, processed, frames);
+            }
+            if (h != null)
+                h[i].record(System.nanoTime() - t);
+        }
+
+        // Dither the processed channel before copying, so linked channels stay identical
+        if (dither)
+            addDither(processed, frames);
+
+        if (l.isLinked()) {
+            for (int ch = 1; ch < samples.length; ch++)
+                System.arraycopy(samples[0], 0, samples[ch], 0, frames);
+            linkedFloat[0] = null;
+        }
+    }
+
+    /**
+     * Adds triangular (TPDF) dither of +/- 1 LSB to the float samples.
+     *
+     * @param samples Planar float samples on the 16-bit scale
+     * @param frames  The number of valid samples per channel
+     */
+    private void addDither(float[][] samples, int frames) {
+        int x = ditherSeed;
+        for (int ch = 0; ch < samples.length; ch++) {
+            float[] channel = samples[ch];
+            for (int i = 0; i < frames; i++) {
+                x ^= x << 13;
+                x ^= x >>> 17;
+                x ^= x << 5;
+                float r1 = (x & 0xFFFF) * (1.0f / 65536f);
+                float r2 = (x >>> 16) * (1.0f / 65536f);
+                channel[i] += r1 - r2;
+            }
+        }
+        ditherSeed = x;
+    }
+
+    /**
+     * Returns the float scratch buffers, growing them if the block is larger
+     * than any block seen before.
+     *
+     * @param frames   The number of samples per channel needed
+     * @param channels The number of channels needed
+     * @return Planar float buffers with at least frames samples per channel
+     */
+    private float[][] floatBuffers(int frames, int channels) {
+        if (floatScratch.length != channels || floatScratch[0].length < frames) {
+            floatScratch = new float[channels][frames];
+        }
+        return floatScratch;
+    }
+
+    /**
+     * Returns the short scratch buffers, growing them if the block is larger
+     * than any block seen before. The buffers may be longer than the block, so
+     * the frame count is passed on to the filters with them.
+     *
+     * @param frames   The number of samples per channel needed
+     * @param channels The number of channels needed
+     * @return Planar short buffers with at least frames samples per channel
+     */
+    private short[][] shortBuffers(int frames, int channels) {
+        if (shortScratch.length != channels || shortScratch[0].length < frames) {
+            shortScratch = new short[channels][frames];
+        }
+        return shortScratch;
+    }
+
+    /**
+     * Sets the channel layout of the blocks passed to the chain. Takes effect at
+     * the next block.
+     *
+     * @param layout The channel layout
+     * @throws IllegalArgumentException If an enabled filter cannot process the
+     *                                  layout's channels
+     */
+    public void setChannelLayout(ChannelLayout layout) {
+        checkFilters(filters, layout);
+        this.layout = layout;
+    }
+
+    /**
+     * Returns the channel layout of the blocks passed to the chain.
+     *
+     * @return The channel layout
+     */
+    public ChannelLayout getChannelLayout() {
+        return layout;
+    }
+
+    /**
+     * Sets the sample rate of the blocks passed to the chain and passes it to
+     * every filter (see {@link StereoAudioFilter#setSampleRate(float)}). Must be
+     * called before processing starts or while no block is being processed.
+     * Processing at a lower rate than the devices, e.g. 16 kHz for speech, costs
+     * proportionally less; {@link voiceprotector.format.FormatConverter}
+     * resamples to and from the device rates.
+     *
+     * @param sampleRate The sample rate in Hz
+     * @throws IllegalArgumentException If the rate is not positive
+     */
+    public void setSampleRate(float sampleRate) {
+        if (!(sampleRate > 0))
+            throw new IllegalArgumentException("Invalid sample rate: " + sampleRate);
+        this.sampleRate = sampleRate;
+        for (StereoAudioFilter f : filters)
+            f.setSampleRate(sampleRate);
+    }
+
+    /**
+     * Prepares the chain for a stream: sets the sample rate, prepares every
+     * filter for the channels it will process and allocates the chain's
+     * scratch buffers and compensation delay for blocks up to a size. Must be
+     * called before processing starts or while no block is being processed.
+     *
+     * @param format         The format of the blocks; only the sample rate and
+     *                       channel count are used
+     * @param maxBlockFrames The largest number of frames per block
+     * @throws IllegalArgumentException If the channel count does not match the
+     *                                  layout or the rate is not positive
+     */
+    public void prepare(AudioFormat format, int maxBlockFrames) {
+        ChannelLayout l = checkLayout(format.getChannels());
+        setSampleRate(format.getSampleRate());
+        int channels = l.getProcessedChannels();
+        AudioFormat processed = new AudioFormat(sampleRate, 16, channels, true, false);
+        AudioFormat pair = new AudioFormat(sampleRate, 16, 2, true, false);
+        int latency = 0;
+        for (StereoAudioFilter f : filters) {
+            f.prepare(f.supportsChannels(channels) ? processed : pair, maxBlockFrames);
+            latency += f.getLatencyFrames();
+        }
+
+        floatBuffers(maxBlockFrames, l.getChannels());
+        shortBuffers(maxBlockFrames, l.getChannels());
+        if (channels == 1 && pairScratch[0].length < maxBlockFrames)
+            pairScratch = new short[2][maxBlockFrames];
+        if (compensation == null || compensation.getChannels() != l.getChannels())
+            compensation = new DelayLine(l.getChannels());
+        compensation.reserve(latency);
+        compile(l);
+    }
+
+    /**
+     * Starts a new stream: resets every filter, clears the compensation delay
+     * and restarts the dither sequence. Must be called while no block is being
+     * processed.
+     */
+    public void reset() {
+        for (StereoAudioFilter f : filters)
+            f.reset();
+        if (compensation != null)
+            compensation.reset();
+        ditherSeed = DITHER_SEED;
+    }
+
+    /**
+     * Returns how many frames the chain delays its input: the sum of the
+     * latencies of the enabled filters, or of all filters with latency
+     * compensation.
+     *
+     * @return The latency in frames
+     */
+    public int getLatencyFrames() {
+        boolean all = latencyCompensation;
+        int latency = 0;
+        for (StereoAudioFilter f : filters) {
+            if (all || f.isEnabled())
+                latency += f.getLatencyFrames();
+        }
+        return latency;
+    }
+
+    /**
+     * Enables or disables latency compensation. When enabled, the output is
+     * delayed by the latency of the disabled filters, so enabling or disabling
+     * a filter with latency does not shift the output in time. Takes effect at
+     * the next block.
+     *
+     * @param latencyCompensation true to keep the chain latency constant
+     */
+    public void setLatencyCompensation(boolean latencyCompensation) {
+        this.latencyCompensation = latencyCompensation;
+    }
+
+    /**
+     * Checks whether latency compensation is enabled.
+     *
+     * @return true if the chain latency does not depend on enabled filters
+     */
+    public boolean isLatencyCompensation() {
+        return latencyCompensation;
+    }
+
+    /**
+     * Returns the sample rate of the blocks passed to the chain.
+     *
+     * @return The sample rate in Hz, {@link StereoAudioFilter#DEFAULT_SAMPLE_RATE}
+     *         unless set
+     */
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Checks that every enabled filter can process the channels of a layout.
+     * Filters limited to two channels can still process a single channel
+     * through a duplicated pair.
+     *
+     * @param filters The filters to check
+     * @param layout  The channel layout
+     * @throws IllegalArgumentException If an enabled filter cannot process the
+     *                                  layout's channels
+     */
+    private static void checkFilters(List<StereoAudioFilter> filters, ChannelLayout layout) {
+        int channels = layout.getProcessedChannels();
+        if (channels == 1)
+            return;
         for (StereoAudioFilter f : filters) {
-            if (f.isEnabled())
-                f.process(samples);
+            if (f.isEnabled() && !f.supportsChannels(channels))
+                throw new IllegalArgumentException(
+                        f.getClass().getSimpleName() + " does not support " + channels + " channels");
+        }
+    }
+
+    /**
+     * Enables or disables the floating-point processing mode.
+     *
+     * @param floatProcessing true to convert once on entry, process in float and
+     *                        quantize once on exit
+     */
+    public void setFloatProcessing(boolean floatProcessing) {
+        this.floatProcessing = floatProcessing;
+    }
+
+    /**
+     * Checks whether the floating-point processing mode is enabled.
+     *
+     * @return true if the chain processes in float
+     */
+    public boolean isFloatProcessing() {
+        return floatProcessing;
+    }
+
+    /**
+     * Enables or disables TPDF dither before the final quantization in
+     * floating-point mode.
+     *
+     * @param dither true to dither the output
+     */
+    public void setDither(boolean dither) {
+        this.dither = dither;
+    }
+
+    /**
+     * Checks whether dither is applied in floating-point mode.
+     *
+     * @return true if dither is enabled
+     */
+    public boolean isDither() {
+        return dither;
+    }
+
+    /**
+     * Returns the compiled stages, recompiling them only if a filter was added,
+     * reordered, enabled or disabled since the last block.
+     *
+     * @param l The channel layout of the current block
+     * @return The stages to run for the current block
+     */
+    private StereoAudioFilter[] stages(ChannelLayout l) {
+        if (stages == null || l != compiledLayout || structureChanged())
+            compile(l);
+        return stages;
+    }
+
+    /**
+     * Checks whether the filter list or any enabled flag differs from the state
+     * the current stages were compiled from. Does not allocate.
+     *
+     * @return true if the stages must be recompiled
+     */
+    private boolean structureChanged() {
+        if (compiledMetrics != metrics || compiledFloat != floatProcessing
+                || compiledFilters.length != filters.size())
+            return true;
+        for (int i = 0; i < compiledFilters.length; i++) {
+            StereoAudioFilter f = filters.get(i);
+            if (f != compiledFilters[i] || f.isEnabled() != compiledEnabled[i])
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compiles the enabled filters into processing stages.
+     *
+     * @param l The channel layout the stages will process
+     * @throws IllegalArgumentException If an enabled filter cannot process the
+     *                                  layout's channels
+     */
+    private void compile(ChannelLayout l) {
+        checkFilters(filters, l);
+        compiledLayout = l;
+        int n = filters.size();
+        compiledFilters = filters.toArray(new StereoAudioFilter[n]);
+        compiledEnabled = new boolean[n];
+
+        List<StereoAudioFilter> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            compiledEnabled[i] = compiledFilters[i].isEnabled();
+            if (compiledEnabled[i])
+                out.add(compiledFilters[i]);
+        }
+        stages = out.toArray(new StereoAudioFilter[0]);
+
+        // Resolve histograms only for what the active mode runs: compiled stages on
+        // the short path, individual filters on the float path
+        compiledMetrics = metrics;
+        compiledFloat = floatProcessing;
+        stageHistograms = null;
+        filterHistograms = null;
+        if (compiledMetrics != null && !compiledFloat) {
+            stageHistograms = new LatencyHistogram[stages.length];
+            for (int i = 0; i < stages.length; i++) {
+                stageHistograms[i] = compiledMetrics.filter(stageName(stages[i]));
+            }
+        } else if (compiledMetrics != null) {
+            filterHistograms = new LatencyHistogram[n];
+            for (int i = 0; i < n; i++) {
+                filterHistograms[i] = compiledMetrics.filter(stageName(compiledFilters[i]));
+            }
+        }
+    }
+
+    /**
+     * Returns the name under which a stage is instrumented.
+     *
+     * @param f The stage
+     * @return The simple class name
+     */
+    private static String stageName(StereoAudioFilter f) {
+        return f.getClass().getSimpleName();
+    }
+
+    /**
+     * Enables instrumentation. Every block then records the time spent in each
+     * stage and in the whole chain.
+     *
+     * @param metrics The metrics to record into, or null to disable
+     */
+    public void setMetrics(ChainMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics the chain records into.
+     *
+     * @return The metrics, or null if instrumentation is disabled
+     */
+    public ChainMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Attaches level and spectrum taps. Every block is then measured before
+     * and after the filters; the taps publish without locks or allocation, so
+     * a display polling them never delays the audio thread.
+     *
+     * @param monitor The monitor to feed, or null to disable
+     */
+    public void setMonitor(SignalMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Returns the monitor the chain feeds.
+     *
+     * @return The monitor, or null if monitoring is disabled
+     */
+    public SignalMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * Checks whether all stages can process interleaved data.
+     *
+     * @param s The compiled stages
+     * @return true if the interleaved fast path can be used
+     */
+    private static boolean allInterleaved(StereoAudioFilter[] s) {
+        for (int i = 0; i < s.length; i++) {
+            if (!(s[i] instanceof InterleavedStereoFilter))
+                return false;
         }
+        return true;
     }
 
     /**
@@ -1,9 +1,15 @@
 package voiceprotector;
 
 import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 import javax.sound.sampled.TargetDataLine;
 
+import voiceprotector.format.FormatConverter;
+import voiceprotector.pipeline.LatencyConfig;
+import voiceprotector.pipeline.LiveAudioLoop;
+import voiceprotector.pipeline.PipelinedStereoEngine;
+
 /**
  * StereoPipeline manages the audio processing pipeline, handling input from a
  * microphone,
@@ -22,47 +28,112 @@ public class StereoPipeline {
      */
     private final AudioFormat format;
 
+    /**
+     * Block size, line buffer sizes and latency target
+     */
+    private final LatencyConfig latency;
+
+    /**
+     * The running loop of {@link #start()}
+     */
+    private volatile LiveAudioLoop loop;
+
     /**
      * Constructs a new StereoPipeline with the specified filter chain and a
-     * predefined audio format.
+     * predefined audio format. The latency settings are read from the system
+     * properties (see {@link LatencyConfig#fromSystemProperties()}).
      *
      * @param chain The StereoFilterChain to use for processing audio samples
      */
     public StereoPipeline(StereoFilterChain chain) {
+        this(chain, LatencyConfig.fromSystemProperties());
+    }
+
+    /**
+     * Constructs a new StereoPipeline with the specified filter chain, latency
+     * settings and a predefined audio format.
+     *
+     * @param chain   The StereoFilterChain to use for processing audio samples
+     * @param latency The block size, line buffer sizes and latency target
+     */
+    public StereoPipeline(StereoFilterChain chain, LatencyConfig latency) {
         this.chain = chain;
         this.format = new AudioFormat(48000, 16, 2, true, false);
+        this.latency = latency;
     }
 
     /**
-     * Starts the audio processing pipeline.
+     * Starts the audio processing pipeline on the calling thread. The block size
+     * starts at the configured size and grows if the host cannot keep up (see
+     * {@link voiceprotector.pipeline.BlockSizeTuner}).
      *
      * @throws Exception If an error occurs while opening audio lines or during
      *                   processing
      */
     public void start() throws Exception {
 
-        TargetDataLine mic = AudioDeviceFinder.openMic(format);
-        SourceDataLine vmAUX = AudioDeviceFinder.openVoicemeeterAUX(format);
+        TargetDataLine mic = AudioDeviceFinder.openMic(format,
+                latency.getCaptureBufferFrames() * LatencyConfig.FRAME_BYTES);
+        SourceDataLine vmAUX = AudioDeviceFinder.openVoicemeeterAUX(format,
+                latency.getPlaybackBufferFrames() * LatencyConfig.FRAME_BYTES);
 
         mic.start();
         vmAUX.start();
 
-        byte[] buffer = new byte[4096];
-
-        while (true) {
-            int read = mic.read(buffer, 0, buffer.length);
+        // read, filter in place and send to Voicemeeter AUX Input, block by block
+        loop = new LiveAudioLoop(chain, mic, vmAUX, latency);
+        loop.run();
+    }
 
-            // decode stereo PCM
-            short[][] samples = AudioUtils.decodePCM16Stereo(buffer, read);
+    /**
+     * Returns the loop started by {@link #start()}, for its achieved latency and
+     * block size.
+     *
+     * @return The loop, or null before {@link #start()}
+     */
+    public LiveAudioLoop getLoop() {
+        return loop;
+    }
 
-            // apply all filters
-            chain.process(samples);
+    /**
+     * Starts the audio processing pipeline with capture, filtering and output on
+     * separate threads, so a slow output line cannot stall capture. Returns once
+     * the threads are running; call {@link PipelinedStereoEngine#stop()} and close
+     * the lines to shut it down. The block size stays at the configured initial
+     * size (the rings are preallocated), so this mode is not auto-tuned; the jitter
+     * buffer absorbs glitches instead.
+     *
+     * @param jitterBlocks The number of blocks (of the configured block size) to
+     *                     buffer before playback starts
+     * @return The running engine, for reading its overrun/underrun counters
+     * @throws Exception If an error occurs while opening audio lines, or a line
+     *                   does not run natively in the chain's format (this mode
+     *                   moves raw blocks and does not convert; use
+     *                   {@link #start()} for such devices)
+     */
+    public PipelinedStereoEngine startPipelined(int jitterBlocks) throws Exception {
 
-            // encode back
-            byte[] out = AudioUtils.encodePCM16Stereo(samples);
+        TargetDataLine mic = AudioDeviceFinder.openMic(format,
+                latency.getCaptureBufferFrames() * LatencyConfig.FRAME_BYTES);
+        SourceDataLine vmAUX = AudioDeviceFinder.openVoicemeeterAUX(format,
+                latency.getPlaybackBufferFrames() * LatencyConfig.FRAME_BYTES);
 
-            // send to Voicemeeter AUX Input
-            vmAUX.write(out, 0, out.length);
+        AudioFormat processing = new AudioFormat(chain.getSampleRate(), 16, chain.getChannelLayout().getChannels(),
+                true, false);
+        if (!FormatConverter.isIdentity(mic.getFormat(), processing)
+                || !FormatConverter.isIdentity(vmAUX.getFormat(), processing)) {
+            mic.close();
+            vmAUX.close();
+            throw new LineUnavailableException("The pipelined mode needs both lines in " + processing
+                    + ", got " + mic.getFormat() + " and " + vmAUX.getFormat());
         }
+
+        mic.start();
+        vmAUX.start();
+
+        PipelinedStereoEngine engine = new PipelinedStereoEngine(chain, mic::read, vmAUX::write,
+                latency.getBlockBytes(), Math.max(4, jitterBlocks * 2), jitterBlocks);
+        engine.start();
+        return engine;
     }
 }
\ No newline at end of file
@@ -1,13 +1,11 @@
 package voiceprotector;
 
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.DataLine;
 import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.Mixer;
 import javax.sound.sampled.SourceDataLine;
 import javax.sound.sampled.TargetDataLine;
 
+import voiceprotector.device.DeviceRegistry;
 import voiceprotector.filters.AIFormantScramblerStereo;
 import voiceprotector.filters.ChaoticPhaseStereo;
 import voiceprotector.filters.LPCWarpStereo;
@@ -15,6 +13,8 @@ import voiceprotector.filters.NoiseFilterStereo;
 import voiceprotector.filters.SpectralHoleStereo;
 import voiceprotector.filters.XorObfuscationStereo;
 import voiceprotector.gui.StereoFilterGUI;
+import voiceprotector.pipeline.LatencyConfig;
+import voiceprotector.pipeline.LiveAudioLoop;
 
 /**
  * TestOutputSound is a main class for testing audio filters by outputting the
@@ -52,54 +52,42 @@ public class TestOutputSound {
         // byte order
         AudioFormat format = new AudioFormat(48000, 16, 2, true, false);
 
+        // Block size, line buffer sizes and latency target (-Dvoiceprotector.latency=low|balanced|safe)
+        LatencyConfig latency = LatencyConfig.fromSystemProperties();
+        System.out.println("Latency mode: " + latency);
+
         // Open microphone input line with the specified format
-        TargetDataLine mic = AudioDeviceFinder.openMic(format);
+        TargetDataLine mic = AudioDeviceFinder.openMic(format,
+                latency.getCaptureBufferFrames() * LatencyConfig.FRAME_BYTES);
         mic.start();
 
         // Open System Speakers output instead of Voicemeeter (Virtual Mic Interface
         // that you can use with other apps like Teams and Discord)
-        SourceDataLine outputLine = openSystemOutput(format);
+        SourceDataLine outputLine = openSystemOutput(format,
+                latency.getPlaybackBufferFrames() * LatencyConfig.FRAME_BYTES);
         outputLine.start();
 
-        // Buffer for storing audio data
-        byte[] buffer = new byte[4096];
-
-        // Main loop for continuously processing and outputting audio datas
-        while (true) {
-            int read = mic.read(buffer, 0, buffer.length); // Read audio data from the microphone
-
-            // Decode PCM16 stereo audio data into separate left and right channel samples
-            short[][] samples = AudioUtils.decodePCM16Stereo(buffer, read);
-
-            // Process the samples through the filter chain
-            chain.process(samples);
-
-            // Encode the processed samples back to a byte array for playback
-            byte[] out = AudioUtils.encodePCM16Stereo(samples);
-
-            // Write the encoded audio data to the system speakers output line
-            outputLine.write(out, 0, out.length);
-        }
+        // Main loop for continuously processing and outputting audio data. Each block
+        // is processed through the filter chain in place; the block size grows if the
+        // host cannot keep up, and the achieved latency is printed every 10 seconds
+        LiveAudioLoop loop = new LiveAudioLoop(chain, mic, outputLine, latency);
+        loop.startReporter(10);
+        loop.run();
     }
 
     /**
-     * Opens the system speakers (output) with the specified audio format.
+     * Opens the system speakers (output) in the supported format closest to the
+     * specified one, through the shared {@link DeviceRegistry} so the mixers
+     * probed for the microphone are not scanned again.
      *
-     * @param format The AudioFormat to use for the output line
+     * @param format      The preferred AudioFormat for the output line
+     * @param bufferBytes The requested line buffer size in bytes of the preferred
+     *                    format
      * @return A SourceDataLine representing the system speakers output
      * @throws LineUnavailableException If no suitable output line is available
      */
-    private static SourceDataLine openSystemOutput(AudioFormat format) throws LineUnavailableException {
-        DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
-        for (Mixer.Info m : AudioSystem.getMixerInfo()) {
-            Mixer mixer = AudioSystem.getMixer(m);
-            if (mixer.isLineSupported(info)) {
-                SourceDataLine line = (SourceDataLine) mixer.getLine(info);
-                line.open(format);
-                System.out.println("Output found: " + m.getName());
-                return line;
-            }
-        }
-        throw new LineUnavailableException("System output not found !");
+    private static SourceDataLine openSystemOutput(AudioFormat format, int bufferBytes)
+            throws LineUnavailableException {
+        return DeviceRegistry.system().openPlayback("output", d -> true, format, bufferBytes);
     }
 }
\ No newline at end of file
@@ -0,0 +1,260 @@
+package voiceprotector.daemon;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import voiceprotector.ChannelLayout;
+import voiceprotector.StereoAudioFilter;
+import voiceprotector.StereoFilterChain;
+import voiceprotector.filters.AIFormantScramblerStereo;
+import voiceprotector.filters.ChaoticPhaseStereo;
+import voiceprotector.filters.LPCWarpStereo;
+import voiceprotector.filters.NoiseFilterStereo;
+import voiceprotector.filters.SpectralHoleStereo;
+import voiceprotector.filters.SpectralNotchStereo;
+import voiceprotector.filters.XorObfuscationStereo;
+import voiceprotector.params.ParameterStore;
+import voiceprotector.pipeline.LatencyConfig;
+
+/**
+ * ChainConfig builds a {@link StereoFilterChain} from a properties file and
+ * applies later versions of the file to the running chain.
+ * <p>
+ * Keys:
+ * <ul>
+ * <li>{@code filters}: the filters in processing order, comma separated, by
+ * short name: {@code xor}, {@code noise}, {@code formant}, {@code lpc},
+ * {@code chaotic}, {@code hole}, {@code notch} (default: the chain of
+ * {@link voiceprotector.Main})</li>
+ * <li>{@code <filter>.<parameter>}: a parameter of every filter with that
+ * name, e.g. {@code noise.amplitude = 20}; the names are those of the
+ * filter's {@link ParameterStore}. A removed key returns the parameter to its
+ * default.</li>
+ * <li>{@code voiceprotector.channels}, {@code voiceprotector.processingRate},
+ * {@code voiceprotector.metrics.port}, {@code voiceprotector.recorder},
+ * {@code voiceprotector.recorder.sizeMB} and the latency keys of
+ * {@link LatencyConfig}: as the system properties of the same name.</li>
+ * </ul>
+ * Parameters are published through the filters' parameter stores, so a
+ * reload changes no buffers and the audio thread picks the values up at its
+ * next block. The filter list, layout, rate, latency, metrics port and
+ * recorder size the pipeline and only take effect on restart.
+ */
+public final class ChainConfig {
+
+    /**
+     * The key of the filter list
+     */
+    public static final String FILTERS = "filters";
+
+    /**
+     * The short names of all filters, in the order of {@link #DEFAULT_FILTERS}
+     * followed by the optional ones
+     */
+    public static final List<String> FILTER_NAMES = List.of("xor", "noise", "formant", "lpc", "chaotic", "hole",
+            "notch");
+
+    /**
+     * The filter list used when the file has none
+     */
+    public static final String DEFAULT_FILTERS = "xor, noise, formant, lpc, chaotic, hole";
+
+    /**
+     * Keys that size the pipeline and are read once at startup
+     */
+    private static final Set<String> STRUCTURAL = Set.of(FILTERS, "voiceprotector.channels",
+            "voiceprotector.processingRate", "voiceprotector.metrics.port", "voiceprotector.latency",
+            "voiceprotector.blockFrames", "voiceprotector.captureBufferFrames",
+            "voiceprotector.playbackBufferFrames", "voiceprotector.targetLatencyMs", "voiceprotector.autoTune",
+            "voiceprotector.recorder", "voiceprotector.recorder.sizeMB");
+
+    /**
+     * The properties the chain was built from
+     */
+    private final Properties startup;
+
+    /**
+     * The built chain
+     */
+    private final StereoFilterChain chain;
+
+    /**
+     * The configured name of each filter of the chain, in order
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * The default parameter values of each filter of the chain, in order
+     */
+    private final List<float[]> defaults = new ArrayList<>();
+
+    /**
+     * The properties applied last
+     */
+    private Properties applied;
+
+    /**
+     * Builds the chain described by the properties.
+     *
+     * @param props The configuration
+     * @throws IllegalArgumentException If a filter name, key or value is invalid
+     */
+    public ChainConfig(Properties props) {
+        this.startup = props;
+        this.chain = new StereoFilterChain();
+
+        for (String name : props.getProperty(FILTERS, DEFAULT_FILTERS).split(",")) {
+            String n = name.trim().toLowerCase(Locale.ROOT);
+            if (n.isEmpty())
+                continue;
+            StereoAudioFilter f = create(n);
+            ParameterStore store = f.getParameters();
+            float[] d = new float[store.getNames().length];
+            for (int i = 0; i < d.length; i++)
+                d[i] = store.get(i);
+            names.add(n);
+            defaults.add(d);
+            chain.add(f);
+        }
+
+        chain.setChannelLayout(ChannelLayout.parse(props.getProperty("voiceprotector.channels", "stereo")));
+        chain.setSampleRate(Float.parseFloat(props.getProperty("voiceprotector.processingRate", "48000").trim()));
+        List<String> problems = apply(props);
+        if (!problems.isEmpty())
+            throw new IllegalArgumentException(String.join("; ", problems));
+    }
+
+    /**
+     * Reads a configuration file.
+     *
+     * @param file The properties file (UTF-8)
+     * @return The properties
+     * @throws IOException If the file cannot be read
+     */
+    public static Properties load(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(r);
+        }
+        return props;
+    }
+
+    /**
+     * Creates a filter by its short name.
+     *
+     * @param name The short name
+     * @return A new filter
+     * @throws IllegalArgumentException If the name is unknown
+     */
+    private static StereoAudioFilter create(String name) {
+        return switch (name) {
+            case "xor" -> new XorObfuscationStereo();
+            case "noise" -> new NoiseFilterStereo();
+            case "formant" -> new AIFormantScramblerStereo();
+            case "lpc" -> new LPCWarpStereo();
+            case "chaotic" -> new ChaoticPhaseStereo();
+            case "hole" -> new SpectralHoleStereo();
+            case "notch" -> new SpectralNotchStereo();
+            default -> throw new IllegalArgumentException("Unknown filter: " + name);
+        };
+    }
+
+    /**
+     * Publishes the parameters of a configuration to the running chain.
+     * Parameters without a key return to their defaults. Invalid values and
+     * unknown keys are reported and skipped, so one typo does not undo the rest
+     * of an edit.
+     *
+     * @param props The configuration
+     * @return A description of each skipped key and each structural key that
+     *         differs from the startup configuration, empty if everything was
+     *         applied
+     */
+    public synchronized List<String> apply(Properties props) {
+        List<String> problems = new ArrayList<>();
+        Set<String> used = new TreeSet<>();
+
+        for (int k = 0; k < names.size(); k++) {
+            String name = names.get(k);
+            ParameterStore store = chain.getFilters().get(k).getParameters();
+            String[] params = store.getNames();
+            for (int i = 0; i < params.length; i++) {
+                String key = name + "." + params[i];
+                String v = props.getProperty(key);
+                float value = defaults.get(k)[i];
+                if (v != null) {
+                    used.add(key);
+                    try {
+                        value = Float.parseFloat(v.trim());
+                    } catch (NumberFormatException e) {
+                        problems.add("Invalid " + key + ": " + v);
+                        continue;
+                    }
+                }
+                store.set(i, value);
+            }
+        }
+
+        for (String key : props.stringPropertyNames()) {
+            if (STRUCTURAL.contains(key)) {
+                if (props != startup && !same(props.getProperty(key), startup.getProperty(key)))
+                    problems.add("Restart to apply " + key);
+            } else if (!used.contains(key)) {
+                problems.add("Unknown key " + key);
+            }
+        }
+        for (String key : startup.stringPropertyNames()) {
+            if (props != startup && STRUCTURAL.contains(key) && props.getProperty(key) == null)
+                problems.add("Restart to apply " + key);
+        }
+        applied = props;
+        return problems;
+    }
+
+    /**
+     * Compares two property values, ignoring surrounding blanks.
+     *
+     * @param a A value or null
+     * @param b A value or null
+     * @return true if both are missing or equal
+     */
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : b != null && a.trim().equals(b.trim());
+    }
+
+    /**
+     * Returns the chain built from the startup configuration.
+     *
+     * @return The chain
+     */
+    public StereoFilterChain getChain() {
+        return chain;
+    }
+
+    /**
+     * Returns the startup configuration, for the settings read once.
+     *
+     * @return The properties the chain was built from
+     */
+    public Properties getStartupProperties() {
+        return startup;
+    }
+
+    /**
+     * Returns the configuration applied last.
+     *
+     * @return The properties
+     */
+    public synchronized Properties getAppliedProperties() {
+        return applied;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,129 @@
+package voiceprotector.daemon;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * ConfigWatcher reloads a {@link ChainConfig} file when it changes on disk and
+ * applies it to the running chain. It watches the file's directory on a daemon
+ * thread, so editors that replace the file instead of writing it in place are
+ * noticed too. Events arriving within {@link #SETTLE_MILLIS} are merged into
+ * one reload, and a reload whose content equals the applied configuration is
+ * skipped.
+ */
+public class ConfigWatcher implements AutoCloseable {
+
+    /**
+     * How long to wait for an editor to finish writing before reloading
+     */
+    public static final long SETTLE_MILLIS = 150;
+
+    /**
+     * The watched file
+     */
+    private final Path file;
+
+    /**
+     * The configuration to apply changes to
+     */
+    private final ChainConfig config;
+
+    /**
+     * The directory watch
+     */
+    private final WatchService watch;
+
+    /**
+     * Number of reloads applied
+     */
+    private volatile int reloads;
+
+    /**
+     * Starts watching a file.
+     *
+     * @param file   The configuration file
+     * @param config The configuration built from it
+     * @throws IOException If the directory cannot be watched
+     */
+    public ConfigWatcher(Path file, ChainConfig config) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.config = config;
+        this.watch = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watch, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_CREATE);
+
+        Thread t = new Thread(this::run, "vp-config-watch");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Waits for changes of the file and reloads it until closed.
+     */
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watch.take();
+                boolean ours = false;
+                for (WatchEvent<?> e : key.pollEvents()) {
+                    if (e.context() instanceof Path p && file.getFileName().equals(p))
+                        ours = true;
+                }
+                key.reset();
+                if (ours) {
+                    Thread.sleep(SETTLE_MILLIS);
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Reloads the file and applies it if its content changed, reporting skipped
+     * keys.
+     *
+     * @return true if the file was applied
+     */
+    public synchronized boolean reload() {
+        try {
+            Properties props = ChainConfig.load(file);
+            if (props.equals(config.getAppliedProperties()))
+                return false;
+            List<String> problems = config.apply(props);
+            reloads++;
+            System.out.println("Reloaded " + file.getFileName()
+                    + (problems.isEmpty() ? "" : ": " + String.join("; ", problems)));
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not reload " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns how often the file was applied since startup.
+     *
+     * @return The number of reloads
+     */
+    public int getReloads() {
+        return reloads;
+    }
+
+    /**
+     * Stops watching.
+     */
+    @Override
+    public void close() throws IOException {
+        watch.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package voiceprotector.daemon;
+
+import java.nio.file.Path;
+import java.util.Properties;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.TargetDataLine;
+
+import voiceprotector.AudioDeviceFinder;
+import voiceprotector.StereoFilterChain;
+import voiceprotector.metrics.ChainMetrics;
+import voiceprotector.metrics.PrometheusExporter;
+import voiceprotector.pipeline.LatencyConfig;
+import voiceprotector.pipeline.LiveAudioLoop;
+import voiceprotector.recorder.FlightRecorder;
+
+/**
+ * Headless entry point: runs the same pipeline as {@link voiceprotector.Main}
+ * without the Swing GUI, configured by a properties file (see
+ * {@link ChainConfig}). No AWT or Swing class is loaded, which saves startup
+ * time and memory and allows running on servers without a display.
+ * <p>
+ * Usage: {@code DaemonMain [--dry-run] <config.properties>}
+ * <p>
+ * Parameter changes in the file are applied while running (see
+ * {@link ConfigWatcher}). With {@code --dry-run} the chain is built and the
+ * startup cost is printed without opening audio devices.
+ */
+public class DaemonMain {
+
+    /**
+     * Builds the chain from the config file, opens the devices and processes
+     * audio until the process is stopped.
+     *
+     * @param args Options and the config file
+     * @throws Exception If the configuration is invalid or the devices cannot be
+     *                   opened
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        boolean dryRun = args.length == 2 && args[0].equals("--dry-run");
+        if (args.length != (dryRun ? 2 : 1)) {
+            System.err.println("Usage: DaemonMain [--dry-run] <config.properties>");
+            System.exit(2);
+        }
+        Path file = Path.of(args[args.length - 1]);
+
+        Properties props = ChainConfig.load(file);
+        ChainConfig config = new ChainConfig(props);
+        StereoFilterChain chain = config.getChain();
+        LatencyConfig latency = LatencyConfig.fromProperties(props);
+        System.out.println("Chain: " + props.getProperty(ChainConfig.FILTERS, ChainConfig.DEFAULT_FILTERS) + ", "
+                + chain.getChannelLayout() + " at " + chain.getSampleRate() + " Hz, latency mode: " + latency);
+
+        if (dryRun) {
+            System.out.println(ProcessStats.describe("headless (dry run)"));
+            return;
+        }
+
+        String metricsPort = props.getProperty("voiceprotector.metrics.port");
+        ChainMetrics metrics = null;
+        if (metricsPort != null) {
+            metrics = new ChainMetrics(chain.getSampleRate());
+            chain.setMetrics(metrics);
+            metrics.register("daemon");
+            int port = new PrometheusExporter(metrics).start(Integer.parseInt(metricsPort.trim()));
+            System.out.println("Metrics on http://127.0.0.1:" + port + "/metrics");
+        }
+
+        String recording = props.getProperty("voiceprotector.recorder");
+        FlightRecorder recorder = null;
+        if (recording != null) {
+            long size = Long.parseLong(props.getProperty("voiceprotector.recorder.sizeMB", "64").trim()) << 20;
+            recorder = FlightRecorder.create(chain, Path.of(recording.trim()), size);
+            System.out.println("Recording to " + recording.trim());
+        }
+
+        AudioFormat format = new AudioFormat(48000, 16, 2, true, false);
+        TargetDataLine mic = AudioDeviceFinder.openMic(format,
+                latency.getCaptureBufferFrames() * LatencyConfig.FRAME_BYTES);
+        SourceDataLine vmAux = AudioDeviceFinder.openVoicemeeterAUX(format,
+                latency.getPlaybackBufferFrames() * LatencyConfig.FRAME_BYTES);
+        mic.start();
+        vmAux.start();
+
+        new ConfigWatcher(file, config);
+
+        LiveAudioLoop loop = new LiveAudioLoop(chain, mic, vmAux, latency);
+        System.out.println("Conversion: " + loop.describeConversion());
+        System.out.println(ProcessStats.describe("headless"));
+        loop.setMetrics(metrics);
+        loop.setRecorder(recorder);
+        loop.startReporter(10);
+        loop.run();
+    }
+}
\ No newline at end of file
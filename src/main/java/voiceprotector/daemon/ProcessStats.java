@@ -0,0 +1,79 @@
+package voiceprotector.daemon;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * ProcessStats reports what starting the process cost, so the headless and
+ * the GUI entry points can be compared: time since JVM start, loaded classes,
+ * used heap and resident memory.
+ */
+public final class ProcessStats {
+
+    /**
+     * Not instantiable.
+     */
+    private ProcessStats() {
+    }
+
+    /**
+     * Returns the time since the JVM started.
+     *
+     * @return Milliseconds
+     */
+    public static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    /**
+     * Returns the number of classes currently loaded.
+     *
+     * @return The class count
+     */
+    public static int loadedClasses() {
+        return ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+    }
+
+    /**
+     * Returns the heap in use.
+     *
+     * @return Bytes
+     */
+    public static long heapUsedBytes() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Returns the resident set size of the process, where the platform exposes
+     * it ({@code /proc/self/status} on Linux).
+     *
+     * @return Bytes, or -1 if unknown
+     */
+    public static long residentBytes() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:"))
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+            }
+        } catch (IOException | RuntimeException e) {
+            // not available on this platform
+        }
+        return -1;
+    }
+
+    /**
+     * Describes the current cost of the process.
+     *
+     * @param mode The entry point, e.g. "headless" or "GUI"
+     * @return A one-line summary
+     */
+    public static String describe(String mode) {
+        long rss = residentBytes();
+        return String.format("Started %s in %d ms: %d classes, heap %.1f MB, resident %s", mode, uptimeMillis(),
+                loadedClasses(), heapUsedBytes() / 1048576.0,
+                rss < 0 ? "n/a" : String.format("%.1f MB", rss / 1048576.0));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,45 @@
+package voiceprotector.device;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.Mixer;
+
+/**
+ * AudioDevice is the result of probing one mixer: the formats its capture and
+ * playback lines would open in for the registry's preferred format.
+ *
+ * @param info           The mixer description
+ * @param mixer          The mixer
+ * @param captureFormat  The negotiated capture format, null if the mixer has no
+ *                       usable capture line
+ * @param playbackFormat The negotiated playback format, null if the mixer has
+ *                       no usable playback line
+ */
+public record AudioDevice(Mixer.Info info, Mixer mixer, AudioFormat captureFormat, AudioFormat playbackFormat) {
+
+    /**
+     * Returns the mixer name.
+     *
+     * @return The name
+     */
+    public String name() {
+        return info.getName();
+    }
+
+    /**
+     * Checks whether the device can capture.
+     *
+     * @return true if a capture line is available
+     */
+    public boolean canCapture() {
+        return captureFormat != null;
+    }
+
+    /**
+     * Checks whether the device can play.
+     *
+     * @return true if a playback line is available
+     */
+    public boolean canPlay() {
+        return playbackFormat != null;
+    }
+}
\ No newline at end of file
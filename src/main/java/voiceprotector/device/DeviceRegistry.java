@@ -0,0 +1,478 @@
+package voiceprotector.device;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.prefs.Preferences;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.TargetDataLine;
+
+import voiceprotector.AudioDeviceFinder;
+
+/**
+ * DeviceRegistry enumerates the mixers once and probes them concurrently, so
+ * opening a capture and a playback line costs one scan instead of one
+ * sequential scan per line.
+ * <ul>
+ * <li>Probing a mixer (format negotiation, see
+ * {@link AudioDeviceFinder#negotiate}) runs on a small pool, one task per
+ * mixer, started when the registry is created. Opening a line waits only for
+ * the probes of the mixers enumerated before the one it picks.</li>
+ * <li>The mixer that last opened successfully for a role (e.g. "microphone") is
+ * remembered in {@link Preferences} and tried first on the next start, before
+ * the scan has finished.</li>
+ * <li>{@link #startWatching(long)} polls the mixer list in the background and
+ * rescans when devices are added or removed; listeners receive the new
+ * devices.</li>
+ * </ul>
+ * The mixers come from a {@link MixerSource}, so a fake provider can replace
+ * the sound system to measure startup headlessly.
+ */
+public class DeviceRegistry implements AutoCloseable {
+
+    /**
+     * Default period of the device watcher in milliseconds
+     */
+    public static final long DEFAULT_WATCH_MILLIS = 2000;
+
+    /**
+     * Maximum number of mixers probed at the same time
+     */
+    private static final int PROBE_THREADS = 8;
+
+    /**
+     * The shared registry of the sound system, created on first use
+     */
+    private static DeviceRegistry system;
+
+    /**
+     * Where the mixers come from
+     */
+    private final MixerSource source;
+
+    /**
+     * The format the scan negotiates for
+     */
+    private final AudioFormat preferred;
+
+    /**
+     * The remembered mixer name per role, null to remember nothing
+     */
+    private final Preferences choices;
+
+    /**
+     * Runs the probes
+     */
+    private final ThreadPoolExecutor probes;
+
+    /**
+     * Notified with the devices after every rescan
+     */
+    private final List<Consumer<List<AudioDevice>>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The current scan
+     */
+    private volatile Scan scan;
+
+    /**
+     * Polls for device changes, null until {@link #startWatching(long)}
+     */
+    private ScheduledExecutorService watcher;
+
+    /**
+     * Creates a registry and starts probing.
+     *
+     * @param source    Where the mixers come from
+     * @param preferred The format to negotiate for
+     * @param choices   Where the last good mixer per role is kept, or null to
+     *                  always use the first suitable mixer
+     */
+    public DeviceRegistry(MixerSource source, AudioFormat preferred, Preferences choices) {
+        this.source = source;
+        this.preferred = preferred;
+        this.choices = choices;
+        AtomicInteger count = new AtomicInteger();
+        this.probes = new ThreadPoolExecutor(PROBE_THREADS, PROBE_THREADS, 5, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "vp-device-probe-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.probes.allowCoreThreadTimeOut(true);
+        this.scan = new Scan(source.getMixerInfo());
+    }
+
+    /**
+     * Returns the registry of the sound system, shared by all entry points. It
+     * negotiates for 48 kHz stereo PCM16, remembers choices in the user
+     * preferences and watches for device changes.
+     *
+     * @return The shared registry
+     */
+    public static synchronized DeviceRegistry system() {
+        if (system == null) {
+            system = new DeviceRegistry(MixerSource.SYSTEM, new AudioFormat(48000, 16, 2, true, false),
+                    Preferences.userNodeForPackage(DeviceRegistry.class));
+            system.startWatching(DEFAULT_WATCH_MILLIS);
+        }
+        return system;
+    }
+
+    /**
+     * Opens a capture line on the remembered mixer for the role if it still
+     * qualifies, otherwise on the first qualifying mixer in enumeration order.
+     *
+     * @param role        The purpose of the line, the key of the remembered
+     *                    choice
+     * @param accept      Which devices qualify
+     * @param format      The preferred format
+     * @param bufferBytes The buffer size in bytes of the preferred format, or
+     *                    {@link AudioSystem#NOT_SPECIFIED}
+     * @return The opened line
+     * @throws LineUnavailableException If no qualifying mixer can open a line
+     */
+    public TargetDataLine openCapture(String role, Predicate<AudioDevice> accept, AudioFormat format,
+            int bufferBytes) throws LineUnavailableException {
+        return open(role, TargetDataLine.class, accept, format, bufferBytes);
+    }
+
+    /**
+     * Opens a playback line on the remembered mixer for the role if it still
+     * qualifies, otherwise on the first qualifying mixer in enumeration order.
+     *
+     * @param role        The purpose of the line, the key of the remembered
+     *                    choice
+     * @param accept      Which devices qualify
+     * @param format      The preferred format
+     * @param bufferBytes The buffer size in bytes of the preferred format, or
+     *                    {@link AudioSystem#NOT_SPECIFIED}
+     * @return The opened line
+     * @throws LineUnavailableException If no qualifying mixer can open a line
+     */
+    public SourceDataLine openPlayback(String role, Predicate<AudioDevice> accept, AudioFormat format,
+            int bufferBytes) throws LineUnavailableException {
+        return open(role, SourceDataLine.class, accept, format, bufferBytes);
+    }
+
+    /**
+     * Opens a line, trying the remembered mixer before the scan results.
+     *
+     * @param <L>         The line type
+     * @param role        The key of the remembered choice
+     * @param lineClass   {@link TargetDataLine} or {@link SourceDataLine}
+     * @param accept      Which devices qualify
+     * @param format      The preferred format
+     * @param bufferBytes The buffer size in bytes of the preferred format
+     * @return The opened line
+     * @throws LineUnavailableException If no qualifying mixer can open a line
+     */
+    private <L extends DataLine> L open(String role, Class<L> lineClass, Predicate<AudioDevice> accept,
+            AudioFormat format, int bufferBytes) throws LineUnavailableException {
+        String remembered = choices != null ? choices.get(role, null) : null;
+        if (remembered != null) {
+            for (Mixer.Info info : source.getMixerInfo()) {
+                if (info.getName().equals(remembered)) {
+                    L line = tryOpen(role, lineClass, accept, probe(info, format), format, bufferBytes);
+                    if (line != null)
+                        return line;
+                }
+            }
+        }
+
+        boolean renegotiate = !format.matches(preferred);
+        for (CompletableFuture<AudioDevice> probe : scan.probes) {
+            AudioDevice device = probe.join();
+            if (device == null || device.info().getName().equals(remembered))
+                continue;
+            if (renegotiate)
+                device = probe(device.info(), format);
+            L line = tryOpen(role, lineClass, accept, device, format, bufferBytes);
+            if (line != null)
+                return line;
+        }
+        throw new LineUnavailableException("No " + role + " device found");
+    }
+
+    /**
+     * Opens a line on one device if it qualifies, and remembers the device for
+     * the role.
+     *
+     * @param <L>         The line type
+     * @param role        The key of the remembered choice
+     * @param lineClass   {@link TargetDataLine} or {@link SourceDataLine}
+     * @param accept      Which devices qualify
+     * @param device      The probed device, or null
+     * @param format      The preferred format
+     * @param bufferBytes The buffer size in bytes of the preferred format
+     * @return The opened line, or null if the device does not qualify or fails
+     *         to open
+     */
+    private <L extends DataLine> L tryOpen(String role, Class<L> lineClass, Predicate<AudioDevice> accept,
+            AudioDevice device, AudioFormat format, int bufferBytes) {
+        if (device == null)
+            return null;
+        AudioFormat nativeFormat = lineClass == TargetDataLine.class ? device.captureFormat()
+                : device.playbackFormat();
+        if (nativeFormat == null || !accept.test(device))
+            return null;
+        try {
+            L line = lineClass.cast(device.mixer().getLine(new DataLine.Info(lineClass, nativeFormat)));
+            int bytes = scaleBuffer(bufferBytes, format, nativeFormat);
+            if (line instanceof TargetDataLine t)
+                openLine(t, nativeFormat, bytes);
+            else
+                openLine((SourceDataLine) line, nativeFormat, bytes);
+            remember(role, device.name());
+            System.out.println(role + ": " + device.name()
+                    + (nativeFormat.matches(format) ? "" : " (runs natively at " + nativeFormat + ")"));
+            return line;
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Probes one mixer.
+     *
+     * @param info   The mixer description
+     * @param format The format to negotiate for
+     * @return The device, or null if the mixer cannot be used at all
+     */
+    private AudioDevice probe(Mixer.Info info, AudioFormat format) {
+        try {
+            Mixer mixer = source.getMixer(info);
+            AudioFormat capture = AudioDeviceFinder.negotiate(mixer, TargetDataLine.class, format);
+            AudioFormat playback = AudioDeviceFinder.negotiate(mixer, SourceDataLine.class, format);
+            return capture == null && playback == null ? null : new AudioDevice(info, mixer, capture, playback);
+        } catch (RuntimeException e) {
+            // A broken driver must not fail the whole scan
+            return null;
+        }
+    }
+
+    /**
+     * Stores the mixer that opened for a role.
+     *
+     * @param role The key of the choice
+     * @param name The mixer name
+     */
+    private void remember(String role, String name) {
+        if (choices != null && !name.equals(choices.get(role, null)))
+            choices.put(role, name);
+    }
+
+    /**
+     * Returns the devices found by the current scan, waiting for it to finish.
+     *
+     * @return The usable devices in enumeration order
+     */
+    public List<AudioDevice> getDevices() {
+        return scan.devices.join();
+    }
+
+    /**
+     * Returns how long the last finished scan took.
+     *
+     * @return The wall-clock time in milliseconds, -1 while the current scan
+     *         runs
+     */
+    public double getScanMillis() {
+        return scan.nanos < 0 ? -1 : scan.nanos / 1e6;
+    }
+
+    /**
+     * Enumerates and probes the mixers again.
+     *
+     * @return The devices once the new scan has finished
+     */
+    public CompletableFuture<List<AudioDevice>> refresh() {
+        Scan s = new Scan(source.getMixerInfo());
+        scan = s;
+        return s.devices.thenApply(devices -> {
+            for (Consumer<List<AudioDevice>> l : listeners)
+                l.accept(devices);
+            return devices;
+        });
+    }
+
+    /**
+     * Registers a listener that receives the devices after each rescan caused by
+     * a device change or {@link #refresh()}.
+     *
+     * @param listener The listener
+     */
+    public void addListener(Consumer<List<AudioDevice>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts polling the mixer list on a daemon thread. A rescan starts when a
+     * mixer was added or removed; enumerating is cheap next to probing.
+     *
+     * @param periodMillis The polling period
+     */
+    public synchronized void startWatching(long periodMillis) {
+        if (watcher != null)
+            return;
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vp-device-watch");
+            t.setDaemon(true);
+            return t;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                if (changed(source.getMixerInfo(), scan.infos))
+                    refresh().join();
+            } catch (RuntimeException e) {
+                System.err.println("Device watch failed: " + e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Compares two mixer lists.
+     *
+     * @param now    The current mixers
+     * @param before The mixers of the last scan
+     * @return true if a mixer was added, removed or renamed
+     */
+    private static boolean changed(Mixer.Info[] now, Mixer.Info[] before) {
+        if (now.length != before.length)
+            return true;
+        for (int i = 0; i < now.length; i++) {
+            if (!now[i].getName().equals(before[i].getName())
+                    || !now[i].getDescription().equals(before[i].getDescription()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops the watcher and the probe threads.
+     */
+    @Override
+    public synchronized void close() {
+        if (watcher != null)
+            watcher.shutdownNow();
+        probes.shutdownNow();
+    }
+
+    /**
+     * Converts a buffer size in bytes of one format into the bytes of another
+     * format that hold the same duration.
+     *
+     * @param bufferBytes The buffer size in the requested format, or
+     *                    {@link AudioSystem#NOT_SPECIFIED}
+     * @param requested   The requested format
+     * @param actual      The negotiated format
+     * @return The buffer size in the negotiated format
+     */
+    static int scaleBuffer(int bufferBytes, AudioFormat requested, AudioFormat actual) {
+        if (bufferBytes == AudioSystem.NOT_SPECIFIED)
+            return bufferBytes;
+        double frames = bufferBytes / (double) requested.getFrameSize() * actual.getSampleRate()
+                / requested.getSampleRate();
+        return (int) Math.ceil(frames) * actual.getFrameSize();
+    }
+
+    /**
+     * Opens a capture line, with the device default buffer if none is requested.
+     *
+     * @param line        The line
+     * @param format      The audio format
+     * @param bufferBytes The buffer size in bytes, or
+     *                    {@link AudioSystem#NOT_SPECIFIED}
+     * @throws LineUnavailableException If the line cannot be opened
+     */
+    private static void openLine(TargetDataLine line, AudioFormat format, int bufferBytes)
+            throws LineUnavailableException {
+        if (bufferBytes == AudioSystem.NOT_SPECIFIED)
+            line.open(format);
+        else
+            line.open(format, bufferBytes);
+    }
+
+    /**
+     * Opens a playback line, with the device default buffer if none is requested.
+     *
+     * @param line        The line
+     * @param format      The audio format
+     * @param bufferBytes The buffer size in bytes, or
+     *                    {@link AudioSystem#NOT_SPECIFIED}
+     * @throws LineUnavailableException If the line cannot be opened
+     */
+    private static void openLine(SourceDataLine line, AudioFormat format, int bufferBytes)
+            throws LineUnavailableException {
+        if (bufferBytes == AudioSystem.NOT_SPECIFIED)
+            line.open(format);
+        else
+            line.open(format, bufferBytes);
+    }
+
+    /**
+     * One enumeration of the mixers with a probe per mixer.
+     */
+    private final class Scan {
+
+        /**
+         * The enumerated mixers
+         */
+        final Mixer.Info[] infos;
+
+        /**
+         * The probe of each mixer, in enumeration order; null results are
+         * unusable mixers
+         */
+        final List<CompletableFuture<AudioDevice>> probes;
+
+        /**
+         * The usable devices once every probe has finished
+         */
+        final CompletableFuture<List<AudioDevice>> devices;
+
+        /**
+         * Duration of the scan in nanoseconds, -1 while it runs
+         */
+        volatile long nanos = -1;
+
+        /**
+         * Starts probing the mixers.
+         *
+         * @param infos The enumerated mixers
+         */
+        Scan(Mixer.Info[] infos) {
+            long t0 = System.nanoTime();
+            this.infos = infos;
+            List<CompletableFuture<AudioDevice>> p = new ArrayList<>(infos.length);
+            for (Mixer.Info info : infos)
+                p.add(CompletableFuture.supplyAsync(() -> probe(info, preferred), DeviceRegistry.this.probes));
+            this.probes = List.copyOf(p);
+            this.devices = CompletableFuture.allOf(p.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+                List<AudioDevice> found = new ArrayList<>();
+                for (CompletableFuture<AudioDevice> f : p) {
+                    AudioDevice d = f.join();
+                    if (d != null)
+                        found.add(d);
+                }
+                nanos = System.nanoTime() - t0;
+                return List.copyOf(found);
+            });
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+package voiceprotector.device;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Mixer;
+
+/**
+ * MixerSource is where a {@link DeviceRegistry} enumerates mixers. The system
+ * source asks {@link AudioSystem}; a headless fake can be passed instead to
+ * measure startup without sound hardware.
+ */
+public interface MixerSource {
+
+    /**
+     * The mixers installed in the Java Sound system
+     */
+    MixerSource SYSTEM = new MixerSource() {
+
+        @Override
+        public Mixer.Info[] getMixerInfo() {
+            return AudioSystem.getMixerInfo();
+        }
+
+        @Override
+        public Mixer getMixer(Mixer.Info info) {
+            return AudioSystem.getMixer(info);
+        }
+    };
+
+    /**
+     * Lists the available mixers.
+     *
+     * @return The mixer descriptions
+     */
+    Mixer.Info[] getMixerInfo();
+
+    /**
+     * Returns a mixer.
+     *
+     * @param info The description of the mixer
+     * @return The mixer
+     */
+    Mixer getMixer(Mixer.Info info);
+}
\ No newline at end of file
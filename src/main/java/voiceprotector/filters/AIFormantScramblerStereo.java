@@ -1,6 +1,14 @@
 package voiceprotector.filters;
 
-import voiceprotector.StereoAudioFilter;
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.ChunkableStereoFilter;
+import voiceprotector.FloatStereoAudioFilter;
+import voiceprotector.InterleavedStereoFilter;
+import voiceprotector.modulation.PhaseOscillator;
+import voiceprotector.params.ParameterStore;
+import voiceprotector.params.SmoothedValue;
 
 /**
  * AIFormantScramblerStereo is an audio filter that applies formant scrambling
@@ -9,49 +17,235 @@ import voiceprotector.StereoAudioFilter;
  * applied to each sample,
  * resulting in a characteristic "scrambled" effect on the vocals.
  */
-public class AIFormantScramblerStereo implements StereoAudioFilter {
+public class AIFormantScramblerStereo implements InterleavedStereoFilter, FloatStereoAudioFilter,
+        ChunkableStereoFilter {
+
+    /**
+     * Parameter index of 'amount'
+     */
+    public static final int AMOUNT = 0;
+
+    /**
+     * Rate of the sine part in radians per sample at the default sample rate
+     */
+    private static final double SINE_RATE = 0.004;
+
+    /**
+     * Rate of the cosine part in radians per sample at the default sample rate
+     */
+    private static final double COSINE_RATE = 0.002;
 
     /**
      * Indicates whether the filter is enabled or not.
      */
     public boolean enabled = true;
     /**
-     * Controls the amount of formant scrambling effect applied to the audio.
-     * The default value is 0.22f, but it can be adjusted between 0.0f and 1.0f.
+     * Published parameters. 'amount' controls the amount of formant scrambling
+     * effect applied to the audio. The default value is 0.22f, but it can be
+     * adjusted between 0.0f and 1.0f.
      */
-    public float amount = 0.22f;
+    private final ParameterStore params = new ParameterStore(
+            new String[] { "amount" },
+            new float[] { 0.22f });
+
+    /**
+     * Smoothed 'amount', owned by the audio thread
+     */
+    private final SmoothedValue amount = new SmoothedValue(params.get(AMOUNT));
+
+    /**
+     * The sine part of the chaotic modulation
+     */
+    private final PhaseOscillator sine = new PhaseOscillator(SINE_RATE, 0);
+
+    /**
+     * The cosine part of the chaotic modulation
+     */
+    private final PhaseOscillator cosine = new PhaseOscillator(COSINE_RATE, Math.PI / 2);
+
+    /**
+     * The chaotic modulation curve for the current block, continuing the phase
+     * of the previous block
+     */
+    private float[] modulation = new float[0];
 
     @Override
     public boolean isEnabled() {
         return enabled;
     }
 
+    @Override
+    public ParameterStore getParameters() {
+        return params;
+    }
+
+    /**
+     * The modulation phase follows the stream position, so there is no
+     * signal-dependent state.
+     *
+     * @return 0
+     */
+    @Override
+    public int getWarmupFrames() {
+        return 0;
+    }
+
+    /**
+     * Scales the modulation rates so the scrambling keeps its speed in Hz.
+     *
+     * @param sampleRate The sample rate in Hz
+     */
+    @Override
+    public void setSampleRate(float sampleRate) {
+        double scale = DEFAULT_SAMPLE_RATE / sampleRate;
+        sine.setFrequency(SINE_RATE * scale);
+        cosine.setFrequency(COSINE_RATE * scale);
+    }
+
+    @Override
+    public void seek(long frame) {
+        sine.seek(frame);
+        cosine.seek(frame);
+        amount.reset(params.get(AMOUNT));
+    }
+
+    /**
+     * Sets the sample rate and allocates the modulation curve for the largest
+     * block.
+     *
+     * @param format         The processing format
+     * @param maxBlockFrames The largest block in frames
+     */
+    @Override
+    public void prepare(AudioFormat format, int maxBlockFrames) {
+        setSampleRate(format.getSampleRate());
+        if (modulation.length < maxBlockFrames)
+            modulation = new float[maxBlockFrames];
+    }
+
+    /**
+     * Reads the published parameters once for the next block and starts ramping
+     * towards them. Renders the modulation curve for the block.
+     *
+     * @param frames the block length in samples
+     */
+    public void beginBlock(int frames) {
+        if (modulation.length < frames)
+            modulation = new float[frames];
+        sine.fill(modulation, frames, 1.0f);
+        cosine.add(modulation, frames, 0.5f);
+        amount.beginBlock(params.snapshot().get(AMOUNT), frames);
+    }
+
     /**
      * Processes the stereo audio samples by applying formant scrambling based on
      * the 'amount' parameter.
      *
      * @param samples a 2D array of short values where samples[0] contains left
      *                channel data
-     *                and samples[1] contains right channel data
+     *                and samples[1] contains right channel data (or any number
+     *                of planar channels)
      */
     @Override
     public void process(short[][] samples) {
-        short[] L = samples[0];
-        short[] R = samples[1];
+        process(samples, 0, samples[0].length);
+    }
 
-        for (int i = 0; i < L.length; i++) {
+    /**
+     * Applies formant scrambling to a range of each channel, as one block.
+     *
+     * @param samples planar channels
+     * @param offset  the first frame of the range
+     * @param length  the number of frames
+     */
+    @Override
+    public void process(short[][] samples, int offset, int length) {
+        beginBlock(length);
 
-            float chaotic = (float) (Math.sin(i * 0.004) +
-                    Math.cos(i * 0.002) * 0.5) * amount;
+        for (short[] channel : samples)
+            PointwiseKernels.selected().modulate(channel, offset, modulation, amount.getRampBase(),
+                    amount.getRampIncrement(), length);
+    }
 
-            float gain = 1.0f + chaotic;
+    @Override
+    public boolean supportsChannels(int channels) {
+        return channels > 0;
+    }
 
-            int vl = (int) (L[i] * gain);
-            int vr = (int) (R[i] * gain);
+    /**
+     * Computes the chaotic gain for the sample at the given block position.
+     *
+     * @param i the sample index within the block
+     * @return the gain to apply to both channels
+     */
+    public float gainAt(int i) {
+        float chaotic = modulation[i] * amount.valueAt(i);
 
-            L[i] = (short) Math.max(Math.min(vl, 32767), -32768);
-            R[i] = (short) Math.max(Math.min(vr, 32767), -32768);
+        return 1.0f + chaotic;
+    }
+
+    /**
+     * Applies a gain to a single sample and clips it to 16 bits. Used by the
+     * interleaved path.
+     *
+     * @param v    the input sample
+     * @param gain the gain from {@link #gainAt(int)}
+     * @return the scaled sample
+     */
+    public static short applyGain(short v, float gain) {
+        return AudioUtils.clip16((int) (v * gain));
+    }
+
+    /**
+     * Applies formant scrambling directly to interleaved PCM16 data.
+     *
+     * @param data   Interleaved little-endian PCM16 data
+     * @param length The number of valid bytes in data
+     */
+    @Override
+    public void processInterleaved(byte[] data, int length) {
+        int frames = length / 4;
+        beginBlock(frames);
+        for (int i = 0; i < frames; i++) {
+            float gain = gainAt(i);
+
+            int b = i * 4;
+            AudioUtils.setSample(data, b, applyGain(AudioUtils.getSample(data, b), gain));
+            AudioUtils.setSample(data, b + 2, applyGain(AudioUtils.getSample(data, b + 2), gain));
         }
+    }
+
+    /**
+     * Float variant of {@link #process(short[][])} without intermediate clipping.
+     *
+     * @param samples planar float samples on the 16-bit scale
+     * @param frames  the number of valid samples per channel
+     */
+    @Override
+    public void processFloat(float[][] samples, int frames) {
+        beginBlock(frames);
+
+        for (float[] channel : samples)
+            PointwiseKernels.selected().modulate(channel, modulation, amount.getRampBase(), amount.getRampIncrement(),
+                    frames);
+    }
 
+    /**
+     * Returns the published scrambling amount.
+     *
+     * @return the amount
+     */
+    public float getAmount() {
+        return params.get(AMOUNT);
+    }
+
+    /**
+     * Publishes a new scrambling amount. The audio thread ramps to it over the
+     * next block.
+     *
+     * @param amount the amount of formant scrambling
+     */
+    public void setAmount(float amount) {
+        params.set(AMOUNT, amount);
     }
 }
\ No newline at end of file
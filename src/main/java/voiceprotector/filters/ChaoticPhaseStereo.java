@@ -1,6 +1,14 @@
 package voiceprotector.filters;
 
-import voiceprotector.StereoAudioFilter;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.ChunkableStereoFilter;
+import voiceprotector.FloatStereoAudioFilter;
+import voiceprotector.modulation.PhaseOscillator;
+import voiceprotector.params.ParameterStore;
+import voiceprotector.params.SmoothedValue;
 
 /**
  * ChaoticPhaseStereo is an audio filter that applies chaotic phase modulation
@@ -9,8 +17,23 @@ import voiceprotector.StereoAudioFilter;
  * based on the 'intensity'
  * parameter,
  * creating interesting phase shifts and distortion effects.
+ * <p>
+ * Each sample is mixed with the one after it, so the last sample of a block
+ * is held back until the first sample of the next block arrives. The output is
+ * delayed by one frame and does not depend on how the stream is split into
+ * blocks.
  */
-public class ChaoticPhaseStereo implements StereoAudioFilter {
+public class ChaoticPhaseStereo implements FloatStereoAudioFilter, ChunkableStereoFilter {
+
+    /**
+     * Parameter index of 'intensity'
+     */
+    public static final int INTENSITY = 0;
+
+    /**
+     * Oscillator rate in radians per sample at the default sample rate
+     */
+    private static final double LFO_RATE = 0.0009;
 
     /**
      * Indicates whether the filter is enabled or not.
@@ -18,11 +41,138 @@ public class ChaoticPhaseStereo implements StereoAudioFilter {
     private boolean enabled = true;
 
     /**
-     * Controls the intensity of the chaotic phase modulation effect applied to the
-     * audio.
-     * The default value is 0.12f, but it can be adjusted between 0.0f and 1.0f.
+     * Published parameters. 'intensity' controls the intensity of the chaotic
+     * phase modulation effect applied to the audio. The default value is 0.12f,
+     * but it can be adjusted between 0.0f and 1.0f.
+     */
+    private final ParameterStore params = new ParameterStore(
+            new String[] { "intensity" },
+            new float[] { 0.12f });
+
+    /**
+     * Smoothed 'intensity', owned by the audio thread
+     */
+    private final SmoothedValue intensity = new SmoothedValue(params.get(INTENSITY));
+
+    /**
+     * The phase modulation oscillator
+     */
+    private final PhaseOscillator lfo = new PhaseOscillator(LFO_RATE, 0);
+
+    /**
+     * Oscillator rate in radians per sample at the current sample rate
+     */
+    private double radiansPerSample = LFO_RATE;
+
+    /**
+     * Per channel, the held-back last sample of the previous block, already
+     * mixed with the sample before it
      */
-    public float intensity = 0.12f;
+    private float[] carry = new float[2];
+
+    /**
+     * The mix factor t for each sample of the current block (oscillator times
+     * smoothed intensity), shared by both channels
+     */
+    private float[] mix = new float[0];
+
+    @Override
+    public ParameterStore getParameters() {
+        return params;
+    }
+
+    /**
+     * The held-back sample carries t times the one before it, so earlier audio
+     * fades out as fast as |t| is below 1. |t| is at most the intensity, but
+     * it is below a tenth of it while the oscillator phase is within 0.1 rad of
+     * a zero crossing. Half a period plus those 0.2 rad always contains such a
+     * stretch, long enough at any intensity for the held-back sample to be
+     * exactly the one of sequential processing.
+     *
+     * @return The frames for half an oscillator period plus 0.2 rad at the
+     *         current sample rate
+     */
+    @Override
+    public int getWarmupFrames() {
+        return (int) Math.ceil((Math.PI + 0.2) / radiansPerSample);
+    }
+
+    /**
+     * The held-back last sample delays the output by one frame.
+     *
+     * @return 1
+     */
+    @Override
+    public int getLatencyFrames() {
+        return 1;
+    }
+
+    /**
+     * Scales the oscillator rate so the modulation keeps its speed in Hz.
+     *
+     * @param sampleRate The sample rate in Hz
+     */
+    @Override
+    public void setSampleRate(float sampleRate) {
+        radiansPerSample = LFO_RATE * DEFAULT_SAMPLE_RATE / sampleRate;
+        lfo.setFrequency(radiansPerSample);
+    }
+
+    /**
+     * Moves the oscillator to the frame and clears the held-back samples; the
+     * warm-up rebuilds them.
+     *
+     * @param frame The stream position of the next frame to be processed
+     */
+    @Override
+    public void seek(long frame) {
+        lfo.seek(frame);
+        intensity.reset(params.get(INTENSITY));
+        Arrays.fill(carry, 0f);
+    }
+
+    /**
+     * Sets the sample rate and allocates the mix factors for the largest
+     * block and the held-back sample of every channel.
+     *
+     * @param format         The processing format
+     * @param maxBlockFrames The largest block in frames
+     */
+    @Override
+    public void prepare(AudioFormat format, int maxBlockFrames) {
+        setSampleRate(format.getSampleRate());
+        if (mix.length < maxBlockFrames)
+            mix = new float[maxBlockFrames];
+        carry(format.getChannels());
+    }
+
+    /**
+     * Returns the held-back samples, grown to the given number of channels.
+     *
+     * @param channels The channels of the block
+     * @return The held-back sample per channel
+     */
+    private float[] carry(int channels) {
+        if (carry.length < channels)
+            carry = Arrays.copyOf(carry, channels);
+        return carry;
+    }
+
+    /**
+     * Reads the published parameters once for the next block, starts ramping
+     * towards them and renders the mix factors for the block.
+     *
+     * @param frames the block length in samples
+     */
+    public void beginBlock(int frames) {
+        intensity.beginBlock(params.snapshot().get(INTENSITY), frames);
+        if (mix.length < frames)
+            mix = new float[frames];
+        lfo.fill(mix, frames, 1.0f);
+        for (int i = 0; i < frames; i++) {
+            mix[i] *= intensity.valueAt(i);
+        }
+    }
 
     /**
      * Processes stereo audio samples by applying chaotic phase modulation based on
@@ -34,24 +184,41 @@ public class ChaoticPhaseStereo implements StereoAudioFilter {
      */
     @Override
     public void process(short[][] samples) {
+        process(samples, 0, samples[0].length);
+    }
+
+    /**
+     * Applies chaotic phase modulation to a range of each channel, as one
+     * block.
+     *
+     * @param samples planar channels
+     * @param offset  the first frame of the range
+     * @param length  the number of frames
+     */
+    @Override
+    public void process(short[][] samples, int offset, int length) {
+        beginBlock(length);
+        float[] held = carry(samples.length);
+
         // samples[0] = left channel, samples[1] = right channel
         for (int ch = 0; ch < samples.length; ch++) {
             short[] channel = samples[ch];
+            int s1 = (int) held[ch];
 
-            for (int i = 0; i < channel.length - 1; i++) {
-                short s1 = channel[i];
-                short s2 = channel[i + 1];
+            for (int i = 0; i < length; i++) {
+                short s2 = channel[offset + i];
 
                 // Chaotic phase modulation
-                float t = (float) Math.sin(i * 0.0009) * intensity;
+                float t = mix[i];
 
                 int newS1 = (int) ((s1 * (1 - t)) + (s2 * t));
                 int newS2 = (int) ((s2 * (1 - t)) + (s1 * t));
 
-                // Clip to not overreach 16-bit
-                channel[i] = (short) Math.max(Math.min(newS1, 32767), -32768);
-                channel[i + 1] = (short) Math.max(Math.min(newS2, 32767), -32768);
+                // Clip to not overreach 16-bit; s1 is done, s2 waits for its successor
+                channel[offset + i] = (short) Math.max(Math.min(newS1, 32767), -32768);
+                s1 = Math.max(Math.min(newS2, 32767), -32768);
             }
+            held[ch] = s1;
         }
     }
 
@@ -59,4 +226,56 @@ public class ChaoticPhaseStereo implements StereoAudioFilter {
     public boolean isEnabled() {
         return enabled;
     }
+
+    @Override
+    public boolean supportsChannels(int channels) {
+        return channels > 0;
+    }
+
+    /**
+     * Float variant of {@link #process(short[][])} without intermediate clipping.
+     *
+     * @param samples planar float samples on the 16-bit scale
+     * @param frames  the number of valid samples per channel
+     */
+    @Override
+    public void processFloat(float[][] samples, int frames) {
+        beginBlock(frames);
+        float[] held = carry(samples.length);
+
+        for (int ch = 0; ch < samples.length; ch++) {
+            float[] channel = samples[ch];
+            float s1 = held[ch];
+
+            for (int i = 0; i < frames; i++) {
+                float s2 = channel[i];
+
+                // Chaotic phase modulation
+                float t = mix[i];
+
+                channel[i] = (s1 * (1 - t)) + (s2 * t);
+                s1 = (s2 * (1 - t)) + (s1 * t);
+            }
+            held[ch] = s1;
+        }
+    }
+
+    /**
+     * Returns the published intensity.
+     *
+     * @return the intensity (0.0-1.0)
+     */
+    public float getIntensity() {
+        return params.get(INTENSITY);
+    }
+
+    /**
+     * Publishes a new intensity. The audio thread ramps to it over the next
+     * block.
+     *
+     * @param intensity the intensity (0.0-1.0)
+     */
+    public void setIntensity(float intensity) {
+        params.set(INTENSITY, intensity);
+    }
 }
\ No newline at end of file
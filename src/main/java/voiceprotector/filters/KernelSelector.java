@@ -0,0 +1,81 @@
+package voiceprotector.filters;
+
+/**
+ * KernelSelector decides once, when the class loads, which
+ * {@link PointwiseKernels} the filters use. The vectorized kernels are used
+ * when the {@code jdk.incubator.vector} module is present (start the JVM with
+ * {@code --add-modules jdk.incubator.vector}); otherwise the scalar kernels
+ * are. The system property {@code voiceprotector.simd} overrides this:
+ * {@code false} forces the scalar kernels, {@code true} requires the
+ * vectorized ones and reports it if they cannot be loaded.
+ * <p>
+ * Both kernels produce identical output, so the choice only affects speed. It
+ * does not change while the JVM runs.
+ */
+final class KernelSelector {
+
+    /**
+     * Why the kernels were selected, for logs
+     */
+    private static String reason;
+
+    /**
+     * The kernels the filters use
+     */
+    private static final PointwiseKernels SELECTED = select();
+
+    /**
+     * Not instantiable.
+     */
+    private KernelSelector() {
+    }
+
+    /**
+     * Returns the kernels the filters use.
+     *
+     * @return The kernels selected when the class was loaded
+     */
+    static PointwiseKernels selected() {
+        return SELECTED;
+    }
+
+    /**
+     * Describes the selection.
+     *
+     * @return The name of the selected kernels and why they were selected
+     */
+    static String describe() {
+        return SELECTED.name() + " (" + reason + ")";
+    }
+
+    /**
+     * Selects the kernels from the system property and the modules present.
+     *
+     * @return The vectorized kernels if they are enabled and present, otherwise
+     *         the scalar kernels
+     */
+    private static PointwiseKernels select() {
+        String simd = System.getProperty("voiceprotector.simd");
+        if ("false".equals(simd)) {
+            reason = "disabled by voiceprotector.simd=false";
+            return new ScalarKernels();
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            reason = "jdk.incubator.vector not present";
+            if ("true".equals(simd))
+                System.err.println("voiceprotector.simd=true, but " + reason + "; using scalar kernels");
+            return new ScalarKernels();
+        }
+        try {
+            // Loaded by name so the scalar path never links against the incubator module
+            PointwiseKernels vector = (PointwiseKernels) Class.forName("voiceprotector.filters.VectorKernels")
+                    .getDeclaredConstructor().newInstance();
+            reason = "jdk.incubator.vector present";
+            return vector;
+        } catch (ReflectiveOperationException | LinkageError | IllegalStateException e) {
+            reason = "vector kernels unavailable: " + e;
+            System.err.println("Using scalar kernels, " + reason);
+            return new ScalarKernels();
+        }
+    }
+}
\ No newline at end of file
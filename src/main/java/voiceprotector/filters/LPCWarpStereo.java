@@ -1,25 +1,174 @@
 package voiceprotector.filters;
 
-import voiceprotector.StereoAudioFilter;
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.FloatStereoAudioFilter;
+import voiceprotector.lpc.LpcChannel;
+import voiceprotector.params.ParameterSnapshot;
+import voiceprotector.params.ParameterStore;
 
 /**
  * LPCWarpStereo is an audio filter that applies linear predictive coding (LPC)
  * warping to stereo audio samples.
- * It modifies each sample based on the previous sample and a warp amount,
- * creating a characteristic warped effect
- * that can be used for voice transformation or obfuscation.
+ * Each channel is analyzed frame by frame into an all-pole vocal tract model,
+ * whitened into its residual and resynthesized through a warped copy of the
+ * model ({@link LpcChannel}). Warping shifts the formants ('warpAmount') and
+ * widens them ('bandwidth'), while pitch and timing, which live in the
+ * residual, are kept.
+ * <p>
+ * The filter keeps state across the whole stream (the all-pole synthesis has an
+ * infinite impulse response), so it is not a
+ * {@link voiceprotector.ChunkableStereoFilter}; chains containing it process
+ * files sequentially.
  */
-public class LPCWarpStereo implements StereoAudioFilter {
+public class LPCWarpStereo implements FloatStereoAudioFilter {
+
+    /**
+     * Parameter index of 'warpAmount'
+     */
+    public static final int WARP_AMOUNT = 0;
+
+    /**
+     * Parameter index of 'bandwidth'
+     */
+    public static final int BANDWIDTH = 1;
+
+    /**
+     * Default prediction order (enough for 5 formants up to 48 kHz sampling)
+     */
+    public static final int DEFAULT_ORDER = 16;
+
+    /**
+     * Default analysis frame length (21 ms at 48 kHz)
+     */
+    public static final int DEFAULT_FRAME_SIZE = 1024;
+
+    /**
+     * The all-pass coefficient at warpAmount 1.0
+     */
+    private static final float MAX_LAMBDA = 0.3f;
 
     /**
      * Indicates whether the filter is enabled or not.
      */
     private boolean enabled = true;
     /**
-     * Controls the amount of warping effect applied to the audio.
-     * The default value is 0.15f, but it can be adjusted between 0.0f and 1.0f.
+     * Published parameters. 'warpAmount' controls the amount of warping effect
+     * applied to the audio. The default value is 0.15f, but it can be adjusted
+     * between 0.0f (no formant shift) and 1.0f. 'bandwidth' scales the pole radii,
+     * 1.0f (default) keeps the formant bandwidths, lower values down to 0.9f
+     * widen them.
+     */
+    private final ParameterStore params = new ParameterStore(
+            new String[] { "warpAmount", "bandwidth" },
+            new float[] { 0.15f, 1.0f });
+
+    /**
+     * One LPC engine per channel, grown when a block has more channels
+     */
+    private LpcChannel[] channels;
+
+    /**
+     * The analysis frame length at the default sample rate
+     */
+    private final int baseFrameSize;
+
+    /**
+     * The sample rate the engines are built for
+     */
+    private float sampleRate = DEFAULT_SAMPLE_RATE;
+
+    /**
+     * Float work buffers for the 16-bit path
+     */
+    private float[][] floatBuffer = new float[2][0];
+
+    /**
+     * Creates the filter with the default order and frame size.
+     */
+    public LPCWarpStereo() {
+        this(DEFAULT_ORDER, DEFAULT_FRAME_SIZE);
+    }
+
+    /**
+     * Creates the filter.
+     *
+     * @param order     The prediction order
+     * @param frameSize The analysis frame length in samples (even) at the
+     *                  default sample rate; the model is updated every half
+     *                  frame
+     */
+    public LPCWarpStereo(int order, int frameSize) {
+        channels = new LpcChannel[] { new LpcChannel(order, frameSize), new LpcChannel(order, frameSize) };
+        baseFrameSize = frameSize;
+    }
+
+    @Override
+    public ParameterStore getParameters() {
+        return params;
+    }
+
+    /**
+     * Scales the analysis frame so it keeps its duration, and rebuilds the
+     * engines with empty history.
+     *
+     * @param sampleRate The sample rate in Hz
+     */
+    @Override
+    public void setSampleRate(float sampleRate) {
+        if (sampleRate == this.sampleRate)
+            return;
+        int order = getOrder();
+        int frameSize = Math.max(order + 2, 2 * Math.round(baseFrameSize * sampleRate / DEFAULT_SAMPLE_RATE / 2));
+        LpcChannel[] rebuilt = new LpcChannel[channels.length];
+        for (int ch = 0; ch < rebuilt.length; ch++)
+            rebuilt[ch] = new LpcChannel(order, frameSize);
+        channels = rebuilt;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Sets the sample rate and creates the engines and the conversion buffer
+     * for the format, so the first blocks do not allocate.
+     *
+     * @param format         The processing format
+     * @param maxBlockFrames The largest block in frames
+     */
+    @Override
+    public void prepare(AudioFormat format, int maxBlockFrames) {
+        setSampleRate(format.getSampleRate());
+        int count = Math.max(1, format.getChannels());
+        if (channels.length < count)
+            growChannels(count);
+        if (floatBuffer.length != count || floatBuffer[0].length < maxBlockFrames)
+            floatBuffer = new float[count][maxBlockFrames];
+    }
+
+    /**
+     * Clears the analysis history and the filter state of every engine.
+     */
+    @Override
+    public void reset() {
+        for (LpcChannel channel : channels)
+            channel.reset();
+    }
+
+    /**
+     * Reads the published parameters once for the next block. The engines move
+     * to the new warping at their next analysis, interpolating over half a frame.
+     *
+     * @param frames the block length in samples
      */
-    public float warpAmount = 0.15f;
+    public void beginBlock(int frames) {
+        ParameterSnapshot p = params.snapshot();
+        float lambda = Math.max(-1f, Math.min(1f, p.get(WARP_AMOUNT))) * MAX_LAMBDA;
+        float gamma = Math.max(0.5f, Math.min(1f, p.get(BANDWIDTH)));
+        for (LpcChannel channel : channels)
+            channel.setWarp(lambda, gamma);
+    }
 
     @Override
     /**
@@ -31,21 +180,127 @@ public class LPCWarpStereo implements StereoAudioFilter {
      *                and samples[1] contains right channel data
      */
     public void process(short[][] samples) {
-        // samples[0] = left channel, samples[1] = right channel
-        for (int ch = 0; ch < samples.length; ch++) {
-            short[] channel = samples[ch];
+        process(samples, 0, samples[0].length);
+    }
 
-            for (int i = 1; i < channel.length; i++) {
-                int warped = (int) (channel[i] - warpAmount * channel[i - 1]);
+    /**
+     * Processes a range of the arrays through the conversion buffer, without
+     * copying the range out first.
+     *
+     * @param samples One array per channel
+     * @param offset  The first frame of the range
+     * @param length  The number of frames
+     */
+    @Override
+    public void process(short[][] samples, int offset, int length) {
+        if (floatBuffer.length != samples.length || floatBuffer[0].length < length)
+            floatBuffer = new float[samples.length][length];
 
-                // Clip for 16-bit
-                channel[i] = (short) Math.max(Math.min(warped, 32767), -32768);
-            }
-        }
+        AudioUtils.toFloat(samples, offset, floatBuffer, length);
+        processFloat(floatBuffer, length);
+        AudioUtils.toShort(floatBuffer, samples, offset, length);
     }
 
     @Override
     public boolean isEnabled() {
         return enabled;
     }
+
+    /**
+     * Every channel has its own analysis history, so any number of channels can
+     * be processed; engines for additional channels are created on first use.
+     *
+     * @param channels The number of planar channels
+     * @return true for at least one channel
+     */
+    @Override
+    public boolean supportsChannels(int channels) {
+        return channels > 0;
+    }
+
+    /**
+     * Float variant of {@link #process(short[][])} without intermediate clipping.
+     *
+     * @param samples planar float samples on the 16-bit scale
+     * @param frames  the number of valid samples per channel
+     */
+    @Override
+    public void processFloat(float[][] samples, int frames) {
+        if (channels.length < samples.length)
+            growChannels(samples.length);
+        beginBlock(frames);
+
+        for (int ch = 0; ch < samples.length; ch++) {
+            channels[ch].process(samples[ch], 0, frames);
+        }
+    }
+
+    /**
+     * Adds engines so that every channel of a block has one. The new engines
+     * start with empty history.
+     *
+     * @param count The number of channels needed
+     */
+    private void growChannels(int count) {
+        LpcChannel[] grown = Arrays.copyOf(channels, count);
+        for (int ch = channels.length; ch < count; ch++)
+            grown[ch] = new LpcChannel(getOrder(), getFrameSize());
+        channels = grown;
+    }
+
+    /**
+     * Returns the prediction order.
+     *
+     * @return the number of LPC coefficients
+     */
+    public int getOrder() {
+        return channels[0].getOrder();
+    }
+
+    /**
+     * Returns the analysis frame length.
+     *
+     * @return samples per analysis frame
+     */
+    public int getFrameSize() {
+        return channels[0].getFrameSize();
+    }
+
+    /**
+     * Returns the published warp amount.
+     *
+     * @return the warp amount (0.0-1.0)
+     */
+    public float getWarpAmount() {
+        return params.get(WARP_AMOUNT);
+    }
+
+    /**
+     * Publishes a new warp amount. It takes effect at the next analysis frame.
+     *
+     * @param warpAmount the warp amount (0.0-1.0)
+     */
+    public void setWarpAmount(float warpAmount) {
+        params.set(WARP_AMOUNT, warpAmount);
+    }
+
+    /**
+     * Returns the published bandwidth factor.
+     *
+     * @return the pole radius factor (0.9-1.0)
+     */
+    public float getBandwidth() {
+        return params.get(BANDWIDTH);
+    }
+
+    /**
+     * Publishes a new bandwidth factor. It takes effect at the next analysis
+     * frame.
+     *
+     * @param bandwidth the pole radius factor (0.9-1.0); lower values widen the
+     *                  formants
+     */
+    public void setBandwidth(float bandwidth) {
+        params.set(BANDWIDTH, bandwidth);
+    }
 }
\ No newline at end of file
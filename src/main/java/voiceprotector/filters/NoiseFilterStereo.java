@@ -1,14 +1,47 @@
 package voiceprotector.filters;
 
-import voiceprotector.StereoAudioFilter;
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.ChunkableStereoFilter;
+import voiceprotector.FloatStereoAudioFilter;
+import voiceprotector.InterleavedStereoFilter;
+import voiceprotector.noise.NoiseBank;
+import voiceprotector.noise.NoiseColor;
+import voiceprotector.noise.NoiseGenerator;
+import voiceprotector.params.ParameterSnapshot;
+import voiceprotector.params.ParameterStore;
+import voiceprotector.params.SmoothedValue;
 
 /**
  * NoiseFilterStereo is an audio filter that adds random noise to stereo audio
  * samples.
  * The amount of noise added is controlled by the 'amplitude' parameter, which
  * sets the maximum noise level.
+ * <p>
+ * Each instance draws from its own {@link NoiseGenerator}, so concurrent
+ * streams never contend on a shared random source. The noise is a function of
+ * the seed and the stream position only; with {@link #setSeed(long)} the output
+ * is reproducible and does not depend on the block size. 'color' selects white
+ * noise or a shaped {@link NoiseBank} (see {@link NoiseColor}).
  */
-public class NoiseFilterStereo implements StereoAudioFilter {
+public class NoiseFilterStereo implements InterleavedStereoFilter, FloatStereoAudioFilter,
+        ChunkableStereoFilter {
+
+    /**
+     * Parameter index of 'amplitude'
+     */
+    public static final int AMPLITUDE = 0;
+
+    /**
+     * Parameter index of 'color' ({@link NoiseColor} ordinal)
+     */
+    public static final int COLOR = 1;
+
+    /**
+     * The noise colors by ordinal, cached because values() copies the array
+     */
+    private static final NoiseColor[] COLORS = NoiseColor.values();
 
     /**
      * Indicates whether the filter is enabled or not.
@@ -16,12 +49,167 @@ public class NoiseFilterStereo implements StereoAudioFilter {
     private boolean enabled = true;
 
     /**
-     * Controls the amplitude of the random noise added to each sample.
-     * The default value is 1, but it can be adjusted as needed. A higher value
-     * will result in more intense
-     * noise. 500 = Max noice leevel
+     * Published parameters. 'amplitude' controls the amplitude of the random
+     * noise added to each sample. The default value is 1, but it can be adjusted
+     * as needed. A higher value will result in more intense noise. 500 = Max
+     * noice leevel. 'color' selects the noise shape, default white.
+     */
+    private final ParameterStore params = new ParameterStore(
+            new String[] { "amplitude", "color" },
+            new float[] { 1, 0 }); // Max brusnivå
+
+    /**
+     * Smoothed 'amplitude', owned by the audio thread
+     */
+    private final SmoothedValue amplitude = new SmoothedValue(params.get(AMPLITUDE));
+
+    /**
+     * The random source of this instance
+     */
+    private volatile NoiseGenerator generator = new NoiseGenerator();
+
+    /**
+     * Stream position of the next block
+     */
+    private long position;
+
+    /**
+     * The sample rate the banks are shaped for
+     */
+    private float sampleRate = DEFAULT_SAMPLE_RATE;
+
+    /**
+     * The bank of each {@link NoiseColor} at the sample rate, shaped before
+     * the audio thread reads it
+     */
+    private volatile NoiseBank[] banks = banks(DEFAULT_SAMPLE_RATE);
+
+    /**
+     * Unit noise (before amplitude) per channel for the current block
+     */
+    private float[][] unit = new float[2][0];
+
+    /**
+     * Noise for one channel of the current block
+     */
+    private int[] noise = new int[0];
+
+    /**
+     * Noise for one channel of the current float block
+     */
+    private float[] floatNoise = new float[0];
+
+    @Override
+    public ParameterStore getParameters() {
+        return params;
+    }
+
+    /**
+     * The noise depends only on the seed and the stream position, which
+     * {@link #seek(long)} restores. Chunks reproduce sequential output when every
+     * chunk's filter uses the same seed.
+     *
+     * @return 0
+     */
+    @Override
+    public int getWarmupFrames() {
+        return 0;
+    }
+
+    /**
+     * Shapes the bank of every color for a sample rate.
+     *
+     * @param sampleRate The sample rate in Hz
+     * @return The bank of each color by ordinal, null for white noise
      */
-    public int amplitude = 1; // Max brusnivå
+    private static NoiseBank[] banks(float sampleRate) {
+        NoiseBank[] banks = new NoiseBank[COLORS.length];
+        for (NoiseColor color : COLORS)
+            banks[color.ordinal()] = color.bank(sampleRate);
+        return banks;
+    }
+
+    /**
+     * Shapes the banks of every color for the sample rate, so the speech band
+     * stays at the same frequencies, and publishes them for the next block.
+     * Switching colors later does not shape anything on the audio thread.
+     *
+     * @param sampleRate The sample rate in Hz
+     */
+    @Override
+    public void setSampleRate(float sampleRate) {
+        if (sampleRate != this.sampleRate) {
+            this.sampleRate = sampleRate;
+            banks = banks(sampleRate);
+        }
+    }
+
+    @Override
+    public void seek(long frame) {
+        position = frame;
+        amplitude.reset(params.get(AMPLITUDE));
+    }
+
+    /**
+     * Sets the sample rate, which shapes the banks, and allocates the noise
+     * buffers for the largest block.
+     *
+     * @param format         The processing format
+     * @param maxBlockFrames The largest block in frames
+     */
+    @Override
+    public void prepare(AudioFormat format, int maxBlockFrames) {
+        setSampleRate(format.getSampleRate());
+        int channels = Math.max(1, format.getChannels());
+        if (unit.length != channels || unit[0].length < maxBlockFrames)
+            unit = new float[channels][Math.max(maxBlockFrames, unit[0].length)];
+        if (noise.length < maxBlockFrames)
+            noise = new int[maxBlockFrames];
+        if (floatNoise.length < maxBlockFrames)
+            floatNoise = new float[maxBlockFrames];
+    }
+
+    /**
+     * Reads the published parameters once for the next block, starts ramping
+     * towards them and draws the unit noise of both channels for the block.
+     *
+     * @param frames the block length in samples
+     */
+    public void beginBlock(int frames) {
+        beginBlock(frames, 2);
+    }
+
+    /**
+     * Reads the published parameters once for the next block, starts ramping
+     * towards them and draws the unit noise of every channel for the block. The
+     * noise of each channel is independent; with two channels it is the same as
+     * {@link #beginBlock(int)}.
+     *
+     * @param frames   the block length in samples
+     * @param channels the number of channels
+     */
+    public void beginBlock(int frames, int channels) {
+        ParameterSnapshot p = params.snapshot();
+        amplitude.beginBlock(p.get(AMPLITUDE), frames);
+
+        NoiseBank bank = banks[Math.max(0, Math.min(COLORS.length - 1, p.getInt(COLOR)))];
+        NoiseGenerator gen = generator;
+        if (unit.length != channels || unit[0].length < frames)
+            unit = new float[channels][Math.max(frames, unit[0].length)];
+
+        for (int ch = 0; ch < channels; ch++) {
+            float[] u = unit[ch];
+            if (bank == null) {
+                long index = position * channels + ch;
+                for (int i = 0; i < frames; i++, index += channels) {
+                    u[i] = gen.uniform(index);
+                }
+            } else {
+                bank.fill(gen, position, ch, channels, u, frames);
+            }
+        }
+        position += frames;
+    }
 
     @Override
     /**
@@ -33,17 +221,62 @@ public class NoiseFilterStereo implements StereoAudioFilter {
      *                and samples[1] contains right channel data
      */
     public void process(short[][] samples) {
+        process(samples, 0, samples[0].length);
+    }
+
+    /**
+     * Adds noise to a range of each channel, as one block.
+     *
+     * @param samples planar channels
+     * @param offset  the first frame of the range
+     * @param length  the number of frames
+     */
+    @Override
+    public void process(short[][] samples, int offset, int length) {
+        beginBlock(length, samples.length);
+
         // samples[0] = left channel, samples[1] = right channel
         for (int ch = 0; ch < samples.length; ch++) {
             short[] channel = samples[ch];
 
-            for (int i = 0; i < channel.length; i++) {
-                int noise = (int) ((Math.random() * amplitude * 2) - amplitude);
-                int v = channel[i] + noise;
+            float[] u = unit[ch];
 
-                // Clip for 16-bit
-                channel[i] = (short) Math.max(Math.min(v, 32767), -32768);
+            if (noise.length < length)
+                noise = new int[length];
+            for (int i = 0; i < length; i++) {
+                noise[i] = (int) (u[i] * amplitude.valueAt(i));
             }
+            PointwiseKernels.selected().addNoise(channel, offset, noise, length);
+        }
+    }
+
+    /**
+     * Adds the block's noise value to a single sample and clips the result to 16
+     * bits. Used by the interleaved path.
+     *
+     * @param v  the input sample
+     * @param i  the sample index within the block (selects the ramped amplitude)
+     * @param ch the channel (0 = left, 1 = right, further channels in order)
+     * @return the noisy sample
+     */
+    public short noiseSample(short v, int i, int ch) {
+        int noise = (int) (unit[ch][i] * amplitude.valueAt(i));
+
+        // Clip for 16-bit
+        return AudioUtils.clip16(v + noise);
+    }
+
+    /**
+     * Adds random noise directly to interleaved PCM16 data.
+     *
+     * @param data   Interleaved little-endian PCM16 data
+     * @param length The number of valid bytes in data
+     */
+    @Override
+    public void processInterleaved(byte[] data, int length) {
+        beginBlock(length / 4);
+        for (int i = 0; i + 1 < length; i += 2) {
+            AudioUtils.setSample(data, i, noiseSample(AudioUtils.getSample(data, i), i >> 2, (i >> 1) & 1));
         }
     }
 
@@ -51,4 +284,89 @@ public class NoiseFilterStereo implements StereoAudioFilter {
     public boolean isEnabled() {
         return enabled;
     }
+
+    @Override
+    public boolean supportsChannels(int channels) {
+        return channels > 0;
+    }
+
+    /**
+     * Float variant of {@link #process(short[][])} without intermediate clipping.
+     *
+     * @param samples planar float samples on the 16-bit scale
+     * @param frames  the number of valid samples per channel
+     */
+    @Override
+    public void processFloat(float[][] samples, int frames) {
+        beginBlock(frames, samples.length);
+
+        for (int ch = 0; ch < samples.length; ch++) {
+            float[] channel = samples[ch];
+
+            float[] u = unit[ch];
+
+            if (floatNoise.length < frames)
+                floatNoise = new float[frames];
+            for (int i = 0; i < frames; i++) {
+                floatNoise[i] = u[i] * amplitude.valueAt(i);
+            }
+            PointwiseKernels.selected().addNoise(channel, floatNoise, frames);
+        }
+    }
+
+    /**
+     * Returns the published noise amplitude.
+     *
+     * @return the maximum noise level
+     */
+    public int getAmplitude() {
+        return Math.round(params.get(AMPLITUDE));
+    }
+
+    /**
+     * Publishes a new noise amplitude. The audio thread ramps to it over the
+     * next block.
+     *
+     * @param amplitude the maximum noise level
+     */
+    public void setAmplitude(int amplitude) {
+        params.set(AMPLITUDE, amplitude);
+    }
+
+    /**
+     * Returns the published noise color.
+     *
+     * @return the color
+     */
+    public NoiseColor getColor() {
+        return COLORS[Math.max(0, Math.min(COLORS.length - 1, Math.round(params.get(COLOR))))];
+    }
+
+    /**
+     * Publishes a new noise color, applied from the next block.
+     *
+     * @param color the color
+     */
+    public void setColor(NoiseColor color) {
+        params.set(COLOR, color.ordinal());
+    }
+
+    /**
+     * Returns the seed of the random source.
+     *
+     * @return the seed
+     */
+    public long getSeed() {
+        return generator.getSeed();
+    }
+
+    /**
+     * Replaces the random source with one seeded for reproducible output. Takes
+     * effect from the next block.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        generator = new NoiseGenerator(seed);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+package voiceprotector.filters;
+
+/**
+ * PointwiseKernels holds the per-sample inner loops of the pointwise filters,
+ * one channel at a time. {@link #selected()} returns the vectorized
+ * implementation when the {@code jdk.incubator.vector} module is present
+ * (start the JVM with {@code --add-modules jdk.incubator.vector}) and
+ * {@code -Dvoiceprotector.simd=false} is not set, otherwise the scalar one
+ * (see {@link KernelSelector}). Both produce identical output.
+ * <p>
+ * Ramped parameters are passed as {@code base} and {@code inc}, giving the value
+ * {@code base + inc * (i + 1)} for sample {@code i} (see
+ * {@link voiceprotector.params.SmoothedValue#getRampBase()}).
+ * <p>
+ * The short kernels work on {@code n} samples of {@code x} from {@code off},
+ * so filters can process a range of a larger array. The per-sample arrays
+ * (pattern, noise, mask, modulation) and the ramp are indexed by the position
+ * in the block, from 0.
+ */
+interface PointwiseKernels {
+
+    /**
+     * XORs every step-th sample, starting at 0.
+     *
+     * @param x        The samples
+     * @param off      The index of the first sample in x
+     * @param n        The number of samples
+     * @param step     The stride
+     * @param xorValue The XOR value
+     * @param pattern  xorValue at every step-th index and 0 elsewhere, at least n
+     *                 long
+     */
+    void xor(short[] x, int off, int n, int step, short xorValue, short[] pattern);
+
+    /**
+     * Adds noise and clips to 16 bits.
+     *
+     * @param x     The samples
+     * @param off   The index of the first sample in x
+     * @param noise The noise per sample
+     * @param n     The number of samples
+     */
+    void addNoise(short[] x, int off, int[] noise, int n);
+
+    /**
+     * Adds noise.
+     *
+     * @param x     The samples
+     * @param noise The noise per sample
+     * @param n     The number of samples
+     */
+    void addNoise(float[] x, float[] noise, int n);
+
+    /**
+     * Multiplies the masked samples by {@code 1 - depth} and clips to 16 bits.
+     *
+     * @param x    The samples
+     * @param off  The index of the first sample in x
+     * @param mask The samples to attenuate
+     * @param base The depth ramp base
+     * @param inc  The depth ramp increment
+     * @param n    The number of samples
+     */
+    void attenuate(short[] x, int off, boolean[] mask, float base, float inc, int n);
+
+    /**
+     * Multiplies the masked samples by {@code 1 - depth}.
+     *
+     * @param x    The samples
+     * @param mask The samples to attenuate
+     * @param base The depth ramp base
+     * @param inc  The depth ramp increment
+     * @param n    The number of samples
+     */
+    void attenuate(float[] x, boolean[] mask, float base, float inc, int n);
+
+    /**
+     * Multiplies each sample by {@code 1 + mod[i] * amount} and clips to 16 bits.
+     *
+     * @param x    The samples
+     * @param off  The index of the first sample in x
+     * @param mod  The modulation per sample
+     * @param base The amount ramp base
+     * @param inc  The amount ramp increment
+     * @param n    The number of samples
+     */
+    void modulate(short[] x, int off, float[] mod, float base, float inc, int n);
+
+    /**
+     * Multiplies each sample by {@code 1 + mod[i] * amount}.
+     *
+     * @param x    The samples
+     * @param mod  The modulation per sample
+     * @param base The amount ramp base
+     * @param inc  The amount ramp increment
+     * @param n    The number of samples
+     */
+    void modulate(float[] x, float[] mod, float base, float inc, int n);
+
+    /**
+     * Returns a short name of the implementation, for logs and benchmarks.
+     *
+     * @return The name
+     */
+    String name();
+
+    /**
+     * Returns the implementation the filters use, selected once when the
+     * class loads.
+     *
+     * @return The kernels to use
+     */
+    static PointwiseKernels selected() {
+        return KernelSelector.selected();
+    }
+}
\ No newline at end of file
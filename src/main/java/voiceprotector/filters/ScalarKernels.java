@@ -0,0 +1,68 @@
+package voiceprotector.filters;
+
+import voiceprotector.AudioUtils;
+
+/**
+ * Plain Java implementation of {@link PointwiseKernels}, used when the Vector
+ * API is not available or disabled (see {@link KernelSelector}).
+ */
+class ScalarKernels implements PointwiseKernels {
+
+    @Override
+    public void xor(short[] x, int off, int n, int step, short xorValue, short[] pattern) {
+        for (int i = 0; i < n; i += step) {
+            x[off + i] = (short) (x[off + i] ^ xorValue);
+        }
+    }
+
+    @Override
+    public void addNoise(short[] x, int off, int[] noise, int n) {
+        for (int i = 0; i < n; i++) {
+            x[off + i] = AudioUtils.clip16(x[off + i] + noise[i]);
+        }
+    }
+
+    @Override
+    public void addNoise(float[] x, float[] noise, int n) {
+        for (int i = 0; i < n; i++) {
+            x[i] += noise[i];
+        }
+    }
+
+    @Override
+    public void attenuate(short[] x, int off, boolean[] mask, float base, float inc, int n) {
+        for (int i = 0; i < n; i++) {
+            if (mask[i]) {
+                x[off + i] = AudioUtils.clip16((int) (x[off + i] * (1.0f - (base + inc * (i + 1)))));
+            }
+        }
+    }
+
+    @Override
+    public void attenuate(float[] x, boolean[] mask, float base, float inc, int n) {
+        for (int i = 0; i < n; i++) {
+            if (mask[i]) {
+                x[i] *= 1.0f - (base + inc * (i + 1));
+            }
+        }
+    }
+
+    @Override
+    public void modulate(short[] x, int off, float[] mod, float base, float inc, int n) {
+        for (int i = 0; i < n; i++) {
+            x[off + i] = AudioUtils.clip16((int) (x[off + i] * (1.0f + mod[i] * (base + inc * (i + 1)))));
+        }
+    }
+
+    @Override
+    public void modulate(float[] x, float[] mod, float base, float inc, int n) {
+        for (int i = 0; i < n; i++) {
+            x[i] *= 1.0f + mod[i] * (base + inc * (i + 1));
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
\ No newline at end of file
@@ -1,6 +1,14 @@
 package voiceprotector.filters;
 
-import voiceprotector.StereoAudioFilter;
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.ChunkableStereoFilter;
+import voiceprotector.FloatStereoAudioFilter;
+import voiceprotector.InterleavedStereoFilter;
+import voiceprotector.params.ParameterSnapshot;
+import voiceprotector.params.ParameterStore;
+import voiceprotector.params.SmoothedValue;
 
 /**
  * SpectralHoleStereo is an audio filter that creates spectral "holes" in stereo
@@ -8,7 +16,18 @@ import voiceprotector.StereoAudioFilter;
  * It attenuates the audio signal for specific blocks of samples, creating a
  * comb-like frequency response.
  */
-public class SpectralHoleStereo implements StereoAudioFilter {
+public class SpectralHoleStereo implements InterleavedStereoFilter, FloatStereoAudioFilter,
+        ChunkableStereoFilter {
+
+    /**
+     * Parameter index of 'holeWidth'
+     */
+    public static final int HOLE_WIDTH = 0;
+
+    /**
+     * Parameter index of 'depth'
+     */
+    public static final int DEPTH = 1;
 
     /**
      * Indicates whether the filter is enabled or not.
@@ -16,15 +35,87 @@ public class SpectralHoleStereo implements StereoAudioFilter {
     private boolean enabled = true;
 
     /**
-     * Defines the width (in samples) of each "hole" block. Default value is 16.
+     * Published parameters. 'holeWidth' defines the width (in samples) of each
+     * "hole" block, default 16. 'depth' controls how much the audio signal is
+     * attenuated within each hole: a value between 0.0 and 1.0, with 0.0 being no
+     * attenuation and 1.0 being full attenuation.
+     */
+    private final ParameterStore params = new ParameterStore(
+            new String[] { "holeWidth", "depth" },
+            new float[] { 16, 0.3f });
+
+    /**
+     * Smoothed 'depth', owned by the audio thread
+     */
+    private final SmoothedValue depth = new SmoothedValue(params.get(DEPTH));
+
+    /**
+     * Derived table: true for every sample index inside a hole. Rebuilt only when
+     * 'holeWidth' changes or a longer block arrives.
+     */
+    private boolean[] holeMask = new boolean[0];
+
+    /**
+     * Version of 'holeWidth' the mask was built from
+     */
+    private long maskVersion = -1;
+
+    @Override
+    public ParameterStore getParameters() {
+        return params;
+    }
+
+    /**
+     * The hole mask restarts at every block; only the depth ramp is settled.
+     *
+     * @return 0
+     */
+    @Override
+    public int getWarmupFrames() {
+        return 0;
+    }
+
+    @Override
+    public void seek(long frame) {
+        depth.reset(params.get(DEPTH));
+    }
+
+    /**
+     * Allocates the hole mask for the largest block; it is filled at the first
+     * block.
+     *
+     * @param format         The processing format
+     * @param maxBlockFrames The largest block in frames
      */
-    public int holeWidth = 16; // Number of samples per "hole""
+    @Override
+    public void prepare(AudioFormat format, int maxBlockFrames) {
+        setSampleRate(format.getSampleRate());
+        if (holeMask.length < maxBlockFrames) {
+            holeMask = new boolean[maxBlockFrames];
+            maskVersion = -1;
+        }
+    }
+
     /**
-     * Controls how much the audio signal is attenuated within each hole.
-     * A value between 0.0 and 1.0, with 0.0 being no attenuation and 1.0 being full
-     * attenuation.
+     * Reads the published parameters once for the next block, rebuilds the hole
+     * mask if 'holeWidth' changed and starts ramping 'depth'.
+     *
+     * @param frames the block length in samples
      */
-    public float depth = 0.3f; // How much the sound is attenuated in the hole (0.0-1.0)
+    public void beginBlock(int frames) {
+        ParameterSnapshot p = params.snapshot();
+        if (p.version(HOLE_WIDTH) != maskVersion || holeMask.length < frames) {
+            if (holeMask.length < frames)
+                holeMask = new boolean[frames];
+            int holeWidth = Math.max(1, p.getInt(HOLE_WIDTH));
+            for (int i = 0; i < holeMask.length; i++) {
+                // Every other 'holeWidth' block is attenuated
+                holeMask[i] = (i / holeWidth) % 2 == 0;
+            }
+            maskVersion = p.version(HOLE_WIDTH);
+        }
+        depth.beginBlock(p.get(DEPTH), frames);
+    }
 
     @Override
     /**
@@ -36,19 +127,69 @@ public class SpectralHoleStereo implements StereoAudioFilter {
      *                and samples[1] contains right channel data
      */
     public void process(short[][] samples) {
-        // samples[0] = left channel, samples[1] = right channel
+        process(samples, 0, samples[0].length);
+    }
+
+    /**
+     * Creates the spectral holes in a range of each channel, as one block.
+     *
+     * @param samples planar channels
+     * @param offset  the first frame of the range
+     * @param length  the number of frames
+     */
+    @Override
+    public void process(short[][] samples, int offset, int length) {
+        beginBlock(length);
 
+        // samples[0] = left channel, samples[1] = right channel
         for (int ch = 0; ch < samples.length; ch++) {
             short[] channel = samples[ch];
 
-            for (int i = 0; i < channel.length; i++) {
-                // Every other 'holeWidth' block is attenuated
-                if ((i / holeWidth) % 2 == 0) {
-                    int v = (int) (channel[i] * (1.0f - depth));
+            PointwiseKernels.selected().attenuate(channel, offset, holeMask, depth.getRampBase(),
+                    depth.getRampIncrement(), length);
+        }
+    }
+
+    /**
+     * Checks whether the sample at the given block position lies inside a hole.
+     *
+     * @param i the sample index within the block
+     * @return true if the sample is attenuated
+     */
+    public boolean isHole(int i) {
+        return holeMask[i];
+    }
+
+    /**
+     * Attenuates a single sample by 'depth' and clips it to 16 bits. Used by the
+     * interleaved path.
+     *
+     * @param v the input sample
+     * @param i the sample index within the block (selects the ramped depth)
+     * @return the attenuated sample
+     */
+    public short attenuate(short v, int i) {
+        int a = (int) (v * (1.0f - depth.valueAt(i)));
+
+        // Clip for 16-bit
+        return AudioUtils.clip16(a);
+    }
 
-                    // Clip for 16-bit
-                    channel[i] = (short) Math.max(Math.min(v, 32767), -32768);
-                }
+    /**
+     * Creates the same spectral holes directly in interleaved PCM16 data.
+     *
+     * @param data   Interleaved little-endian PCM16 data
+     * @param length The number of valid bytes in data
+     */
+    @Override
+    public void processInterleaved(byte[] data, int length) {
+        int frames = length / 4;
+        beginBlock(frames);
+        for (int i = 0; i < frames; i++) {
+            if (holeMask[i]) {
+                int b = i * 4;
+                AudioUtils.setSample(data, b, attenuate(AudioUtils.getSample(data, b), i));
+                AudioUtils.setSample(data, b + 2, attenuate(AudioUtils.getSample(data, b + 2), i));
             }
         }
     }
@@ -57,4 +198,64 @@ public class SpectralHoleStereo implements StereoAudioFilter {
     public boolean isEnabled() {
         return enabled;
     }
+
+    @Override
+    public boolean supportsChannels(int channels) {
+        return channels > 0;
+    }
+
+    /**
+     * Float variant of {@link #process(short[][])} without intermediate clipping.
+     *
+     * @param samples planar float samples on the 16-bit scale
+     * @param frames  the number of valid samples per channel
+     */
+    @Override
+    public void processFloat(float[][] samples, int frames) {
+        beginBlock(frames);
+
+        for (int ch = 0; ch < samples.length; ch++) {
+            float[] channel = samples[ch];
+
+            PointwiseKernels.selected().attenuate(channel, holeMask, depth.getRampBase(), depth.getRampIncrement(),
+                    frames);
+        }
+    }
+
+    /**
+     * Returns the published hole width.
+     *
+     * @return the width (in samples) of each hole block
+     */
+    public int getHoleWidth() {
+        return Math.round(params.get(HOLE_WIDTH));
+    }
+
+    /**
+     * Publishes a new hole width. Takes effect at the next block.
+     *
+     * @param holeWidth the width (in samples) of each hole block, at least 1
+     */
+    public void setHoleWidth(int holeWidth) {
+        params.set(HOLE_WIDTH, holeWidth);
+    }
+
+    /**
+     * Returns the published attenuation depth.
+     *
+     * @return the depth (0.0-1.0)
+     */
+    public float getDepth() {
+        return params.get(DEPTH);
+    }
+
+    /**
+     * Publishes a new attenuation depth. The audio thread ramps to it over the
+     * next block.
+     *
+     * @param depth how much the sound is attenuated in the hole (0.0-1.0)
+     */
+    public void setDepth(float depth) {
+        params.set(DEPTH, depth);
+    }
 }
\ No newline at end of file
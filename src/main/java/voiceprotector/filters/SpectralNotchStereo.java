@@ -0,0 +1,401 @@
+package voiceprotector.filters;
+
+import java.util.Arrays;
+
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.ChunkableStereoFilter;
+import voiceprotector.FloatStereoAudioFilter;
+import voiceprotector.params.ParameterSnapshot;
+import voiceprotector.params.ParameterStore;
+import voiceprotector.spectral.StftEngine;
+
+/**
+ * SpectralNotchStereo is the frequency-domain counterpart of
+ * {@link SpectralHoleStereo}. Instead of gating alternating runs of samples, it
+ * attenuates alternating frequency bands of 'holeWidth' Hz between 'lowHz' and
+ * 'highHz', using a streaming STFT ({@link StftEngine}).
+ * <p>
+ * The filter delays the audio by {@link #getLatencyFrames()} samples (the FFT
+ * frame size).
+ * <p>
+ * One engine transforms a pair of channels at once. Blocks with more than two
+ * channels use one engine per pair; an odd last channel, or a mono block, is
+ * paired with silence.
+ */
+public class SpectralNotchStereo implements FloatStereoAudioFilter, ChunkableStereoFilter {
+
+    /**
+     * Parameter index of 'holeWidth' (Hz)
+     */
+    public static final int HOLE_WIDTH = 0;
+
+    /**
+     * Parameter index of 'depth'
+     */
+    public static final int DEPTH = 1;
+
+    /**
+     * Parameter index of 'lowHz'
+     */
+    public static final int LOW_HZ = 2;
+
+    /**
+     * Parameter index of 'highHz'
+     */
+    public static final int HIGH_HZ = 3;
+
+    /**
+     * Indicates whether the filter is enabled or not.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Published parameters. 'holeWidth' is the width of each notch band in Hz,
+     * default 250. 'depth' is the attenuation inside a notch, 0.0 (none) to 1.0
+     * (full), default 0.6. Notches alternate with untouched bands of the same
+     * width from 'lowHz' (default 300) up to 'highHz' (default 4000).
+     */
+    private final ParameterStore params = new ParameterStore(
+            new String[] { "holeWidth", "depth", "lowHz", "highHz" },
+            new float[] { 250, 0.6f, 300, 4000 });
+
+    /**
+     * The sample rate, for mapping Hz to FFT bins
+     */
+    private float sampleRate;
+
+    /**
+     * The STFT engine per channel pair, grown when a block has more channels
+     */
+    private StftEngine[] engines;
+
+    /**
+     * The channel pair handed to an engine
+     */
+    private final float[][] pair = new float[2][];
+
+    /**
+     * Silence paired with an odd last channel
+     */
+    private float[] silence = new float[0];
+
+    /**
+     * Gain per FFT bin up to size / 2, rebuilt when the parameters change
+     */
+    private float[] gains;
+
+    /**
+     * Version of the snapshot the gains were built from
+     */
+    private long gainVersion = -1;
+
+    /**
+     * Float work buffers for the 16-bit path
+     */
+    private float[][] floatBuffer = new float[2][0];
+
+    /**
+     * Creates a filter for 48 kHz with 512-sample frames and a 128-sample hop
+     * (10.7 ms latency).
+     */
+    public SpectralNotchStereo() {
+        this(48000, 512, 128);
+    }
+
+    /**
+     * Creates a filter.
+     *
+     * @param sampleRate The sample rate in Hz
+     * @param frameSize  The FFT frame size, a power of two
+     * @param hopSize    Samples between frames, at most frameSize / 2
+     */
+    public SpectralNotchStereo(float sampleRate, int frameSize, int hopSize) {
+        this.sampleRate = sampleRate;
+        this.engines = new StftEngine[] { new StftEngine(frameSize, hopSize, this::applyGains) };
+        this.gains = new float[frameSize / 2 + 1];
+    }
+
+    @Override
+    public ParameterStore getParameters() {
+        return params;
+    }
+
+    /**
+     * The STFT keeps input and overlap-add history of one frame each, so two
+     * frames of warm-up restore it exactly.
+     *
+     * @return Twice the frame size
+     */
+    @Override
+    public int getWarmupFrames() {
+        return 2 * engines[0].getFrameSize();
+    }
+
+    /**
+     * Rebuilds the engines for a new sample rate. The frame becomes the
+     * smallest power of two at least as long in time, so the bins are no wider
+     * in Hz, and the hop keeps its fraction of the frame.
+     *
+     * @param sampleRate The sample rate in Hz
+     */
+    @Override
+    public void setSampleRate(float sampleRate) {
+        if (sampleRate == this.sampleRate)
+            return;
+        StftEngine first = engines[0];
+        int scaled = (int) Math.ceil(first.getFrameSize() * sampleRate / this.sampleRate);
+        int frameSize = Math.max(4, Integer.highestOneBit(Math.max(1, scaled - 1)) << 1);
+        int hopSize = Math.max(1, frameSize * first.getHopSize() / first.getFrameSize());
+        StftEngine[] rebuilt = new StftEngine[engines.length];
+        for (int k = 0; k < rebuilt.length; k++)
+            rebuilt[k] = new StftEngine(frameSize, hopSize, this::applyGains);
+        engines = rebuilt;
+        gains = new float[frameSize / 2 + 1];
+        gainVersion = -1;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void seek(long frame) {
+        for (StftEngine engine : engines)
+            engine.reset(frame);
+    }
+
+    /**
+     * Sets the sample rate and creates the engines and buffers for the
+     * format, so the first blocks do not allocate.
+     *
+     * @param format         The processing format
+     * @param maxBlockFrames The largest block in frames
+     */
+    @Override
+    public void prepare(AudioFormat format, int maxBlockFrames) {
+        setSampleRate(format.getSampleRate());
+        int count = Math.max(1, format.getChannels());
+        if (count != 2 && engines.length < (count + 1) / 2)
+            growEngines((count + 1) / 2);
+        if (count % 2 != 0 && silence.length < maxBlockFrames)
+            silence = new float[maxBlockFrames];
+        if (floatBuffer.length != count || floatBuffer[0].length < maxBlockFrames)
+            floatBuffer = new float[count][maxBlockFrames];
+    }
+
+    /**
+     * Returns the delay this filter adds.
+     *
+     * @return The latency in samples
+     */
+    @Override
+    public int getLatencyFrames() {
+        return engines[0].getLatencyFrames();
+    }
+
+    /**
+     * Rebuilds the per-bin gains if any parameter changed. Gains change at frame
+     * boundaries, and the overlap-add crossfades between frames.
+     *
+     * @param frames the block length in samples
+     */
+    public void beginBlock(int frames) {
+        ParameterSnapshot p = params.snapshot();
+        if (p.version() == gainVersion)
+            return;
+
+        int size = engines[0].getFrameSize();
+        float binHz = sampleRate / size;
+        float width = Math.max(binHz, p.get(HOLE_WIDTH));
+        float low = p.get(LOW_HZ);
+        float high = p.get(HIGH_HZ);
+        float notch = 1.0f - Math.max(0f, Math.min(1f, p.get(DEPTH)));
+
+        for (int k = 0; k < gains.length; k++) {
+            float hz = k * binHz;
+            // Every other 'holeWidth' band from lowHz up is a notch
+            boolean hole = hz >= low && hz < high && ((int) ((hz - low) / width)) % 2 == 0;
+            gains[k] = hole ? notch : 1.0f;
+        }
+        gainVersion = p.version();
+    }
+
+    /**
+     * Multiplies each bin and its mirror by the bin's gain, which notches both
+     * channels of the packed spectrum.
+     *
+     * @param re   The real parts
+     * @param im   The imaginary parts
+     * @param size The FFT size
+     */
+    private void applyGains(float[] re, float[] im, int size) {
+        int half = size / 2;
+        re[0] *= gains[0];
+        im[0] *= gains[0];
+        for (int k = 1; k < half; k++) {
+            float g = gains[k];
+            re[k] *= g;
+            im[k] *= g;
+            re[size - k] *= g;
+            im[size - k] *= g;
+        }
+        re[half] *= gains[half];
+        im[half] *= gains[half];
+    }
+
+    /**
+     * Processes stereo audio samples through the STFT notch filter.
+     *
+     * @param samples a 2D array of short values where samples[0] contains left
+     *                channel data and samples[1] contains right channel data
+     */
+    @Override
+    public void process(short[][] samples) {
+        process(samples, 0, samples[0].length);
+    }
+
+    /**
+     * Processes a range of the arrays through the conversion buffer, without
+     * copying the range out first.
+     *
+     * @param samples One array per channel
+     * @param offset  The first frame of the range
+     * @param length  The number of frames
+     */
+    @Override
+    public void process(short[][] samples, int offset, int length) {
+        if (floatBuffer.length != samples.length || floatBuffer[0].length < length)
+            floatBuffer = new float[samples.length][length];
+
+        AudioUtils.toFloat(samples, offset, floatBuffer, length);
+        processFloat(floatBuffer, length);
+        AudioUtils.toShort(floatBuffer, samples, offset, length);
+    }
+
+    /**
+     * Processes planar float samples through the STFT notch filter.
+     *
+     * @param samples planar float samples on the 16-bit scale
+     * @param frames  the number of valid samples per channel
+     */
+    @Override
+    public void processFloat(float[][] samples, int frames) {
+        beginBlock(frames);
+        if (samples.length == 2) {
+            engines[0].process(samples, frames);
+            return;
+        }
+
+        int pairs = (samples.length + 1) / 2;
+        if (engines.length < pairs)
+            growEngines(pairs);
+        for (int k = 0; k < pairs; k++) {
+            pair[0] = samples[2 * k];
+            if (2 * k + 1 < samples.length) {
+                pair[1] = samples[2 * k + 1];
+            } else {
+                if (silence.length < frames)
+                    silence = new float[frames];
+                Arrays.fill(silence, 0, frames, 0f);
+                pair[1] = silence;
+            }
+            engines[k].process(pair, frames);
+        }
+        pair[0] = pair[1] = null;
+    }
+
+    /**
+     * Adds engines so that every channel pair of a block has one. The new
+     * engines start with empty history.
+     *
+     * @param count The number of engines needed
+     */
+    private void growEngines(int count) {
+        StftEngine first = engines[0];
+        StftEngine[] grown = Arrays.copyOf(engines, count);
+        for (int k = engines.length; k < count; k++)
+            grown[k] = new StftEngine(first.getFrameSize(), first.getHopSize(), this::applyGains);
+        engines = grown;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public boolean supportsChannels(int channels) {
+        return channels > 0;
+    }
+
+    /**
+     * Returns the published notch width.
+     *
+     * @return the width of each notch band in Hz
+     */
+    public float getHoleWidth() {
+        return params.get(HOLE_WIDTH);
+    }
+
+    /**
+     * Publishes a new notch width.
+     *
+     * @param holeWidth the width of each notch band in Hz
+     */
+    public void setHoleWidth(float holeWidth) {
+        params.set(HOLE_WIDTH, holeWidth);
+    }
+
+    /**
+     * Returns the published depth.
+     *
+     * @return the attenuation inside a notch (0.0-1.0)
+     */
+    public float getDepth() {
+        return params.get(DEPTH);
+    }
+
+    /**
+     * Publishes a new depth.
+     *
+     * @param depth the attenuation inside a notch (0.0-1.0)
+     */
+    public void setDepth(float depth) {
+        params.set(DEPTH, depth);
+    }
+
+    /**
+     * Returns the lower edge of the notched range.
+     *
+     * @return the frequency in Hz
+     */
+    public float getLowHz() {
+        return params.get(LOW_HZ);
+    }
+
+    /**
+     * Publishes the lower edge of the notched range.
+     *
+     * @param lowHz the frequency in Hz
+     */
+    public void setLowHz(float lowHz) {
+        params.set(LOW_HZ, lowHz);
+    }
+
+    /**
+     * Returns the upper edge of the notched range.
+     *
+     * @return the frequency in Hz
+     */
+    public float getHighHz() {
+        return params.get(HIGH_HZ);
+    }
+
+    /**
+     * Publishes the upper edge of the notched range.
+     *
+     * @param highHz the frequency in Hz
+     */
+    public void setHighHz(float highHz) {
+        params.set(HIGH_HZ, highHz);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,217 @@
+package voiceprotector.filters;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import voiceprotector.AudioUtils;
+
+/**
+ * {@link PointwiseKernels} on the incubating Vector API. Samples are widened to
+ * float (or int) lanes, processed with the same operations in the same order as
+ * {@link ScalarKernels}, clamped and narrowed back, so results are bit-identical.
+ * Remaining samples after the last full vector use the scalar code.
+ * <p>
+ * Only conversions the JDK 17 compiler turns into vector instructions are
+ * used: short to int and back between the half-width and the full-width
+ * shape, and int to float within one shape. Float to int is not among them
+ * (it falls back to boxed vectors), so float lanes are clamped to 16 bits,
+ * truncated with {@link #MAGIC} and reinterpreted as ints instead. No vector is
+ * passed to or returned from a helper method, since a helper the compiler does
+ * not inline boxes its vectors too.
+ * <p>
+ * Only loaded by {@link KernelSelector}, by name, so the scalar path never
+ * links against the incubator module; never referenced directly.
+ */
+class VectorKernels implements PointwiseKernels {
+
+    /**
+     * Float lanes at the preferred width
+     */
+    private static final VectorSpecies<Float> F = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * Int lanes, same count as F
+     */
+    private static final VectorSpecies<Integer> I = VectorSpecies.of(int.class, F.vectorShape());
+
+    /**
+     * Short lanes, same count as F
+     */
+    private static final VectorSpecies<Short> S = VectorSpecies.of(short.class,
+            VectorShape.forBitSize(F.vectorBitSize() / 2));
+
+    /**
+     * Short lanes at the preferred width, for the XOR kernel
+     */
+    private static final VectorSpecies<Short> SX = ShortVector.SPECIES_PREFERRED;
+
+    /**
+     * 1.5 * 2^23: adding it rounds a float below 2^22 in magnitude to an
+     * integer, which then sits in the low mantissa bits
+     */
+    private static final float MAGIC = 12582912f;
+
+    /**
+     * The bits of {@link #MAGIC}
+     */
+    private static final int MAGIC_BITS = Float.floatToRawIntBits(MAGIC);
+
+    /**
+     * 0, 1, 2, ... for computing ramp positions
+     */
+    private static final float[] IOTA = new float[F.length()];
+
+    static {
+        for (int i = 0; i < IOTA.length; i++)
+            IOTA[i] = i;
+    }
+
+    /**
+     * Creates the kernels.
+     *
+     * @throws IllegalStateException If vectors are too narrow to pay off
+     */
+    VectorKernels() {
+        if (F.length() < 4)
+            throw new IllegalStateException("No usable vector width");
+    }
+
+    @Override
+    public void xor(short[] x, int off, int n, int step, short xorValue, short[] pattern) {
+        int bound = SX.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += SX.length()) {
+            ShortVector.fromArray(SX, x, off + i).lanewise(VectorOperators.XOR, ShortVector.fromArray(SX, pattern, i))
+                    .intoArray(x, off + i);
+        }
+        for (; i < n; i++) {
+            x[off + i] = (short) (x[off + i] ^ pattern[i]);
+        }
+    }
+
+    @Override
+    public void addNoise(short[] x, int off, int[] noise, int n) {
+        int bound = S.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += S.length()) {
+            IntVector v = (IntVector) ShortVector.fromArray(S, x, off + i).convertShape(VectorOperators.S2I, I, 0);
+            ((ShortVector) v.add(IntVector.fromArray(I, noise, i)).max(-32768).min(32767)
+                    .convertShape(VectorOperators.I2S, S, 0)).intoArray(x, off + i);
+        }
+        for (; i < n; i++) {
+            x[off + i] = AudioUtils.clip16(x[off + i] + noise[i]);
+        }
+    }
+
+    @Override
+    public void addNoise(float[] x, float[] noise, int n) {
+        int bound = F.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += F.length()) {
+            FloatVector.fromArray(F, x, i).add(FloatVector.fromArray(F, noise, i)).intoArray(x, i);
+        }
+        for (; i < n; i++) {
+            x[i] += noise[i];
+        }
+    }
+
+    @Override
+    public void attenuate(short[] x, int off, boolean[] mask, float base, float inc, int n) {
+        int bound = S.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += S.length()) {
+            VectorMask<Short> m = VectorMask.fromArray(S, mask, i);
+            if (!m.anyTrue())
+                continue;
+            ShortVector v = ShortVector.fromArray(S, x, off + i);
+            FloatVector ramp = inc == 0f ? FloatVector.broadcast(F, base)
+                    : FloatVector.fromArray(F, IOTA, 0).add(i + 1).mul(inc).add(base);
+            FloatVector gain = FloatVector.broadcast(F, 1.0f).sub(ramp);
+
+            // (short) clip16((int) (x * gain)), see the class comment
+            FloatVector p = ((FloatVector) ((IntVector) v.convertShape(VectorOperators.S2I, I, 0))
+                    .convert(VectorOperators.I2F, 0)).mul(gain).max(-32768f).min(32767f);
+            FloatVector r = p.add(MAGIC).sub(MAGIC);
+            r = r.sub(1f, r.compare(VectorOperators.GT, p).and(p.compare(VectorOperators.GE, 0f)))
+                    .add(1f, r.compare(VectorOperators.LT, p).and(p.compare(VectorOperators.LT, 0f)));
+            ShortVector out = (ShortVector) r.add(MAGIC).reinterpretAsInts().sub(MAGIC_BITS)
+                    .convertShape(VectorOperators.I2S, S, 0);
+            v.blend(out, m).intoArray(x, off + i);
+        }
+        for (; i < n; i++) {
+            if (mask[i]) {
+                x[off + i] = AudioUtils.clip16((int) (x[off + i] * (1.0f - (base + inc * (i + 1)))));
+            }
+        }
+    }
+
+    @Override
+    public void attenuate(float[] x, boolean[] mask, float base, float inc, int n) {
+        int bound = F.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += F.length()) {
+            VectorMask<Float> m = VectorMask.fromArray(F, mask, i);
+            if (!m.anyTrue())
+                continue;
+            FloatVector v = FloatVector.fromArray(F, x, i);
+            FloatVector ramp = inc == 0f ? FloatVector.broadcast(F, base)
+                    : FloatVector.fromArray(F, IOTA, 0).add(i + 1).mul(inc).add(base);
+            FloatVector gain = FloatVector.broadcast(F, 1.0f).sub(ramp);
+            v.blend(v.mul(gain), m).intoArray(x, i);
+        }
+        for (; i < n; i++) {
+            if (mask[i]) {
+                x[i] *= 1.0f - (base + inc * (i + 1));
+            }
+        }
+    }
+
+    @Override
+    public void modulate(short[] x, int off, float[] mod, float base, float inc, int n) {
+        int bound = S.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += S.length()) {
+            FloatVector ramp = inc == 0f ? FloatVector.broadcast(F, base)
+                    : FloatVector.fromArray(F, IOTA, 0).add(i + 1).mul(inc).add(base);
+            FloatVector gain = FloatVector.fromArray(F, mod, i).mul(ramp).add(1.0f);
+
+            // (short) clip16((int) (x * gain)), see the class comment
+            FloatVector p = ((FloatVector) ((IntVector) ShortVector.fromArray(S, x, off + i)
+                    .convertShape(VectorOperators.S2I, I, 0)).convert(VectorOperators.I2F, 0))
+                    .mul(gain).max(-32768f).min(32767f);
+            FloatVector r = p.add(MAGIC).sub(MAGIC);
+            r = r.sub(1f, r.compare(VectorOperators.GT, p).and(p.compare(VectorOperators.GE, 0f)))
+                    .add(1f, r.compare(VectorOperators.LT, p).and(p.compare(VectorOperators.LT, 0f)));
+            ((ShortVector) r.add(MAGIC).reinterpretAsInts().sub(MAGIC_BITS).convertShape(VectorOperators.I2S, S, 0))
+                    .intoArray(x, off + i);
+        }
+        for (; i < n; i++) {
+            x[off + i] = AudioUtils.clip16((int) (x[off + i] * (1.0f + mod[i] * (base + inc * (i + 1)))));
+        }
+    }
+
+    @Override
+    public void modulate(float[] x, float[] mod, float base, float inc, int n) {
+        int bound = F.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += F.length()) {
+            FloatVector ramp = inc == 0f ? FloatVector.broadcast(F, base)
+                    : FloatVector.fromArray(F, IOTA, 0).add(i + 1).mul(inc).add(base);
+            FloatVector gain = FloatVector.fromArray(F, mod, i).mul(ramp).add(1.0f);
+            FloatVector.fromArray(F, x, i).mul(gain).intoArray(x, i);
+        }
+        for (; i < n; i++) {
+            x[i] *= 1.0f + mod[i] * (base + inc * (i + 1));
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector-" + F.vectorBitSize();
+    }
+}
\ No newline at end of file
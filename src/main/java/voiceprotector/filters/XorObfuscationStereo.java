@@ -1,6 +1,13 @@
 package voiceprotector.filters;
 
-import voiceprotector.StereoAudioFilter;
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.ChunkableStereoFilter;
+import voiceprotector.FloatStereoAudioFilter;
+import voiceprotector.InterleavedStereoFilter;
+import voiceprotector.params.ParameterSnapshot;
+import voiceprotector.params.ParameterStore;
 
 /**
  * XorObfuscationStereo applies a simple XOR obfuscation to stereo audio
@@ -9,7 +16,18 @@ import voiceprotector.StereoAudioFilter;
  * with a specified value,
  * which can be used for basic audio obfuscation or encryption purposes.
  */
-public class XorObfuscationStereo implements StereoAudioFilter {
+public class XorObfuscationStereo implements InterleavedStereoFilter, FloatStereoAudioFilter,
+        ChunkableStereoFilter {
+
+    /**
+     * Parameter index of 'step'
+     */
+    public static final int STEP = 0;
+
+    /**
+     * Parameter index of 'xorValue'
+     */
+    public static final int XOR_VALUE = 1;
 
     /**
      * Indicates whether the filter is enabled or not.
@@ -17,33 +35,158 @@ public class XorObfuscationStereo implements StereoAudioFilter {
     public boolean enabled = true;
 
     /**
-     * Defines how often (in steps) to apply the XOR obfuscation. Default value is
-     * 4.
+     * Published parameters. 'step' defines how often (in steps) to apply the XOR
+     * obfuscation, default 4. 'xorValue' is the XOR value used for obfuscating
+     * samples; a high value is 0x1327, but it can be adjusted as needed.
+     */
+    private final ParameterStore params = new ParameterStore(
+            new String[] { "step", "xorValue" },
+            new float[] { 4, 0x00 });
+
+    /**
+     * 'step' latched for the current block
+     */
+    private int step = 4;
+
+    /**
+     * 'xorValue' latched for the current block
+     */
+    private int xorValue = 0x00;
+
+    /**
+     * xorValue at every step-th index and 0 elsewhere, for the vectorized kernel
      */
-    public int step = 4;
+    private short[] pattern = new short[0];
 
     /**
-     * The XOR value used for obfuscating samples. A high value is 0x1327, but it
-     * can be adjusted as needed.
+     * The step and xorValue the pattern was built for
      */
-    public int xorValue = 0x00;
+    private int patternStep = -1, patternValue;
+
+    @Override
+    public ParameterStore getParameters() {
+        return params;
+    }
+
+    /**
+     * The XOR pattern restarts at every block, so there is no state to hand over.
+     *
+     * @return 0
+     */
+    @Override
+    public int getWarmupFrames() {
+        return 0;
+    }
+
+    @Override
+    public void seek(long frame) {
+    }
+
+    /**
+     * Allocates the pattern for the largest block; it is filled at the first
+     * block.
+     *
+     * @param format         The processing format
+     * @param maxBlockFrames The largest block in frames
+     */
+    @Override
+    public void prepare(AudioFormat format, int maxBlockFrames) {
+        setSampleRate(format.getSampleRate());
+        if (pattern.length < maxBlockFrames) {
+            pattern = new short[maxBlockFrames];
+            patternStep = -1;
+        }
+    }
+
+    /**
+     * Latches the published parameters for the next block. Both parameters are
+     * discrete, so they switch at the block boundary.
+     *
+     * @param frames the block length in samples
+     */
+    public void beginBlock(int frames) {
+        ParameterSnapshot p = params.snapshot();
+        step = Math.max(1, p.getInt(STEP));
+        xorValue = p.getInt(XOR_VALUE);
+        if (pattern.length < frames || patternStep != step || patternValue != xorValue) {
+            if (pattern.length < frames)
+                pattern = new short[frames];
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = isStep(i) ? (short) xorValue : 0;
+            }
+            patternStep = step;
+            patternValue = xorValue;
+        }
+    }
 
     @Override
     /**
      * Processes stereo audio samples by applying XOR obfuscation to every 'step'th
-     * sample in both channels.
+     * sample in every channel.
      *
      * @param samples a 2D array of short values where samples[0] contains left
      *                channel data
-     *                and samples[1] contains right channel data
+     *                and samples[1] contains right channel data (or any number
+     *                of planar channels)
      */
     public void process(short[][] samples) {
-        short[] L = samples[0];
-        short[] R = samples[1];
+        process(samples, 0, samples[0].length);
+    }
+
+    /**
+     * Applies the XOR obfuscation to a range of each channel, as one block.
+     *
+     * @param samples planar channels
+     * @param offset  the first frame of the range
+     * @param length  the number of frames
+     */
+    @Override
+    public void process(short[][] samples, int offset, int length) {
+        beginBlock(length);
 
-        for (int i = 0; i < L.length; i += step) {
-            L[i] ^= xorValue;
-            R[i] ^= xorValue;
+        for (short[] channel : samples)
+            PointwiseKernels.selected().xor(channel, offset, length, step, (short) xorValue, pattern);
+    }
+
+    @Override
+    public boolean supportsChannels(int channels) {
+        return channels > 0;
+    }
+
+    /**
+     * Checks whether the sample at the given block position is obfuscated.
+     *
+     * @param i the sample index within the block
+     * @return true for every 'step'th sample
+     */
+    public boolean isStep(int i) {
+        return i % step == 0;
+    }
+
+    /**
+     * Applies the XOR obfuscation to a single sample. Used by the interleaved
+     * and the float path.
+     *
+     * @param v the sample to obfuscate
+     * @return the obfuscated sample
+     */
+    public short xorSample(short v) {
+        return (short) (v ^ xorValue);
+    }
+
+    /**
+     * Applies the same XOR obfuscation directly to interleaved PCM16 data.
+     *
+     * @param data   Interleaved little-endian PCM16 data
+     * @param length The number of valid bytes in data
+     */
+    @Override
+    public void processInterleaved(byte[] data, int length) {
+        beginBlock(length / 4);
+        int stride = step * 4;
+        for (int i = 0; i + 3 < length; i += stride) {
+            AudioUtils.setSample(data, i, xorSample(AudioUtils.getSample(data, i)));
+            AudioUtils.setSample(data, i + 2, xorSample(AudioUtils.getSample(data, i + 2)));
         }
     }
 
@@ -51,4 +194,58 @@ public class XorObfuscationStereo implements StereoAudioFilter {
     public boolean isEnabled() {
         return enabled;
     }
-}
+
+    /**
+     * Float variant of {@link #process(short[][])}. XOR is an integer operation,
+     * so only the affected samples are quantized to 16 bits.
+     *
+     * @param samples planar float samples on the 16-bit scale
+     * @param frames  the number of valid samples per channel
+     */
+    @Override
+    public void processFloat(float[][] samples, int frames) {
+        beginBlock(frames);
+
+        for (float[] channel : samples) {
+            for (int i = 0; i < frames; i += step) {
+                channel[i] = xorSample(AudioUtils.quantize16(channel[i]));
+            }
+        }
+    }
+
+    /**
+     * Returns the published step.
+     *
+     * @return how often (in samples) the XOR is applied
+     */
+    public int getStep() {
+        return Math.round(params.get(STEP));
+    }
+
+    /**
+     * Publishes a new step. Takes effect at the next block.
+     *
+     * @param step how often (in samples) to apply the XOR, at least 1
+     */
+    public void setStep(int step) {
+        params.set(STEP, step);
+    }
+
+    /**
+     * Returns the published XOR value.
+     *
+     * @return the XOR value
+     */
+    public int getXorValue() {
+        return Math.round(params.get(XOR_VALUE));
+    }
+
+    /**
+     * Publishes a new XOR value. Takes effect at the next block.
+     *
+     * @param xorValue the XOR value (0..0xFFFF)
+     */
+    public void setXorValue(int xorValue) {
+        params.set(XOR_VALUE, xorValue);
+    }
+}
\ No newline at end of file
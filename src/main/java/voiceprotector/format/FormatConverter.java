@@ -0,0 +1,137 @@
+package voiceprotector.format;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * FormatConverter bridges two signed PCM formats in a stream: it decodes the
+ * source bytes ({@link PcmCodec}), maps the channels, resamples if the rates
+ * differ ({@link PolyphaseResampler}) and encodes the result in the target
+ * format. The live loop uses one converter from the capture device to the
+ * processing format and one from the processing format to the playback
+ * device.
+ * <p>
+ * Work buffers grow to the largest block seen; after that, converting does not
+ * allocate.
+ */
+public final class FormatConverter {
+
+    /**
+     * Decoder of the source format
+     */
+    private final PcmCodec from;
+
+    /**
+     * Encoder of the target format
+     */
+    private final PcmCodec to;
+
+    /**
+     * The resampler, null if both rates are equal
+     */
+    private final PolyphaseResampler resampler;
+
+    /**
+     * Output frames per input frame
+     */
+    private final double ratio;
+
+    /**
+     * Decoded samples with the target's channels
+     */
+    private float[][] decoded;
+
+    /**
+     * Resampled samples
+     */
+    private float[][] resampled;
+
+    /**
+     * Creates a converter.
+     *
+     * @param from The source format
+     * @param to   The target format
+     * @throws IllegalArgumentException If a format is not supported by
+     *                                  {@link PcmCodec}
+     */
+    public FormatConverter(AudioFormat from, AudioFormat to) {
+        this.from = new PcmCodec(from);
+        this.to = new PcmCodec(to);
+        int inRate = Math.round(from.getSampleRate());
+        int outRate = Math.round(to.getSampleRate());
+        this.resampler = inRate == outRate ? null : new PolyphaseResampler(inRate, outRate, to.getChannels());
+        this.ratio = outRate / (double) inRate;
+        this.decoded = new float[to.getChannels()][0];
+        this.resampled = new float[to.getChannels()][0];
+    }
+
+    /**
+     * Checks whether two formats hold identical bytes, so no converter is
+     * needed.
+     *
+     * @param a A format
+     * @param b Another format
+     * @return true if encoding, rate, sample size, channels and byte order match
+     */
+    public static boolean isIdentity(AudioFormat a, AudioFormat b) {
+        return a.getEncoding().equals(b.getEncoding()) && a.getSampleRate() == b.getSampleRate()
+                && a.getSampleSizeInBits() == b.getSampleSizeInBits() && a.getChannels() == b.getChannels()
+                && (a.getSampleSizeInBits() <= 8 || a.isBigEndian() == b.isBigEndian());
+    }
+
+    /**
+     * Returns the largest output a block can produce.
+     *
+     * @param inputBytes The input block length in bytes
+     * @return An upper bound of the output bytes
+     */
+    public int maxOutputBytes(int inputBytes) {
+        int frames = inputBytes / from.getFrameBytes();
+        int out = resampler == null ? frames : resampler.maxOutputFrames(frames);
+        return out * to.getFrameBytes();
+    }
+
+    /**
+     * Converts one block.
+     *
+     * @param in     Source bytes, whole frames
+     * @param length The number of valid bytes in in
+     * @param out    Target bytes, at least {@link #maxOutputBytes(int)} long
+     * @return The number of bytes written to out
+     */
+    public int convert(byte[] in, int length, byte[] out) {
+        int frames = length / from.getFrameBytes();
+        if (decoded[0].length < frames)
+            decoded = new float[decoded.length][frames];
+        from.decode(in, 0, frames, decoded);
+
+        if (resampler == null) {
+            to.encode(decoded, frames, out, 0);
+            return frames * to.getFrameBytes();
+        }
+
+        int max = resampler.maxOutputFrames(frames);
+        if (resampled[0].length < max)
+            resampled = new float[resampled.length][max];
+        int n = resampler.process(decoded, frames, resampled);
+        to.encode(resampled, n, out, 0);
+        return n * to.getFrameBytes();
+    }
+
+    /**
+     * Returns the delay the resampler adds.
+     *
+     * @return The delay in target frames, 0 without resampling
+     */
+    public int getLatencyFrames() {
+        return resampler == null ? 0 : resampler.getLatencyFrames();
+    }
+
+    /**
+     * Returns the ratio of the target rate to the source rate.
+     *
+     * @return Output frames per input frame
+     */
+    public double getRatio() {
+        return ratio;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,181 @@
+package voiceprotector.format;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * PcmCodec converts between the interleaved signed PCM bytes of a device
+ * format (8, 16, 24 or 32 bits, either byte order, any channel count) and the
+ * planar float samples used for processing, which keep the 16-bit scale
+ * (-32768..32767) whatever the device bit depth.
+ * <p>
+ * The device and the planar side may have different channel counts. Missing
+ * channels repeat the last available one (a mono device feeds both processing
+ * channels), a mono side receives the average of the first two channels, and
+ * further device channels are dropped or repeat the last processing channel.
+ */
+public final class PcmCodec {
+
+    /**
+     * Bytes per sample
+     */
+    private final int bytes;
+
+    /**
+     * Channels per device frame
+     */
+    private final int channels;
+
+    /**
+     * Whether the most significant byte comes first
+     */
+    private final boolean bigEndian;
+
+    /**
+     * Converts a device sample to the 16-bit scale
+     */
+    private final float toFloat;
+
+    /**
+     * Converts the 16-bit scale to a device sample
+     */
+    private final float fromFloat;
+
+    /**
+     * Smallest and largest device sample
+     */
+    private final long min, max;
+
+    /**
+     * Creates a codec.
+     *
+     * @param format The device format, signed PCM with whole bytes per sample
+     * @throws IllegalArgumentException If the format is not supported
+     */
+    public PcmCodec(AudioFormat format) {
+        if (!isSupported(format))
+            throw new IllegalArgumentException("Unsupported PCM format: " + format);
+        int bits = format.getSampleSizeInBits();
+        this.bytes = bits / 8;
+        this.channels = format.getChannels();
+        this.bigEndian = format.isBigEndian();
+        this.toFloat = (float) Math.pow(2, 16 - bits);
+        this.fromFloat = (float) Math.pow(2, bits - 16);
+        this.max = (1L << (bits - 1)) - 1;
+        this.min = -(1L << (bits - 1));
+    }
+
+    /**
+     * Checks whether a format can be converted.
+     *
+     * @param format The format
+     * @return true for signed PCM with 8, 16, 24 or 32 bits and at least one
+     *         channel
+     */
+    public static boolean isSupported(AudioFormat format) {
+        int bits = format.getSampleSizeInBits();
+        return format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED && format.getChannels() > 0
+                && (bits == 8 || bits == 16 || bits == 24 || bits == 32);
+    }
+
+    /**
+     * Returns the size of one device frame.
+     *
+     * @return Bytes per frame
+     */
+    public int getFrameBytes() {
+        return bytes * channels;
+    }
+
+    /**
+     * Returns the number of device channels.
+     *
+     * @return Channels per frame
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Decodes device frames into planar float samples.
+     *
+     * @param data   Interleaved device bytes
+     * @param offset The offset of the first frame in data
+     * @param frames The number of frames
+     * @param out    Planar destination, one array per processing channel
+     */
+    public void decode(byte[] data, int offset, int frames, float[][] out) {
+        int frameBytes = getFrameBytes();
+        if (out.length == 1 && channels >= 2) {
+            float[] dst = out[0];
+            for (int i = 0, b = offset; i < frames; i++, b += frameBytes)
+                dst[i] = 0.5f * (read(data, b) + read(data, b + bytes)) * toFloat;
+            return;
+        }
+        for (int ch = 0; ch < out.length; ch++) {
+            float[] dst = out[ch];
+            int src = Math.min(ch, channels - 1);
+            for (int i = 0, b = offset + src * bytes; i < frames; i++, b += frameBytes)
+                dst[i] = read(data, b) * toFloat;
+        }
+    }
+
+    /**
+     * Quantizes planar float samples once, with rounding and clipping to the
+     * device bit depth, and encodes them as device frames.
+     *
+     * @param in     Planar source, one array per processing channel
+     * @param frames The number of frames
+     * @param data   Interleaved device bytes
+     * @param offset The offset of the first frame in data
+     */
+    public void encode(float[][] in, int frames, byte[] data, int offset) {
+        int frameBytes = getFrameBytes();
+        for (int ch = 0; ch < channels; ch++) {
+            float[] src = in[Math.min(ch, in.length - 1)];
+            float[] other = in.length >= 2 && channels == 1 ? in[1] : null;
+            for (int i = 0, b = offset + ch * bytes; i < frames; i++, b += frameBytes) {
+                float v = other == null ? src[i] : 0.5f * (src[i] + other[i]);
+                long q = Math.round((double) v * fromFloat);
+                write(data, b, Math.max(min, Math.min(max, q)));
+            }
+        }
+    }
+
+    /**
+     * Reads one sample.
+     *
+     * @param data The bytes
+     * @param b    The offset of the sample
+     * @return The signed sample value
+     */
+    private int read(byte[] data, int b) {
+        int v = 0;
+        if (bigEndian) {
+            for (int k = 0; k < bytes; k++)
+                v = (v << 8) | (data[b + k] & 0xFF);
+        } else {
+            for (int k = bytes - 1; k >= 0; k--)
+                v = (v << 8) | (data[b + k] & 0xFF);
+        }
+        // Sign-extend from the sample width
+        int shift = 32 - 8 * bytes;
+        return (v << shift) >> shift;
+    }
+
+    /**
+     * Writes one sample.
+     *
+     * @param data The bytes
+     * @param b    The offset of the sample
+     * @param v    The sample value, within the device range
+     */
+    private void write(byte[] data, int b, long v) {
+        if (bigEndian) {
+            for (int k = bytes - 1; k >= 0; k--, v >>= 8)
+                data[b + k] = (byte) v;
+        } else {
+            for (int k = 0; k < bytes; k++, v >>= 8)
+                data[b + k] = (byte) v;
+        }
+    }
+}
\ No newline at end of file
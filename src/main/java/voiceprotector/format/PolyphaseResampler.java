@@ -0,0 +1,264 @@
+package voiceprotector.format;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PolyphaseResampler converts planar float audio between two sample rates with
+ * a rational ratio {@code up / down} (both reduced by their greatest common
+ * divisor, e.g. 160 / 147 for 44.1 to 48 kHz and 1 / 3 for 48 to 16 kHz).
+ * <p>
+ * The anti-aliasing low-pass is a Kaiser-windowed sinc at the upsampled rate,
+ * split into {@code up} phases. Each output sample is a single dot product of
+ * one phase with the most recent input samples, so only the outputs that are
+ * kept are computed and the zeros of the upsampled signal are never touched.
+ * Input of any block length is accepted; the filter history carries over
+ * between blocks, so the output does not depend on how the stream is cut.
+ * <p>
+ * The coefficient tables depend only on the two rates and are built once per
+ * rate pair and shared by all resamplers. Processing does not allocate once
+ * the largest block has been seen.
+ */
+public final class PolyphaseResampler {
+
+    /**
+     * Filter taps per phase when not decimating; decimation by d uses d times as
+     * many so the cutoff keeps the same steepness
+     */
+    public static final int TAPS = 24;
+
+    /**
+     * Passband edge as a fraction of the lower Nyquist frequency
+     */
+    private static final double ROLLOFF = 0.92;
+
+    /**
+     * Kaiser window shape (about 80 dB stopband attenuation)
+     */
+    private static final double BETA = 8.0;
+
+    /**
+     * Coefficient tables by rate pair
+     */
+    private static final Map<Long, float[][]> TABLES = new ConcurrentHashMap<>();
+
+    /**
+     * The input and output rates in Hz
+     */
+    private final int inputRate, outputRate;
+
+    /**
+     * Interpolation and decimation factors
+     */
+    private final int up, down;
+
+    /**
+     * Filter taps per phase
+     */
+    private final int taps;
+
+    /**
+     * phases[p][k] weights the input k samples before the newest one for an
+     * output at phase p
+     */
+    private final float[][] phases;
+
+    /**
+     * Per channel, taps - 1 samples of history followed by the current block
+     */
+    private float[][] buffer;
+
+    /**
+     * Index into the buffer of the newest input sample of the next output
+     */
+    private int position;
+
+    /**
+     * Phase of the next output, 0 to up - 1
+     */
+    private int phase;
+
+    /**
+     * Creates a resampler.
+     *
+     * @param inputRate  The input sample rate in Hz
+     * @param outputRate The output sample rate in Hz
+     * @param channels   The number of channels
+     * @throws IllegalArgumentException If a rate or the channel count is not
+     *                                  positive
+     */
+    public PolyphaseResampler(int inputRate, int outputRate, int channels) {
+        if (inputRate <= 0 || outputRate <= 0 || channels <= 0)
+            throw new IllegalArgumentException(
+                    "Invalid resampler " + inputRate + " -> " + outputRate + " Hz, " + channels + " channels");
+        int g = gcd(inputRate, outputRate);
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.up = outputRate / g;
+        this.down = inputRate / g;
+        this.phases = TABLES.computeIfAbsent(((long) inputRate << 32) | outputRate, k -> design(up, down));
+        this.taps = phases[0].length;
+        this.buffer = new float[channels][taps - 1];
+        this.position = taps - 1;
+    }
+
+    /**
+     * Designs the polyphase filter bank.
+     *
+     * @param up   The interpolation factor
+     * @param down The decimation factor
+     * @return The phases, each normalized to unity DC gain
+     */
+    private static float[][] design(int up, int down) {
+        int taps = TAPS * Math.max(1, (down + up - 1) / up);
+        int length = taps * up;
+        // Cutoff relative to the upsampled rate
+        double cutoff = 0.5 * ROLLOFF / Math.max(up, down);
+        double center = (length - 1) / 2.0;
+        double norm = besselI0(BETA);
+
+        float[][] phases = new float[up][taps];
+        for (int p = 0; p < up; p++) {
+            double sum = 0;
+            double[] h = new double[taps];
+            for (int k = 0; k < taps; k++) {
+                int j = p + k * up;
+                double x = j - center;
+                double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+                double r = x / (center + 0.5);
+                double window = besselI0(BETA * Math.sqrt(Math.max(0, 1 - r * r))) / norm;
+                h[k] = sinc * window;
+                sum += h[k];
+            }
+            for (int k = 0; k < taps; k++)
+                phases[p][k] = (float) (h[k] / sum);
+        }
+        return phases;
+    }
+
+    /**
+     * Computes the zeroth-order modified Bessel function of the first kind.
+     *
+     * @param x The argument
+     * @return I0(x)
+     */
+    private static double besselI0(double x) {
+        double sum = 1, term = 1, q = x * x / 4;
+        for (int k = 1; k < 50 && term > 1e-12 * sum; k++) {
+            term *= q / ((double) k * k);
+            sum += term;
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the greatest common divisor.
+     *
+     * @param a A positive number
+     * @param b A positive number
+     * @return gcd(a, b)
+     */
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Returns the largest number of output frames a block can produce.
+     *
+     * @param inputFrames The input block length
+     * @return An upper bound of the output frames
+     */
+    public int maxOutputFrames(int inputFrames) {
+        return (int) (((long) inputFrames * up + down - 1) / down) + 1;
+    }
+
+    /**
+     * Resamples one block.
+     *
+     * @param in     Planar input, one array per channel
+     * @param frames The number of input frames
+     * @param out    Planar output, at least {@link #maxOutputFrames(int)} frames
+     *               per channel
+     * @return The number of output frames written
+     */
+    public int process(float[][] in, int frames, float[][] out) {
+        int history = taps - 1;
+        if (buffer[0].length < history + frames) {
+            float[][] grown = new float[buffer.length][history + frames];
+            for (int ch = 0; ch < buffer.length; ch++)
+                System.arraycopy(buffer[ch], 0, grown[ch], 0, history);
+            buffer = grown;
+        }
+        for (int ch = 0; ch < buffer.length; ch++)
+            System.arraycopy(in[ch], 0, buffer[ch], history, frames);
+
+        int end = history + frames;
+        int pos = position;
+        int ph = phase;
+        int n = 0;
+        while (pos < end) {
+            float[] c = phases[ph];
+            for (int ch = 0; ch < buffer.length; ch++) {
+                float[] x = buffer[ch];
+                float acc = 0;
+                for (int k = 0, i = pos; k < taps; k++, i--)
+                    acc += c[k] * x[i];
+                out[ch][n] = acc;
+            }
+            n++;
+            ph += down;
+            pos += ph / up;
+            ph %= up;
+        }
+
+        // Keep the newest taps - 1 samples as history for the next block
+        for (int ch = 0; ch < buffer.length; ch++)
+            System.arraycopy(buffer[ch], frames, buffer[ch], 0, history);
+        position = pos - frames;
+        phase = ph;
+        return n;
+    }
+
+    /**
+     * Clears the history, as if the stream started with the next block.
+     */
+    public void reset() {
+        for (float[] b : buffer)
+            Arrays.fill(b, 0f);
+        position = taps - 1;
+        phase = 0;
+    }
+
+    /**
+     * Returns the delay the filter adds.
+     *
+     * @return The group delay in output frames
+     */
+    public int getLatencyFrames() {
+        return (int) Math.round((taps * up - 1) / 2.0 / down);
+    }
+
+    /**
+     * Returns the input sample rate.
+     *
+     * @return The rate in Hz
+     */
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    /**
+     * Returns the output sample rate.
+     *
+     * @return The rate in Hz
+     */
+    public int getOutputRate() {
+        return outputRate;
+    }
+}
\ No newline at end of file
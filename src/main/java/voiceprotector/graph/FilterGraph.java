@@ -0,0 +1,866 @@
+package voiceprotector.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.DelayLine;
+import voiceprotector.StereoAudioFilter;
+
+/**
+ * FilterGraph runs filters as a directed acyclic graph instead of a line: the
+ * signal can be split into branches that are processed independently and
+ * mixed back with weights, e.g. a spectral and a time-domain obfuscation path
+ * side by side. Every {@link StereoAudioFilter} works as a node unchanged.
+ * <p>
+ * Nodes are created from nodes that already exist, so the graph cannot contain
+ * a cycle. Before the first block after a change the graph is compiled:
+ * <ul>
+ * <li>Nodes that do not lead to the output are dropped.</li>
+ * <li>The others are grouped into levels by their longest distance from the
+ * input; nodes of one level do not depend on each other.</li>
+ * <li>Intermediate buffers are assigned by liveness: a node processes in place
+ * in the buffer of an input it is the last reader of, and buffers whose last
+ * reader has run are reused by later levels.</li>
+ * </ul>
+ * The nodes of a level run in parallel on the pool when a block holds at least
+ * {@link #getParallelThreshold()} samples across all channels; smaller blocks
+ * are processed on the calling thread. No arrays or tasks are allocated per
+ * block once the graph is prepared for the largest block (see
+ * {@link #prepare(AudioFormat, int)}); the buffers only grow.
+ * <p>
+ * A mix aligns its sources in time: a source with less latency than the
+ * slowest one (see {@link StereoAudioFilter#getLatencyFrames()}) is delayed by
+ * the difference before it is summed, so a dry path mixed with a path through
+ * a transform is not comb-filtered. The latencies are checked every block, so
+ * enabling or disabling a filter realigns the mix.
+ * <p>
+ * A graph is itself a filter, so it can be added to a
+ * {@link voiceprotector.StereoFilterChain}. The graph must not be changed
+ * while a block is being processed.
+ */
+public class FilterGraph implements StereoAudioFilter {
+
+    /**
+     * Default number of samples (frames times channels) from which the nodes
+     * of a level run in parallel
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * Channels per frame
+     */
+    private final int channels;
+
+    /**
+     * The pool nodes run on in parallel
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * All nodes in creation order, starting with the input
+     */
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * The filters of the graph, to reject adding one twice
+     */
+    private final Map<StereoAudioFilter, Node> filters = new IdentityHashMap<>();
+
+    /**
+     * The node whose output the graph returns
+     */
+    private Node output;
+
+    /**
+     * Samples per block from which levels run in parallel
+     */
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /**
+     * The sample rate told to the filters
+     */
+    private float sampleRate = DEFAULT_SAMPLE_RATE;
+
+    /**
+     * Whether the graph changed since it was compiled
+     */
+    private boolean dirty = true;
+
+    /**
+     * The compiled nodes per level, without the input
+     */
+    private Node[][] levels = new Node[0][];
+
+    /**
+     * The number of buffers the compiled graph needs, including the block
+     */
+    private int slotCount = 1;
+
+    /**
+     * Intermediate buffers by slot; slot 0 is the block being processed
+     */
+    private short[][][] buffers = new short[1][][];
+
+    /**
+     * Frames per channel the intermediate buffers hold
+     */
+    private int capacity;
+
+    /**
+     * The first frame of the block being processed in slot 0; the other
+     * slots hold it from frame 0
+     */
+    private int blockOffset;
+
+    /**
+     * The number of frames of the block being processed
+     */
+    private int blockFrames;
+
+    /**
+     * Creates a stereo graph running on the common pool. The output is the
+     * input until {@link #setOutput(Node)} is called.
+     */
+    public FilterGraph() {
+        this(2, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a graph. The output is the input until {@link #setOutput(Node)}
+     * is called.
+     *
+     * @param channels Channels per frame, at least 1
+     * @param pool     The pool to run independent nodes on in parallel
+     * @throws IllegalArgumentException If channels is less than 1
+     */
+    public FilterGraph(int channels, ForkJoinPool pool) {
+        if (channels < 1)
+            throw new IllegalArgumentException("A graph needs at least one channel: " + channels);
+        this.channels = channels;
+        this.pool = pool;
+        this.output = new Node(0, null, new Node[0], null);
+        nodes.add(output);
+    }
+
+    /**
+     * Returns the node holding the block passed to {@link #process(short[][])}.
+     *
+     * @return The input node
+     */
+    public Node input() {
+        return nodes.get(0);
+    }
+
+    /**
+     * Adds a node that runs a filter on the output of another node. The filter
+     * is told the graph's sample rate. A disabled filter passes its input
+     * through.
+     *
+     * @param filter The filter, not yet part of the graph
+     * @param source The node whose output the filter processes
+     * @return The new node
+     * @throws IllegalArgumentException If the filter is already in the graph,
+     *                                  cannot process the graph's channels, or
+     *                                  the source belongs to another graph
+     */
+    public Node add(StereoAudioFilter filter, Node source) {
+        if (filters.containsKey(filter))
+            throw new IllegalArgumentException("Filter is already in the graph: " + filter.getClass().getSimpleName());
+        if (!filter.supportsChannels(channels))
+            throw new IllegalArgumentException(
+                    filter.getClass().getSimpleName() + " cannot process " + channels + " channels");
+        check(source);
+        filter.setSampleRate(sampleRate);
+        Node n = new Node(nodes.size(), filter, new Node[] { source }, null);
+        filters.put(filter, n);
+        nodes.add(n);
+        dirty = true;
+        return n;
+    }
+
+    /**
+     * Adds a chain of filters, each processing the output of the one before.
+     *
+     * @param source  The node whose output the first filter processes
+     * @param filters The filters in processing order
+     * @return The node of the last filter, or source if there is none
+     * @throws IllegalArgumentException As {@link #add(StereoAudioFilter, Node)}
+     */
+    public Node chain(Node source, StereoAudioFilter... filters) {
+        Node n = source;
+        for (StereoAudioFilter f : filters)
+            n = add(f, n);
+        return n;
+    }
+
+    /**
+     * Adds a node that mixes the outputs of other nodes: every sample is the
+     * weighted sum of the sources' samples, rounded and clipped to 16 bits.
+     *
+     * @param weights The weight of each source
+     * @param sources The nodes to mix, at least one
+     * @return The new node
+     * @throws IllegalArgumentException If the counts differ, there is no source,
+     *                                  or a source belongs to another graph
+     */
+    public Node mix(float[] weights, Node... sources) {
+        if (sources.length == 0 || weights.length != sources.length)
+            throw new IllegalArgumentException(
+                    "A mix needs one weight per source: " + weights.length + " weights, " + sources.length + " sources");
+        for (Node s : sources)
+            check(s);
+        Node n = new Node(nodes.size(), null, sources.clone(), weights.clone());
+        nodes.add(n);
+        dirty = true;
+        return n;
+    }
+
+    /**
+     * Sets the node whose output the graph returns.
+     *
+     * @param node The output node
+     * @throws IllegalArgumentException If the node belongs to another graph
+     */
+    public void setOutput(Node node) {
+        check(node);
+        output = node;
+        dirty = true;
+    }
+
+    /**
+     * Returns the node whose output the graph returns.
+     *
+     * @return The output node
+     */
+    public Node getOutput() {
+        return output;
+    }
+
+    /**
+     * Checks that a node belongs to this graph.
+     *
+     * @param node The node
+     * @throws IllegalArgumentException If it does not
+     */
+    private void check(Node node) {
+        if (node.index >= nodes.size() || nodes.get(node.index) != node)
+            throw new IllegalArgumentException("Node belongs to another graph");
+    }
+
+    /**
+     * Processes a block in place.
+     *
+     * @param samples Planar samples, one array of the same length per channel
+     * @throws IllegalArgumentException If the block has a different channel count
+     */
+    @Override
+    public void process(short[][] samples) {
+        process(samples, 0, samples[0].length);
+    }
+
+    /**
+     * Processes a range of each channel in place, as one block. Nodes process
+     * the range directly; only the nodes that need their own buffer work on
+     * the graph's buffers.
+     *
+     * @param samples Planar samples, one array per channel
+     * @param offset  The first frame of the range
+     * @param length  The number of frames
+     * @throws IllegalArgumentException If the block has a different channel count
+     */
+    @Override
+    public void process(short[][] samples, int offset, int length) {
+        if (samples.length != channels)
+            throw new IllegalArgumentException("Block has " + samples.length + " channels, graph has " + channels);
+        if (dirty)
+            compile();
+
+        prepareBuffers(length);
+        buffers[0] = samples;
+        blockOffset = offset;
+        blockFrames = length;
+        nodes.get(0).latency = 0;
+
+        boolean parallel = pool.getParallelism() > 1 && (long) length * channels >= parallelThreshold;
+        for (Node[] level : levels) {
+            if (parallel && level.length > 1) {
+                for (int k = 1; k < level.length; k++) {
+                    level[k].task.reinitialize();
+                    pool.execute(level[k].task);
+                }
+                run(level[0]);
+                for (int k = 1; k < level.length; k++)
+                    level[k].task.join();
+            } else {
+                for (Node n : level)
+                    run(n);
+            }
+        }
+
+        if (output.slot != 0)
+            copy(buffers[output.slot], 0, samples, offset, length);
+        buffers[0] = null;
+    }
+
+    /**
+     * Processes interleaved PCM16 data with {@link #getChannels()} channels in
+     * place.
+     *
+     * @param data   Interleaved little-endian PCM16 data
+     * @param length The number of valid bytes in data
+     */
+    public void processInterleaved(byte[] data, int length) {
+        int frames = length / (2 * channels);
+        if (dirty)
+            compile();
+        prepareBuffers(frames);
+        // The slot after the compiled ones is only a decode buffer
+        short[][] block = buffers[slotCount];
+        AudioUtils.decodePCM16(data, length, block);
+        process(block, 0, frames);
+        AudioUtils.encodePCM16(block, frames, data);
+    }
+
+    /**
+     * Runs one node on the current block.
+     *
+     * @param n The node
+     */
+    private void run(Node n) {
+        short[][] out = buffers[n.slot];
+        int outOffset = offsetOf(n.slot);
+        int frames = blockFrames;
+        if (n.filter != null) {
+            int slot = n.inputs[0].slot;
+            if (slot != n.slot)
+                copy(buffers[slot], offsetOf(slot), out, outOffset, frames);
+            n.latency = n.inputs[0].latency;
+            if (n.filter.isEnabled()) {
+                n.filter.process(out, outOffset, frames);
+                n.latency += n.filter.getLatencyFrames();
+            }
+            return;
+        }
+
+        // Sum into a float buffer first, so the output may share an input's buffer
+        Node[] in = n.inputs;
+        float[] w = n.weights;
+        if (n.sum.length < frames)
+            n.sum = new float[frames];
+        float[] sum = n.sum;
+        n.latency = 0;
+        for (Node s : in)
+            n.latency = Math.max(n.latency, s.latency);
+        for (int ch = 0; ch < channels; ch++) {
+            short[] src = aligned(n, 0, ch, frames);
+            int off = alignedOffset(n, 0);
+            float w0 = w[0];
+            for (int i = 0; i < frames; i++)
+                sum[i] = w0 * src[off + i];
+            for (int k = 1; k < in.length; k++) {
+                src = aligned(n, k, ch, frames);
+                off = alignedOffset(n, k);
+                float wk = w[k];
+                for (int i = 0; i < frames; i++)
+                    sum[i] += wk * src[off + i];
+            }
+            short[] dst = out[ch];
+            for (int i = 0; i < frames; i++)
+                dst[outOffset + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sum[i])));
+        }
+    }
+
+    /**
+     * Returns one channel of a mix source, delayed to the latency of the mix.
+     * The source's buffer is left unchanged, since other nodes may read it.
+     *
+     * @param n      The mix node
+     * @param k      The source index
+     * @param ch     The channel
+     * @param frames The number of samples
+     * @return The source channel, or a delayed copy of it; the block starts
+     *         at {@link #alignedOffset(Node, int)}
+     */
+    private short[] aligned(Node n, int k, int ch, int frames) {
+        int slot = n.inputs[k].slot;
+        short[] src = buffers[slot][ch];
+        int delay = n.latency - n.inputs[k].latency;
+        if (delay == 0)
+            return src;
+        DelayLine d = n.delays[k];
+        if (d == null)
+            d = n.delays[k] = new DelayLine(channels);
+        d.setDelay(delay);
+        if (n.delayed.length < frames)
+            n.delayed = new short[frames];
+        d.process(ch, src, offsetOf(slot), n.delayed, frames);
+        return n.delayed;
+    }
+
+    /**
+     * Returns where the block starts in the array returned by
+     * {@link #aligned(Node, int, int, int)}.
+     *
+     * @param n The mix node
+     * @param k The source index
+     * @return The first frame of the block
+     */
+    private int alignedOffset(Node n, int k) {
+        return n.latency == n.inputs[k].latency ? offsetOf(n.inputs[k].slot) : 0;
+    }
+
+    /**
+     * Returns where the current block starts in a buffer.
+     *
+     * @param slot The buffer slot
+     * @return The block's offset for slot 0, otherwise 0
+     */
+    private int offsetOf(int slot) {
+        return slot == 0 ? blockOffset : 0;
+    }
+
+    /**
+     * Computes the latency of every node from the filters' current latencies.
+     *
+     * @param all true to count disabled filters too
+     * @return The latency of each node in frames, by node index
+     */
+    private int[] latencies(boolean all) {
+        int[] latency = new int[nodes.size()];
+        for (int i = 1; i < latency.length; i++) {
+            Node n = nodes.get(i);
+            for (Node in : n.inputs)
+                latency[i] = Math.max(latency[i], latency[in.index]);
+            if (n.filter != null && (all || n.filter.isEnabled()))
+                latency[i] += n.filter.getLatencyFrames();
+        }
+        return latency;
+    }
+
+    /**
+     * Copies a range of a block.
+     *
+     * @param from       The source channels
+     * @param fromOffset The first frame to copy
+     * @param to         The destination channels
+     * @param toOffset   The first frame to write
+     * @param frames     The number of frames
+     */
+    private static void copy(short[][] from, int fromOffset, short[][] to, int toOffset, int frames) {
+        for (int ch = 0; ch < from.length; ch++)
+            System.arraycopy(from[ch], fromOffset, to[ch], toOffset, frames);
+    }
+
+    /**
+     * Makes sure the intermediate buffers hold a block. They are allocated for
+     * the compiled graph and only grow, so after
+     * {@link #prepare(AudioFormat, int)} smaller and equal blocks use them as
+     * they are.
+     *
+     * @param frames The number of samples per channel
+     */
+    private void prepareBuffers(int frames) {
+        if (buffers.length != slotCount + 1 || capacity < frames) {
+            capacity = Math.max(capacity, frames);
+            buffers = new short[slotCount + 1][][];
+            for (int s = 1; s <= slotCount; s++)
+                buffers[s] = new short[channels][capacity];
+        }
+    }
+
+    /**
+     * Schedules the nodes leading to the output into levels and assigns their
+     * buffers.
+     */
+    private void compile() {
+        int n = nodes.size();
+        boolean[] live = new boolean[n];
+        live[output.index] = true;
+        for (int i = n - 1; i >= 0; i--) {
+            if (live[i]) {
+                for (Node in : nodes.get(i).inputs)
+                    live[in.index] = true;
+            }
+        }
+
+        // Longest distance from the input; inputs always precede their readers
+        int[] level = new int[n];
+        int depth = 0;
+        for (int i = 1; i < n; i++) {
+            if (!live[i])
+                continue;
+            for (Node in : nodes.get(i).inputs)
+                level[i] = Math.max(level[i], level[in.index] + 1);
+            depth = Math.max(depth, level[i]);
+        }
+
+        // The last level reading each node, and how many nodes of that level do
+        int[] lastRead = new int[n];
+        int[] lastReaders = new int[n];
+        for (int i = 1; i < n; i++) {
+            if (!live[i])
+                continue;
+            Node[] inputs = nodes.get(i).inputs;
+            for (int k = 0; k < inputs.length; k++) {
+                int p = inputs[k].index;
+                if (indexOf(inputs, inputs[k]) != k)
+                    continue;
+                if (level[i] > lastRead[p]) {
+                    lastRead[p] = level[i];
+                    lastReaders[p] = 1;
+                } else if (level[i] == lastRead[p]) {
+                    lastReaders[p]++;
+                }
+            }
+        }
+        lastRead[output.index] = Integer.MAX_VALUE;
+
+        List<List<Node>> byLevel = new ArrayList<>();
+        for (int l = 0; l < depth; l++)
+            byLevel.add(new ArrayList<>());
+        for (int i = 1; i < n; i++) {
+            if (live[i])
+                byLevel.get(level[i] - 1).add(nodes.get(i));
+        }
+
+        // Assign buffers level by level; slot 0 is the block itself
+        nodes.get(0).slot = 0;
+        int slots = 1;
+        int[] free = new int[n + 1];
+        int freeCount = 0;
+        boolean[] handedOver = new boolean[n];
+        levels = new Node[depth][];
+        for (int l = 1; l <= depth; l++) {
+            List<Node> current = byLevel.get(l - 1);
+            for (Node node : current) {
+                int slot = -1;
+                for (Node in : node.inputs) {
+                    int p = in.index;
+                    if (lastRead[p] == l && lastReaders[p] == 1 && !handedOver[p]) {
+                        slot = in.slot;
+                        handedOver[p] = true;
+                        break;
+                    }
+                }
+                if (slot < 0)
+                    slot = freeCount > 0 ? free[--freeCount] : slots++;
+                node.slot = slot;
+                node.task = new NodeTask(node);
+            }
+            for (Node node : current) {
+                for (Node in : node.inputs) {
+                    int p = in.index;
+                    if (lastRead[p] == l && !handedOver[p]) {
+                        handedOver[p] = true;
+                        free[freeCount++] = in.slot;
+                    }
+                }
+            }
+            levels[l - 1] = current.toArray(new Node[0]);
+        }
+
+        slotCount = slots;
+        buffers = new short[1][][];
+        dirty = false;
+    }
+
+    /**
+     * Finds the first occurrence of a node in an array.
+     *
+     * @param nodes The array
+     * @param node  The node
+     * @return Its first index
+     */
+    private static int indexOf(Node[] nodes, Node node) {
+        for (int k = 0; k < nodes.length; k++) {
+            if (nodes[k] == node)
+                return k;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of intermediate buffers the compiled graph uses.
+     *
+     * @return Buffers besides the processed block
+     */
+    public int getBufferCount() {
+        if (dirty)
+            compile();
+        return slotCount - 1;
+    }
+
+    /**
+     * Returns the number of levels the compiled graph runs in; the nodes of a
+     * level may run in parallel.
+     *
+     * @return The level count
+     */
+    public int getLevelCount() {
+        if (dirty)
+            compile();
+        return levels.length;
+    }
+
+    /**
+     * Returns the filters of the graph in the order they were added.
+     *
+     * @return The filters
+     */
+    public List<StereoAudioFilter> getFilters() {
+        List<StereoAudioFilter> list = new ArrayList<>();
+        for (Node n : nodes) {
+            if (n.filter != null)
+                list.add(n.filter);
+        }
+        return list;
+    }
+
+    /**
+     * Returns the number of channels per frame.
+     *
+     * @return The channel count
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Returns the block size from which the nodes of a level run in parallel.
+     *
+     * @return Samples per block across all channels
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the block size from which the nodes of a level run in parallel.
+     *
+     * @param parallelThreshold Samples per block across all channels; 0 runs
+     *                          levels in parallel whenever the pool has more
+     *                          than one thread, {@link Integer#MAX_VALUE} never
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * A graph is always enabled; its filters are enabled individually.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsChannels(int channels) {
+        return channels == this.channels;
+    }
+
+    /**
+     * Tells every filter of the graph the sample rate.
+     *
+     * @param sampleRate The sample rate in Hz
+     */
+    @Override
+    public void setSampleRate(float sampleRate) {
+        this.sampleRate = sampleRate;
+        for (Node n : nodes) {
+            if (n.filter != null)
+                n.filter.setSampleRate(sampleRate);
+        }
+    }
+
+    /**
+     * Prepares every filter of the graph and allocates the intermediate
+     * buffers and mix delays for blocks up to a size.
+     *
+     * @param format         The format of the blocks; only the sample rate is
+     *                       used, the filters are prepared for the graph's
+     *                       channels
+     * @param maxBlockFrames The largest number of frames per block
+     */
+    @Override
+    public void prepare(AudioFormat format, int maxBlockFrames) {
+        this.sampleRate = format.getSampleRate();
+        AudioFormat processed = new AudioFormat(sampleRate, 16, channels, true, false);
+        for (Node n : nodes) {
+            if (n.filter != null)
+                n.filter.prepare(processed, maxBlockFrames);
+        }
+        if (dirty)
+            compile();
+        prepareBuffers(maxBlockFrames);
+
+        int[] latency = latencies(true);
+        for (Node n : nodes) {
+            if (n.filter != null || n.weights == null)
+                continue;
+            if (n.sum.length < maxBlockFrames)
+                n.sum = new float[maxBlockFrames];
+            for (int k = 0; k < n.inputs.length; k++) {
+                int delay = latency[n.index] - latency[n.inputs[k].index];
+                if (delay > 0) {
+                    if (n.delays[k] == null)
+                        n.delays[k] = new DelayLine(channels);
+                    n.delays[k].reserve(delay);
+                    if (n.delayed.length < maxBlockFrames)
+                        n.delayed = new short[maxBlockFrames];
+                }
+            }
+        }
+    }
+
+    /**
+     * Resets every filter of the graph and clears the mix delays.
+     */
+    @Override
+    public void reset() {
+        for (Node n : nodes) {
+            if (n.filter != null)
+                n.filter.reset();
+            for (DelayLine d : n.delays) {
+                if (d != null)
+                    d.reset();
+            }
+        }
+    }
+
+    /**
+     * Returns the latency of the output: along every path the latencies of the
+     * enabled filters add up, and a mix has the latency of its slowest source.
+     *
+     * @return The latency in frames
+     */
+    @Override
+    public int getLatencyFrames() {
+        return latencies(false)[output.index];
+    }
+
+    /**
+     * A node of a {@link FilterGraph}: the input, a filter or a mix.
+     */
+    public static final class Node {
+
+        /**
+         * The position in the graph's node list
+         */
+        private final int index;
+
+        /**
+         * The filter, null for the input and mixes
+         */
+        private final StereoAudioFilter filter;
+
+        /**
+         * The nodes read
+         */
+        private final Node[] inputs;
+
+        /**
+         * The mix weight of each input, null for the input and filters
+         */
+        private final float[] weights;
+
+        /**
+         * The buffer the node writes its output to
+         */
+        private int slot;
+
+        /**
+         * The weighted sum of a mix, one channel long
+         */
+        private float[] sum = new float[0];
+
+        /**
+         * The task running the node on the pool
+         */
+        private RecursiveAction task;
+
+        /**
+         * The latency of the node's output in the current block
+         */
+        private int latency;
+
+        /**
+         * The delay aligning each source of a mix, created when the source
+         * first needs one
+         */
+        private final DelayLine[] delays;
+
+        /**
+         * A delayed source channel of a mix
+         */
+        private short[] delayed = new short[0];
+
+        /**
+         * Creates a node.
+         *
+         * @param index   The position in the graph's node list
+         * @param filter  The filter or null
+         * @param inputs  The nodes read
+         * @param weights The mix weights or null
+         */
+        private Node(int index, StereoAudioFilter filter, Node[] inputs, float[] weights) {
+            this.index = index;
+            this.filter = filter;
+            this.inputs = inputs;
+            this.weights = weights;
+            this.delays = new DelayLine[weights == null ? 0 : inputs.length];
+        }
+
+        /**
+         * Returns the filter of the node.
+         *
+         * @return The filter, or null for the input and mixes
+         */
+        public StereoAudioFilter getFilter() {
+            return filter;
+        }
+
+        @Override
+        public String toString() {
+            if (filter != null)
+                return filter.getClass().getSimpleName();
+            return weights == null ? "input" : "mix" + Arrays.toString(weights);
+        }
+    }
+
+    /**
+     * Runs one node of the current block on the pool.
+     */
+    private class NodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The node
+         */
+        private final Node node;
+
+        /**
+         * Creates the task of a node.
+         *
+         * @param node The node
+         */
+        NodeTask(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            run(node);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,325 @@
+package voiceprotector.gui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.DisplayMode;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+import voiceprotector.monitor.AnalysisSnapshot;
+import voiceprotector.monitor.SignalMonitor;
+import voiceprotector.monitor.SpectrumAnalyzer;
+
+/**
+ * MonitorPanel shows the peak and RMS levels of a chain's input and output,
+ * a clip indicator for each, and both spectra overlaid. It polls the chain's
+ * {@link SignalMonitor} from a Swing timer running at the display refresh
+ * rate and only repaints when a new snapshot was published, so all analysis
+ * and painting stay on the event dispatch thread.
+ */
+public class MonitorPanel extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Lowest level shown on the meters and the spectrum in dBFS
+     */
+    private static final float FLOOR_DB = -72;
+
+    /**
+     * How long a clip indicator stays lit
+     */
+    private static final long CLIP_HOLD_MILLIS = 2000;
+
+    /**
+     * Lowest frequency of the spectrum axis in Hz
+     */
+    private static final float MIN_HZ = 20;
+
+    /**
+     * Width of one meter bar
+     */
+    private static final int BAR = 12;
+
+    /**
+     * Color of the RMS bars
+     */
+    private static final Color RMS_COLOR = new Color(40, 180, 60);
+
+    /**
+     * Color of the spectrum background
+     */
+    private static final Color SPECTRUM_BACKGROUND = new Color(30, 30, 30);
+
+    /**
+     * Color of the input spectrum
+     */
+    private static final Color INPUT_COLOR = new Color(150, 150, 150);
+
+    /**
+     * Color of the output spectrum
+     */
+    private static final Color OUTPUT_COLOR = new Color(80, 220, 100);
+
+    /**
+     * The monitored taps
+     */
+    private final SignalMonitor monitor;
+
+    /**
+     * The input and output spectrum analyzers
+     */
+    private final SpectrumAnalyzer inAnalyzer = new SpectrumAnalyzer(), outAnalyzer = new SpectrumAnalyzer();
+
+    /**
+     * The repaint timer
+     */
+    private final Timer timer;
+
+    /**
+     * The snapshots shown
+     */
+    private AnalysisSnapshot in, out;
+
+    /**
+     * The spectra shown in dBFS, null before the first snapshot
+     */
+    private float[] inSpectrum, outSpectrum;
+
+    /**
+     * The sequence numbers of the snapshots shown
+     */
+    private long inSequence, outSequence;
+
+    /**
+     * The clip counts last seen
+     */
+    private long inClipped, outClipped;
+
+    /**
+     * When the input and output last clipped, in milliseconds
+     */
+    private long inClipAt = Long.MIN_VALUE, outClipAt = Long.MIN_VALUE;
+
+    /**
+     * Polyline buffers of the spectrum, one point per bin
+     */
+    private int[] xs = new int[0], ys = new int[0];
+
+    /**
+     * Creates the panel. The timer runs while the panel is displayable.
+     *
+     * @param monitor The taps to show
+     */
+    public MonitorPanel(SignalMonitor monitor) {
+        this.monitor = monitor;
+        this.timer = new Timer(1000 / refreshRate(), e -> poll());
+        timer.setCoalesce(true);
+        setPreferredSize(new Dimension(600, 180));
+        setOpaque(true);
+        setBackground(Color.BLACK);
+    }
+
+    /**
+     * Returns the refresh rate of the default screen.
+     *
+     * @return The rate in Hz, 60 if unknown
+     */
+    private static int refreshRate() {
+        if (GraphicsEnvironment.isHeadless())
+            return 60;
+        DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode();
+        int rate = mode.getRefreshRate();
+        return rate == DisplayMode.REFRESH_RATE_UNKNOWN || rate <= 0 ? 60 : Math.min(rate, 240);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        timer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        timer.stop();
+        super.removeNotify();
+    }
+
+    /**
+     * Takes the latest snapshots and repaints if either is new.
+     */
+    private void poll() {
+        in = monitor.getInput().acquire();
+        out = monitor.getOutput().acquire();
+        if (in.getSequence() == inSequence && out.getSequence() == outSequence)
+            return;
+
+        long now = System.currentTimeMillis();
+        if (in.getSequence() != inSequence) {
+            inSequence = in.getSequence();
+            inSpectrum = inAnalyzer.analyze(in);
+            if (in.getClipped() != inClipped) {
+                inClipped = in.getClipped();
+                inClipAt = now;
+            }
+        }
+        if (out.getSequence() != outSequence) {
+            outSequence = out.getSequence();
+            outSpectrum = outAnalyzer.analyze(out);
+            if (out.getClipped() != outClipped) {
+                outClipped = out.getClipped();
+                outClipAt = now;
+            }
+        }
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g0) {
+        Graphics2D g = (Graphics2D) g0;
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        g.setFont(getFont().deriveFont(Font.PLAIN, 10f));
+        long now = System.currentTimeMillis();
+
+        int top = 16, height = getHeight() - top - 4;
+        int x = 6;
+        x = paintMeters(g, "In", in, inClipAt, now, x, top, height);
+        x = paintMeters(g, "Out", out, outClipAt, now, x + 6, top, height);
+        paintSpectrum(g, x + 10, top, getWidth() - x - 16, height);
+    }
+
+    /**
+     * Paints the meters of one tap: RMS as a bar, the held peak as a line and a
+     * clip indicator above them.
+     *
+     * @param g      The graphics
+     * @param label  The label
+     * @param s      The snapshot, null before the first poll
+     * @param clipAt When the tap last clipped
+     * @param now    The current time
+     * @param x      The left edge
+     * @param top    The top edge of the bars
+     * @param height The bar height
+     * @return The right edge
+     */
+    private int paintMeters(Graphics2D g, String label, AnalysisSnapshot s, long clipAt, long now, int x, int top,
+            int height) {
+        int channels = AnalysisSnapshot.CHANNELS;
+        int width = channels * (BAR + 2);
+        g.setColor(now - clipAt < CLIP_HOLD_MILLIS ? Color.RED : Color.DARK_GRAY);
+        g.fillRect(x, 2, width - 2, 6);
+        g.setColor(Color.LIGHT_GRAY);
+        g.drawString(label, x, top + height);
+
+        height -= 12;
+        for (int ch = 0; ch < channels; ch++) {
+            int bx = x + ch * (BAR + 2);
+            g.setColor(Color.DARK_GRAY);
+            g.fillRect(bx, top, BAR, height);
+            if (s == null || s.getSequence() == 0)
+                continue;
+            int c = Math.min(ch, s.getChannels() - 1);
+            int rms = levelHeight(s.getRmsDb(c), height);
+            g.setColor(RMS_COLOR);
+            g.fillRect(bx, top + height - rms, BAR, rms);
+            int peak = levelHeight(s.getPeakDb(c), height);
+            g.setColor(s.getPeakDb(c) > -3 ? Color.ORANGE : Color.WHITE);
+            g.fillRect(bx, top + height - peak, BAR, 2);
+        }
+        return x + width;
+    }
+
+    /**
+     * Maps a level to a bar height.
+     *
+     * @param db     The level in dBFS
+     * @param height The full bar height
+     * @return The height in pixels
+     */
+    private static int levelHeight(float db, int height) {
+        float f = (Math.max(db, FLOOR_DB) - FLOOR_DB) / -FLOOR_DB;
+        return Math.round(Math.min(1, f) * height);
+    }
+
+    /**
+     * Paints the input spectrum in grey and the output spectrum in green on a
+     * logarithmic frequency axis.
+     *
+     * @param g      The graphics
+     * @param x      The left edge
+     * @param y      The top edge
+     * @param width  The width
+     * @param height The height
+     */
+    private void paintSpectrum(Graphics2D g, int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0)
+            return;
+        g.setColor(SPECTRUM_BACKGROUND);
+        g.fillRect(x, y, width, height);
+
+        float nyquist = monitor.getSampleRate() / 2;
+        g.setColor(Color.GRAY);
+        for (float hz = 100; hz < nyquist; hz *= 10) {
+            int gx = x + frequencyX(hz, nyquist, width);
+            g.drawLine(gx, y, gx, y + height);
+            g.drawString(hz >= 1000 ? (int) (hz / 1000) + "k" : String.valueOf((int) hz), gx + 2, y + height - 2);
+        }
+
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        paintCurve(g, inSpectrum, INPUT_COLOR, nyquist, x, y, width, height);
+        paintCurve(g, outSpectrum, OUTPUT_COLOR, nyquist, x, y, width, height);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+    }
+
+    /**
+     * Paints one spectrum as a polyline.
+     *
+     * @param g        The graphics
+     * @param spectrum The magnitudes in dBFS, or null
+     * @param color    The line color
+     * @param nyquist  The highest frequency in Hz
+     * @param x        The left edge
+     * @param y        The top edge
+     * @param width    The width
+     * @param height   The height
+     */
+    private void paintCurve(Graphics2D g, float[] spectrum, Color color, float nyquist, int x, int y, int width,
+            int height) {
+        if (spectrum == null)
+            return;
+        if (xs.length != spectrum.length) {
+            xs = new int[spectrum.length];
+            ys = new int[spectrum.length];
+        }
+
+        float binHz = nyquist / (spectrum.length - 1);
+        int first = (int) Math.ceil(MIN_HZ / binHz);
+        int n = 0;
+        for (int k = first; k < spectrum.length; k++) {
+            xs[n] = x + frequencyX(k * binHz, nyquist, width);
+            ys[n] = y + height - levelHeight(spectrum[k], height);
+            n++;
+        }
+        g.setColor(color);
+        g.drawPolyline(xs, ys, n);
+    }
+
+    /**
+     * Maps a frequency to the logarithmic axis.
+     *
+     * @param hz      The frequency
+     * @param nyquist The highest frequency
+     * @param width   The axis width
+     * @return The offset from the left edge
+     */
+    private static int frequencyX(float hz, float nyquist, int width) {
+        return Math.round((float) (Math.log(hz / MIN_HZ) / Math.log(nyquist / MIN_HZ)) * width);
+    }
+}
\ No newline at end of file
@@ -1,8 +1,10 @@
 package voiceprotector.gui;
 
+import java.awt.BorderLayout;
 import java.awt.GridLayout;
 
 import javax.swing.BorderFactory;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -17,13 +19,19 @@ import voiceprotector.filters.ChaoticPhaseStereo;
 import voiceprotector.filters.LPCWarpStereo;
 import voiceprotector.filters.NoiseFilterStereo;
 import voiceprotector.filters.SpectralHoleStereo;
+import voiceprotector.filters.SpectralNotchStereo;
 import voiceprotector.filters.XorObfuscationStereo;
+import voiceprotector.monitor.SignalMonitor;
+import voiceprotector.noise.NoiseColor;
 
 /**
  * StereoFilterGUI is a graphical user interface for managing and configuring
  * various stereo audio filters in a chain. It allows users to adjust filter
  * parameters
  * using sliders, spinners, etc., with each filter having its own panel.
+ * Changes are published through each filter's parameter store, so the audio
+ * thread picks them up at the next block boundary. A {@link MonitorPanel} below
+ * the filters shows the levels and spectra before and after the chain.
  */
 public class StereoFilterGUI extends JFrame {
 
@@ -36,8 +44,10 @@ public class StereoFilterGUI extends JFrame {
      */
     public StereoFilterGUI(StereoFilterChain chain) {
         setTitle("VoiceProtector - Anti Voice-Cloning Filters");
-        setSize(600, 600);
-        setLayout(new GridLayout(chain.getFilters().size(), 1));
+        setSize(600, 780);
+        setLayout(new BorderLayout());
+        JPanel filters = new JPanel(new GridLayout(chain.getFilters().size(), 1));
+        add(filters, BorderLayout.CENTER);
 
         for (StereoAudioFilter f : chain.getFilters()) {
             JPanel p = new JPanel();
@@ -46,12 +56,12 @@ public class StereoFilterGUI extends JFrame {
 
             if (f instanceof XorObfuscationStereo xor) {
                 JLabel stepLabel = new JLabel("Step:");
-                JSpinner stepSpinner = new JSpinner(new SpinnerNumberModel(xor.step, 1, 32, 1));
-                stepSpinner.addChangeListener(e -> xor.step = (int) stepSpinner.getValue());
+                JSpinner stepSpinner = new JSpinner(new SpinnerNumberModel(xor.getStep(), 1, 32, 1));
+                stepSpinner.addChangeListener(e -> xor.setStep((int) stepSpinner.getValue()));
 
                 JLabel xorLabel = new JLabel("XOR Value:");
-                JSpinner xorSpinner = new JSpinner(new SpinnerNumberModel(xor.xorValue, 0, 0xFFFF, 1));
-                xorSpinner.addChangeListener(e -> xor.xorValue = (int) xorSpinner.getValue());
+                JSpinner xorSpinner = new JSpinner(new SpinnerNumberModel(xor.getXorValue(), 0, 0xFFFF, 1));
+                xorSpinner.addChangeListener(e -> xor.setXorValue((int) xorSpinner.getValue()));
 
                 p.add(stepLabel);
                 p.add(stepSpinner);
@@ -60,50 +70,83 @@ public class StereoFilterGUI extends JFrame {
 
             } else if (f instanceof NoiseFilterStereo noise) {
                 JLabel ampLabel = new JLabel("Amplitude:");
-                JSlider ampSlider = new JSlider(0, 2000, noise.amplitude);
-                ampSlider.addChangeListener(e -> noise.amplitude = ampSlider.getValue());
+                JSlider ampSlider = new JSlider(0, 2000, noise.getAmplitude());
+                ampSlider.addChangeListener(e -> noise.setAmplitude(ampSlider.getValue()));
+
+                JLabel colorLabel = new JLabel("Color:");
+                JComboBox<NoiseColor> colorBox = new JComboBox<>(NoiseColor.values());
+                colorBox.setSelectedItem(noise.getColor());
+                colorBox.addActionListener(e -> noise.setColor((NoiseColor) colorBox.getSelectedItem()));
+
                 p.add(ampLabel);
                 p.add(ampSlider);
+                p.add(colorLabel);
+                p.add(colorBox);
 
             } else if (f instanceof LPCWarpStereo lpc) {
                 JLabel warpLabel = new JLabel("Warp Amount:");
-                JSlider warpSlider = new JSlider(0, 100, (int) (lpc.warpAmount * 100));
-                warpSlider.addChangeListener(e -> lpc.warpAmount = warpSlider.getValue() / 100f);
+                JSlider warpSlider = new JSlider(0, 100, (int) (lpc.getWarpAmount() * 100));
+                warpSlider.addChangeListener(e -> lpc.setWarpAmount(warpSlider.getValue() / 100f));
+
+                JLabel bandwidthLabel = new JLabel("Formant Bandwidth:");
+                JSlider bandwidthSlider = new JSlider(90, 100, (int) (lpc.getBandwidth() * 100));
+                bandwidthSlider.addChangeListener(e -> lpc.setBandwidth(bandwidthSlider.getValue() / 100f));
+
                 p.add(warpLabel);
                 p.add(warpSlider);
+                p.add(bandwidthLabel);
+                p.add(bandwidthSlider);
 
             } else if (f instanceof ChaoticPhaseStereo cp) {
                 JLabel intensityLabel = new JLabel("Intensity:");
-                JSlider intensitySlider = new JSlider(0, 100, (int) (cp.intensity * 100));
-                intensitySlider.addChangeListener(e -> cp.intensity = intensitySlider.getValue() / 100f);
+                JSlider intensitySlider = new JSlider(0, 100, (int) (cp.getIntensity() * 100));
+                intensitySlider.addChangeListener(e -> cp.setIntensity(intensitySlider.getValue() / 100f));
                 p.add(intensityLabel);
                 p.add(intensitySlider);
 
             } else if (f instanceof SpectralHoleStereo sh) {
                 JLabel holeLabel = new JLabel("Hole Width:");
-                JSpinner holeSpinner = new JSpinner(new SpinnerNumberModel(sh.holeWidth, 1, 128, 1));
-                holeSpinner.addChangeListener(e -> sh.holeWidth = (int) holeSpinner.getValue());
+                JSpinner holeSpinner = new JSpinner(new SpinnerNumberModel(sh.getHoleWidth(), 1, 128, 1));
+                holeSpinner.addChangeListener(e -> sh.setHoleWidth((int) holeSpinner.getValue()));
 
                 JLabel depthLabel = new JLabel("Depth:");
-                JSlider depthSlider = new JSlider(0, 100, (int) (sh.depth * 100));
-                depthSlider.addChangeListener(e -> sh.depth = depthSlider.getValue() / 100f);
+                JSlider depthSlider = new JSlider(0, 100, (int) (sh.getDepth() * 100));
+                depthSlider.addChangeListener(e -> sh.setDepth(depthSlider.getValue() / 100f));
 
                 p.add(holeLabel);
                 p.add(holeSpinner);
                 p.add(depthLabel);
                 p.add(depthSlider);
 
+            } else if (f instanceof SpectralNotchStereo sn) {
+                JLabel widthLabel = new JLabel("Notch Width (Hz):");
+                JSpinner widthSpinner = new JSpinner(new SpinnerNumberModel((int) sn.getHoleWidth(), 50, 2000, 10));
+                widthSpinner.addChangeListener(e -> sn.setHoleWidth((int) widthSpinner.getValue()));
+
+                JLabel depthLabel = new JLabel("Depth:");
+                JSlider depthSlider = new JSlider(0, 100, (int) (sn.getDepth() * 100));
+                depthSlider.addChangeListener(e -> sn.setDepth(depthSlider.getValue() / 100f));
+
+                p.add(widthLabel);
+                p.add(widthSpinner);
+                p.add(depthLabel);
+                p.add(depthSlider);
+
             } else if (f instanceof AIFormantScramblerStereo ai) {
                 JLabel formantLabel = new JLabel("Formant Shift:");
-                JSlider formantSlider = new JSlider(-1200, 1200, (int) (ai.amount * 100));
-                formantSlider.addChangeListener(e -> ai.amount = formantSlider.getValue() / 100f);
+                JSlider formantSlider = new JSlider(-1200, 1200, (int) (ai.getAmount() * 100));
+                formantSlider.addChangeListener(e -> ai.setAmount(formantSlider.getValue() / 100f));
                 p.add(formantLabel);
                 p.add(formantSlider);
             }
 
-            add(p);
+            filters.add(p);
         }
 
+        SignalMonitor monitor = new SignalMonitor(chain.getSampleRate());
+        chain.setMonitor(monitor);
+        add(new MonitorPanel(monitor), BorderLayout.SOUTH);
+
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setVisible(true);
     }
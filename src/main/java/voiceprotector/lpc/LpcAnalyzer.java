@@ -0,0 +1,157 @@
+package voiceprotector.lpc;
+
+/**
+ * LpcAnalyzer computes linear prediction coefficients of one frame: Hann
+ * window, autocorrelation with lag window and white-noise correction, and
+ * Levinson-Durbin recursion. The prediction
+ * polynomial is {@code A(z) = 1 + a[1] z^-1 + ... + a[p] z^-p}, and the
+ * reflection coefficients are the {@code a[m]} of each intermediate order. All
+ * work arrays are allocated once.
+ */
+public class LpcAnalyzer {
+
+    /**
+     * White-noise correction added to the zero-lag autocorrelation (-40 dB), which
+     * keeps the recursion well conditioned for narrow-band input
+     */
+    private static final double NOISE_FLOOR = 1e-4;
+
+    /**
+     * Width of the Gaussian lag window as a fraction of the sample rate (about 100
+     * Hz at 48 kHz). It widens very sharp resonances, which would otherwise ring
+     * for a long time in the resynthesis.
+     */
+    private static final double LAG_BANDWIDTH = 0.002;
+
+    /**
+     * The prediction order
+     */
+    private final int order;
+
+    /**
+     * The frame length
+     */
+    private final int frameSize;
+
+    /**
+     * The analysis window
+     */
+    private final float[] window;
+
+    /**
+     * The windowed frame
+     */
+    private final float[] windowed;
+
+    /**
+     * The lag window for lags 0..order
+     */
+    private final double[] lagWindow;
+
+    /**
+     * Autocorrelation for lags 0..order
+     */
+    private final double[] r;
+
+    /**
+     * Coefficients of the current order during the recursion
+     */
+    private final double[] a;
+
+    /**
+     * Coefficients of the previous order during the recursion
+     */
+    private final double[] prev;
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param order     The prediction order (number of coefficients)
+     * @param frameSize The frame length in samples
+     */
+    public LpcAnalyzer(int order, int frameSize) {
+        if (order < 1 || order >= frameSize)
+            throw new IllegalArgumentException("Order must be between 1 and frameSize - 1: " + order);
+        this.order = order;
+        this.frameSize = frameSize;
+        window = new float[frameSize];
+        for (int n = 0; n < frameSize; n++) {
+            window[n] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * (n + 0.5) / frameSize));
+        }
+        windowed = new float[frameSize];
+        lagWindow = new double[order + 1];
+        for (int lag = 0; lag <= order; lag++) {
+            double x = 2 * Math.PI * LAG_BANDWIDTH * lag;
+            lagWindow[lag] = Math.exp(-0.5 * x * x);
+        }
+        r = new double[order + 1];
+        a = new double[order + 1];
+        prev = new double[order + 1];
+    }
+
+    /**
+     * Analyzes one frame.
+     *
+     * @param frame      frameSize samples, oldest first
+     * @param reflection Receives the reflection coefficients k[1..order] (index
+     *                   0 unused)
+     * @return The relative prediction error (residual energy / signal energy),
+     *         or 1 if the frame is silent, in which case all coefficients are 0
+     */
+    public double analyze(float[] frame, float[] reflection) {
+        for (int n = 0; n < frameSize; n++) {
+            windowed[n] = frame[n] * window[n];
+        }
+        for (int lag = 0; lag <= order; lag++) {
+            double sum = 0;
+            for (int n = lag; n < frameSize; n++) {
+                sum += windowed[n] * windowed[n - lag];
+            }
+            r[lag] = sum * lagWindow[lag];
+        }
+
+        if (r[0] <= 1e-9) {
+            for (int m = 1; m <= order; m++)
+                reflection[m] = 0f;
+            return 1;
+        }
+        r[0] *= 1 + NOISE_FLOOR;
+
+        // Levinson-Durbin
+        double err = r[0];
+        a[0] = 1;
+        for (int m = 1; m <= order; m++) {
+            double acc = r[m];
+            for (int i = 1; i < m; i++) {
+                acc += a[i] * r[m - i];
+            }
+            double k = -acc / err;
+            System.arraycopy(a, 0, prev, 0, m);
+            for (int i = 1; i < m; i++) {
+                a[i] = prev[i] + k * prev[m - i];
+            }
+            a[m] = k;
+            reflection[m] = (float) k;
+            err *= 1 - k * k;
+        }
+        return err / r[0];
+    }
+
+    /**
+     * Returns the prediction order.
+     *
+     * @return The number of coefficients
+     */
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the frame length.
+     *
+     * @return Samples per frame
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,329 @@
+package voiceprotector.lpc;
+
+import java.util.Arrays;
+
+/**
+ * LpcChannel streams one audio channel through residual-excited LPC
+ * resynthesis:
+ * <ol>
+ * <li>Every hop (half a frame) the last frameSize input samples are analyzed
+ * ({@link LpcAnalyzer}) and the model is warped ({@link LpcWarper}).</li>
+ * <li>An analysis lattice whitens the input with the model into the
+ * residual.</li>
+ * <li>The residual is filtered with the numerator of the warped model,
+ * {@code (1 - lambda z^-1)^order}.</li>
+ * <li>A synthesis lattice colors the residual with the warped model. The
+ * output is scaled so that each hop has the energy of the input of the hop
+ * before.</li>
+ * </ol>
+ * The analysis is backward-adaptive (it only looks at past input), so no
+ * latency is added. Both lattices interpolate their reflection coefficients (and
+ * the output gain) per sample from the previous model to the new one over each hop, which keeps the
+ * filters stable and free of clicks at frame boundaries. Without warping the
+ * synthesis undoes the analysis and the output equals the input up to float
+ * rounding.
+ * <p>
+ * All buffers are allocated by the constructor; processing does not allocate.
+ */
+public class LpcChannel {
+
+    /**
+     * Upper bound of the output gain (+12 dB)
+     */
+    private static final double MAX_GAIN = 4;
+
+    /**
+     * The prediction order
+     */
+    private final int order;
+
+    /**
+     * The analysis frame length
+     */
+    private final int frameSize;
+
+    /**
+     * Samples between analyses
+     */
+    private final int hop;
+
+    /**
+     * The frame analyzer
+     */
+    private final LpcAnalyzer analyzer;
+
+    /**
+     * The pole warper
+     */
+    private final LpcWarper warper;
+
+    /**
+     * The last frameSize input samples, oldest first; the last hop is being
+     * filled
+     */
+    private final float[] history;
+
+    /**
+     * Samples of the current hop already in the history
+     */
+    private int filled;
+
+    /**
+     * Analysis reflection coefficients: target, current and per-sample increment
+     */
+    private final float[] targetA, kA, dA;
+
+    /**
+     * Synthesis reflection coefficients: target, current and per-sample
+     * increment
+     */
+    private final float[] targetS, kS, dS;
+
+    /**
+     * Output gain: target, current and per-sample increment
+     */
+    private float targetGain = 1f, gain = 1f, dGain;
+
+    /**
+     * Energy of the input and of the unscaled synthesis output in the current
+     * hop
+     */
+    private double inputEnergy, outputEnergy;
+
+    /**
+     * Delay elements of the numerator stages
+     */
+    private final float[] stateN;
+
+    /**
+     * The all-pass coefficient in use: target, current and per-sample increment
+     */
+    private float targetLambda, currentLambda, dLambda;
+
+    /**
+     * Delayed backward errors of the analysis lattice
+     */
+    private final float[] stateA;
+
+    /**
+     * Delayed backward errors of the synthesis lattice
+     */
+    private final float[] stateS;
+
+    /**
+     * The all-pass coefficient for the next analysis
+     */
+    private double lambda;
+
+    /**
+     * The bandwidth factor for the next analysis
+     */
+    private double gamma = 1;
+
+    /**
+     * Creates a channel.
+     *
+     * @param order     The prediction order
+     * @param frameSize The analysis frame length in samples (even)
+     */
+    public LpcChannel(int order, int frameSize) {
+        if (frameSize < 4 || frameSize % 2 != 0)
+            throw new IllegalArgumentException("Frame size must be even and at least 4: " + frameSize);
+        this.order = order;
+        this.frameSize = frameSize;
+        this.hop = frameSize / 2;
+        analyzer = new LpcAnalyzer(order, frameSize);
+        warper = new LpcWarper(order);
+        history = new float[frameSize];
+        targetA = new float[order + 1];
+        kA = new float[order + 1];
+        dA = new float[order + 1];
+        targetS = new float[order + 1];
+        kS = new float[order + 1];
+        dS = new float[order + 1];
+        stateA = new float[order + 1];
+        stateS = new float[order + 1];
+        stateN = new float[order];
+        filled = hop;
+    }
+
+    /**
+     * Sets the warping applied from the next analysis on.
+     *
+     * @param lambda The all-pass coefficient (positive lowers formants), |lambda|
+     *               &lt; 1
+     * @param gamma  The bandwidth factor, 0 &lt; gamma &lt;= 1
+     */
+    public void setWarp(double lambda, double gamma) {
+        this.lambda = lambda;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Processes samples in place.
+     *
+     * @param x      The samples
+     * @param offset The first sample
+     * @param length The number of samples
+     */
+    public void process(float[] x, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            if (filled == hop)
+                analyze();
+            int n = Math.min(end - i, hop - filled);
+            System.arraycopy(x, i, history, frameSize - hop + filled, n);
+            filter(x, i, n);
+            filled += n;
+            i += n;
+        }
+    }
+
+    /**
+     * Runs both lattices over a run of samples within one hop.
+     *
+     * @param x      The samples
+     * @param offset The first sample
+     * @param n      The number of samples
+     */
+    private void filter(float[] x, int offset, int n) {
+        final int p = order;
+        final float[] kA = this.kA, dA = this.dA, kS = this.kS, dS = this.dS;
+        final float[] stateA = this.stateA, stateS = this.stateS, stateN = this.stateN;
+        float gain = this.gain;
+        final float dGain = this.dGain;
+        float lambda = currentLambda;
+        final float dLambda = this.dLambda;
+        final boolean warped = lambda != 0f || dLambda != 0f;
+        double inputEnergy = 0, outputEnergy = 0;
+        for (int i = offset; i < offset + n; i++) {
+            // Analysis lattice: f and b are the forward and backward errors of order m
+            float f = x[i];
+            inputEnergy += f * f;
+            float b = f;
+            for (int m = 1; m <= p; m++) {
+                float k = kA[m] + dA[m];
+                kA[m] = k;
+                float delayed = stateA[m - 1];
+                stateA[m - 1] = b;
+                b = delayed + k * f;
+                f = f + k * delayed;
+            }
+
+            // Numerator of the warped model
+            if (warped) {
+                lambda += dLambda;
+                for (int m = 0; m < p; m++) {
+                    float delayed = stateN[m];
+                    stateN[m] = f;
+                    f = f - lambda * delayed;
+                }
+            }
+
+            // Synthesis lattice, from the residual down to order 0
+            for (int m = p; m >= 1; m--) {
+                float k = kS[m] + dS[m];
+                kS[m] = k;
+                f = f - k * stateS[m - 1];
+                stateS[m] = stateS[m - 1] + k * f;
+            }
+            stateS[0] = f;
+            outputEnergy += f * f;
+            gain += dGain;
+            x[i] = f * gain;
+        }
+        this.gain = gain;
+        this.currentLambda = lambda;
+        this.inputEnergy += inputEnergy;
+        this.outputEnergy += outputEnergy;
+    }
+
+    /**
+     * Analyzes the last frame and starts interpolating towards the new model.
+     */
+    private void analyze() {
+        // Land exactly on the previous targets, whatever rounding the ramp accumulated
+        System.arraycopy(targetA, 1, kA, 1, order);
+        System.arraycopy(targetS, 1, kS, 1, order);
+        gain = targetGain;
+        currentLambda = targetLambda;
+
+        analyzer.analyze(history, targetA);
+        warper.warp(targetA, lambda, gamma, targetS);
+        targetLambda = (float) lambda;
+
+        // Silent hops keep the last gain
+        if (outputEnergy > 1e-6 * hop)
+            targetGain = (float) Math.min(MAX_GAIN, Math.sqrt(inputEnergy / outputEnergy));
+        inputEnergy = 0;
+        outputEnergy = 0;
+
+        float scale = 1f / hop;
+        for (int m = 1; m <= order; m++) {
+            dA[m] = (targetA[m] - kA[m]) * scale;
+            dS[m] = (targetS[m] - kS[m]) * scale;
+        }
+        dGain = (targetGain - gain) * scale;
+        dLambda = (targetLambda - currentLambda) * scale;
+
+        // Flush decaying filter state before it turns subnormal
+        for (int m = 0; m <= order; m++) {
+            if (Math.abs(stateA[m]) < 1e-15f)
+                stateA[m] = 0f;
+            if (Math.abs(stateS[m]) < 1e-15f)
+                stateS[m] = 0f;
+        }
+        for (int m = 0; m < order; m++) {
+            if (Math.abs(stateN[m]) < 1e-15f)
+                stateN[m] = 0f;
+        }
+
+        System.arraycopy(history, hop, history, 0, frameSize - hop);
+        filled = 0;
+    }
+
+    /**
+     * Clears the history, the model and the filter state, as at the start of a
+     * stream.
+     */
+    public void reset() {
+        Arrays.fill(history, 0f);
+        Arrays.fill(targetA, 0f);
+        Arrays.fill(kA, 0f);
+        Arrays.fill(dA, 0f);
+        Arrays.fill(targetS, 0f);
+        Arrays.fill(kS, 0f);
+        Arrays.fill(dS, 0f);
+        Arrays.fill(stateA, 0f);
+        Arrays.fill(stateS, 0f);
+        Arrays.fill(stateN, 0f);
+        targetLambda = 0f;
+        currentLambda = 0f;
+        dLambda = 0f;
+        targetGain = 1f;
+        gain = 1f;
+        dGain = 0f;
+        inputEnergy = 0;
+        outputEnergy = 0;
+        filled = hop;
+    }
+
+    /**
+     * Returns the prediction order.
+     *
+     * @return The number of coefficients
+     */
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the analysis frame length.
+     *
+     * @return Samples per frame; a new model is computed every half frame
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,174 @@
+package voiceprotector.lpc;
+
+import java.util.Arrays;
+
+/**
+ * LpcWarper moves the poles of an LPC model, which shifts and reshapes the
+ * formants of the resynthesized voice:
+ * <ul>
+ * <li>Frequency warping substitutes the first-order all-pass
+ * {@code (z^-1 - lambda) / (1 - lambda z^-1)} for {@code z^-1}. Positive lambda
+ * moves formants down, negative lambda moves them up. The all-pass maps the unit
+ * disk onto itself, so a stable model stays stable. The warped model is
+ * {@code B(z) / (1 - lambda z^-1)^order}; this class returns B, the caller
+ * applies the numerator {@code (1 - lambda z^-1)^order}.</li>
+ * <li>Bandwidth scaling multiplies {@code a[i]} by {@code gamma^i}, pulling the
+ * poles towards the origin (gamma &lt; 1 widens the formants).</li>
+ * </ul>
+ * Input and output are reflection coefficients, which can be interpolated
+ * between frames without losing stability. All work arrays are allocated once.
+ */
+public class LpcWarper {
+
+    /**
+     * The prediction order
+     */
+    private final int order;
+
+    /**
+     * Direct-form coefficients a[0..order]
+     */
+    private final double[] a;
+
+    /**
+     * Warped direct-form coefficients
+     */
+    private final double[] b;
+
+    /**
+     * Scratch for order conversions
+     */
+    private final double[] tmp;
+
+    /**
+     * basis[k][n]: coefficient of z^-n in (z^-1 - lambda)^k (1 - lambda z^-1)^(order-k)
+     */
+    private final double[][] basis;
+
+    /**
+     * The lambda the basis was built for
+     */
+    private double basisLambda = Double.NaN;
+
+    /**
+     * Creates a warper.
+     *
+     * @param order The prediction order
+     */
+    public LpcWarper(int order) {
+        this.order = order;
+        a = new double[order + 1];
+        b = new double[order + 1];
+        tmp = new double[order + 1];
+        basis = new double[order + 1][order + 1];
+    }
+
+    /**
+     * Warps a model.
+     *
+     * @param in     Reflection coefficients k[1..order]
+     * @param lambda The all-pass coefficient, |lambda| &lt; 1
+     * @param gamma  The bandwidth factor, 0 &lt; gamma &lt;= 1
+     * @param out    Receives the warped reflection coefficients; a copy of in if
+     *               the result would be unstable
+     */
+    public void warp(float[] in, double lambda, double gamma, float[] out) {
+        if (lambda == 0 && gamma == 1) {
+            System.arraycopy(in, 1, out, 1, order);
+            return;
+        }
+
+        toDirect(in, a);
+
+        if (lambda != 0) {
+            if (lambda != basisLambda)
+                buildBasis(lambda);
+            for (int n = 0; n <= order; n++) {
+                double sum = 0;
+                for (int k = 0; k <= order; k++) {
+                    sum += a[k] * basis[k][n];
+                }
+                b[n] = sum;
+            }
+            double norm = 1 / b[0];
+            for (int n = 0; n <= order; n++)
+                b[n] *= norm;
+        } else {
+            System.arraycopy(a, 0, b, 0, order + 1);
+        }
+
+        double g = 1;
+        for (int n = 1; n <= order; n++) {
+            g *= gamma;
+            b[n] *= g;
+        }
+
+        if (!toReflection(b, out))
+            System.arraycopy(in, 1, out, 1, order);
+    }
+
+    /**
+     * Converts reflection coefficients to the direct form (step-up).
+     *
+     * @param k   k[1..order]
+     * @param out Receives a[0..order]
+     */
+    private void toDirect(float[] k, double[] out) {
+        out[0] = 1;
+        for (int m = 1; m <= order; m++) {
+            System.arraycopy(out, 0, tmp, 0, m);
+            for (int i = 1; i < m; i++) {
+                out[i] = tmp[i] + k[m] * tmp[m - i];
+            }
+            out[m] = k[m];
+        }
+    }
+
+    /**
+     * Converts direct-form coefficients to reflection coefficients (step-down).
+     * Destroys the contents of a.
+     *
+     * @param a   a[0..order], a[0] == 1
+     * @param out Receives k[1..order]
+     * @return false if the model is unstable (some |k| &gt;= 1)
+     */
+    private boolean toReflection(double[] a, float[] out) {
+        for (int m = order; m >= 1; m--) {
+            double k = a[m];
+            if (!(Math.abs(k) < 0.9999))
+                return false;
+            out[m] = (float) k;
+            double scale = 1 / (1 - k * k);
+            System.arraycopy(a, 0, tmp, 0, m);
+            for (int i = 1; i < m; i++) {
+                a[i] = (tmp[i] - k * tmp[m - i]) * scale;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Expands the all-pass substitution into polynomial coefficients.
+     *
+     * @param lambda The all-pass coefficient
+     */
+    private void buildBasis(double lambda) {
+        for (int k = 0; k <= order; k++) {
+            double[] poly = basis[k];
+            Arrays.fill(poly, 0);
+            poly[0] = 1;
+            int degree = 0;
+            for (int f = 0; f < order; f++) {
+                // Multiply by (z^-1 - lambda) for the first k factors, by (1 - lambda z^-1) for the rest
+                double c0 = f < k ? -lambda : 1;
+                double c1 = f < k ? 1 : -lambda;
+                for (int n = degree + 1; n >= 1; n--) {
+                    poly[n] = poly[n] * c0 + poly[n - 1] * c1;
+                }
+                poly[0] *= c0;
+                degree++;
+            }
+        }
+        basisLambda = lambda;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,216 @@
+package voiceprotector.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * ChainMetrics collects real-time health data for a
+ * {@link voiceprotector.StereoFilterChain} and the pipeline around it: a latency
+ * histogram per filter and for the whole chain, the capture-to-output latency
+ * of each block, the real-time factor and the number of dropped blocks.
+ * <p>
+ * All recording methods are lock-free and allocation-free. Histograms for
+ * filters are created when the chain compiles its stages, not per block.
+ */
+public class ChainMetrics implements ChainMetricsMBean {
+
+    /**
+     * Sample rate used to turn frame counts into audio time
+     */
+    private final float sampleRate;
+
+    /**
+     * Latency histogram per filter name
+     */
+    private final Map<String, LatencyHistogram> filters = new ConcurrentHashMap<>();
+
+    /**
+     * Latency of the whole chain per block
+     */
+    private final LatencyHistogram chain = new LatencyHistogram();
+
+    /**
+     * Capture-to-output latency per block
+     */
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+
+    /**
+     * Total audio time processed in nanoseconds
+     */
+    private final AtomicLong audioNanos = new AtomicLong();
+
+    /**
+     * Largest per-block real-time factor, as raw double bits
+     */
+    private final AtomicLong peakRtfBits = new AtomicLong();
+
+    /**
+     * Blocks dropped by the pipeline
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates an empty metrics set.
+     *
+     * @param sampleRate The sample rate of the processed audio
+     */
+    public ChainMetrics(float sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Returns the histogram for a filter, creating it on first use. Call this when
+     * setting up, not per block.
+     *
+     * @param name The filter name
+     * @return The histogram
+     */
+    public LatencyHistogram filter(String name) {
+        return filters.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+     * Records the time the whole chain spent on one block.
+     *
+     * @param nanos  The processing time
+     * @param frames The block length in frames
+     */
+    public void recordBlock(long nanos, int frames) {
+        chain.record(nanos);
+        if (frames <= 0)
+            return;
+        long blockAudio = (long) (frames * 1e9 / sampleRate);
+        audioNanos.addAndGet(blockAudio);
+
+        double rtf = (double) nanos / blockAudio;
+        long bits = Double.doubleToRawLongBits(rtf);
+        long cur;
+        while (rtf > Double.longBitsToDouble(cur = peakRtfBits.get()) && !peakRtfBits.compareAndSet(cur, bits)) {
+            // retry until the peak is at least rtf
+        }
+    }
+
+    /**
+     * Records the capture-to-output latency of one block.
+     *
+     * @param nanos The latency
+     */
+    public void recordEndToEnd(long nanos) {
+        endToEnd.record(nanos);
+    }
+
+    /**
+     * Counts one dropped block.
+     */
+    public void recordDropped() {
+        dropped.incrementAndGet();
+    }
+
+    /**
+     * Returns the per-filter histograms.
+     *
+     * @return An unmodifiable view keyed by filter name
+     */
+    public Map<String, LatencyHistogram> getFilterLatencies() {
+        return Collections.unmodifiableMap(filters);
+    }
+
+    /**
+     * Returns the chain latency histogram.
+     *
+     * @return The histogram
+     */
+    public LatencyHistogram getChainLatency() {
+        return chain;
+    }
+
+    /**
+     * Returns the capture-to-output latency histogram.
+     *
+     * @return The histogram
+     */
+    public LatencyHistogram getEndToEndLatency() {
+        return endToEnd;
+    }
+
+    /**
+     * Registers this object with the platform MBean server.
+     *
+     * @param name The value of the name key, e.g. "default"
+     * @return The object name used
+     * @throws JMException If registration fails
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName on = new ObjectName("voiceprotector:type=ChainMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+        return on;
+    }
+
+    @Override
+    public long getBlocksProcessed() {
+        return chain.getCount();
+    }
+
+    @Override
+    public long getDroppedBlocks() {
+        return dropped.get();
+    }
+
+    @Override
+    public double getChainP50Micros() {
+        return chain.quantile(0.5) / 1e3;
+    }
+
+    @Override
+    public double getChainP99Micros() {
+        return chain.quantile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getChainMaxMicros() {
+        return chain.getMax() / 1e3;
+    }
+
+    @Override
+    public double getEndToEndP99Micros() {
+        return endToEnd.quantile(0.99) / 1e3;
+    }
+
+    @Override
+    public double getRealTimeFactor() {
+        long audio = audioNanos.get();
+        return audio == 0 ? 0 : (double) chain.getSum() / audio;
+    }
+
+    @Override
+    public double getPeakRealTimeFactor() {
+        return Double.longBitsToDouble(peakRtfBits.get());
+    }
+
+    @Override
+    public String[] getFilterNames() {
+        return filters.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public double filterP99Micros(String name) {
+        LatencyHistogram h = filters.get(name);
+        return h == null ? 0 : h.quantile(0.99) / 1e3;
+    }
+
+    @Override
+    public void reset() {
+        filters.values().forEach(LatencyHistogram::reset);
+        chain.reset();
+        endToEnd.reset();
+        audioNanos.set(0);
+        peakRtfBits.set(0);
+        dropped.set(0);
+    }
+}
\ No newline at end of file
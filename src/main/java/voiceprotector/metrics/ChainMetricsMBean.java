@@ -0,0 +1,83 @@
+package voiceprotector.metrics;
+
+/**
+ * JMX view of {@link ChainMetrics}. Latencies are reported in microseconds.
+ */
+public interface ChainMetricsMBean {
+
+    /**
+     * Returns the number of blocks run through the chain.
+     *
+     * @return The number of blocks run through the chain
+     */
+    long getBlocksProcessed();
+
+    /**
+     * Returns the number of blocks dropped by the pipeline.
+     *
+     * @return The number of blocks dropped by the pipeline
+     */
+    long getDroppedBlocks();
+
+    /**
+     * Returns median chain latency per block.
+     *
+     * @return Median chain latency per block
+     */
+    double getChainP50Micros();
+
+    /**
+     * Returns 99th percentile chain latency per block.
+     *
+     * @return 99th percentile chain latency per block
+     */
+    double getChainP99Micros();
+
+    /**
+     * Returns worst chain latency per block.
+     *
+     * @return Worst chain latency per block
+     */
+    double getChainMaxMicros();
+
+    /**
+     * Returns 99th percentile capture-to-output block latency.
+     *
+     * @return 99th percentile capture-to-output block latency
+     */
+    double getEndToEndP99Micros();
+
+    /**
+     * Returns processing time divided by audio time since start.
+     *
+     * @return Processing time divided by audio time since start
+     */
+    double getRealTimeFactor();
+
+    /**
+     * Returns the largest processing/audio time ratio of a single block.
+     *
+     * @return The largest processing/audio time ratio of a single block
+     */
+    double getPeakRealTimeFactor();
+
+    /**
+     * Returns the names of all instrumented filters.
+     *
+     * @return The names of all instrumented filters
+     */
+    String[] getFilterNames();
+
+    /**
+     * Returns the 99th percentile latency of one filter.
+     *
+     * @param name The filter name as listed by {@link #getFilterNames()}
+     * @return The latency, or 0 if the filter is unknown
+     */
+    double filterP99Micros(String name);
+
+    /**
+     * Clears all histograms and counters.
+     */
+    void reset();
+}
\ No newline at end of file
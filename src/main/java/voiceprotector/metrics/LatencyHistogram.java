@@ -0,0 +1,164 @@
+package voiceprotector.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram records durations in nanoseconds into fixed log-linear
+ * buckets (16 sub-buckets per power of two, about 6% relative resolution).
+ * Recording is lock-free, allocation-free and safe from any number of threads,
+ * so it can be called on the audio thread for every block.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Sub-buckets per power of two, as a bit count
+     */
+    private static final int SUB_BITS = 4;
+
+    /**
+     * Sub-buckets per power of two
+     */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * Total number of buckets, enough for any non-negative long
+     */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    /**
+     * Counts per bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Number of recorded values
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Sum of recorded values in nanoseconds
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Largest recorded value in nanoseconds
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos The duration in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long m;
+        while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+            // retry until max is at least v
+        }
+    }
+
+    /**
+     * Maps a value to its bucket.
+     *
+     * @param v A non-negative value
+     * @return The bucket index
+     */
+    private static int bucketOf(long v) {
+        if (v < SUB_COUNT)
+            return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Returns the midpoint of a bucket.
+     *
+     * @param index The bucket index
+     * @return A representative value for the bucket in nanoseconds
+     */
+    private static long bucketMid(int index) {
+        if (index < SUB_COUNT)
+            return index;
+        int exp = index / SUB_COUNT + SUB_BITS - 1;
+        int sub = index % SUB_COUNT;
+        long lower = (long) (SUB_COUNT + sub) << (exp - SUB_BITS);
+        long width = 1L << (exp - SUB_BITS);
+        return lower + width / 2;
+    }
+
+    /**
+     * Returns an estimate of a quantile.
+     *
+     * @param q The quantile between 0 and 1, e.g. 0.99
+     * @return The estimated value in nanoseconds, 0 if nothing was recorded
+     */
+    public long quantile(double q) {
+        long total = count.get();
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(bucketMid(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return The count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the sum of all recorded values.
+     *
+     * @return The sum in nanoseconds
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return The maximum in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of all recorded values.
+     *
+     * @return The mean in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long c = count.get();
+        return c == 0 ? 0 : (double) sum.get() / c;
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently may be partly
+     * lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+package voiceprotector.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * PrometheusExporter serves {@link ChainMetrics} in the Prometheus text format
+ * on {@code http://127.0.0.1:<port>/metrics}, using the JDK's built-in HTTP
+ * server. Latencies are exported as summaries in seconds.
+ */
+public class PrometheusExporter {
+
+    /**
+     * Quantiles exported for every histogram
+     */
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    /**
+     * The metrics to export
+     */
+    private final ChainMetrics metrics;
+
+    /**
+     * The running server, null until started
+     */
+    private HttpServer server;
+
+    /**
+     * Creates an exporter.
+     *
+     * @param metrics The metrics to export
+     */
+    public PrometheusExporter(ChainMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts serving on the loopback interface.
+     *
+     * @param port The TCP port, 0 for any free port
+     * @return The port actually bound
+     * @throws IOException If the port cannot be bound
+     */
+    public synchronized int start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * Renders the current metrics in the Prometheus text format.
+     *
+     * @return The exposition text
+     */
+    public String scrape() {
+        StringBuilder sb = new StringBuilder();
+
+        summary(sb, "voiceprotector_chain_latency_seconds", "Filter chain processing time per block",
+                null, metrics.getChainLatency(), true);
+        summary(sb, "voiceprotector_end_to_end_latency_seconds", "Capture-to-output latency per block",
+                null, metrics.getEndToEndLatency(), true);
+
+        boolean first = true;
+        for (Map.Entry<String, LatencyHistogram> e : metrics.getFilterLatencies().entrySet()) {
+            summary(sb, "voiceprotector_filter_latency_seconds", "Processing time per block of one filter",
+                    e.getKey(), e.getValue(), first);
+            first = false;
+        }
+
+        gauge(sb, "voiceprotector_real_time_factor", "Processing time divided by audio time",
+                metrics.getRealTimeFactor());
+        gauge(sb, "voiceprotector_peak_real_time_factor", "Largest per-block real-time factor",
+                metrics.getPeakRealTimeFactor());
+        sb.append("# HELP voiceprotector_blocks_processed_total Blocks run through the chain\n");
+        sb.append("# TYPE voiceprotector_blocks_processed_total counter\n");
+        sb.append("voiceprotector_blocks_processed_total ").append(metrics.getBlocksProcessed()).append('\n');
+        sb.append("# HELP voiceprotector_dropped_blocks_total Blocks dropped by the pipeline\n");
+        sb.append("# TYPE voiceprotector_dropped_blocks_total counter\n");
+        sb.append("voiceprotector_dropped_blocks_total ").append(metrics.getDroppedBlocks()).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Appends one histogram as a Prometheus summary.
+     *
+     * @param sb     The output
+     * @param name   The metric name
+     * @param help   The help text
+     * @param filter The filter label value, or null for none
+     * @param h      The histogram
+     * @param header true to emit the HELP/TYPE lines
+     */
+    private static void summary(StringBuilder sb, String name, String help, String filter, LatencyHistogram h,
+            boolean header) {
+        if (header) {
+            sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            sb.append("# TYPE ").append(name).append(" summary\n");
+        }
+        String labels = filter == null ? "" : "filter=\"" + filter + "\",";
+        for (double q : QUANTILES) {
+            sb.append(name).append("{").append(labels).append("quantile=\"").append(q).append("\"} ")
+                    .append(h.quantile(q) / 1e9).append('\n');
+        }
+        String plain = filter == null ? "" : "{filter=\"" + filter + "\"}";
+        sb.append(name).append("_sum").append(plain).append(' ').append(h.getSum() / 1e9).append('\n');
+        sb.append(name).append("_count").append(plain).append(' ').append(h.getCount()).append('\n');
+    }
+
+    /**
+     * Appends one gauge.
+     *
+     * @param sb    The output
+     * @param name  The metric name
+     * @param help  The help text
+     * @param value The value
+     */
+    private static void gauge(StringBuilder sb, String name, String help, double value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" gauge\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+}
\ No newline at end of file
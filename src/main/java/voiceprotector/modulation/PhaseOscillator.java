@@ -0,0 +1,152 @@
+package voiceprotector.modulation;
+
+/**
+ * PhaseOscillator is a sine oscillator driven by a 32-bit phase accumulator.
+ * The phase carries over from block to block, so the waveform is continuous and
+ * the same regardless of how the stream is split into blocks. Because the
+ * accumulator is an integer that wraps exactly, {@link #seek(long)} lands on
+ * the same phase that sequential processing reaches, which lets chunked
+ * processing reproduce sequential output bit for bit.
+ * <p>
+ * Per sample the cost is one add and an interpolated {@link SineTable} lookup;
+ * {@link #setInterpolated(boolean)} switches to {@code Math.sin} instead.
+ */
+public class PhaseOscillator {
+
+    /**
+     * One cycle in phase units
+     */
+    private static final double CYCLE = 4294967296.0;
+
+    /**
+     * Phase of the next sample
+     */
+    private int phase;
+
+    /**
+     * Phase at stream position 0
+     */
+    private final int startPhase;
+
+    /**
+     * Phase advance per sample
+     */
+    private int increment;
+
+    /**
+     * true to use the lookup table, false for Math.sin
+     */
+    private boolean interpolated = true;
+
+    /**
+     * Creates an oscillator.
+     *
+     * @param radiansPerSample The angular frequency in radians per sample
+     * @param startRadians     The phase at stream position 0 in radians (PI / 2
+     *                         gives a cosine)
+     */
+    public PhaseOscillator(double radiansPerSample, double startRadians) {
+        this.increment = toPhase(radiansPerSample);
+        this.startPhase = toPhase(startRadians);
+        this.phase = startPhase;
+    }
+
+    /**
+     * Converts an angle to phase units, wrapping to one cycle.
+     *
+     * @param radians The angle
+     * @return The phase
+     */
+    private static int toPhase(double radians) {
+        double cycles = radians / (2 * Math.PI);
+        return (int) Math.round((cycles - Math.floor(cycles)) * CYCLE);
+    }
+
+    /**
+     * Returns the value for the next sample and advances the phase.
+     *
+     * @return The sine value
+     */
+    public float next() {
+        float v = interpolated ? SineTable.sin(phase) : SineTable.exactSin(phase);
+        phase += increment;
+        return v;
+    }
+
+    /**
+     * Writes the next n values, scaled by gain, into out.
+     *
+     * @param out  The destination
+     * @param n    The number of samples
+     * @param gain The scale factor
+     */
+    public void fill(float[] out, int n, float gain) {
+        if (!interpolated) {
+            for (int i = 0; i < n; i++)
+                out[i] = next() * gain;
+            return;
+        }
+        int p = phase;
+        for (int i = 0; i < n; i++, p += increment) {
+            out[i] = SineTable.sin(p) * gain;
+        }
+        phase = p;
+    }
+
+    /**
+     * Adds the next n values, scaled by gain, to out.
+     *
+     * @param out  The destination
+     * @param n    The number of samples
+     * @param gain The scale factor
+     */
+    public void add(float[] out, int n, float gain) {
+        if (!interpolated) {
+            for (int i = 0; i < n; i++)
+                out[i] += next() * gain;
+            return;
+        }
+        int p = phase;
+        for (int i = 0; i < n; i++, p += increment) {
+            out[i] += SineTable.sin(p) * gain;
+        }
+        phase = p;
+    }
+
+    /**
+     * Moves the phase to where it is after the given number of samples from
+     * stream position 0 at the current frequency.
+     *
+     * @param frame The stream position of the next sample
+     */
+    public void seek(long frame) {
+        phase = startPhase + (int) (frame * increment);
+    }
+
+    /**
+     * Changes the frequency; the phase continues from where it is.
+     *
+     * @param radiansPerSample The angular frequency in radians per sample
+     */
+    public void setFrequency(double radiansPerSample) {
+        increment = toPhase(radiansPerSample);
+    }
+
+    /**
+     * Checks whether the lookup table is used.
+     *
+     * @return true for the interpolated table, false for Math.sin
+     */
+    public boolean isInterpolated() {
+        return interpolated;
+    }
+
+    /**
+     * Selects the lookup table or Math.sin.
+     *
+     * @param interpolated true for the interpolated table, false for Math.sin
+     */
+    public void setInterpolated(boolean interpolated) {
+        this.interpolated = interpolated;
+    }
+}
\ No newline at end of file
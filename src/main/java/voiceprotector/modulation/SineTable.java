@@ -0,0 +1,63 @@
+package voiceprotector.modulation;
+
+/**
+ * SineTable is a shared one-cycle sine lookup table addressed by a 32-bit
+ * phase, where 2^32 is one full cycle. Values between entries are linearly
+ * interpolated; with 1024 entries the error is below 5e-6, far under one 16-bit
+ * step.
+ */
+public final class SineTable {
+
+    /**
+     * log2 of the number of entries
+     */
+    private static final int BITS = 10;
+
+    /**
+     * Bits of the phase below the table index
+     */
+    private static final int FRAC_BITS = 32 - BITS;
+
+    /**
+     * Scales the fractional phase bits to [0, 1)
+     */
+    private static final float FRAC_SCALE = 1.0f / (1 << FRAC_BITS);
+
+    /**
+     * One cycle of sine plus a guard entry equal to the first, so interpolation
+     * never wraps
+     */
+    private static final float[] TABLE = new float[(1 << BITS) + 1];
+
+    static {
+        for (int i = 0; i < TABLE.length; i++) {
+            TABLE[i] = (float) Math.sin(2 * Math.PI * i / (1 << BITS));
+        }
+    }
+
+    private SineTable() {
+    }
+
+    /**
+     * Returns the interpolated sine of a phase.
+     *
+     * @param phase The phase, 2^32 per cycle (wraps naturally)
+     * @return sin(2 * PI * phase / 2^32)
+     */
+    public static float sin(int phase) {
+        int index = phase >>> FRAC_BITS;
+        float frac = (phase & ((1 << FRAC_BITS) - 1)) * FRAC_SCALE;
+        float a = TABLE[index];
+        return a + (TABLE[index + 1] - a) * frac;
+    }
+
+    /**
+     * Returns the exact sine of a phase, for comparison with the table.
+     *
+     * @param phase The phase, 2^32 per cycle
+     * @return sin(2 * PI * phase / 2^32)
+     */
+    public static float exactSin(int phase) {
+        return (float) Math.sin(phase * (2 * Math.PI / 4294967296.0));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,128 @@
+package voiceprotector.monitor;
+
+/**
+ * AnalysisSnapshot is one published state of a {@link SignalTap}: meter levels
+ * with their ballistics already applied, the running clip count and the most
+ * recent samples for a spectrum. Snapshots are preallocated and reused by the
+ * tap's {@link TripleBuffer}; a reader must not keep one beyond its next
+ * {@link SignalTap#acquire()}.
+ */
+public final class AnalysisSnapshot {
+
+    /**
+     * The number of metered channels
+     */
+    public static final int CHANNELS = 2;
+
+    /**
+     * Held peak level per channel, on the 16-bit scale
+     */
+    final float[] peak = new float[CHANNELS];
+
+    /**
+     * Averaged RMS level per channel, on the 16-bit scale
+     */
+    final float[] rms = new float[CHANNELS];
+
+    /**
+     * The most recent mono samples, oldest first
+     */
+    final float[] history = new float[SignalTap.HISTORY];
+
+    /**
+     * The number of channels the tapped blocks had, at most {@link #CHANNELS}
+     */
+    int channels;
+
+    /**
+     * Samples at full scale since the tap was created
+     */
+    long clipped;
+
+    /**
+     * Frames seen since the tap was created
+     */
+    long frames;
+
+    /**
+     * Increments with every publication, 0 before the first
+     */
+    long sequence;
+
+    /**
+     * Returns the held peak level of a channel.
+     *
+     * @param ch The channel, below {@link #getChannels()}
+     * @return The peak in dBFS, -inf for silence
+     */
+    public float getPeakDb(int ch) {
+        return toDb(peak[ch]);
+    }
+
+    /**
+     * Returns the averaged RMS level of a channel.
+     *
+     * @param ch The channel, below {@link #getChannels()}
+     * @return The RMS in dBFS, -inf for silence
+     */
+    public float getRmsDb(int ch) {
+        return toDb(rms[ch]);
+    }
+
+    /**
+     * Returns the number of metered channels.
+     *
+     * @return 1 or 2, 0 before the first publication
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Returns how many samples reached full scale since the tap was created.
+     * A reader detects new clipping by comparing successive values.
+     *
+     * @return The clip count
+     */
+    public long getClipped() {
+        return clipped;
+    }
+
+    /**
+     * Returns how many frames the tap has seen.
+     *
+     * @return The frame count
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the publication number of this snapshot.
+     *
+     * @return The sequence number, 0 if nothing was published yet
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the most recent {@link SignalTap#HISTORY} samples, the mean of the
+     * metered channels, oldest first.
+     *
+     * @return The samples on the 16-bit scale; not to be modified
+     */
+    public float[] getHistory() {
+        return history;
+    }
+
+    /**
+     * Converts a level on the 16-bit scale to dBFS.
+     *
+     * @param level The level
+     * @return The level relative to full scale in dB
+     */
+    private static float toDb(float level) {
+        return (float) (20 * Math.log10(level / 32768.0));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package voiceprotector.monitor;
+
+/**
+ * SignalMonitor taps a {@link voiceprotector.StereoFilterChain} before and
+ * after the filters, so a display can compare what goes in with what comes
+ * out. The chain feeds both taps on the audio thread; one reader thread, such
+ * as a Swing timer, polls them.
+ */
+public final class SignalMonitor {
+
+    /**
+     * The tap before the filters
+     */
+    private final SignalTap input;
+
+    /**
+     * The tap after the filters
+     */
+    private final SignalTap output;
+
+    /**
+     * The sample rate of the tapped blocks in Hz
+     */
+    private final float sampleRate;
+
+    /**
+     * Creates a monitor.
+     *
+     * @param sampleRate The processing rate of the chain in Hz
+     */
+    public SignalMonitor(float sampleRate) {
+        this.sampleRate = sampleRate;
+        this.input = new SignalTap(sampleRate);
+        this.output = new SignalTap(sampleRate);
+    }
+
+    /**
+     * Returns the tap before the filters.
+     *
+     * @return The input tap
+     */
+    public SignalTap getInput() {
+        return input;
+    }
+
+    /**
+     * Returns the tap after the filters.
+     *
+     * @return The output tap
+     */
+    public SignalTap getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the sample rate of the tapped blocks.
+     *
+     * @return The rate in Hz
+     */
+    public float getSampleRate() {
+        return sampleRate;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,308 @@
+package voiceprotector.monitor;
+
+/**
+ * SignalTap measures the blocks passing one point of the chain on the audio
+ * thread and publishes the result to one reader through a
+ * {@link TripleBuffer}. Per sample it only keeps a peak, a sum of squares, a
+ * clip count and a copy into a history ring; levels are smoothed and
+ * published every {@link #PUBLISH_MILLIS} of audio. Nothing is allocated and
+ * nothing blocks, so a slow or absent reader cannot delay the audio thread.
+ * Spectra are left to the reader ({@link SpectrumAnalyzer}).
+ * <p>
+ * The record methods must be called from one thread at a time, as must
+ * {@link #acquire()}.
+ */
+public final class SignalTap {
+
+    /**
+     * The number of recent samples kept for the spectrum, a power of two
+     */
+    public static final int HISTORY = 2048;
+
+    /**
+     * Audio between two publications
+     */
+    public static final int PUBLISH_MILLIS = 10;
+
+    /**
+     * Time for the held peak to fall by 20 dB
+     */
+    private static final double PEAK_FALL_SECONDS = 1.5;
+
+    /**
+     * Time constant of the RMS average
+     */
+    private static final double RMS_SECONDS = 0.3;
+
+    /**
+     * Magnitude from which a sample counts as clipped
+     */
+    private static final float CLIP = 32767f;
+
+    /**
+     * The published snapshots
+     */
+    private final TripleBuffer<AnalysisSnapshot> buffer = new TripleBuffer<>(AnalysisSnapshot::new);
+
+    /**
+     * Frames per publication
+     */
+    private final int publishFrames;
+
+    /**
+     * Peak decay per publication
+     */
+    private final float peakFall;
+
+    /**
+     * RMS smoothing coefficient per publication
+     */
+    private final float rmsCoeff;
+
+    /**
+     * The ring of recent mono samples
+     */
+    private final float[] ring = new float[HISTORY];
+
+    /**
+     * Write position in {@link #ring}
+     */
+    private int ringPos;
+
+    /**
+     * Largest magnitude per channel since the last publication
+     */
+    private final float[] windowPeak = new float[AnalysisSnapshot.CHANNELS];
+
+    /**
+     * Sum of squares per channel since the last publication
+     */
+    private final double[] windowSquares = new double[AnalysisSnapshot.CHANNELS];
+
+    /**
+     * Frames since the last publication
+     */
+    private int windowFrames;
+
+    /**
+     * Held peak per channel
+     */
+    private final float[] peak = new float[AnalysisSnapshot.CHANNELS];
+
+    /**
+     * Averaged mean square per channel
+     */
+    private final float[] meanSquare = new float[AnalysisSnapshot.CHANNELS];
+
+    /**
+     * Channels of the last block, at most {@link AnalysisSnapshot#CHANNELS}
+     */
+    private int channels;
+
+    /**
+     * Samples at full scale so far
+     */
+    private long clipped;
+
+    /**
+     * Frames so far
+     */
+    private long frames;
+
+    /**
+     * Publications so far
+     */
+    private long sequence;
+
+    /**
+     * Creates a tap.
+     *
+     * @param sampleRate The sample rate of the tapped blocks in Hz
+     */
+    public SignalTap(float sampleRate) {
+        this.publishFrames = Math.max(1, Math.round(sampleRate * PUBLISH_MILLIS / 1000f));
+        double window = publishFrames / (double) sampleRate;
+        this.peakFall = (float) Math.pow(10, -window / PEAK_FALL_SECONDS);
+        this.rmsCoeff = (float) (1 - Math.exp(-window / RMS_SECONDS));
+    }
+
+    /**
+     * Measures a block of planar short samples.
+     *
+     * @param samples Planar samples, one or more channels
+     * @param length  The number of samples per channel
+     */
+    public void record(short[][] samples, int length) {
+        record(samples, 0, length);
+    }
+
+    /**
+     * Measures a range of planar short samples as one block.
+     *
+     * @param samples Planar samples, one or more channels
+     * @param offset  The first sample of the range
+     * @param length  The number of samples per channel
+     */
+    public void record(short[][] samples, int offset, int length) {
+        int n = Math.min(samples.length, AnalysisSnapshot.CHANNELS);
+        channels = n;
+        for (int ch = 0; ch < n; ch++) {
+            short[] s = samples[ch];
+            // Integer arithmetic keeps the loop branch-free and vectorizable
+            int pk = 0;
+            long sum = 0;
+            int clips = 0;
+            for (int i = offset; i < offset + length; i++) {
+                int v = s[i];
+                int a = Math.abs(v);
+                pk = Math.max(pk, a);
+                sum += v * v;
+                clips += (a + 1) >>> 15;
+            }
+            windowPeak[ch] = Math.max(windowPeak[ch], pk);
+            windowSquares[ch] += sum;
+            clipped += clips;
+        }
+
+        short[] l = samples[0];
+        short[] r = samples[n - 1];
+        int pos = ringPos;
+        for (int i = offset; i < offset + length; i++) {
+            ring[pos] = 0.5f * (l[i] + r[i]);
+            pos = (pos + 1) & (HISTORY - 1);
+        }
+        ringPos = pos;
+        advance(length);
+    }
+
+    /**
+     * Measures a block of planar float samples on the 16-bit scale.
+     *
+     * @param samples Planar samples, one or more channels
+     * @param length  The number of valid samples per channel
+     */
+    public void record(float[][] samples, int length) {
+        int n = Math.min(samples.length, AnalysisSnapshot.CHANNELS);
+        channels = n;
+        for (int ch = 0; ch < n; ch++) {
+            float[] s = samples[ch];
+            float pk = windowPeak[ch];
+            double sum = 0;
+            long clips = 0;
+            for (int i = 0; i < length; i++) {
+                float v = s[i];
+                float a = Math.abs(v);
+                pk = Math.max(pk, a);
+                sum += v * v;
+                if (a >= CLIP)
+                    clips++;
+            }
+            windowPeak[ch] = pk;
+            windowSquares[ch] += sum;
+            clipped += clips;
+        }
+
+        float[] l = samples[0];
+        float[] r = samples[n - 1];
+        int pos = ringPos;
+        for (int i = 0; i < length; i++) {
+            ring[pos] = 0.5f * (l[i] + r[i]);
+            pos = (pos + 1) & (HISTORY - 1);
+        }
+        ringPos = pos;
+        advance(length);
+    }
+
+    /**
+     * Measures a block of interleaved little-endian PCM16 data.
+     *
+     * @param data          Interleaved PCM16 data
+     * @param length        The number of valid bytes in data
+     * @param frameChannels The number of interleaved channels
+     */
+    public void recordInterleaved(byte[] data, int length, int frameChannels) {
+        int n = Math.min(frameChannels, AnalysisSnapshot.CHANNELS);
+        channels = n;
+        int frameBytes = 2 * frameChannels;
+        int count = length / frameBytes;
+        float pk0 = windowPeak[0], pk1 = windowPeak[1];
+        double sum0 = 0, sum1 = 0;
+        long clips = 0;
+        int pos = ringPos;
+        int second = 2 * (n - 1);
+        for (int i = 0, b = 0; i < count; i++, b += frameBytes) {
+            float l = (short) ((data[b + 1] << 8) | (data[b] & 0xFF));
+            float r = (short) ((data[b + second + 1] << 8) | (data[b + second] & 0xFF));
+            float al = Math.abs(l), ar = Math.abs(r);
+            pk0 = Math.max(pk0, al);
+            pk1 = Math.max(pk1, ar);
+            sum0 += l * l;
+            sum1 += r * r;
+            if (al >= CLIP)
+                clips++;
+            if (n > 1 && ar >= CLIP)
+                clips++;
+            ring[pos] = 0.5f * (l + r);
+            pos = (pos + 1) & (HISTORY - 1);
+        }
+        windowPeak[0] = pk0;
+        windowSquares[0] += sum0;
+        if (n > 1) {
+            windowPeak[1] = pk1;
+            windowSquares[1] += sum1;
+        }
+        clipped += clips;
+        ringPos = pos;
+        advance(count);
+    }
+
+    /**
+     * Counts frames and publishes once a window is complete.
+     *
+     * @param length The frames just measured
+     */
+    private void advance(int length) {
+        frames += length;
+        windowFrames += length;
+        if (windowFrames >= publishFrames)
+            publish();
+    }
+
+    /**
+     * Applies the ballistics to the finished window and publishes a snapshot.
+     */
+    private void publish() {
+        AnalysisSnapshot s = buffer.back();
+        for (int ch = 0; ch < channels; ch++) {
+            peak[ch] = Math.max(windowPeak[ch], peak[ch] * peakFall);
+            float ms = (float) (windowSquares[ch] / windowFrames);
+            meanSquare[ch] += rmsCoeff * (ms - meanSquare[ch]);
+            s.peak[ch] = peak[ch];
+            s.rms[ch] = (float) Math.sqrt(meanSquare[ch]);
+            windowPeak[ch] = 0;
+            windowSquares[ch] = 0;
+        }
+        windowFrames = 0;
+
+        // Unroll the ring so the history is oldest first
+        int tail = HISTORY - ringPos;
+        System.arraycopy(ring, ringPos, s.history, 0, tail);
+        System.arraycopy(ring, 0, s.history, tail, ringPos);
+
+        s.channels = channels;
+        s.clipped = clipped;
+        s.frames = frames;
+        s.sequence = ++sequence;
+        buffer.publish();
+    }
+
+    /**
+     * Returns the latest published snapshot. It stays valid until the next
+     * call.
+     *
+     * @return The snapshot; its sequence is 0 if nothing was published yet
+     */
+    public AnalysisSnapshot acquire() {
+        return buffer.acquire();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,85 @@
+package voiceprotector.monitor;
+
+import voiceprotector.spectral.FFT;
+
+/**
+ * SpectrumAnalyzer turns the history of an {@link AnalysisSnapshot} into a
+ * magnitude spectrum. It runs on the reader's thread, never on the audio
+ * thread, and reuses its buffers, so repeated analyses do not allocate. A
+ * full-scale sine reads 0 dB.
+ */
+public final class SpectrumAnalyzer {
+
+    /**
+     * The transform plan
+     */
+    private final FFT fft = FFT.forSize(SignalTap.HISTORY);
+
+    /**
+     * The Hann window
+     */
+    private final float[] window = new float[SignalTap.HISTORY];
+
+    /**
+     * Real parts
+     */
+    private final float[] re = new float[SignalTap.HISTORY];
+
+    /**
+     * Imaginary parts
+     */
+    private final float[] im = new float[SignalTap.HISTORY];
+
+    /**
+     * Magnitude per bin in dBFS
+     */
+    private final float[] magnitudes = new float[SignalTap.HISTORY / 2 + 1];
+
+    /**
+     * Scales a bin magnitude to the amplitude relative to full scale
+     */
+    private final float scale;
+
+    /**
+     * Creates an analyzer.
+     */
+    public SpectrumAnalyzer() {
+        int n = window.length;
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / n));
+            sum += window[i];
+        }
+        this.scale = (float) (2 / (sum * 32768));
+    }
+
+    /**
+     * Computes the spectrum of a snapshot.
+     *
+     * @param snapshot The snapshot
+     * @return The magnitude of each bin from 0 to the Nyquist frequency in dBFS;
+     *         the array is reused by the next call
+     */
+    public float[] analyze(AnalysisSnapshot snapshot) {
+        float[] h = snapshot.getHistory();
+        for (int i = 0; i < h.length; i++) {
+            re[i] = h[i] * window[i];
+            im[i] = 0;
+        }
+        fft.forward(re, im);
+        for (int k = 0; k < magnitudes.length; k++) {
+            double mag = Math.sqrt(re[k] * re[k] + im[k] * im[k]) * scale;
+            magnitudes[k] = (float) (20 * Math.log10(mag + 1e-9));
+        }
+        return magnitudes;
+    }
+
+    /**
+     * Returns the number of bins of a spectrum.
+     *
+     * @return HISTORY / 2 + 1
+     */
+    public int getBins() {
+        return magnitudes.length;
+    }
+}
\ No newline at end of file
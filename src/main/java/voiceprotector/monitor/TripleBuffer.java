@@ -0,0 +1,86 @@
+package voiceprotector.monitor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * TripleBuffer hands the latest of a stream of objects from one writer thread
+ * to one reader thread without locks, waiting or allocation. The writer fills
+ * its back buffer and publishes it by swapping it with the middle buffer; the
+ * reader takes the middle buffer by swapping it with its front buffer whenever
+ * something new was published. Each side only ever touches its own buffer, so
+ * neither can block the other, and the reader always sees a complete object.
+ * Objects published while the reader was not looking are overwritten.
+ *
+ * @param <T> The type of the buffers
+ */
+public final class TripleBuffer<T> {
+
+    /**
+     * Flag in {@link #middle} set when the middle buffer has not been read yet
+     */
+    private static final int FRESH = 4;
+
+    /**
+     * The three buffers
+     */
+    private final Object[] buffers = new Object[3];
+
+    /**
+     * Index of the middle buffer, with {@link #FRESH} if it is newer than the
+     * reader's
+     */
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    /**
+     * Index of the buffer the writer fills, owned by the writer
+     */
+    private int back = 0;
+
+    /**
+     * Index of the buffer the reader holds, owned by the reader
+     */
+    private int front = 2;
+
+    /**
+     * Creates a triple buffer.
+     *
+     * @param factory Creates each of the three buffers
+     */
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = factory.get();
+    }
+
+    /**
+     * Returns the buffer the writer may fill. Writer thread only.
+     *
+     * @return The back buffer
+     */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Publishes the back buffer and gives the writer the previous middle buffer,
+     * whose content is stale. Writer thread only.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & 3;
+    }
+
+    /**
+     * Returns the most recently published buffer; it stays valid until the next
+     * call. Reader thread only.
+     *
+     * @return The front buffer, updated if something was published since the
+     *         last call
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if ((middle.get() & FRESH) != 0)
+            front = middle.getAndSet(front) & 3;
+        return (T) buffers[front];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,205 @@
+package voiceprotector.noise;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * NoiseBank is a precomputed, loopable table of shaped noise, shared read-only
+ * by all streams. Streams read it in segments of {@link #SEGMENT} frames, each
+ * starting at a random offset chosen from the stream position, so different
+ * streams and channels get uncorrelated noise while the per-sample cost is a
+ * table read.
+ * <p>
+ * Banks are normalized to the RMS of uniform white noise in [-1, 1), so the
+ * filter amplitude means the same loudness for every color. Each bank is built
+ * on first use; shaped banks whose filters depend on the sample rate are built
+ * once per rate.
+ */
+public final class NoiseBank {
+
+    /**
+     * Bank length in samples, a power of two
+     */
+    public static final int SIZE = 1 << 16;
+
+    /**
+     * Frames read contiguously before jumping to a new random offset
+     */
+    public static final int SEGMENT = 4096;
+
+    /**
+     * The noise samples
+     */
+    private final float[] table;
+
+    /**
+     * Holder for the pink bank, built on first use
+     */
+    static final class Pink {
+        static final NoiseBank BANK = new NoiseBank(pink());
+    }
+
+    /**
+     * Holder for the speech-band bank, built on first use
+     */
+    static final class Speech {
+        static final NoiseBank BANK = new NoiseBank(speechTable(48000));
+    }
+
+    /**
+     * Speech-band banks for sample rates other than 48 kHz, by rate
+     */
+    private static final Map<Float, NoiseBank> SPEECH_BY_RATE = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a bank and normalizes it.
+     *
+     * @param table The shaped noise
+     */
+    private NoiseBank(float[] table) {
+        double sum = 0;
+        for (float v : table)
+            sum += v * v;
+        float scale = (float) (Math.sqrt(1.0 / 3.0) / Math.sqrt(sum / table.length));
+        for (int i = 0; i < table.length; i++)
+            table[i] *= scale;
+        this.table = table;
+    }
+
+    /**
+     * Copies the noise for consecutive stream positions.
+     *
+     * @param gen      The stream's generator, which picks the segment offsets
+     * @param frame    The stream position of out[0]
+     * @param ch       The channel
+     * @param channels The number of channels of the stream
+     * @param out      The destination
+     * @param n        The number of frames
+     */
+    public void fill(NoiseGenerator gen, long frame, int ch, int channels, float[] out, int n) {
+        int i = 0;
+        while (i < n) {
+            long pos = frame + i;
+            long segment = pos / SEGMENT;
+            int inSegment = (int) (pos - segment * SEGMENT);
+            int run = Math.min(n - i, SEGMENT - inSegment);
+            // Negative indices keep segment offsets apart from white-noise draws
+            int start = (int) gen.bits(~(segment * channels + ch)) + inSegment;
+            for (int k = 0; k < run; k++) {
+                out[i + k] = table[(start + k) & (SIZE - 1)];
+            }
+            i += run;
+        }
+    }
+
+    /**
+     * Generates pink noise with Paul Kellet's filter over white noise. The
+     * filter runs over the table twice so the end joins the start smoothly.
+     *
+     * @return Unnormalized pink noise
+     */
+    private static float[] pink() {
+        float[] white = white(1);
+        float[] out = new float[SIZE];
+        double b0 = 0, b1 = 0, b2 = 0, b3 = 0, b4 = 0, b5 = 0, b6 = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < SIZE; i++) {
+                double w = white[i];
+                b0 = 0.99886 * b0 + w * 0.0555179;
+                b1 = 0.99332 * b1 + w * 0.0750759;
+                b2 = 0.96900 * b2 + w * 0.1538520;
+                b3 = 0.86650 * b3 + w * 0.3104856;
+                b4 = 0.55000 * b4 + w * 0.5329522;
+                b5 = -0.7616 * b5 - w * 0.0168980;
+                out[i] = (float) (b0 + b1 + b2 + b3 + b4 + b5 + b6 + w * 0.5362);
+                b6 = w * 0.115926;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Returns the speech-band bank for a sample rate.
+     *
+     * @param sampleRate The sample rate in Hz
+     * @return The bank, built on first use for the rate
+     */
+    static NoiseBank speech(float sampleRate) {
+        if (sampleRate == 48000)
+            return Speech.BANK;
+        return SPEECH_BY_RATE.computeIfAbsent(sampleRate, r -> new NoiseBank(speechTable(r)));
+    }
+
+    /**
+     * Generates speech-band noise by filtering white noise with a 300 Hz
+     * high-pass and a 3400 Hz low-pass biquad. The filters run over the table
+     * twice so the end joins the start smoothly.
+     *
+     * @param sampleRate The sample rate in Hz
+     * @return Unnormalized band-limited noise
+     */
+    private static float[] speechTable(double sampleRate) {
+        float[] white = white(2);
+        float[] out = new float[SIZE];
+        double[] hp = biquad(300, sampleRate, true);
+        double[] lp = biquad(3400, sampleRate, false);
+        double[] hs = new double[4], ls = new double[4];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < SIZE; i++) {
+                out[i] = (float) filter(lp, ls, filter(hp, hs, white[i]));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Returns uniform white noise from a fixed seed, so banks are the same in
+     * every run.
+     *
+     * @param seed The seed
+     * @return White noise in [-1, 1)
+     */
+    private static float[] white(long seed) {
+        SplittableRandom r = new SplittableRandom(seed);
+        float[] w = new float[SIZE];
+        for (int i = 0; i < SIZE; i++)
+            w[i] = (float) (r.nextDouble() * 2 - 1);
+        return w;
+    }
+
+    /**
+     * Computes normalized second-order Butterworth coefficients (RBJ cookbook).
+     *
+     * @param cutoff     The cutoff frequency in Hz
+     * @param sampleRate The sample rate in Hz
+     * @param highPass   true for high-pass, false for low-pass
+     * @return b0, b1, b2, a1, a2
+     */
+    private static double[] biquad(double cutoff, double sampleRate, boolean highPass) {
+        double w = 2 * Math.PI * cutoff / sampleRate;
+        double alpha = Math.sin(w) / Math.sqrt(2);
+        double cos = Math.cos(w);
+        double a0 = 1 + alpha;
+        double b1 = highPass ? -(1 + cos) : 1 - cos;
+        double b0 = highPass ? (1 + cos) / 2 : (1 - cos) / 2;
+        return new double[] { b0 / a0, b1 / a0, b0 / a0, -2 * cos / a0, (1 - alpha) / a0 };
+    }
+
+    /**
+     * Runs one sample through a biquad (direct form I).
+     *
+     * @param c The coefficients
+     * @param s The state: x1, x2, y1, y2
+     * @param x The input
+     * @return The output
+     */
+    private static double filter(double[] c, double[] s, double x) {
+        double y = c[0] * x + c[1] * s[0] + c[2] * s[1] - c[3] * s[2] - c[4] * s[3];
+        s[1] = s[0];
+        s[0] = x;
+        s[3] = s[2];
+        s[2] = y;
+        return y;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,48 @@
+package voiceprotector.noise;
+
+/**
+ * The spectral shape of the noise added by
+ * {@link voiceprotector.filters.NoiseFilterStereo}.
+ */
+public enum NoiseColor {
+
+    /**
+     * Uniform white noise generated per sample
+     */
+    WHITE,
+
+    /**
+     * Pink (1/f) noise read from a precomputed bank
+     */
+    PINK,
+
+    /**
+     * Noise band-limited to the speech band (300-3400 Hz) read from a
+     * precomputed bank
+     */
+    SPEECH;
+
+    /**
+     * Returns the precomputed bank for this color at 48 kHz.
+     *
+     * @return The bank, or null for {@link #WHITE}
+     */
+    public NoiseBank bank() {
+        return bank(48000);
+    }
+
+    /**
+     * Returns the precomputed bank for this color at a sample rate. Pink noise
+     * is the same at every rate.
+     *
+     * @param sampleRate The sample rate in Hz
+     * @return The bank, or null for {@link #WHITE}
+     */
+    public NoiseBank bank(float sampleRate) {
+        return switch (this) {
+            case WHITE -> null;
+            case PINK -> NoiseBank.Pink.BANK;
+            case SPEECH -> NoiseBank.speech(sampleRate);
+        };
+    }
+}
\ No newline at end of file
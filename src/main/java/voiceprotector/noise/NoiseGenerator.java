@@ -0,0 +1,76 @@
+package voiceprotector.noise;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * NoiseGenerator is a counter-based random generator owned by one stream. The
+ * value at stream index {@code k} is the SplitMix64 mix (the function behind
+ * {@link java.util.SplittableRandom}) of {@code seed + k * GAMMA}, so there is
+ * no shared state to contend on, values do not depend on how the stream is cut
+ * into blocks, and any position can be reached directly.
+ */
+public class NoiseGenerator {
+
+    /**
+     * The SplitMix64 increment (odd, golden ratio)
+     */
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Scales 24 random bits to [0, 2)
+     */
+    private static final float UNIT = 1.0f / (1 << 23);
+
+    /**
+     * The stream seed
+     */
+    private final long seed;
+
+    /**
+     * Creates a generator with a random seed.
+     */
+    public NoiseGenerator() {
+        this(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Creates a generator with a fixed seed, for reproducible output.
+     *
+     * @param seed The seed
+     */
+    public NoiseGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns 64 random bits for a stream index.
+     *
+     * @param index The stream index
+     * @return The random bits
+     */
+    public long bits(long index) {
+        long z = seed + (index + 1) * GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns a uniform value in [-1, 1) for a stream index.
+     *
+     * @param index The stream index
+     * @return The random value
+     */
+    public float uniform(long index) {
+        return (bits(index) >>> 40) * UNIT - 1.0f;
+    }
+
+    /**
+     * Returns the seed.
+     *
+     * @return The seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+package voiceprotector.offline;
+
+import java.nio.ShortBuffer;
+
+import voiceprotector.StereoFilterChain;
+
+/**
+ * BlockRunner moves interleaved 16-bit samples from a buffer through a chain
+ * block by block, reusing its block buffers. Mono input feeds both chain
+ * channels and only the left channel is written back.
+ */
+class BlockRunner {
+
+    /**
+     * The chain to run
+     */
+    private final StereoFilterChain chain;
+
+    /**
+     * Channels per frame in the buffers (1 or 2)
+     */
+    private final int channels;
+
+    /**
+     * Planar block buffer passed to the chain
+     */
+    private final short[][] samples;
+
+    /**
+     * Interleaved block buffer for bulk transfers
+     */
+    private final short[] interleaved;
+
+    /**
+     * Creates a runner.
+     *
+     * @param chain       The chain to run
+     * @param channels    Channels per frame in the buffers
+     * @param blockFrames Frames per full block
+     */
+    BlockRunner(StereoFilterChain chain, int channels, int blockFrames) {
+        this.chain = chain;
+        this.channels = channels;
+        this.samples = new short[2][blockFrames];
+        this.interleaved = new short[blockFrames * channels];
+    }
+
+    /**
+     * Processes all remaining samples of src.
+     *
+     * @param src The input samples
+     * @param dst The output samples, or null to discard the output (warm-up)
+     */
+    void run(ShortBuffer src, ShortBuffer dst) {
+        short[] L = samples[0];
+        short[] R = samples[1];
+
+        while (src.hasRemaining()) {
+            int n = Math.min(interleaved.length, src.remaining());
+            int frames = n / channels;
+            src.get(interleaved, 0, n);
+
+            if (channels == 2) {
+                for (int i = 0, s = 0; i < frames; i++, s += 2) {
+                    L[i] = interleaved[s];
+                    R[i] = interleaved[s + 1];
+                }
+            } else {
+                System.arraycopy(interleaved, 0, L, 0, frames);
+                System.arraycopy(interleaved, 0, R, 0, frames);
+            }
+
+            // The last block may be shorter than the buffers
+            chain.process(samples, 0, frames);
+
+            if (dst == null)
+                continue;
+
+            if (channels == 2) {
+                for (int i = 0, s = 0; i < frames; i++, s += 2) {
+                    interleaved[s] = L[i];
+                    interleaved[s + 1] = R[i];
+                }
+            } else {
+                System.arraycopy(L, 0, interleaved, 0, frames);
+            }
+            dst.put(interleaved, 0, n);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,364 @@
+package voiceprotector.offline;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.ChunkableStereoFilter;
+import voiceprotector.StereoAudioFilter;
+import voiceprotector.StereoFilterChain;
+
+/**
+ * ChunkedProcessor splits one long recording into chunks and processes them in
+ * parallel on a {@link ForkJoinPool}. Every chunk gets its own chain from the
+ * factory. Chunk boundaries follow the block grid of sequential processing, and
+ * each chunk restores the filter state at its start as declared by
+ * {@link ChunkableStereoFilter}: position-dependent state by
+ * {@link ChunkableStereoFilter#seek(long)} and signal-dependent state by
+ * processing the warm-up frames before the chunk and discarding them. The
+ * output is therefore identical to processing the whole recording in one pass
+ * with {@link OfflineProcessor}.
+ * <p>
+ * If an enabled filter does not implement {@link ChunkableStereoFilter}, the
+ * recording is processed as a single chunk and a warning names the filter.
+ * Callers with several files should check {@link #unchunkable(StereoFilterChain)}
+ * first and process the files in parallel instead.
+ */
+public class ChunkedProcessor {
+
+    /**
+     * Creates a fresh chain for every chunk
+     */
+    private final Supplier<StereoFilterChain> chainFactory;
+
+    /**
+     * Frames per processing block
+     */
+    private final int blockFrames;
+
+    /**
+     * Frames per chunk, a multiple of blockFrames
+     */
+    private final int chunkFrames;
+
+    /**
+     * The pool the chunks run on
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a processor.
+     *
+     * @param chainFactory Creates the chain used for one chunk; every chain must
+     *                     be configured identically
+     * @param blockFrames  Frames per block passed to the chain
+     * @param chunkFrames  Frames per chunk, rounded up to whole blocks
+     * @param pool         The pool to run chunks on
+     */
+    public ChunkedProcessor(Supplier<StereoFilterChain> chainFactory, int blockFrames, int chunkFrames,
+            ForkJoinPool pool) {
+        this.chainFactory = chainFactory;
+        this.blockFrames = blockFrames;
+        this.chunkFrames = Math.max(1, (chunkFrames + blockFrames - 1) / blockFrames) * blockFrames;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the number of preceding frames a chunk must process before its
+     * output matches sequential processing.
+     *
+     * @param chain The chain to inspect, prepared for the sample rate of the
+     *              recording
+     * @return The warm-up length in frames, or -1 if an enabled filter cannot be
+     *         chunked
+     */
+    public static int warmupFrames(StereoFilterChain chain) {
+        int warmup = 0;
+        for (StereoAudioFilter f : chain.getFilters()) {
+            if (!f.isEnabled())
+                continue;
+            if (!(f instanceof ChunkableStereoFilter c))
+                return -1;
+            // A filter's warm-up input is itself the output of the filters before it
+            warmup += c.getWarmupFrames();
+        }
+        return warmup;
+    }
+
+    /**
+     * Returns the enabled filters that prevent a chain from being chunked.
+     *
+     * @param chain The chain to inspect
+     * @return The simple class names of the enabled filters that do not
+     *         implement {@link ChunkableStereoFilter}, empty if the chain can be
+     *         chunked
+     */
+    public static List<String> unchunkable(StereoFilterChain chain) {
+        List<String> names = new ArrayList<>();
+        for (StereoAudioFilter f : chain.getFilters()) {
+            if (f.isEnabled() && !(f instanceof ChunkableStereoFilter))
+                names.add(f.getClass().getSimpleName());
+        }
+        return names;
+    }
+
+    /**
+     * Prepares a chain for the stereo blocks a {@link BlockRunner} passes it:
+     * sets the sample rate of the recording and prepares every filter for
+     * blocks of blockFrames.
+     *
+     * @param chain       The chain
+     * @param sampleRate  The sample rate of the recording in Hz
+     * @param blockFrames Frames per block
+     */
+    static void prepare(StereoFilterChain chain, float sampleRate, int blockFrames) {
+        chain.setSampleRate(sampleRate);
+        chain.prepare(new AudioFormat(sampleRate, 16, 2, true, false), blockFrames);
+    }
+
+    /**
+     * Hands the stream position to every chunkable filter in the chain.
+     *
+     * @param chain The chain
+     * @param frame The stream position of the next frame to be processed
+     */
+    public static void seek(StereoFilterChain chain, long frame) {
+        for (StereoAudioFilter f : chain.getFilters()) {
+            if (f instanceof ChunkableStereoFilter c)
+                c.seek(frame);
+        }
+    }
+
+    /**
+     * Processes one WAV file.
+     *
+     * @param input  The WAV file to read
+     * @param output The WAV file to write (created or replaced)
+     * @return Timing for the file
+     * @throws IOException If a file cannot be read, parsed or written
+     */
+    public OfflineResult process(Path input, Path output) throws IOException {
+        if (output.toAbsolutePath().normalize().equals(input.toAbsolutePath().normalize()))
+            throw new IOException("Output would overwrite input: " + input);
+        List<String> unchunkable = unchunkable(chainFactory.get());
+        if (!unchunkable.isEmpty()) {
+            System.err.println("Processing " + input + " in one pass: " + String.join(", ", unchunkable)
+                    + " cannot be split into chunks");
+            return new OfflineProcessor(chainFactory, blockFrames).process(input, output);
+        }
+
+        long start = System.nanoTime();
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            WavFormat fmt = WavFormat.read(in);
+            int channels = fmt.getChannels();
+            fmt.writeHeader(out, fmt.getDataBytes());
+            // Extend the output now so chunks can map their regions in any order
+            if (fmt.getDataBytes() > 0)
+                out.write(ByteBuffer.allocate(1), WavFormat.HEADER_BYTES + fmt.getDataBytes() - 1);
+
+            run(fmt.getFrames(), channels, fmt.getSampleRate(), new Region() {
+                @Override
+                public ShortBuffer input(long from, long to) throws IOException {
+                    return in.map(FileChannel.MapMode.READ_ONLY, fmt.getDataOffset() + from * 2 * channels,
+                            (to - from) * 2 * channels).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+                }
+
+                @Override
+                public ShortBuffer output(long from, long to) throws IOException {
+                    return out.map(FileChannel.MapMode.READ_WRITE, WavFormat.HEADER_BYTES + from * 2 * channels,
+                            (to - from) * 2 * channels).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+                }
+            });
+
+            return new OfflineResult(input, fmt.getFrames(), channels, fmt.getSampleRate(),
+                    System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Processes interleaved samples held in memory.
+     *
+     * @param input      Interleaved input samples
+     * @param output     Interleaved output samples, same length as input; must
+     *                   not be the same array
+     * @param channels   Channels per frame (1 or 2)
+     * @param sampleRate The sample rate of the samples in Hz
+     */
+    public void process(short[] input, short[] output, int channels, float sampleRate) {
+        if (input == output)
+            throw new IllegalArgumentException("Chunks read their warm-up from the input, so it cannot be overwritten");
+        try {
+            run(input.length / channels, channels, sampleRate, new Region() {
+                @Override
+                public ShortBuffer input(long from, long to) {
+                    return ShortBuffer.wrap(input, (int) from * channels, (int) (to - from) * channels).slice();
+                }
+
+                @Override
+                public ShortBuffer output(long from, long to) {
+                    return ShortBuffer.wrap(output, (int) from * channels, (int) (to - from) * channels).slice();
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Splits the frame range into chunks and runs them on the pool.
+     *
+     * @param frames     The total number of frames
+     * @param channels   Channels per frame
+     * @param sampleRate The sample rate in Hz
+     * @param region     Access to the input and output samples
+     * @throws IOException If a chunk fails to read or write
+     */
+    private void run(long frames, int channels, float sampleRate, Region region) throws IOException {
+        // Warm-up lengths may depend on the sample rate
+        StereoFilterChain probe = chainFactory.get();
+        prepare(probe, sampleRate, blockFrames);
+        int warmup = warmupFrames(probe);
+        long chunk = warmup < 0 ? Math.max(frames, 1) : chunkFrames;
+        long warmupBlocks = Math.max(0, warmup + blockFrames - 1) / blockFrames;
+        long chunks = (frames + chunk - 1) / chunk;
+
+        try {
+            pool.invoke(new ChunkTask(0, chunks, chunk, frames, warmupBlocks * blockFrames, channels, sampleRate,
+                    region));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Access to the input and output samples of a frame range.
+     */
+    private interface Region {
+
+        /**
+         * Returns the input samples of a frame range.
+         *
+         * @param from The first frame
+         * @param to   The frame after the last
+         * @return Interleaved samples positioned at from
+         * @throws IOException If the range cannot be accessed
+         */
+        ShortBuffer input(long from, long to) throws IOException;
+
+        /**
+         * Returns the output samples of a frame range.
+         *
+         * @param from The first frame
+         * @param to   The frame after the last
+         * @return Interleaved samples positioned at from
+         * @throws IOException If the range cannot be accessed
+         */
+        ShortBuffer output(long from, long to) throws IOException;
+    }
+
+    /**
+     * Processes a range of chunks, splitting it in halves until a single chunk
+     * remains.
+     */
+    private class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The first chunk and the chunk after the last
+         */
+        private final long first, end;
+
+        /**
+         * Frames per chunk, total frames and warm-up frames
+         */
+        private final long chunk, frames, warmup;
+
+        /**
+         * Channels per frame
+         */
+        private final int channels;
+
+        /**
+         * The sample rate in Hz
+         */
+        private final float sampleRate;
+
+        /**
+         * Access to the samples
+         */
+        private final Region region;
+
+        /**
+         * Creates a task for the chunks [first, end).
+         *
+         * @param first      The first chunk
+         * @param end        The chunk after the last
+         * @param chunk      Frames per chunk
+         * @param frames     The total number of frames
+         * @param warmup     Warm-up frames, a multiple of the block size
+         * @param channels   Channels per frame
+         * @param sampleRate The sample rate in Hz
+         * @param region     Access to the samples
+         */
+        ChunkTask(long first, long end, long chunk, long frames, long warmup, int channels, float sampleRate,
+                Region region) {
+            this.first = first;
+            this.end = end;
+            this.chunk = chunk;
+            this.frames = frames;
+            this.warmup = warmup;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.region = region;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - first > 1) {
+                long mid = (first + end) >>> 1;
+                invokeAll(new ChunkTask(first, mid, chunk, frames, warmup, channels, sampleRate, region),
+                        new ChunkTask(mid, end, chunk, frames, warmup, channels, sampleRate, region));
+                return;
+            }
+
+            long from = first * chunk;
+            long to = Math.min(from + chunk, frames);
+            long warmFrom = Math.max(0, from - warmup);
+
+            StereoFilterChain chain = chainFactory.get();
+            prepare(chain, sampleRate, blockFrames);
+            seek(chain, warmFrom);
+            BlockRunner runner = new BlockRunner(chain, channels, blockFrames);
+
+            try {
+                ShortBuffer src = region.input(warmFrom, to);
+                if (from > warmFrom) {
+                    ShortBuffer warm = src.duplicate();
+                    warm.limit((int) ((from - warmFrom) * channels));
+                    runner.run(warm, null);
+                    src.position(warm.limit());
+                }
+                runner.run(src, region.output(from, to));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+package voiceprotector.offline;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import voiceprotector.StereoFilterChain;
+import voiceprotector.filters.AIFormantScramblerStereo;
+import voiceprotector.filters.ChaoticPhaseStereo;
+import voiceprotector.filters.LPCWarpStereo;
+import voiceprotector.filters.NoiseFilterStereo;
+import voiceprotector.filters.SpectralHoleStereo;
+import voiceprotector.filters.XorObfuscationStereo;
+
+/**
+ * Command-line entry point for batch processing WAV files without audio
+ * devices or GUI.
+ * <p>
+ * Usage:
+ * {@code OfflineMain [-o outDir] [-j threads] [-b blockFrames] [-c chunkFrames] file.wav...}
+ * <p>
+ * Without {@code -c}, up to {@code threads} files are processed at the same
+ * time. With {@code -c}, files are processed one after another and each file is
+ * split into chunks of the given length that run on {@code threads} fork-join
+ * workers, which suits a few long recordings. If the chain contains a filter
+ * that cannot be chunked, {@code -c} is ignored with a warning and the files
+ * are processed in parallel as without it.
+ */
+public class OfflineMain {
+
+    /**
+     * Processes the given files with the default filter chain and prints the
+     * throughput of each file and of the whole batch.
+     *
+     * @param args Options followed by input files
+     * @throws Exception If processing fails
+     */
+    public static void main(String[] args) throws Exception {
+        Path outDir = Path.of("processed");
+        int threads = Runtime.getRuntime().availableProcessors();
+        int blockFrames = 1024;
+        int chunkFrames = 0;
+        List<Path> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-o" -> outDir = Path.of(args[++i]);
+                case "-j" -> threads = Integer.parseInt(args[++i]);
+                case "-b" -> blockFrames = Integer.parseInt(args[++i]);
+                case "-c" -> chunkFrames = Integer.parseInt(args[++i]);
+                default -> inputs.add(Path.of(args[i]));
+            }
+        }
+
+        if (inputs.isEmpty()) {
+            System.err.println("Usage: OfflineMain [-o outDir] [-j threads] [-b blockFrames] [-c chunkFrames] file.wav...");
+            System.exit(2);
+        }
+
+        Files.createDirectories(outDir);
+        List<String> unchunkable = ChunkedProcessor.unchunkable(defaultChain());
+        if (chunkFrames > 0 && !unchunkable.isEmpty()) {
+            System.err.println("Ignoring -c: " + String.join(", ", unchunkable)
+                    + " cannot be split into chunks; processing files in parallel on " + threads + " threads");
+            chunkFrames = 0;
+        }
+
+        long start = System.nanoTime();
+        List<OfflineResult> results;
+        if (chunkFrames > 0) {
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+            ChunkedProcessor processor = new ChunkedProcessor(OfflineMain::defaultChain, blockFrames, chunkFrames,
+                    pool);
+            results = new ArrayList<>();
+            for (Path in : inputs)
+                results.add(processor.process(in, outDir.resolve(in.getFileName())));
+            pool.shutdown();
+        } else {
+            OfflineProcessor processor = new OfflineProcessor(OfflineMain::defaultChain, blockFrames);
+            results = processor.processAll(inputs, outDir, threads);
+        }
+        long nanos = System.nanoTime() - start;
+
+        double audioSeconds = 0;
+        double samples = 0;
+        for (OfflineResult r : results) {
+            audioSeconds += r.frames() / (double) r.sampleRate();
+            samples += r.frames() * (double) r.channels();
+            System.out.printf("%s: %.1f s audio in %.1f ms, %.2f Msamples/s, %.1fx real time%n", r.input(),
+                    r.frames() / (double) r.sampleRate(), r.nanos() / 1e6, r.samplesPerSecond() / 1e6,
+                    r.realTimeMultiple());
+        }
+        System.out.printf("Total: %d files, %.1f s audio in %.1f ms, %.2f Msamples/s, %.1fx real time%n",
+                results.size(), audioSeconds, nanos / 1e6, samples * 1e3 / nanos, audioSeconds / (nanos / 1e9));
+    }
+
+    /**
+     * Creates the same filter chain as {@link voiceprotector.Main}.
+     *
+     * @return A new chain with its own filter state
+     */
+    static StereoFilterChain defaultChain() {
+        StereoFilterChain chain = new StereoFilterChain();
+        chain.add(new XorObfuscationStereo());
+        chain.add(new NoiseFilterStereo());
+        chain.add(new AIFormantScramblerStereo());
+        chain.add(new LPCWarpStereo());
+        chain.add(new ChaoticPhaseStereo());
+        chain.add(new SpectralHoleStereo());
+        return chain;
+    }
+}
\ No newline at end of file
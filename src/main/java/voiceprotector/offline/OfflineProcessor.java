@@ -0,0 +1,136 @@
+package voiceprotector.offline;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import voiceprotector.StereoFilterChain;
+
+/**
+ * OfflineProcessor streams 16-bit PCM WAV files through a
+ * {@link StereoFilterChain} as fast as the CPU allows. Sample data is read and
+ * written through memory-mapped windows of the input and output files, so there
+ * are no stream copies, and several files can be processed concurrently, each
+ * with its own chain and filter state.
+ * <p>
+ * Mono files are processed with both chain channels set to the mono signal and
+ * written back as mono.
+ */
+public class OfflineProcessor {
+
+    /**
+     * Approximate size of each mapped window
+     */
+    private static final long WINDOW_BYTES = 16L << 20;
+
+    /**
+     * Creates a fresh chain for every file
+     */
+    private final Supplier<StereoFilterChain> chainFactory;
+
+    /**
+     * Frames per processing block
+     */
+    private final int blockFrames;
+
+    /**
+     * Creates a processor.
+     *
+     * @param chainFactory Creates the chain used for one file
+     * @param blockFrames  Frames per block passed to the chain
+     */
+    public OfflineProcessor(Supplier<StereoFilterChain> chainFactory, int blockFrames) {
+        this.chainFactory = chainFactory;
+        this.blockFrames = blockFrames;
+    }
+
+    /**
+     * Processes one file.
+     *
+     * @param input  The WAV file to read
+     * @param output The WAV file to write (created or replaced)
+     * @return Timing for the file
+     * @throws IOException If a file cannot be read, parsed or written
+     */
+    public OfflineResult process(Path input, Path output) throws IOException {
+        long start = System.nanoTime();
+        StereoFilterChain chain = chainFactory.get();
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            WavFormat fmt = WavFormat.read(in);
+            ChunkedProcessor.prepare(chain, fmt.getSampleRate(), blockFrames);
+            int channels = fmt.getChannels();
+            long dataBytes = fmt.getDataBytes();
+            fmt.writeHeader(out, dataBytes);
+
+            BlockRunner runner = new BlockRunner(chain, channels, blockFrames);
+            ChunkedProcessor.seek(chain, 0);
+
+            // Whole blocks per window, so the block grid does not depend on the window size
+            long blockBytes = 2L * channels * blockFrames;
+            long window = Math.max(1, WINDOW_BYTES / blockBytes) * blockBytes;
+            for (long pos = 0; pos < dataBytes; pos += window) {
+                long len = Math.min(window, dataBytes - pos);
+                MappedByteBuffer src = in.map(FileChannel.MapMode.READ_ONLY, fmt.getDataOffset() + pos, len);
+                MappedByteBuffer dst = out.map(FileChannel.MapMode.READ_WRITE, WavFormat.HEADER_BYTES + pos, len);
+                runner.run(src.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer(),
+                        dst.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer());
+            }
+
+            return new OfflineResult(input, fmt.getFrames(), channels, fmt.getSampleRate(),
+                    System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Processes several files concurrently.
+     *
+     * @param inputs    The WAV files to read
+     * @param outputDir The directory to write results to, using the input file
+     *                  names
+     * @param threads   The number of files processed at the same time
+     * @return Timing for each file, in input order
+     * @throws IOException          If any file fails
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public List<OfflineResult> processAll(List<Path> inputs, Path outputDir, int threads)
+            throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<OfflineResult>> futures = new ArrayList<>();
+            for (Path in : inputs) {
+                Path out = outputDir.resolve(in.getFileName());
+                if (out.toAbsolutePath().normalize().equals(in.toAbsolutePath().normalize()))
+                    throw new IOException("Output would overwrite input: " + in);
+                futures.add(pool.submit(() -> process(in, out)));
+            }
+
+            List<OfflineResult> results = new ArrayList<>();
+            for (Future<OfflineResult> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException io)
+                        throw io;
+                    throw new IOException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
\ No newline at end of file
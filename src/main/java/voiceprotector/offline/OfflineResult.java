@@ -0,0 +1,33 @@
+package voiceprotector.offline;
+
+import java.nio.file.Path;
+
+/**
+ * OfflineResult reports how long one file took to process.
+ *
+ * @param input      The processed file
+ * @param frames     The number of sample frames processed
+ * @param channels   The number of channels per frame
+ * @param sampleRate The sample rate in Hz
+ * @param nanos      The wall-clock processing time
+ */
+public record OfflineResult(Path input, long frames, int channels, int sampleRate, long nanos) {
+
+    /**
+     * Returns the throughput in samples (frames times channels) per second.
+     *
+     * @return Samples per second of wall-clock time
+     */
+    public double samplesPerSecond() {
+        return nanos == 0 ? 0 : frames * (double) channels * 1e9 / nanos;
+    }
+
+    /**
+     * Returns how many times faster than real time the file was processed.
+     *
+     * @return Audio duration divided by processing time
+     */
+    public double realTimeMultiple() {
+        return nanos == 0 ? 0 : (frames / (double) sampleRate) / (nanos / 1e9);
+    }
+}
\ No newline at end of file
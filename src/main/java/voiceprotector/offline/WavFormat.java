@@ -0,0 +1,187 @@
+package voiceprotector.offline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * WavFormat describes the PCM layout of a WAV file and where its sample data
+ * lives. Only 16-bit PCM with one or two channels is supported, which covers
+ * recorded calls, voicemails and meeting exports.
+ */
+public class WavFormat {
+
+    /**
+     * Size of the canonical header written by {@link #writeHeader}
+     */
+    public static final int HEADER_BYTES = 44;
+
+    /**
+     * Sample rate in Hz
+     */
+    private final int sampleRate;
+
+    /**
+     * Number of channels (1 or 2)
+     */
+    private final int channels;
+
+    /**
+     * Byte offset of the first sample
+     */
+    private final long dataOffset;
+
+    /**
+     * Size of the sample data in bytes
+     */
+    private final long dataBytes;
+
+    /**
+     * Creates a format description.
+     *
+     * @param sampleRate The sample rate in Hz
+     * @param channels   The number of channels
+     * @param dataOffset The byte offset of the sample data
+     * @param dataBytes  The size of the sample data in bytes
+     */
+    public WavFormat(int sampleRate, int channels, long dataOffset, long dataBytes) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.dataOffset = dataOffset;
+        this.dataBytes = dataBytes;
+    }
+
+    /**
+     * Reads the header of a WAV file by walking its RIFF chunks.
+     *
+     * @param ch An open channel positioned anywhere
+     * @return The format and data location
+     * @throws IOException If the file is not a 16-bit PCM mono/stereo WAV
+     */
+    public static WavFormat read(FileChannel ch) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(ch, head, 0);
+        if (head.getInt(0) != 0x46464952 || head.getInt(8) != 0x45564157) // "RIFF", "WAVE"
+            throw new IOException("Not a RIFF/WAVE file");
+
+        int sampleRate = 0, channels = 0;
+        boolean fmtSeen = false;
+        long pos = 12;
+        long size = ch.size();
+        ByteBuffer chunk = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (pos + 8 <= size) {
+            chunk.clear();
+            readFully(ch, chunk, pos);
+            int id = chunk.getInt(0);
+            long len = chunk.getInt(4) & 0xFFFFFFFFL;
+            long body = pos + 8;
+
+            if (id == 0x20746D66) { // "fmt "
+                ByteBuffer fmt = ByteBuffer.allocate((int) Math.min(len, 40)).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(ch, fmt, body);
+                int audioFormat = fmt.getShort(0) & 0xFFFF;
+                channels = fmt.getShort(2);
+                sampleRate = fmt.getInt(4);
+                int bits = fmt.getShort(14);
+                if (audioFormat == 0xFFFE && fmt.capacity() >= 26)
+                    audioFormat = fmt.getShort(24) & 0xFFFF; // sub-format GUID starts with the format tag
+                if (audioFormat != 1 || bits != 16 || channels < 1 || channels > 2)
+                    throw new IOException("Only 16-bit PCM mono/stereo is supported (format " + audioFormat
+                            + ", " + bits + " bits, " + channels + " channels)");
+                fmtSeen = true;
+            } else if (id == 0x61746164) { // "data"
+                if (!fmtSeen)
+                    throw new IOException("data chunk before fmt chunk");
+                long available = Math.min(len, size - body);
+                return new WavFormat(sampleRate, channels, body, available - available % (2L * channels));
+            }
+            pos = body + len + (len & 1);
+        }
+        throw new IOException("No data chunk found");
+    }
+
+    /**
+     * Writes a canonical 44-byte PCM16 header.
+     *
+     * @param ch        The output channel
+     * @param dataBytes The size of the sample data that follows
+     * @throws IOException If writing fails
+     */
+    public void writeHeader(FileChannel ch, long dataBytes) throws IOException {
+        if (dataBytes + HEADER_BYTES - 8 > 0xFFFFFFFFL)
+            throw new IOException("Output exceeds the 4 GB WAV limit");
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        h.putInt(0x46464952).putInt((int) (dataBytes + HEADER_BYTES - 8)).putInt(0x45564157);
+        h.putInt(0x20746D66).putInt(16).putShort((short) 1).putShort((short) channels)
+                .putInt(sampleRate).putInt(sampleRate * channels * 2).putShort((short) (channels * 2))
+                .putShort((short) 16);
+        h.putInt(0x61746164).putInt((int) dataBytes);
+        h.flip();
+        while (h.hasRemaining()) {
+            ch.write(h, h.position());
+        }
+    }
+
+    /**
+     * Reads until the buffer is full.
+     *
+     * @param ch  The channel
+     * @param buf The buffer to fill
+     * @param pos The file position
+     * @throws IOException If the file ends early
+     */
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos + buf.position());
+            if (n < 0)
+                throw new IOException("Unexpected end of file");
+        }
+    }
+
+    /**
+     * Returns the sample rate.
+     *
+     * @return The sample rate in Hz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns the number of channels.
+     *
+     * @return The number of channels
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Returns where the sample data starts.
+     *
+     * @return The byte offset of the sample data
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * Returns the size of the sample data.
+     *
+     * @return The size of the sample data in bytes
+     */
+    public long getDataBytes() {
+        return dataBytes;
+    }
+
+    /**
+     * Returns the length in sample frames.
+     *
+     * @return The number of sample frames
+     */
+    public long getFrames() {
+        return dataBytes / (2L * channels);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+package voiceprotector.params;
+
+/**
+ * ParameterSnapshot is an immutable set of parameter values published by a
+ * {@link ParameterStore}. Every parameter carries its own version, which is
+ * bumped each time that parameter changes, so readers can tell cheaply whether
+ * anything derived from it has to be recomputed.
+ */
+public final class ParameterSnapshot {
+
+    /**
+     * Parameter values, indexed like the store's names
+     */
+    private final float[] values;
+
+    /**
+     * Per-parameter versions
+     */
+    private final long[] versions;
+
+    /**
+     * Version of the snapshot as a whole
+     */
+    private final long version;
+
+    /**
+     * Creates a snapshot. The arrays are owned by the snapshot and must not be
+     * modified afterwards.
+     *
+     * @param values   The parameter values
+     * @param versions The per-parameter versions
+     * @param version  The snapshot version
+     */
+    ParameterSnapshot(float[] values, long[] versions, long version) {
+        this.values = values;
+        this.versions = versions;
+        this.version = version;
+    }
+
+    /**
+     * Returns a copy of this snapshot with one parameter changed.
+     *
+     * @param index The parameter index
+     * @param value The new value
+     * @return The new snapshot
+     */
+    ParameterSnapshot with(int index, float value) {
+        float[] v = values.clone();
+        long[] ver = versions.clone();
+        v[index] = value;
+        ver[index] = version + 1;
+        return new ParameterSnapshot(v, ver, version + 1);
+    }
+
+    /**
+     * Returns the value of a parameter.
+     *
+     * @param index The parameter index
+     * @return The value
+     */
+    public float get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns the value of a parameter rounded to an int.
+     *
+     * @param index The parameter index
+     * @return The value as int
+     */
+    public int getInt(int index) {
+        return Math.round(values[index]);
+    }
+
+    /**
+     * Returns the version of a parameter, i.e. the snapshot version in which it
+     * last changed.
+     *
+     * @param index The parameter index
+     * @return The parameter version
+     */
+    public long version(int index) {
+        return versions[index];
+    }
+
+    /**
+     * Returns the version of the snapshot.
+     *
+     * @return The snapshot version
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Returns the number of parameters.
+     *
+     * @return The parameter count
+     */
+    public int size() {
+        return values.length;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+package voiceprotector.params;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ParameterStore publishes filter parameters from control threads (e.g. the
+ * Swing EDT) to the audio thread without locks. Writers build a new immutable
+ * {@link ParameterSnapshot} and swap it in atomically; the audio thread reads
+ * the current snapshot once per block and never sees a half-updated state.
+ * <p>
+ * Writes allocate a new snapshot. Reads never allocate.
+ */
+public class ParameterStore {
+
+    /**
+     * A store without parameters
+     */
+    public static final ParameterStore EMPTY = new ParameterStore(new String[0], new float[0]);
+
+    /**
+     * Parameter names, indexed like the snapshot values
+     */
+    private final String[] names;
+
+    /**
+     * The currently published snapshot
+     */
+    private final AtomicReference<ParameterSnapshot> current;
+
+    /**
+     * Creates a store with the given parameters and initial values.
+     *
+     * @param names    The parameter names
+     * @param defaults The initial value of each parameter
+     * @throws IllegalArgumentException If the arrays differ in length
+     */
+    public ParameterStore(String[] names, float[] defaults) {
+        if (names.length != defaults.length)
+            throw new IllegalArgumentException("names and defaults differ in length");
+        this.names = names.clone();
+        this.current = new AtomicReference<>(
+                new ParameterSnapshot(defaults.clone(), new long[defaults.length], 0));
+    }
+
+    /**
+     * Returns the current snapshot. Audio code should call this once per block
+     * and use the result for the whole block.
+     *
+     * @return The published snapshot
+     */
+    public ParameterSnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Publishes a new value for a parameter. Safe to call from any thread.
+     *
+     * @param index The parameter index
+     * @param value The new value
+     */
+    public void set(int index, float value) {
+        ParameterSnapshot cur;
+        do {
+            cur = current.get();
+            if (cur.get(index) == value)
+                return;
+        } while (!current.compareAndSet(cur, cur.with(index, value)));
+    }
+
+    /**
+     * Publishes a new value for a parameter looked up by name.
+     *
+     * @param name  The parameter name
+     * @param value The new value
+     * @throws IllegalArgumentException If no parameter has that name
+     */
+    public void set(String name, float value) {
+        int index = indexOf(name);
+        if (index < 0)
+            throw new IllegalArgumentException("Unknown parameter: " + name);
+        set(index, value);
+    }
+
+    /**
+     * Returns the current value of a parameter.
+     *
+     * @param index The parameter index
+     * @return The published value
+     */
+    public float get(int index) {
+        return current.get().get(index);
+    }
+
+    /**
+     * Looks up a parameter index by name.
+     *
+     * @param name The parameter name
+     * @return The index, or -1 if there is no such parameter
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the parameter names.
+     *
+     * @return A copy of the names array
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+}
\ No newline at end of file
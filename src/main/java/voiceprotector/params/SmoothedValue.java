@@ -0,0 +1,112 @@
+package voiceprotector.params;
+
+/**
+ * SmoothedValue ramps a continuous parameter linearly to its new value over one
+ * block, so a slider move does not produce a step (zipper noise) in the audio.
+ * It is owned by the audio thread and does not allocate.
+ * <p>
+ * The value for a sample depends only on its index within the block, so every
+ * code path that processes the same block sees the same ramp.
+ */
+public class SmoothedValue {
+
+    /**
+     * The value at the end of the previous block
+     */
+    private float start;
+
+    /**
+     * The value at the end of the current block
+     */
+    private float end;
+
+    /**
+     * Per-sample increment, 0 when not ramping
+     */
+    private float inc;
+
+    /**
+     * Creates a smoothed value that starts settled at the given value.
+     *
+     * @param initial The initial value
+     */
+    public SmoothedValue(float initial) {
+        this.start = initial;
+        this.end = initial;
+    }
+
+    /**
+     * Starts a new block. If the target differs from the current value, the value
+     * ramps to it over the block.
+     *
+     * @param target The value to reach at the end of the block
+     * @param frames The block length in samples
+     */
+    public void beginBlock(float target, int frames) {
+        start = end;
+        end = target;
+        inc = (frames > 0 && start != end) ? (end - start) / frames : 0f;
+        if (frames <= 0)
+            start = end;
+    }
+
+    /**
+     * Returns the value for a sample in the current block.
+     *
+     * @param i The sample index within the block
+     * @return The smoothed value
+     */
+    public float valueAt(int i) {
+        return inc == 0f ? end : start + inc * (i + 1);
+    }
+
+    /**
+     * Returns the base of the current ramp, so that
+     * {@code valueAt(i) == getRampBase() + getRampIncrement() * (i + 1)} for every
+     * sample, including when not ramping. Lets vectorized code reproduce the
+     * ramp exactly.
+     *
+     * @return The ramp base
+     */
+    public float getRampBase() {
+        return inc == 0f ? end : start;
+    }
+
+    /**
+     * Returns the per-sample increment of the current ramp.
+     *
+     * @return The increment, 0 when not ramping
+     */
+    public float getRampIncrement() {
+        return inc;
+    }
+
+    /**
+     * Checks whether the value changes within the current block.
+     *
+     * @return true if ramping
+     */
+    public boolean isRamping() {
+        return inc != 0f;
+    }
+
+    /**
+     * Returns the value reached at the end of the current block.
+     *
+     * @return The target value
+     */
+    public float getTarget() {
+        return end;
+    }
+
+    /**
+     * Jumps to a value immediately, without a ramp.
+     *
+     * @param value The new value
+     */
+    public void reset(float value) {
+        start = value;
+        end = value;
+        inc = 0f;
+    }
+}
\ No newline at end of file
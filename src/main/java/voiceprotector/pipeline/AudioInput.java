@@ -0,0 +1,20 @@
+package voiceprotector.pipeline;
+
+/**
+ * A source of interleaved PCM bytes. Matches the read method of
+ * {@link javax.sound.sampled.TargetDataLine}, so a real line can be used as
+ * {@code mic::read}, while tests and offline tools can supply in-memory data.
+ */
+@FunctionalInterface
+public interface AudioInput {
+
+    /**
+     * Reads up to len bytes into the buffer, blocking until data is available.
+     *
+     * @param b   The destination buffer
+     * @param off The offset in b to write to
+     * @param len The maximum number of bytes to read
+     * @return The number of bytes read, or -1 at the end of the stream
+     */
+    int read(byte[] b, int off, int len);
+}
\ No newline at end of file
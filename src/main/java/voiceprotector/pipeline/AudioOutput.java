@@ -0,0 +1,21 @@
+package voiceprotector.pipeline;
+
+/**
+ * A sink for interleaved PCM bytes. Matches the write method of
+ * {@link javax.sound.sampled.SourceDataLine}, so a real line can be used as
+ * {@code line::write}, while tests and offline tools can collect the output in
+ * memory.
+ */
+@FunctionalInterface
+public interface AudioOutput {
+
+    /**
+     * Writes len bytes from the buffer, blocking until they are accepted.
+     *
+     * @param b   The source buffer
+     * @param off The offset in b to read from
+     * @param len The number of bytes to write
+     * @return The number of bytes written
+     */
+    int write(byte[] b, int off, int len);
+}
\ No newline at end of file
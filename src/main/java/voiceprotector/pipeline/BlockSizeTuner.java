@@ -0,0 +1,184 @@
+package voiceprotector.pipeline;
+
+/**
+ * BlockSizeTuner picks the block size of the live pipeline. It starts with the
+ * configured (small) block and doubles it, up to
+ * {@link LatencyConfig#getMaxBlockFrames()}, when the measured underruns and
+ * overruns show that the host cannot keep up: {@link #GLITCH_LIMIT} glitches
+ * within one {@link #WINDOW_SECONDS} window. Glitches in the settling time after
+ * the start and after every change are counted but do not cause another change,
+ * since the lines are refilling then. The block size never shrinks again.
+ * <p>
+ * Used by a single audio thread; the getters may be called from any thread.
+ */
+public class BlockSizeTuner {
+
+    /**
+     * Glitches within one window that trigger growth
+     */
+    public static final int GLITCH_LIMIT = 2;
+
+    /**
+     * Length of the observation window in seconds
+     */
+    public static final double WINDOW_SECONDS = 2.0;
+
+    /**
+     * Length of the settling time in seconds
+     */
+    private static final double SETTLE_SECONDS = 0.5;
+
+    /**
+     * Whether growth is enabled
+     */
+    private final boolean enabled;
+
+    /**
+     * The largest block size
+     */
+    private final int maxBlockFrames;
+
+    /**
+     * Frames per observation window
+     */
+    private final long windowFrames;
+
+    /**
+     * Frames of settling time
+     */
+    private final long settleFrames;
+
+    /**
+     * The current block size
+     */
+    private volatile int blockFrames;
+
+    /**
+     * Frames since the start or the last change
+     */
+    private long framesSinceChange;
+
+    /**
+     * Frames in the current window
+     */
+    private long windowFramesSeen;
+
+    /**
+     * Glitches in the current window
+     */
+    private int windowGlitches;
+
+    /**
+     * Underruns seen in total
+     */
+    private volatile long underruns;
+
+    /**
+     * Overruns seen in total
+     */
+    private volatile long overruns;
+
+    /**
+     * Times the block size was raised
+     */
+    private volatile int growths;
+
+    /**
+     * Creates a tuner.
+     *
+     * @param config     The latency settings
+     * @param sampleRate The sample rate, for the window lengths
+     */
+    public BlockSizeTuner(LatencyConfig config, float sampleRate) {
+        this.enabled = config.isAutoTune();
+        this.maxBlockFrames = config.getMaxBlockFrames();
+        this.blockFrames = config.getBlockFrames();
+        this.windowFrames = (long) (WINDOW_SECONDS * sampleRate);
+        this.settleFrames = (long) (SETTLE_SECONDS * sampleRate);
+    }
+
+    /**
+     * Records one processed block.
+     *
+     * @param frames   The block length in frames
+     * @param underrun Whether the playback line had run dry before the block was
+     *                 written
+     * @param overrun  Whether the capture line was full before the block was read
+     * @return true if the block size changed; the next block should use
+     *         {@link #getBlockFrames()}
+     */
+    public boolean record(int frames, boolean underrun, boolean overrun) {
+        if (underrun)
+            underruns++;
+        if (overrun)
+            overruns++;
+
+        framesSinceChange += frames;
+        if (framesSinceChange <= settleFrames)
+            return false;
+
+        if (underrun || overrun)
+            windowGlitches++;
+        windowFramesSeen += frames;
+
+        if (enabled && windowGlitches >= GLITCH_LIMIT && blockFrames < maxBlockFrames) {
+            blockFrames = Math.min(maxBlockFrames, blockFrames * 2);
+            growths++;
+            framesSinceChange = 0;
+            windowFramesSeen = 0;
+            windowGlitches = 0;
+            return true;
+        }
+        if (windowFramesSeen >= windowFrames) {
+            windowFramesSeen = 0;
+            windowGlitches = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the block size to use.
+     *
+     * @return Frames per block
+     */
+    public int getBlockFrames() {
+        return blockFrames;
+    }
+
+    /**
+     * Returns whether the block size cannot grow any further.
+     *
+     * @return true if the block has reached the largest size the line buffers
+     *         allow, or tuning is disabled
+     */
+    public boolean isAtLimit() {
+        return !enabled || blockFrames >= maxBlockFrames;
+    }
+
+    /**
+     * Returns the number of underruns seen.
+     *
+     * @return The underrun count
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * Returns the number of overruns seen.
+     *
+     * @return The overrun count
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * Returns how often the block size was raised.
+     *
+     * @return The number of changes
+     */
+    public int getGrowths() {
+        return growths;
+    }
+}
\ No newline at end of file
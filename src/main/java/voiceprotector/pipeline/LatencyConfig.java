@@ -0,0 +1,220 @@
+package voiceprotector.pipeline;
+
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * LatencyConfig holds the latency settings of the live pipeline: the block size
+ * run through the filter chain, the buffer sizes requested when the capture
+ * ({@code TargetDataLine.open}) and playback ({@code SourceDataLine.open})
+ * lines are opened, the end-to-end latency target, and whether
+ * {@link BlockSizeTuner} may grow the block size at run time.
+ * <p>
+ * {@link #fromSystemProperties()} and {@link #fromProperties(Properties)}
+ * read:
+ * <ul>
+ * <li>{@code voiceprotector.latency}: {@code low} (default), {@code balanced}
+ * or {@code safe}, see {@link LatencyMode}</li>
+ * <li>{@code voiceprotector.blockFrames}, {@code voiceprotector.captureBufferFrames},
+ * {@code voiceprotector.playbackBufferFrames},
+ * {@code voiceprotector.targetLatencyMs}: override single values of the
+ * mode</li>
+ * <li>{@code voiceprotector.autoTune}: {@code true} (default) or
+ * {@code false}</li>
+ * </ul>
+ * All sizes are in frames of 16-bit stereo (4 bytes).
+ */
+public final class LatencyConfig {
+
+    /**
+     * Bytes per frame of 16-bit stereo
+     */
+    public static final int FRAME_BYTES = 4;
+
+    /**
+     * Frames per processed block at the start
+     */
+    private final int blockFrames;
+
+    /**
+     * Frames of buffer requested for the capture line
+     */
+    private final int captureBufferFrames;
+
+    /**
+     * Frames of buffer requested for the playback line
+     */
+    private final int playbackBufferFrames;
+
+    /**
+     * The end-to-end latency target in milliseconds
+     */
+    private final int targetLatencyMillis;
+
+    /**
+     * Whether the block size may grow after underruns or overruns
+     */
+    private final boolean autoTune;
+
+    /**
+     * Creates a configuration.
+     *
+     * @param blockFrames          Frames per processed block (at the start, if
+     *                             auto-tuned)
+     * @param captureBufferFrames  Frames of buffer for the capture line, at
+     *                             least 2 blocks
+     * @param playbackBufferFrames Frames of buffer for the playback line, at
+     *                             least 2 blocks
+     * @param targetLatencyMillis  The end-to-end latency target in milliseconds
+     * @param autoTune             Whether the block size may grow at run time
+     * @throws IllegalArgumentException If a value is out of range
+     */
+    public LatencyConfig(int blockFrames, int captureBufferFrames, int playbackBufferFrames,
+            int targetLatencyMillis, boolean autoTune) {
+        if (blockFrames < 16)
+            throw new IllegalArgumentException("Block must be at least 16 frames: " + blockFrames);
+        if (captureBufferFrames < 2 * blockFrames || playbackBufferFrames < 2 * blockFrames)
+            throw new IllegalArgumentException("Line buffers must hold at least 2 blocks");
+        if (targetLatencyMillis <= 0)
+            throw new IllegalArgumentException("Target latency must be positive: " + targetLatencyMillis);
+        this.blockFrames = blockFrames;
+        this.captureBufferFrames = captureBufferFrames;
+        this.playbackBufferFrames = playbackBufferFrames;
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.autoTune = autoTune;
+    }
+
+    /**
+     * Creates the configuration of a mode.
+     *
+     * @param mode     The mode
+     * @param autoTune Whether the block size may grow at run time
+     * @return The configuration
+     */
+    public static LatencyConfig of(LatencyMode mode, boolean autoTune) {
+        return new LatencyConfig(mode.getBlockFrames(), mode.getLineBufferFrames(), mode.getLineBufferFrames(),
+                mode.getTargetLatencyMillis(), autoTune);
+    }
+
+    /**
+     * Creates the configuration selected by the system properties listed in the
+     * class description.
+     *
+     * @return The configuration
+     * @throws IllegalArgumentException If a property has an invalid value
+     */
+    public static LatencyConfig fromSystemProperties() {
+        return fromProperties(System.getProperties());
+    }
+
+    /**
+     * Creates the configuration selected by the properties listed in the class
+     * description, e.g. from a config file.
+     *
+     * @param props The properties
+     * @return The configuration
+     * @throws IllegalArgumentException If a property has an invalid value
+     */
+    public static LatencyConfig fromProperties(Properties props) {
+        LatencyMode mode = LatencyMode.valueOf(
+                props.getProperty("voiceprotector.latency", "low").trim().toUpperCase(Locale.ROOT));
+        int block = getInt(props, "voiceprotector.blockFrames", mode.getBlockFrames());
+        // Keep line buffers at least as large as the mode intends relative to the block
+        int line = Math.max(mode.getLineBufferFrames(), 4 * block);
+        return new LatencyConfig(block,
+                getInt(props, "voiceprotector.captureBufferFrames", line),
+                getInt(props, "voiceprotector.playbackBufferFrames", line),
+                getInt(props, "voiceprotector.targetLatencyMs", mode.getTargetLatencyMillis()),
+                Boolean.parseBoolean(props.getProperty("voiceprotector.autoTune", "true").trim()));
+    }
+
+    /**
+     * Reads an integer property.
+     *
+     * @param props The properties
+     * @param key   The key
+     * @param def   The value if the key is missing
+     * @return The value
+     * @throws IllegalArgumentException If the value is not an integer
+     */
+    private static int getInt(Properties props, String key, int def) {
+        String v = props.getProperty(key);
+        if (v == null)
+            return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + v);
+        }
+    }
+
+    /**
+     * Returns the initial block size.
+     *
+     * @return Frames per processed block
+     */
+    public int getBlockFrames() {
+        return blockFrames;
+    }
+
+    /**
+     * Returns the initial block size in bytes.
+     *
+     * @return Bytes per processed block
+     */
+    public int getBlockBytes() {
+        return blockFrames * FRAME_BYTES;
+    }
+
+    /**
+     * Returns the largest block the tuner may grow to: half of the smaller line
+     * buffer, so a block always fits twice into each line.
+     *
+     * @return Frames per block
+     */
+    public int getMaxBlockFrames() {
+        return Math.max(blockFrames, Math.min(captureBufferFrames, playbackBufferFrames) / 2);
+    }
+
+    /**
+     * Returns the capture line buffer size.
+     *
+     * @return Frames of buffer
+     */
+    public int getCaptureBufferFrames() {
+        return captureBufferFrames;
+    }
+
+    /**
+     * Returns the playback line buffer size.
+     *
+     * @return Frames of buffer
+     */
+    public int getPlaybackBufferFrames() {
+        return playbackBufferFrames;
+    }
+
+    /**
+     * Returns the latency target.
+     *
+     * @return The end-to-end target in milliseconds
+     */
+    public int getTargetLatencyMillis() {
+        return targetLatencyMillis;
+    }
+
+    /**
+     * Returns whether the block size may grow at run time.
+     *
+     * @return true if auto-tuning is on
+     */
+    public boolean isAutoTune() {
+        return autoTune;
+    }
+
+    @Override
+    public String toString() {
+        return "block " + blockFrames + " frames, line buffers " + captureBufferFrames + "/" + playbackBufferFrames
+                + " frames, target " + targetLatencyMillis + " ms" + (autoTune ? ", auto-tuned" : "");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+package voiceprotector.pipeline;
+
+/**
+ * LatencyMode bundles a block size, device line buffer sizes and a latency
+ * target for the live pipeline. The sizes are for 48 kHz; see
+ * {@link LatencyConfig} for overriding them individually.
+ */
+public enum LatencyMode {
+
+    /**
+     * 2.7 ms blocks, for calls on a host with headroom
+     */
+    LOW(128, 512, 10),
+
+    /**
+     * 5.3 ms blocks
+     */
+    BALANCED(256, 1024, 20),
+
+    /**
+     * 21 ms blocks, the size the entry points used before latency modes existed
+     */
+    SAFE(1024, 4096, 60);
+
+    /**
+     * Frames per processed block
+     */
+    private final int blockFrames;
+
+    /**
+     * Frames of buffer requested for each device line
+     */
+    private final int lineBufferFrames;
+
+    /**
+     * The end-to-end latency target in milliseconds
+     */
+    private final int targetLatencyMillis;
+
+    /**
+     * Creates a mode.
+     *
+     * @param blockFrames         Frames per processed block
+     * @param lineBufferFrames    Frames of buffer per device line
+     * @param targetLatencyMillis The end-to-end latency target
+     */
+    LatencyMode(int blockFrames, int lineBufferFrames, int targetLatencyMillis) {
+        this.blockFrames = blockFrames;
+        this.lineBufferFrames = lineBufferFrames;
+        this.targetLatencyMillis = targetLatencyMillis;
+    }
+
+    /**
+     * Returns the block size.
+     *
+     * @return Frames per processed block
+     */
+    public int getBlockFrames() {
+        return blockFrames;
+    }
+
+    /**
+     * Returns the device line buffer size.
+     *
+     * @return Frames of buffer per line
+     */
+    public int getLineBufferFrames() {
+        return lineBufferFrames;
+    }
+
+    /**
+     * Returns the latency target.
+     *
+     * @return The end-to-end target in milliseconds
+     */
+    public int getTargetLatencyMillis() {
+        return targetLatencyMillis;
+    }
+}
\ No newline at end of file
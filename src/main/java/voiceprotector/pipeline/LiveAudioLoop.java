@@ -0,0 +1,347 @@
+package voiceprotector.pipeline;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.TargetDataLine;
+
+import voiceprotector.StereoFilterChain;
+import voiceprotector.format.FormatConverter;
+import voiceprotector.metrics.ChainMetrics;
+import voiceprotector.recorder.FlightRecorder;
+
+/**
+ * LiveAudioLoop is the single-threaded capture, filter and playback loop of the
+ * live entry points. The block size comes from a {@link BlockSizeTuner}, which
+ * grows it when the lines report underruns or overruns.
+ * <p>
+ * After every block the loop measures the achieved end-to-end latency: the
+ * audio still waiting in the capture line plus the audio queued in the playback
+ * line, which is how long a sample takes from the capture buffer to the
+ * speaker (converter latency of the devices not included), plus the latency
+ * the chain's filters add.
+ * <p>
+ * The lines may run in any format {@link voiceprotector.AudioDeviceFinder}
+ * negotiated. The chain always sees little-endian PCM16 at its own sample rate
+ * and channel count; where a line differs, a {@link FormatConverter} converts
+ * the block on its way in or out, and its resampling delay is counted in the
+ * latency. The block size is counted in capture frames. The chain is prepared
+ * for the largest block when the loop starts.
+ */
+public class LiveAudioLoop {
+
+    /**
+     * Weight of the newest measurement in the smoothed latency
+     */
+    private static final double SMOOTHING = 0.05;
+
+    /**
+     * The filter chain
+     */
+    private final StereoFilterChain chain;
+
+    /**
+     * The opened and started capture line
+     */
+    private final TargetDataLine input;
+
+    /**
+     * The opened and started playback line
+     */
+    private final SourceDataLine output;
+
+    /**
+     * The latency settings
+     */
+    private final LatencyConfig config;
+
+    /**
+     * The block size tuner
+     */
+    private final BlockSizeTuner tuner;
+
+    /**
+     * Capture frames per millisecond
+     */
+    private final double framesPerMilli;
+
+    /**
+     * Playback frames per millisecond
+     */
+    private final double playbackFramesPerMilli;
+
+    /**
+     * The format the chain processes
+     */
+    private final AudioFormat processing;
+
+    /**
+     * Chain frames per millisecond
+     */
+    private final double chainFramesPerMilli;
+
+    /**
+     * Bytes per capture and playback frame
+     */
+    private final int captureFrameBytes, playbackFrameBytes;
+
+    /**
+     * Converts capture blocks to the chain's format, null if they match
+     */
+    private final FormatConverter captureConverter;
+
+    /**
+     * Converts processed blocks to the playback format, null if they match
+     */
+    private final FormatConverter playbackConverter;
+
+    /**
+     * Delay of both converters in milliseconds
+     */
+    private final double converterMillis;
+
+    /**
+     * Cleared by {@link #stop()}
+     */
+    private volatile boolean running;
+
+    /**
+     * Smoothed end-to-end latency in milliseconds
+     */
+    private volatile double latencyMillis;
+
+    /**
+     * Largest end-to-end latency in milliseconds since the last block size change
+     */
+    private volatile double maxLatencyMillis;
+
+    /**
+     * Optional instrumentation for dropped blocks and end-to-end latency
+     */
+    private volatile ChainMetrics metrics;
+
+    /**
+     * Optional recorder of the blocks entering and leaving the chain
+     */
+    private volatile FlightRecorder recorder;
+
+    /**
+     * Creates a loop.
+     *
+     * @param chain  The filter chain
+     * @param input  The capture line, opened and started
+     * @param output The playback line, opened and started
+     * @param config The latency settings
+     */
+    public LiveAudioLoop(StereoFilterChain chain, TargetDataLine input, SourceDataLine output,
+            LatencyConfig config) {
+        this.chain = chain;
+        this.input = input;
+        this.output = output;
+        this.config = config;
+        AudioFormat in = input.getFormat();
+        AudioFormat out = output.getFormat();
+        AudioFormat processing = new AudioFormat(chain.getSampleRate(), 16,
+                chain.getChannelLayout().getChannels(), true, false);
+        this.processing = processing;
+        this.chainFramesPerMilli = processing.getSampleRate() / 1000.0;
+        this.tuner = new BlockSizeTuner(config, in.getSampleRate());
+        this.framesPerMilli = in.getSampleRate() / 1000.0;
+        this.playbackFramesPerMilli = out.getSampleRate() / 1000.0;
+        this.captureFrameBytes = in.getFrameSize();
+        this.playbackFrameBytes = out.getFrameSize();
+        this.captureConverter = FormatConverter.isIdentity(in, processing) ? null
+                : new FormatConverter(in, processing);
+        this.playbackConverter = FormatConverter.isIdentity(processing, out) ? null
+                : new FormatConverter(processing, out);
+        this.converterMillis = (captureConverter == null ? 0
+                : captureConverter.getLatencyFrames() / (processing.getSampleRate() / 1000.0))
+                + (playbackConverter == null ? 0 : playbackConverter.getLatencyFrames() / playbackFramesPerMilli);
+    }
+
+    /**
+     * Runs the loop on the calling thread until {@link #stop()} is called or the
+     * capture line is closed.
+     */
+    public void run() {
+        running = true;
+        byte[] buffer = new byte[config.getMaxBlockFrames() * captureFrameBytes];
+        byte[] processed = captureConverter == null ? buffer
+                : new byte[captureConverter.maxOutputBytes(buffer.length)];
+        byte[] playback = playbackConverter == null ? processed
+                : new byte[playbackConverter.maxOutputBytes(processed.length)];
+        chain.prepare(processing, processed.length / processing.getFrameSize());
+        boolean started = false;
+        boolean limitReported = false;
+
+        while (running) {
+            int blockBytes = tuner.getBlockFrames() * captureFrameBytes;
+
+            // A full capture buffer means the device has been dropping audio
+            boolean overrun = input.available() >= input.getBufferSize();
+            int read = input.read(buffer, 0, blockBytes);
+            if (read <= 0) {
+                if (!input.isOpen())
+                    break;
+                continue;
+            }
+            int captureBacklog = input.available();
+
+            int length = captureConverter == null ? read : captureConverter.convert(buffer, read, processed);
+            FlightRecorder r = recorder;
+            if (r != null) {
+                r.recordParameters(chain);
+                r.recordCaptured(processed, length);
+            }
+            chain.processInterleaved(processed, length);
+            if (r != null)
+                r.recordProcessed(processed, length);
+            if (playbackConverter != null)
+                length = playbackConverter.convert(processed, length, playback);
+
+            // An empty playback buffer means the speaker has been starved
+            boolean underrun = started && output.available() >= output.getBufferSize();
+            output.write(playback, 0, length);
+            started = true;
+            int playbackQueued = output.getBufferSize() - output.available();
+
+            double latency = captureBacklog / (double) captureFrameBytes / framesPerMilli
+                    + playbackQueued / (double) playbackFrameBytes / playbackFramesPerMilli + converterMillis
+                    + chain.getLatencyFrames() / chainFramesPerMilli;
+            latencyMillis = latencyMillis == 0 ? latency : latencyMillis + SMOOTHING * (latency - latencyMillis);
+            if (latency > maxLatencyMillis)
+                maxLatencyMillis = latency;
+
+            ChainMetrics m = metrics;
+            if (m != null) {
+                m.recordEndToEnd((long) (latency * 1e6));
+                if (overrun)
+                    m.recordDropped();
+            }
+
+            if (tuner.record(read / captureFrameBytes, underrun, overrun)) {
+                maxLatencyMillis = 0;
+                System.out.printf("Block size raised to %d frames after %d underruns / %d overruns%n",
+                        tuner.getBlockFrames(), tuner.getUnderruns(), tuner.getOverruns());
+            } else if ((underrun || overrun) && tuner.getGrowths() > 0 && tuner.isAtLimit() && !limitReported) {
+                limitReported = true;
+                System.out.printf("Block size is at its limit of %d frames and audio still drops out; "
+                        + "use larger line buffers (-Dvoiceprotector.latency=balanced or safe)%n",
+                        tuner.getBlockFrames());
+            }
+        }
+    }
+
+    /**
+     * Ends {@link #run()} after the current block.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Records dropped blocks and the end-to-end latency of every block into the
+     * given metrics.
+     *
+     * @param metrics The metrics, or null to disable
+     */
+    public void setMetrics(ChainMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records every block at the chain's rate and channel count as it enters
+     * and leaves the chain, together with the chain's parameters, so the
+     * session can be replayed with {@link voiceprotector.recorder.ReplayMain}.
+     * Set it before {@link #run()} for a replay from the start of the stream.
+     *
+     * @param recorder The recorder, or null to stop recording
+     */
+    public void setRecorder(FlightRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Returns the smoothed end-to-end latency.
+     *
+     * @return The latency in milliseconds, 0 before the first block
+     */
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * Returns the largest end-to-end latency since the last block size change.
+     *
+     * @return The latency in milliseconds
+     */
+    public double getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    /**
+     * Returns whether the smoothed latency is within the configured target.
+     *
+     * @return true if the target is met
+     */
+    public boolean isTargetMet() {
+        return latencyMillis <= config.getTargetLatencyMillis();
+    }
+
+    /**
+     * Describes the format conversions around the chain.
+     *
+     * @return The converted paths, or "none" if both lines match the chain
+     */
+    public String describeConversion() {
+        if (captureConverter == null && playbackConverter == null)
+            return "none";
+        StringBuilder sb = new StringBuilder();
+        if (captureConverter != null)
+            sb.append("capture ").append(input.getFormat()).append(" -> chain");
+        if (playbackConverter != null)
+            sb.append(sb.length() > 0 ? ", " : "").append("chain -> playback ").append(output.getFormat());
+        return sb.append(String.format(" (%.2f ms resampling delay)", converterMillis)).toString();
+    }
+
+    /**
+     * Returns the tuner, for its block size and glitch counters.
+     *
+     * @return The block size tuner
+     */
+    public BlockSizeTuner getTuner() {
+        return tuner;
+    }
+
+    /**
+     * Starts a daemon thread that prints {@link #report()} periodically.
+     *
+     * @param periodSeconds Seconds between reports
+     * @return The started thread
+     */
+    public Thread startReporter(int periodSeconds) {
+        Thread reporter = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(periodSeconds * 1000L);
+                    System.out.println("Latency: " + report());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "vp-latency-report");
+        reporter.setDaemon(true);
+        reporter.start();
+        return reporter;
+    }
+
+    /**
+     * Describes the current state, e.g. for a status line.
+     *
+     * @return Block size, latency against target and glitch counts
+     */
+    public String report() {
+        return String.format("block %d frames, latency %.1f ms (max %.1f ms, target %d ms), %d underruns, "
+                + "%d overruns", tuner.getBlockFrames(), latencyMillis, maxLatencyMillis,
+                config.getTargetLatencyMillis(), tuner.getUnderruns(), tuner.getOverruns());
+    }
+}
\ No newline at end of file
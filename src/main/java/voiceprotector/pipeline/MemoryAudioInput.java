@@ -0,0 +1,76 @@
+package voiceprotector.pipeline;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MemoryAudioInput is an in-memory {@link AudioInput} that serves a fixed byte
+ * array, standing in for a microphone line in headless runs and tests. It can
+ * optionally pace reads like a real capture device, delivering data no faster
+ * than a given byte rate.
+ */
+public class MemoryAudioInput implements AudioInput {
+
+    /**
+     * The PCM data to serve
+     */
+    private final byte[] data;
+
+    /**
+     * Delivery rate in bytes per second, 0 for unpaced
+     */
+    private final double bytesPerSecond;
+
+    /**
+     * Read position in data
+     */
+    private int position;
+
+    /**
+     * Time of the first read, used for pacing
+     */
+    private long startNanos = -1;
+
+    /**
+     * Creates an unpaced input that serves the given data once and then reports
+     * the end of the stream.
+     *
+     * @param data Interleaved PCM data
+     */
+    public MemoryAudioInput(byte[] data) {
+        this(data, 0);
+    }
+
+    /**
+     * Creates an input that serves the given data at a fixed rate, like a capture
+     * device, and then reports the end of the stream.
+     *
+     * @param data           Interleaved PCM data
+     * @param bytesPerSecond The delivery rate, e.g. 192000 for 48 kHz PCM16
+     *                       stereo in real time; 0 delivers as fast as possible
+     */
+    public MemoryAudioInput(byte[] data, double bytesPerSecond) {
+        this.data = data;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+        if (position >= data.length)
+            return -1;
+        int n = Math.min(len, data.length - position);
+
+        if (bytesPerSecond > 0) {
+            if (startNanos < 0)
+                startNanos = System.nanoTime();
+            long due = startNanos + (long) ((position + n) * 1e9 / bytesPerSecond);
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+
+        System.arraycopy(data, position, b, off, n);
+        position += n;
+        return n;
+    }
+}
\ No newline at end of file
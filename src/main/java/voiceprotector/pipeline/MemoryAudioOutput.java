@@ -0,0 +1,30 @@
+package voiceprotector.pipeline;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * MemoryAudioOutput is an in-memory {@link AudioOutput} that collects all
+ * written data, standing in for a playback line in headless runs and tests.
+ */
+public class MemoryAudioOutput implements AudioOutput {
+
+    /**
+     * The collected data
+     */
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Override
+    public synchronized int write(byte[] b, int off, int len) {
+        out.write(b, off, len);
+        return len;
+    }
+
+    /**
+     * Returns everything written so far.
+     *
+     * @return A copy of the collected PCM data
+     */
+    public synchronized byte[] toByteArray() {
+        return out.toByteArray();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,366 @@
+package voiceprotector.pipeline;
+
+import java.util.concurrent.locks.LockSupport;
+
+import voiceprotector.StereoFilterChain;
+import voiceprotector.metrics.ChainMetrics;
+
+/**
+ * PipelinedStereoEngine runs capture, DSP and output on three separate threads
+ * connected by preallocated {@link SpscBlockRing}s, so a slow
+ * {@link AudioOutput#write} no longer stalls capture and a slow filter no longer
+ * stalls the output.
+ * <p>
+ * The output stage works as a jitter buffer: it waits until the configured
+ * number of processed blocks are queued before it starts writing, and after an
+ * underrun it waits for the buffer to refill again. A full ring drops the block
+ * and counts an overrun; the capture stage keeps reading so the input line never
+ * backs up.
+ */
+public class PipelinedStereoEngine {
+
+    /**
+     * Park time while a stage waits for its neighbour
+     */
+    private static final long IDLE_PARK_NANOS = 100_000;
+
+    /**
+     * The filter chain run by the DSP stage
+     */
+    private final StereoFilterChain chain;
+
+    /**
+     * The capture source
+     */
+    private final AudioInput input;
+
+    /**
+     * The playback sink
+     */
+    private final AudioOutput output;
+
+    /**
+     * Size of one block in bytes
+     */
+    private final int blockBytes;
+
+    /**
+     * Number of processed blocks queued before output starts
+     */
+    private final int jitterBlocks;
+
+    /**
+     * Captured blocks waiting for the DSP stage
+     */
+    private final SpscBlockRing captured;
+
+    /**
+     * Processed blocks waiting for the output stage
+     */
+    private final SpscBlockRing processed;
+
+    /**
+     * Cleared by {@link #stop()} to end all stages
+     */
+    private volatile boolean running;
+
+    /**
+     * Set by the capture stage when the input reports the end of the stream
+     */
+    private volatile boolean inputDone;
+
+    /**
+     * Set by the DSP stage after it has processed the last captured block
+     */
+    private volatile boolean dspDone;
+
+    /**
+     * Blocks dropped because the DSP stage was behind
+     */
+    private volatile long captureOverruns;
+
+    /**
+     * Blocks dropped because the output stage was behind
+     */
+    private volatile long outputOverruns;
+
+    /**
+     * Times the output stage found the jitter buffer empty
+     */
+    private volatile long underruns;
+
+    /**
+     * Blocks run through the filter chain
+     */
+    private volatile long blocksProcessed;
+
+    /**
+     * Optional instrumentation for dropped blocks and end-to-end latency
+     */
+    private volatile ChainMetrics metrics;
+
+    /**
+     * The stage threads
+     */
+    private Thread captureThread, dspThread, outputThread;
+
+    /**
+     * Creates an engine.
+     *
+     * @param chain        The filter chain to run
+     * @param input        The capture source, e.g. {@code mic::read}
+     * @param output       The playback sink, e.g. {@code line::write}
+     * @param blockBytes   Bytes per block (a multiple of 4 for PCM16 stereo)
+     * @param ringBlocks   Capacity of each ring in blocks
+     * @param jitterBlocks Processed blocks to queue before playback starts, at
+     *                     least 1 and at most ringBlocks
+     * @throws IllegalArgumentException If the sizes are inconsistent
+     */
+    public PipelinedStereoEngine(StereoFilterChain chain, AudioInput input, AudioOutput output,
+            int blockBytes, int ringBlocks, int jitterBlocks) {
+        if (blockBytes <= 0 || blockBytes % 4 != 0)
+            throw new IllegalArgumentException("blockBytes must be a positive multiple of 4");
+        if (jitterBlocks < 1 || jitterBlocks > ringBlocks)
+            throw new IllegalArgumentException("jitterBlocks must be between 1 and ringBlocks");
+        this.chain = chain;
+        this.input = input;
+        this.output = output;
+        this.blockBytes = blockBytes;
+        this.jitterBlocks = jitterBlocks;
+        this.captured = new SpscBlockRing(ringBlocks, blockBytes);
+        this.processed = new SpscBlockRing(ringBlocks, blockBytes);
+    }
+
+    /**
+     * Starts the three stage threads.
+     *
+     * @throws IllegalStateException If the engine is already running
+     */
+    public synchronized void start() {
+        if (running)
+            throw new IllegalStateException("Engine already running");
+        running = true;
+        captureThread = new Thread(this::captureLoop, "vp-capture");
+        dspThread = new Thread(this::dspLoop, "vp-dsp");
+        outputThread = new Thread(this::outputLoop, "vp-output");
+        captureThread.setPriority(Thread.MAX_PRIORITY);
+        dspThread.setPriority(Thread.MAX_PRIORITY);
+        outputThread.setPriority(Thread.MAX_PRIORITY);
+        captureThread.start();
+        dspThread.start();
+        outputThread.start();
+    }
+
+    /**
+     * Stops all stages and waits for them to exit. Blocks still queued are
+     * discarded.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        join();
+    }
+
+    /**
+     * Waits until the input has ended and every captured block has been written
+     * to the output.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitCompletion() throws InterruptedException {
+        join();
+        running = false;
+    }
+
+    /**
+     * Joins the stage threads.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private void join() throws InterruptedException {
+        if (captureThread != null)
+            captureThread.join();
+        if (dspThread != null)
+            dspThread.join();
+        if (outputThread != null)
+            outputThread.join();
+    }
+
+    /**
+     * Capture stage: reads blocks from the input into the captured ring.
+     */
+    private void captureLoop() {
+        byte[] discard = new byte[blockBytes];
+        while (running) {
+            byte[] block = captured.claim();
+            boolean dropped = block == null;
+            if (dropped)
+                block = discard;
+
+            int read = input.read(block, 0, blockBytes);
+            if (read < 0)
+                break;
+            read -= read % 4;
+            if (read == 0)
+                continue;
+
+            if (dropped) {
+                captureOverruns++;
+                dropped();
+            } else {
+                captured.publish(read);
+            }
+        }
+        inputDone = true;
+    }
+
+    /**
+     * DSP stage: runs captured blocks through the chain and hands them to the
+     * output ring.
+     */
+    private void dspLoop() {
+        while (running) {
+            byte[] block = captured.peek();
+            if (block == null) {
+                if (inputDone && captured.size() == 0)
+                    break;
+                idle();
+                continue;
+            }
+
+            int length = captured.peekLength();
+            chain.processInterleaved(block, length);
+            blocksProcessed++;
+
+            byte[] out = processed.claim();
+            if (out == null) {
+                outputOverruns++;
+                dropped();
+            } else {
+                System.arraycopy(block, 0, out, 0, length);
+                processed.publish(length, captured.peekStamp());
+            }
+            captured.release();
+        }
+        dspDone = true;
+    }
+
+    /**
+     * Output stage: primes the jitter buffer, then writes processed blocks to the
+     * output. Re-primes after every underrun.
+     */
+    private void outputLoop() {
+        boolean primed = false;
+        while (running) {
+            if (!primed) {
+                if (processed.size() >= jitterBlocks || (dspDone && processed.size() > 0)) {
+                    primed = true;
+                } else if (dspDone) {
+                    break;
+                } else {
+                    idle();
+                    continue;
+                }
+            }
+
+            byte[] block = processed.peek();
+            if (block == null) {
+                if (dspDone)
+                    break;
+                underruns++;
+                primed = false;
+                continue;
+            }
+
+            output.write(block, 0, processed.peekLength());
+            ChainMetrics m = metrics;
+            if (m != null)
+                m.recordEndToEnd(System.nanoTime() - processed.peekStamp());
+            processed.release();
+        }
+    }
+
+    /**
+     * Reports a dropped block to the metrics, if any.
+     */
+    private void dropped() {
+        ChainMetrics m = metrics;
+        if (m != null)
+            m.recordDropped();
+    }
+
+    /**
+     * Records dropped blocks and the capture-to-output latency of every block
+     * into the given metrics. The capture stamp is taken when a block has been
+     * read and the latency measured when it has been written, so it covers the
+     * queueing in both rings, the chain and the output write.
+     *
+     * @param metrics The metrics, or null to disable
+     */
+    public void setMetrics(ChainMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Backs off briefly while waiting for another stage.
+     */
+    private static void idle() {
+        Thread.onSpinWait();
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+    }
+
+    /**
+     * Returns the number of blocks dropped because the DSP stage was behind.
+     *
+     * @return The capture overrun count
+     */
+    public long getCaptureOverruns() {
+        return captureOverruns;
+    }
+
+    /**
+     * Returns the number of blocks dropped because the output stage was behind.
+     *
+     * @return The output overrun count
+     */
+    public long getOutputOverruns() {
+        return outputOverruns;
+    }
+
+    /**
+     * Returns the number of times the output found the jitter buffer empty.
+     *
+     * @return The underrun count
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * Returns the number of blocks run through the filter chain.
+     *
+     * @return The processed block count
+     */
+    public long getBlocksProcessed() {
+        return blocksProcessed;
+    }
+
+    /**
+     * Returns the number of processed blocks currently queued for output.
+     *
+     * @return The jitter buffer fill level in blocks
+     */
+    public int getQueuedBlocks() {
+        return processed.size();
+    }
+
+    /**
+     * Returns the configured jitter buffer depth.
+     *
+     * @return The number of blocks queued before playback starts
+     */
+    public int getJitterBlocks() {
+        return jitterBlocks;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+package voiceprotector.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SpscBlockRing is a lock-free single-producer/single-consumer ring of
+ * preallocated PCM blocks. The producer claims a free slot, fills it in place
+ * and publishes it; the consumer peeks at the oldest published slot, uses it in
+ * place and releases it. Nothing is allocated after construction.
+ * <p>
+ * Exactly one thread may call {@link #claim()}/{@link #publish(int)} and
+ * exactly one other thread may call {@link #peek()}/{@link #release()}.
+ */
+public class SpscBlockRing {
+
+    /**
+     * The preallocated blocks
+     */
+    private final byte[][] slots;
+
+    /**
+     * Number of valid bytes in each published block
+     */
+    private final int[] lengths;
+
+    /**
+     * Timestamp carried with each published block
+     */
+    private final long[] stamps;
+
+    /**
+     * slots.length - 1, slots.length is a power of two
+     */
+    private final int mask;
+
+    /**
+     * Sequence of the next block to consume, written only by the consumer
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Sequence of the next block to publish, written only by the producer
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates a ring.
+     *
+     * @param capacity   The minimum number of blocks; rounded up to a power of
+     *                   two
+     * @param blockBytes The size of each block in bytes
+     */
+    public SpscBlockRing(int capacity, int blockBytes) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        slots = new byte[size][blockBytes];
+        lengths = new int[size];
+        stamps = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the next free block for the producer to fill.
+     *
+     * @return The block, or null if the ring is full
+     */
+    public byte[] claim() {
+        long t = tail.get();
+        if (t - head.get() == slots.length)
+            return null;
+        return slots[(int) t & mask];
+    }
+
+    /**
+     * Publishes the block returned by the last {@link #claim()}.
+     *
+     * @param length The number of valid bytes in the block
+     */
+    public void publish(int length) {
+        publish(length, System.nanoTime());
+    }
+
+    /**
+     * Publishes the block returned by the last {@link #claim()} together with a
+     * timestamp, e.g. the capture time carried through the pipeline.
+     *
+     * @param length The number of valid bytes in the block
+     * @param stamp  A {@link System#nanoTime()} value
+     */
+    public void publish(int length, long stamp) {
+        long t = tail.get();
+        lengths[(int) t & mask] = length;
+        stamps[(int) t & mask] = stamp;
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Returns the oldest published block without removing it.
+     *
+     * @return The block, or null if the ring is empty
+     */
+    public byte[] peek() {
+        long h = head.get();
+        if (h == tail.get())
+            return null;
+        return slots[(int) h & mask];
+    }
+
+    /**
+     * Returns the number of valid bytes in the block returned by {@link #peek()}.
+     *
+     * @return The block length
+     */
+    public int peekLength() {
+        return lengths[(int) head.get() & mask];
+    }
+
+    /**
+     * Returns the timestamp of the block returned by {@link #peek()}.
+     *
+     * @return The timestamp given when it was published
+     */
+    public long peekStamp() {
+        return stamps[(int) head.get() & mask];
+    }
+
+    /**
+     * Releases the block returned by the last {@link #peek()} back to the
+     * producer.
+     */
+    public void release() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * Returns the number of published blocks not yet consumed.
+     *
+     * @return The fill level in blocks
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Returns the number of blocks the ring can hold.
+     *
+     * @return The capacity in blocks
+     */
+    public int capacity() {
+        return slots.length;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,243 @@
+package voiceprotector.quality;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.StereoAudioFilter;
+import voiceprotector.StereoFilterChain;
+import voiceprotector.daemon.ChainConfig;
+import voiceprotector.metrics.ChainMetrics;
+import voiceprotector.metrics.LatencyHistogram;
+import voiceprotector.offline.WavFormat;
+
+/**
+ * Command-line tool that runs WAV files through a filter configuration and
+ * reports how much the voice was disrupted ({@link QualityMeter}) next to the
+ * CPU time each filter took, so configurations can be compared by disruption
+ * per microsecond.
+ * <p>
+ * Usage:
+ * {@code QualityMain [-c config.properties] [-b blockFrames] [-d delayFrames] [-w warmupPasses] [--each] file.wav...}
+ * <p>
+ * The configuration uses the format of {@link ChainConfig}; without
+ * {@code -c} the default chain is measured. With {@code --each}, every
+ * configured filter is also measured on its own. The output is compared
+ * with the input delayed by the chain's latency
+ * ({@link StereoFilterChain#getLatencyFrames()}) unless {@code -d} sets the
+ * delay. The CPU time of a
+ * configuration is the processing thread's CPU time spent in the chain; the
+ * time of each filter within the chain comes from its {@link ChainMetrics}
+ * histogram. Both are reported in microseconds per
+ * second of audio. Each configuration is
+ * first run {@code warmupPasses} times (default 2) unmeasured, so the JIT
+ * compiler does not bill its work to whichever filter runs first.
+ */
+public class QualityMain {
+
+    /**
+     * Source of the per-thread CPU time
+     */
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Measures the given files and prints one table per file.
+     *
+     * @param args Options followed by input files
+     * @throws Exception If a file cannot be read or the configuration is
+     *                   invalid
+     */
+    public static void main(String[] args) throws Exception {
+        Properties props = new Properties();
+        int blockFrames = 1024;
+        int delayFrames = -1;
+        int warmup = 2;
+        boolean each = false;
+        List<Path> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-c" -> props = ChainConfig.load(Path.of(args[++i]));
+                case "-b" -> blockFrames = Integer.parseInt(args[++i]);
+                case "-d" -> delayFrames = Integer.parseInt(args[++i]);
+                case "-w" -> warmup = Integer.parseInt(args[++i]);
+                case "--each" -> each = true;
+                default -> inputs.add(Path.of(args[i]));
+            }
+        }
+
+        if (inputs.isEmpty()) {
+            System.err.println(
+                    "Usage: QualityMain [-c config.properties] [-b blockFrames] [-d delayFrames] [-w warmupPasses] "
+                            + "[--each] file.wav...");
+            System.exit(2);
+        }
+
+        List<Properties> configs = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        if (each) {
+            Set<String> names = new LinkedHashSet<>();
+            for (String n : props.getProperty(ChainConfig.FILTERS, ChainConfig.DEFAULT_FILTERS).split(",")) {
+                if (!n.isBlank())
+                    names.add(n.trim().toLowerCase(Locale.ROOT));
+            }
+            for (String n : names) {
+                configs.add(only(props, n));
+                labels.add(n);
+            }
+        }
+        configs.add(props);
+        labels.add("chain");
+
+        // Compile the shared code paths before the first configuration is timed
+        for (int w = 0; w < warmup; w++)
+            measure(inputs.get(0), new ChainConfig(props).getChain(), blockFrames, delayFrames);
+
+        for (Path in : inputs) {
+            System.out.println(in);
+            System.out.printf("  %-10s %10s %9s %8s %8s %8s %12s%n", "config", "CPU us/s", "segSNR", "LSD", "MCD",
+                    "intell.", "MCD/CPU ms");
+            Measurement chain = null;
+            for (int k = 0; k < configs.size(); k++) {
+                for (int w = 0; w < warmup; w++)
+                    measure(in, new ChainConfig(configs.get(k)).getChain(), blockFrames, delayFrames);
+                Measurement m = measure(in, new ChainConfig(configs.get(k)).getChain(), blockFrames, delayFrames);
+                QualityScores s = m.scores();
+                System.out.printf("  %-10s %10.1f %9.2f %8.2f %8.2f %8.3f %12.2f%n", labels.get(k), m.cpuPerSecond(),
+                        s.segmentalSnrDb(), s.logSpectralDistanceDb(), s.cepstralDistanceDb(), s.intelligibility(),
+                        m.cpuPerSecond() > 0 ? s.cepstralDistanceDb() / (m.cpuPerSecond() / 1000) : 0);
+                chain = m;
+            }
+            System.out.print("  Time us/s per filter in the chain:");
+            for (Map.Entry<String, Double> e : chain.filterCpu().entrySet())
+                System.out.printf(" %s %.1f", e.getKey(), e.getValue());
+            System.out.println();
+        }
+    }
+
+    /**
+     * Restricts a configuration to one filter, keeping its parameters and the
+     * settings that are not filter parameters.
+     *
+     * @param props The configuration
+     * @param name  The short name of the filter
+     * @return A configuration with only that filter
+     */
+    private static Properties only(Properties props, String name) {
+        Properties p = new Properties();
+        for (String key : props.stringPropertyNames()) {
+            int dot = key.indexOf('.');
+            String prefix = dot < 0 ? key : key.substring(0, dot);
+            if (!ChainConfig.FILTER_NAMES.contains(prefix) || prefix.equals(name))
+                p.setProperty(key, props.getProperty(key));
+        }
+        p.setProperty(ChainConfig.FILTERS, name);
+        return p;
+    }
+
+    /**
+     * Streams a file through a chain and compares the output with the input.
+     *
+     * @param input       The WAV file
+     * @param chain       A chain with fresh filter state
+     * @param blockFrames Frames per block
+     * @param delayFrames How many frames the chain's output lags its input,
+     *                    negative for the chain's latency
+     * @return The scores and CPU times
+     * @throws IOException If the file cannot be read
+     */
+    static Measurement measure(Path input, StereoFilterChain chain, int blockFrames, int delayFrames)
+            throws IOException {
+        try (FileChannel ch = FileChannel.open(input, StandardOpenOption.READ)) {
+            WavFormat fmt = WavFormat.read(ch);
+            int channels = fmt.getChannels();
+            chain.setSampleRate(fmt.getSampleRate());
+            ChainMetrics metrics = new ChainMetrics(fmt.getSampleRate());
+            chain.setMetrics(metrics);
+            chain.prepare(new AudioFormat(fmt.getSampleRate(), 16, 2, true, false), blockFrames);
+            if (delayFrames < 0)
+                delayFrames = chain.getLatencyFrames();
+            QualityMeter meter = new QualityMeter(fmt.getSampleRate(), delayFrames);
+
+            ByteBuffer buf = ByteBuffer.allocate(2 * channels * blockFrames).order(ByteOrder.LITTLE_ENDIAN);
+            short[][] block = new short[2][blockFrames];
+            short[][] raw = new short[2][blockFrames];
+            long cpu = 0;
+            long pos = fmt.getDataOffset();
+            long end = pos + fmt.getDataBytes();
+            while (pos < end) {
+                int frames = (int) Math.min(blockFrames, (end - pos) / (2 * channels));
+                if (frames != block[0].length) {
+                    block = new short[2][frames];
+                    raw = new short[2][frames];
+                }
+                buf.clear().limit(2 * channels * frames);
+                while (buf.hasRemaining()) {
+                    if (ch.read(buf, pos + buf.position()) < 0)
+                        throw new EOFException("Truncated sample data in " + input);
+                }
+                for (int i = 0; i < frames; i++) {
+                    block[0][i] = buf.getShort(2 * channels * i);
+                    block[1][i] = buf.getShort(2 * channels * i + 2 * (channels - 1));
+                }
+                for (int c = 0; c < 2; c++)
+                    System.arraycopy(block[c], 0, raw[c], 0, frames);
+
+                long t0 = cpuNanos();
+                chain.process(block);
+                cpu += cpuNanos() - t0;
+                meter.accept(raw, block, frames);
+                pos += 2L * channels * frames;
+            }
+
+            double seconds = Math.max(1e-9, fmt.getFrames() / (double) fmt.getSampleRate());
+            Map<String, Double> filterCpu = new LinkedHashMap<>();
+            Map<String, LatencyHistogram> latencies = metrics.getFilterLatencies();
+            for (StereoAudioFilter f : chain.getFilters()) {
+                LatencyHistogram h = latencies.get(f.getClass().getSimpleName());
+                if (h != null)
+                    filterCpu.put(f.getClass().getSimpleName(), h.getSum() / 1e3 / seconds);
+            }
+            return new Measurement(meter.getScores(), cpu / 1e3 / seconds, filterCpu);
+        }
+    }
+
+    /**
+     * Returns the CPU time of the current thread, which excludes the JIT
+     * compiler and garbage collector threads, or the wall-clock time if the
+     * JVM cannot measure it.
+     *
+     * @return A time in nanoseconds
+     */
+    private static long cpuNanos() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * The result of one run.
+     *
+     * @param scores       The quality scores
+     * @param cpuPerSecond CPU time of the chain per second of audio in
+     *                     microseconds
+     * @param filterCpu    Wall-clock time of each filter per second of audio in
+     *                     microseconds, by filter class
+     */
+    record Measurement(QualityScores scores, double cpuPerSecond, Map<String, Double> filterCpu) {
+    }
+}
\ No newline at end of file
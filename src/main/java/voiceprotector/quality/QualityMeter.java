@@ -0,0 +1,484 @@
+package voiceprotector.quality;
+
+import voiceprotector.spectral.FFT;
+
+/**
+ * QualityMeter compares a processed stream with the raw stream it came from
+ * and measures how much the filters changed the voice:
+ * <ul>
+ * <li>segmental SNR: the energy of the reference over the energy of the
+ * difference per frame, clamped to {@link #MIN_SNR_DB}..{@link #MAX_SNR_DB};</li>
+ * <li>log-spectral distance: the RMS difference of the two power spectra in
+ * dB;</li>
+ * <li>mel-cepstral distance: the distance of the first
+ * {@link #CEPSTRA} MFCCs (without c0), the features speaker and speech models
+ * are built on;</li>
+ * <li>an intelligibility proxy after STOI: the correlation of third-octave
+ * band envelopes over segments of about 384 ms, averaged over bands and
+ * segments.</li>
+ * </ul>
+ * Both streams are mixed to mono and analysed in Hann-windowed frames of
+ * about 32 ms with 50% overlap. Frames in which the reference is silent are
+ * skipped. Memory is fixed when the meter is created, so streams of any
+ * length can be measured; blocks may have any size.
+ * <p>
+ * If the processed stream lags the reference (e.g. behind an STFT filter),
+ * pass the lag to the constructor so the reference is delayed to match.
+ */
+public final class QualityMeter {
+
+    /**
+     * Lower clamp of the segmental SNR per frame
+     */
+    public static final float MIN_SNR_DB = -10;
+
+    /**
+     * Upper clamp of the segmental SNR per frame
+     */
+    public static final float MAX_SNR_DB = 35;
+
+    /**
+     * The number of cepstral coefficients compared, c0 excluded
+     */
+    public static final int CEPSTRA = 12;
+
+    /**
+     * Reference frames quieter than this RMS level are skipped, in dBFS
+     */
+    private static final double SILENCE_DBFS = -50;
+
+    /**
+     * Mel bands of the MFCC filterbank
+     */
+    private static final int MEL_BANDS = 26;
+
+    /**
+     * Highest frequency of the MFCC filterbank in Hz
+     */
+    private static final double MEL_MAX_HZ = 8000;
+
+    /**
+     * Third-octave bands of the intelligibility proxy
+     */
+    private static final int ENVELOPE_BANDS = 15;
+
+    /**
+     * Center frequency of the lowest third-octave band in Hz
+     */
+    private static final double FIRST_BAND_HZ = 150;
+
+    /**
+     * Length of an envelope segment in seconds
+     */
+    private static final double SEGMENT_SECONDS = 0.384;
+
+    /**
+     * Power floor, -100 dB relative to a full-scale sine
+     */
+    private static final double FLOOR = 1e-10;
+
+    /**
+     * Frame length, a power of two
+     */
+    private final int size;
+
+    /**
+     * Frame advance
+     */
+    private final int hop;
+
+    /**
+     * The transform plan
+     */
+    private final FFT fft;
+
+    /**
+     * The Hann window
+     */
+    private final float[] window;
+
+    /**
+     * Scales a bin so that a full-scale sine has power 1
+     */
+    private final double binScale;
+
+    /**
+     * The reference and processed samples of the current frame
+     */
+    private final float[] refFrame, procFrame;
+
+    /**
+     * Samples in the frame buffers
+     */
+    private int filled;
+
+    /**
+     * Delay line of the reference, empty without delay
+     */
+    private final float[] delay;
+
+    /**
+     * Position in {@link #delay}
+     */
+    private int delayPos;
+
+    /**
+     * FFT work buffers
+     */
+    private final float[] re, im;
+
+    /**
+     * Power spectra of the current frame
+     */
+    private final double[] refPower, procPower;
+
+    /**
+     * First bin of each mel band
+     */
+    private final int[] melStart;
+
+    /**
+     * Triangular weights of each mel band, from its first bin
+     */
+    private final float[][] melWeights;
+
+    /**
+     * DCT-II basis, CEPSTRA + 1 rows of MEL_BANDS
+     */
+    private final double[][] dct;
+
+    /**
+     * Log mel energies of the current frame
+     */
+    private final double[] refMel, procMel;
+
+    /**
+     * Bin range [lo, hi) of each envelope band
+     */
+    private final int[] bandLo, bandHi;
+
+    /**
+     * Band envelopes of the last {@link #segmentFrames} non-silent frames, as
+     * rings indexed [frame][band]
+     */
+    private final double[][] refEnv, procEnv;
+
+    /**
+     * Frames per envelope segment
+     */
+    private final int segmentFrames;
+
+    /**
+     * Next slot of the envelope rings and the number of filled slots
+     */
+    private int envPos, envCount;
+
+    /**
+     * Frames compared so far
+     */
+    private long frames;
+
+    /**
+     * Non-silent analysis frames so far
+     */
+    private long analysed;
+
+    /**
+     * Envelope segments so far
+     */
+    private long segments;
+
+    /**
+     * Running sums of the per-frame and per-segment scores
+     */
+    private double snrSum, lsdSum, cepSum, corrSum;
+
+    /**
+     * Creates a meter for streams without relative delay.
+     *
+     * @param sampleRate The sample rate in Hz
+     */
+    public QualityMeter(float sampleRate) {
+        this(sampleRate, 0);
+    }
+
+    /**
+     * Creates a meter.
+     *
+     * @param sampleRate  The sample rate in Hz
+     * @param delayFrames How many frames the processed stream lags the
+     *                    reference
+     */
+    public QualityMeter(float sampleRate, int delayFrames) {
+        this.size = Integer.highestOneBit(Math.max(64, Math.round(sampleRate * 0.032f)));
+        this.hop = size / 2;
+        this.fft = FFT.forSize(size);
+        this.window = new float[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+            sum += window[i];
+        }
+        double amplitude = 32768 * sum / 2;
+        this.binScale = 1 / (amplitude * amplitude);
+
+        refFrame = new float[size];
+        procFrame = new float[size];
+        delay = new float[delayFrames];
+        re = new float[size];
+        im = new float[size];
+        int bins = size / 2 + 1;
+        refPower = new double[bins];
+        procPower = new double[bins];
+
+        // Triangular mel filters between 0 Hz and min(8 kHz, Nyquist)
+        double binHz = sampleRate / size;
+        double maxMel = mel(Math.min(MEL_MAX_HZ, sampleRate / 2));
+        double[] edges = new double[MEL_BANDS + 2];
+        for (int b = 0; b < edges.length; b++)
+            edges[b] = hz(maxMel * b / (MEL_BANDS + 1)) / binHz;
+        melStart = new int[MEL_BANDS];
+        melWeights = new float[MEL_BANDS][];
+        for (int b = 0; b < MEL_BANDS; b++) {
+            int lo = (int) Math.ceil(edges[b]);
+            int hi = Math.min(bins - 1, (int) Math.floor(edges[b + 2]));
+            melStart[b] = lo;
+            melWeights[b] = new float[Math.max(0, hi - lo + 1)];
+            for (int k = lo; k <= hi; k++) {
+                double w = k <= edges[b + 1] ? (k - edges[b]) / (edges[b + 1] - edges[b])
+                        : (edges[b + 2] - k) / (edges[b + 2] - edges[b + 1]);
+                melWeights[b][k - lo] = (float) Math.max(0, w);
+            }
+        }
+        dct = new double[CEPSTRA + 1][MEL_BANDS];
+        for (int c = 0; c <= CEPSTRA; c++) {
+            for (int b = 0; b < MEL_BANDS; b++)
+                dct[c][b] = Math.sqrt(2.0 / MEL_BANDS) * Math.cos(Math.PI * c * (b + 0.5) / MEL_BANDS);
+        }
+        refMel = new double[MEL_BANDS];
+        procMel = new double[MEL_BANDS];
+
+        // Third-octave bands from 150 Hz, as far as the Nyquist frequency allows
+        bandLo = new int[ENVELOPE_BANDS];
+        bandHi = new int[ENVELOPE_BANDS];
+        for (int b = 0; b < ENVELOPE_BANDS; b++) {
+            double center = FIRST_BAND_HZ * Math.pow(2, b / 3.0);
+            bandLo[b] = Math.min(bins - 1, (int) Math.round(center * Math.pow(2, -1 / 6.0) / binHz));
+            bandHi[b] = Math.min(bins, Math.max(bandLo[b] + 1, (int) Math.round(center * Math.pow(2, 1 / 6.0) / binHz)));
+        }
+        segmentFrames = Math.max(2, (int) Math.round(SEGMENT_SECONDS * sampleRate / hop));
+        refEnv = new double[segmentFrames][ENVELOPE_BANDS];
+        procEnv = new double[segmentFrames][ENVELOPE_BANDS];
+    }
+
+    /**
+     * Converts a frequency to the mel scale.
+     *
+     * @param hz The frequency in Hz
+     * @return The pitch in mel
+     */
+    private static double mel(double hz) {
+        return 2595 * Math.log10(1 + hz / 700);
+    }
+
+    /**
+     * Converts a pitch on the mel scale to a frequency.
+     *
+     * @param mel The pitch in mel
+     * @return The frequency in Hz
+     */
+    private static double hz(double mel) {
+        return 700 * (Math.pow(10, mel / 2595) - 1);
+    }
+
+    /**
+     * Compares a block of planar short samples.
+     *
+     * @param reference Planar reference samples, one or two channels
+     * @param processed Planar processed samples with the same channels
+     * @param length    The number of samples per channel
+     */
+    public void accept(short[][] reference, short[][] processed, int length) {
+        short[] rl = reference[0], rr = reference[reference.length - 1];
+        short[] pl = processed[0], pr = processed[processed.length - 1];
+        for (int i = 0; i < length; i++)
+            push(0.5f * (rl[i] + rr[i]), 0.5f * (pl[i] + pr[i]));
+    }
+
+    /**
+     * Compares a block of mono float samples on the 16-bit scale.
+     *
+     * @param reference Reference samples
+     * @param processed Processed samples
+     * @param length    The number of samples
+     */
+    public void accept(float[] reference, float[] processed, int length) {
+        for (int i = 0; i < length; i++)
+            push(reference[i], processed[i]);
+    }
+
+    /**
+     * Adds one sample of each stream and analyses a frame when one is full.
+     *
+     * @param ref  The reference sample
+     * @param proc The processed sample
+     */
+    private void push(float ref, float proc) {
+        frames++;
+        if (delay.length > 0) {
+            float delayed = delay[delayPos];
+            delay[delayPos] = ref;
+            delayPos = delayPos + 1 == delay.length ? 0 : delayPos + 1;
+            // The processed stream has no counterpart yet while the line fills
+            if (frames <= delay.length)
+                return;
+            ref = delayed;
+        }
+        refFrame[filled] = ref;
+        procFrame[filled] = proc;
+        if (++filled == size) {
+            analyse();
+            System.arraycopy(refFrame, hop, refFrame, 0, size - hop);
+            System.arraycopy(procFrame, hop, procFrame, 0, size - hop);
+            filled = size - hop;
+        }
+    }
+
+    /**
+     * Scores the current frame unless the reference is silent.
+     */
+    private void analyse() {
+        double refEnergy = 0, errEnergy = 0;
+        for (int i = 0; i < size; i++) {
+            double r = refFrame[i], e = r - procFrame[i];
+            refEnergy += r * r;
+            errEnergy += e * e;
+        }
+        double rms = Math.sqrt(refEnergy / size) / 32768;
+        if (rms <= 0 || 20 * Math.log10(rms) < SILENCE_DBFS)
+            return;
+        analysed++;
+
+        double snr = errEnergy == 0 ? MAX_SNR_DB : 10 * Math.log10(refEnergy / errEnergy);
+        snrSum += Math.max(MIN_SNR_DB, Math.min(MAX_SNR_DB, snr));
+
+        spectrum(refFrame, refPower);
+        spectrum(procFrame, procPower);
+
+        double lsd = 0;
+        for (int k = 1; k < refPower.length; k++) {
+            double d = 10 * Math.log10((refPower[k] + FLOOR) / (procPower[k] + FLOOR));
+            lsd += d * d;
+        }
+        lsdSum += Math.sqrt(lsd / (refPower.length - 1));
+
+        melLog(refPower, refMel);
+        melLog(procPower, procMel);
+        double cep = 0;
+        for (int c = 1; c <= CEPSTRA; c++) {
+            double d = 0;
+            for (int b = 0; b < MEL_BANDS; b++)
+                d += dct[c][b] * (refMel[b] - procMel[b]);
+            cep += d * d;
+        }
+        // Mel-cepstral distortion of natural-log cepstra, in dB
+        cepSum += 10 / Math.log(10) * Math.sqrt(2 * cep);
+
+        envelopes();
+    }
+
+    /**
+     * Computes the power spectrum of a windowed frame.
+     *
+     * @param frame The samples
+     * @param power The power of each bin, a full-scale sine being 1
+     */
+    private void spectrum(float[] frame, double[] power) {
+        for (int i = 0; i < size; i++) {
+            re[i] = frame[i] * window[i];
+            im[i] = 0;
+        }
+        fft.forward(re, im);
+        for (int k = 0; k < power.length; k++)
+            power[k] = ((double) re[k] * re[k] + (double) im[k] * im[k]) * binScale;
+    }
+
+    /**
+     * Computes the log mel energies of a power spectrum.
+     *
+     * @param power The power spectrum
+     * @param out   The natural log of each band's energy
+     */
+    private void melLog(double[] power, double[] out) {
+        for (int b = 0; b < MEL_BANDS; b++) {
+            float[] w = melWeights[b];
+            double e = 0;
+            for (int k = 0; k < w.length; k++)
+                e += w[k] * power[melStart[b] + k];
+            out[b] = Math.log(e + FLOOR);
+        }
+    }
+
+    /**
+     * Adds the band envelopes of the current frame and scores the segment
+     * ending with it once enough frames were seen.
+     */
+    private void envelopes() {
+        double[] r = refEnv[envPos], p = procEnv[envPos];
+        for (int b = 0; b < ENVELOPE_BANDS; b++) {
+            double rs = 0, ps = 0;
+            for (int k = bandLo[b]; k < bandHi[b]; k++) {
+                rs += refPower[k];
+                ps += procPower[k];
+            }
+            r[b] = Math.sqrt(rs);
+            p[b] = Math.sqrt(ps);
+        }
+        envPos = envPos + 1 == segmentFrames ? 0 : envPos + 1;
+        if (envCount < segmentFrames && ++envCount < segmentFrames)
+            return;
+
+        double corr = 0;
+        for (int b = 0; b < ENVELOPE_BANDS; b++) {
+            double mr = 0, mp = 0;
+            for (int j = 0; j < segmentFrames; j++) {
+                mr += refEnv[j][b];
+                mp += procEnv[j][b];
+            }
+            mr /= segmentFrames;
+            mp /= segmentFrames;
+            double xy = 0, xx = 0, yy = 0;
+            for (int j = 0; j < segmentFrames; j++) {
+                double x = refEnv[j][b] - mr, y = procEnv[j][b] - mp;
+                xy += x * y;
+                xx += x * x;
+                yy += y * y;
+            }
+            // A flat envelope carries no information; count it as uncorrelated
+            corr += xx > 0 && yy > 0 ? xy / Math.sqrt(xx * yy) : 0;
+        }
+        corrSum += corr / ENVELOPE_BANDS;
+        segments++;
+    }
+
+    /**
+     * Returns the scores of everything compared so far.
+     *
+     * @return The scores; averages are 0 before the first non-silent frame
+     *         and the intelligibility is 0 before the first full segment
+     */
+    public QualityScores getScores() {
+        double n = Math.max(1, analysed);
+        return new QualityScores(frames, analysed, snrSum / n, lsdSum / n, cepSum / n,
+                segments == 0 ? 0 : corrSum / segments);
+    }
+
+    /**
+     * Returns the analysis frame length.
+     *
+     * @return Samples per frame
+     */
+    public int getFrameSize() {
+        return size;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package voiceprotector.quality;
+
+/**
+ * QualityScores summarizes how far a processed stream has moved from its
+ * reference, as measured by a {@link QualityMeter}. Larger distances and lower
+ * SNR and intelligibility mean more disruption of the voice.
+ *
+ * @param frames                The number of frames compared
+ * @param analysedFrames        The number of analysis frames that were not
+ *                              silent and entered the averages
+ * @param segmentalSnrDb        Mean segmental SNR of processed against
+ *                              reference, clamped per frame, in dB
+ * @param logSpectralDistanceDb Mean log-spectral distance in dB
+ * @param cepstralDistanceDb    Mean mel-cepstral distance in dB
+ * @param intelligibility       Mean short-time correlation of band
+ *                              envelopes, from -1 to 1 (1: envelopes
+ *                              unchanged)
+ */
+public record QualityScores(long frames, long analysedFrames, double segmentalSnrDb, double logSpectralDistanceDb,
+        double cepstralDistanceDb, double intelligibility) {
+
+    /**
+     * Formats the scores on one line.
+     *
+     * @return A human-readable summary
+     */
+    @Override
+    public String toString() {
+        return String.format("segSNR %.2f dB, LSD %.2f dB, MCD %.2f dB, intelligibility %.3f (%d frames)",
+                segmentalSnrDb, logSpectralDistanceDb, cepstralDistanceDb, intelligibility, analysedFrames);
+    }
+}
\ No newline at end of file
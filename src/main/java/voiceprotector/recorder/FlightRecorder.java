@@ -0,0 +1,456 @@
+package voiceprotector.recorder;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import voiceprotector.StereoAudioFilter;
+import voiceprotector.StereoFilterChain;
+import voiceprotector.filters.NoiseFilterStereo;
+import voiceprotector.params.ParameterSnapshot;
+
+/**
+ * FlightRecorder keeps the last minutes of a live session in a fixed-size
+ * memory-mapped file: every block as captured and as processed, plus the
+ * filter parameters whenever they change. The file is a ring, so recording
+ * can stay on indefinitely; {@link FlightRecording} reads it back and
+ * {@link ReplaySource} feeds it through a chain again.
+ * <p>
+ * Layout (little endian): a {@value #HEADER_BYTES}-byte header, a ring of
+ * {@value #INDEX_ENTRY_BYTES}-byte index entries (sequence, timestamp, stream
+ * frame, data offset, kind) used for seeking, and a data ring of records
+ * (sequence, kind, length, payload padded to 8 bytes). A record that does not
+ * fit before the end of the data ring starts again at its beginning. The
+ * sequence number in the index must match the one in the record, so a reader
+ * recognizes entries whose data has been overwritten.
+ * <p>
+ * Recording copies a block into the mapped pages and writes two small
+ * headers; it neither allocates nor makes a system call. All pages are touched
+ * when the file is opened, so the audio thread does not take page faults
+ * either. The operating system writes the pages back in the background, and
+ * they survive a crash of the JVM. The record methods must be called from one
+ * thread, and {@link #close()} only after that thread stopped recording.
+ */
+public class FlightRecorder implements AutoCloseable {
+
+    /**
+     * The file magic, "VPFR"
+     */
+    static final int MAGIC = 0x52465056;
+
+    /**
+     * The file format version
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Size of the file header in bytes
+     */
+    static final int HEADER_BYTES = 64;
+
+    /**
+     * Size of an index entry in bytes
+     */
+    static final int INDEX_ENTRY_BYTES = 32;
+
+    /**
+     * Size of the header of a data record in bytes
+     */
+    static final int RECORD_HEADER_BYTES = 16;
+
+    /**
+     * Header offset of the magic
+     */
+    static final int H_MAGIC = 0;
+
+    /**
+     * Header offset of the version
+     */
+    static final int H_VERSION = 4;
+
+    /**
+     * Header offset of the sample rate
+     */
+    static final int H_SAMPLE_RATE = 8;
+
+    /**
+     * Header offset of the channel count
+     */
+    static final int H_CHANNELS = 12;
+
+    /**
+     * Header offset of the wall-clock start time
+     */
+    static final int H_START_MILLIS = 16;
+
+    /**
+     * Header offset of the noise seed
+     */
+    static final int H_SEED = 24;
+
+    /**
+     * Header offset of the number of index entries
+     */
+    static final int H_INDEX_ENTRIES = 32;
+
+    /**
+     * Header offset of the data ring capacity
+     */
+    static final int H_DATA_CAPACITY = 36;
+
+    /**
+     * Header offset of the sequence number of the last complete record
+     */
+    static final int H_SEQUENCE = 40;
+
+    /**
+     * Header offset of the data ring write position
+     */
+    static final int H_HEAD = 48;
+
+    /**
+     * Smallest accepted file size
+     */
+    public static final long MIN_CAPACITY = 1 << 20;
+
+    /**
+     * Largest accepted file size, the limit of one mapping
+     */
+    public static final long MAX_CAPACITY = Integer.MAX_VALUE & ~7;
+
+    /**
+     * Largest interval between two parameter records in seconds of audio, so
+     * that a replay started anywhere finds the parameters of its first block
+     * nearby
+     */
+    public static final float KEYFRAME_SECONDS = 1f;
+
+    /**
+     * Average data bytes per index entry; a 128-frame stereo block takes 512
+     */
+    private static final int BYTES_PER_ENTRY = 512;
+
+    /**
+     * The file
+     */
+    private final FileChannel channel;
+
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer map;
+
+    /**
+     * Number of index entries
+     */
+    private final int indexEntries;
+
+    /**
+     * File offset of the data ring
+     */
+    private final int dataStart;
+
+    /**
+     * Size of the data ring in bytes
+     */
+    private final int dataCapacity;
+
+    /**
+     * Bytes per interleaved PCM16 frame
+     */
+    private final int frameBytes;
+
+    /**
+     * Largest interval between two parameter records in frames
+     */
+    private final long keyframeFrames;
+
+    /**
+     * Time of the recorder's creation, the origin of the record timestamps
+     */
+    private final long startNanos;
+
+    /**
+     * Sequence number of the last record
+     */
+    private long sequence;
+
+    /**
+     * Offset of the next record within the data ring
+     */
+    private int head;
+
+    /**
+     * Frames recorded as captured so far
+     */
+    private long capturedFrames;
+
+    /**
+     * Frames recorded as processed so far
+     */
+    private long processedFrames;
+
+    /**
+     * The parameter snapshot of each filter at the last parameter record
+     */
+    private ParameterSnapshot[] snapshots = new ParameterSnapshot[0];
+
+    /**
+     * The enabled state of each filter at the last parameter record
+     */
+    private boolean[] enabled = new boolean[0];
+
+    /**
+     * Stream position of the last parameter record, -1 before the first
+     */
+    private long parametersFrame = -1;
+
+    /**
+     * Creates or overwrites a recording file of a fixed size and maps it.
+     *
+     * @param file          The file
+     * @param capacityBytes The file size, between {@link #MIN_CAPACITY} and
+     *                      {@link #MAX_CAPACITY}
+     * @param sampleRate    The sample rate of the recorded blocks
+     * @param channels      The channels of the recorded interleaved PCM16
+     *                      blocks
+     * @param seed          The seed the chain's noise sources were given with
+     *                      {@link #seed(StereoFilterChain, long)}, stored for
+     *                      replay
+     * @throws IOException If the file cannot be created or mapped
+     */
+    public FlightRecorder(Path file, long capacityBytes, float sampleRate, int channels, long seed)
+            throws IOException {
+        if (capacityBytes < MIN_CAPACITY || capacityBytes > MAX_CAPACITY)
+            throw new IllegalArgumentException("Recording size must be between " + MIN_CAPACITY + " and "
+                    + MAX_CAPACITY + " bytes: " + capacityBytes);
+        int size = (int) (capacityBytes & ~7);
+        this.indexEntries = (size - HEADER_BYTES) / (INDEX_ENTRY_BYTES + BYTES_PER_ENTRY);
+        this.dataStart = HEADER_BYTES + indexEntries * INDEX_ENTRY_BYTES;
+        this.dataCapacity = size - dataStart;
+        this.frameBytes = 2 * channels;
+        this.keyframeFrames = Math.max(1, (long) (KEYFRAME_SECONDS * sampleRate));
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        // Allocate every page now instead of faulting on the audio thread
+        for (int i = 0; i < size; i += 4096)
+            map.put(i, (byte) 0);
+
+        map.putInt(H_VERSION, VERSION);
+        map.putFloat(H_SAMPLE_RATE, sampleRate);
+        map.putInt(H_CHANNELS, channels);
+        map.putLong(H_START_MILLIS, System.currentTimeMillis());
+        map.putLong(H_SEED, seed);
+        map.putInt(H_INDEX_ENTRIES, indexEntries);
+        map.putInt(H_DATA_CAPACITY, dataCapacity);
+        map.putInt(H_MAGIC, MAGIC);
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Creates a recorder for a chain, giving the chain's noise sources a fresh
+     * seed that the recording keeps.
+     *
+     * @param chain         The chain to record, configured for its layout and
+     *                      rate
+     * @param file          The file
+     * @param capacityBytes The file size
+     * @return The recorder
+     * @throws IOException If the file cannot be created or mapped
+     */
+    public static FlightRecorder create(StereoFilterChain chain, Path file, long capacityBytes) throws IOException {
+        long seed = ThreadLocalRandom.current().nextLong();
+        seed(chain, seed);
+        return new FlightRecorder(file, capacityBytes, chain.getSampleRate(),
+                chain.getChannelLayout().getChannels(), seed);
+    }
+
+    /**
+     * Gives every noise filter of a chain a seed derived from one value, so a
+     * replay can reproduce its output exactly.
+     *
+     * @param chain The chain
+     * @param seed  The seed
+     */
+    public static void seed(StereoFilterChain chain, long seed) {
+        List<StereoAudioFilter> filters = chain.getFilters();
+        for (int i = 0; i < filters.size(); i++) {
+            if (filters.get(i) instanceof NoiseFilterStereo n)
+                n.setSeed(seed + i);
+        }
+    }
+
+    /**
+     * Records a block as it enters the chain.
+     *
+     * @param data   Interleaved PCM16 samples
+     * @param length The number of valid bytes
+     */
+    public void recordCaptured(byte[] data, int length) {
+        write(RecordKind.CAPTURED, capturedFrames, data, length);
+        capturedFrames += length / frameBytes;
+    }
+
+    /**
+     * Records a block as it leaves the chain.
+     *
+     * @param data   Interleaved PCM16 samples
+     * @param length The number of valid bytes
+     */
+    public void recordProcessed(byte[] data, int length) {
+        write(RecordKind.PROCESSED, processedFrames, data, length);
+        processedFrames += length / frameBytes;
+    }
+
+    /**
+     * Records the parameters of every filter of a chain if any of them changed
+     * since the last call, or if {@link #KEYFRAME_SECONDS} of audio were
+     * recorded since the last parameter record. Call it before
+     * {@link #recordCaptured(byte[], int)}.
+     *
+     * @param chain The chain being recorded
+     */
+    public void recordParameters(StereoFilterChain chain) {
+        List<StereoAudioFilter> filters = chain.getFilters();
+        int n = filters.size();
+        boolean changed = parametersFrame < 0 || capturedFrames - parametersFrame >= keyframeFrames;
+        if (snapshots.length != n) {
+            snapshots = new ParameterSnapshot[n];
+            enabled = new boolean[n];
+            changed = true;
+        }
+        int length = 4;
+        for (int i = 0; i < n; i++) {
+            StereoAudioFilter f = filters.get(i);
+            ParameterSnapshot s = f.getParameters().snapshot();
+            // Stores publish a new snapshot on every change
+            if (s != snapshots[i] || f.isEnabled() != enabled[i]) {
+                snapshots[i] = s;
+                enabled[i] = f.isEnabled();
+                changed = true;
+            }
+            length += 8 + 4 * s.size();
+        }
+        if (!changed)
+            return;
+        parametersFrame = capturedFrames;
+
+        int p = begin(RecordKind.PARAMETERS, capturedFrames, length, System.nanoTime());
+        map.putInt(p, n);
+        p += 4;
+        for (int i = 0; i < n; i++) {
+            ParameterSnapshot s = snapshots[i];
+            map.putInt(p, enabled[i] ? 1 : 0);
+            map.putInt(p + 4, s.size());
+            p += 8;
+            for (int k = 0; k < s.size(); k++, p += 4)
+                map.putFloat(p, s.get(k));
+        }
+        commit();
+    }
+
+    /**
+     * Writes a record with a copy of a byte block.
+     *
+     * @param kind   The kind
+     * @param frame  The stream position of the block
+     * @param data   The block
+     * @param length The number of bytes
+     */
+    private void write(RecordKind kind, long frame, byte[] data, int length) {
+        int p = begin(kind, frame, length, System.nanoTime());
+        map.put(p, data, 0, length);
+        commit();
+    }
+
+    /**
+     * Reserves room for a record in the data ring, writes its headers and index
+     * entry, and returns where its payload goes. The record counts once
+     * {@link #commit()} is called.
+     *
+     * @param kind   The kind
+     * @param frame  The stream position the record belongs to
+     * @param length The payload length
+     * @param nanos  The time of the record
+     * @return The file offset of the payload
+     */
+    private int begin(RecordKind kind, long frame, int length, long nanos) {
+        int size = RECORD_HEADER_BYTES + ((length + 7) & ~7);
+        if (size > dataCapacity)
+            throw new IllegalArgumentException("Block of " + length + " bytes does not fit the recording");
+        if (head + size > dataCapacity)
+            head = 0;
+        long seq = ++sequence;
+        int offset = head;
+        head += size;
+
+        int r = dataStart + offset;
+        map.putLong(r, seq);
+        map.putInt(r + 8, kind.ordinal());
+        map.putInt(r + 12, length);
+
+        int e = HEADER_BYTES + (int) (seq % indexEntries) * INDEX_ENTRY_BYTES;
+        map.putLong(e, seq);
+        map.putLong(e + 8, nanos - startNanos);
+        map.putLong(e + 16, frame);
+        map.putInt(e + 24, offset);
+        map.putInt(e + 28, kind.ordinal());
+        return r + RECORD_HEADER_BYTES;
+    }
+
+    /**
+     * Marks the record started last as complete in the file header.
+     */
+    private void commit() {
+        map.putInt(H_HEAD, head);
+        map.putLong(H_SEQUENCE, sequence);
+    }
+
+    /**
+     * Returns how many records were written.
+     *
+     * @return The sequence number of the last record
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns how many frames were recorded as captured.
+     *
+     * @return The frame count
+     */
+    public long getCapturedFrames() {
+        return capturedFrames;
+    }
+
+    /**
+     * Returns the size of the data ring, which bounds how much audio the file
+     * holds.
+     *
+     * @return The capacity in bytes
+     */
+    public int getDataCapacity() {
+        return dataCapacity;
+    }
+
+    /**
+     * Writes the mapped pages back to the file and closes it. The mapping itself
+     * is released when the recorder is garbage collected.
+     *
+     * @throws IOException If the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        map.force();
+        channel.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,240 @@
+package voiceprotector.recorder;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import voiceprotector.StereoAudioFilter;
+import voiceprotector.StereoFilterChain;
+import voiceprotector.params.ParameterStore;
+
+/**
+ * FlightRecording reads a file written by {@link FlightRecorder}. Opening it
+ * collects the index entries whose records are still intact, oldest first;
+ * entries whose data was overwritten by the ring are dropped. The file may
+ * still be in use by a recorder, in which case the recording ends at the last
+ * record complete at the time of opening.
+ */
+public class FlightRecording {
+
+    /**
+     * One record of the recording.
+     *
+     * @param sequence The record's sequence number
+     * @param nanos    The time of the record since the recorder was created
+     * @param frame    The stream position of the record's block, for
+     *                 parameters the position of the next captured block
+     * @param kind     The kind
+     * @param offset   The file offset of the payload
+     * @param length   The payload length in bytes
+     */
+    public record Entry(long sequence, long nanos, long frame, RecordKind kind, int offset, int length) {
+    }
+
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer map;
+
+    /**
+     * The sample rate of the recorded blocks
+     */
+    private final float sampleRate;
+
+    /**
+     * The channels of the recorded blocks
+     */
+    private final int channels;
+
+    /**
+     * Wall-clock time the recording started, in milliseconds since the epoch
+     */
+    private final long startMillis;
+
+    /**
+     * The seed of the recorded chain's noise sources
+     */
+    private final long seed;
+
+    /**
+     * The intact entries in sequence order
+     */
+    private final List<Entry> entries;
+
+    /**
+     * Opens a recording and builds its index.
+     *
+     * @param file The recording file
+     * @throws IOException If the file cannot be read or is not a recording
+     */
+    public FlightRecording(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() < FlightRecorder.HEADER_BYTES)
+                throw new IOException("Not a recording: " + file);
+            this.map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        if (map.getInt(FlightRecorder.H_MAGIC) != FlightRecorder.MAGIC)
+            throw new IOException("Not a recording: " + file);
+        if (map.getInt(FlightRecorder.H_VERSION) != FlightRecorder.VERSION)
+            throw new IOException(
+                    "Unsupported recording version " + map.getInt(FlightRecorder.H_VERSION) + ": " + file);
+
+        this.sampleRate = map.getFloat(FlightRecorder.H_SAMPLE_RATE);
+        this.channels = map.getInt(FlightRecorder.H_CHANNELS);
+        this.startMillis = map.getLong(FlightRecorder.H_START_MILLIS);
+        this.seed = map.getLong(FlightRecorder.H_SEED);
+        int indexEntries = map.getInt(FlightRecorder.H_INDEX_ENTRIES);
+        int dataCapacity = map.getInt(FlightRecorder.H_DATA_CAPACITY);
+        int dataStart = FlightRecorder.HEADER_BYTES + indexEntries * FlightRecorder.INDEX_ENTRY_BYTES;
+        long last = map.getLong(FlightRecorder.H_SEQUENCE);
+        if (dataStart + (long) dataCapacity > map.capacity())
+            throw new IOException("Truncated recording: " + file);
+
+        List<Entry> list = new ArrayList<>(indexEntries);
+        for (int i = 0; i < indexEntries; i++) {
+            int e = FlightRecorder.HEADER_BYTES + i * FlightRecorder.INDEX_ENTRY_BYTES;
+            long seq = map.getLong(e);
+            if (seq == 0 || seq > last)
+                continue;
+            int offset = map.getInt(e + 24);
+            RecordKind kind = RecordKind.of(map.getInt(e + 28));
+            if (kind == null || offset < 0 || offset > dataCapacity - FlightRecorder.RECORD_HEADER_BYTES)
+                continue;
+            int r = dataStart + offset;
+            int length = map.getInt(r + 12);
+            // A newer record has been written over this one
+            if (map.getLong(r) != seq || map.getInt(r + 8) != kind.ordinal() || length < 0
+                    || length > dataCapacity - offset - FlightRecorder.RECORD_HEADER_BYTES)
+                continue;
+            list.add(new Entry(seq, map.getLong(e + 8), map.getLong(e + 16), kind,
+                    r + FlightRecorder.RECORD_HEADER_BYTES, length));
+        }
+        list.sort(Comparator.comparingLong(Entry::sequence));
+        this.entries = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the intact records, oldest first.
+     *
+     * @return The entries
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Finds the first record at or after a time.
+     *
+     * @param nanos The time since the recorder was created
+     * @return The index of the first entry with that time or later, the number
+     *         of entries if there is none
+     */
+    public int seek(long nanos) {
+        int lo = 0;
+        int hi = entries.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (entries.get(mid).nanos() < nanos)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Copies the payload of a record.
+     *
+     * @param entry The record
+     * @param dst   The destination, at least {@link Entry#length()} bytes
+     */
+    public void read(Entry entry, byte[] dst) {
+        map.get(entry.offset(), dst, 0, entry.length());
+    }
+
+    /**
+     * Applies a parameter record to a chain with the same filters as the
+     * recorded one. Enabled states cannot be set through the filter interface,
+     * so they are only compared.
+     *
+     * @param entry The {@link RecordKind#PARAMETERS} record
+     * @param chain The chain
+     * @return The number of filters whose enabled state differs from the
+     *         recording
+     * @throws IllegalArgumentException If the chain's filters do not match the
+     *                                  record
+     */
+    public int applyParameters(Entry entry, StereoFilterChain chain) {
+        if (entry.kind() != RecordKind.PARAMETERS)
+            throw new IllegalArgumentException("Not a parameter record: " + entry);
+        List<StereoAudioFilter> filters = chain.getFilters();
+        int p = entry.offset();
+        int n = map.getInt(p);
+        if (n != filters.size())
+            throw new IllegalArgumentException("The recording has " + n + " filters, the chain " + filters.size());
+        p += 4;
+        int differing = 0;
+        for (int i = 0; i < n; i++) {
+            ParameterStore store = filters.get(i).getParameters();
+            boolean enabled = map.getInt(p) != 0;
+            int count = map.getInt(p + 4);
+            p += 8;
+            if (count != store.getNames().length)
+                throw new IllegalArgumentException("Filter " + i + " has " + store.getNames().length
+                        + " parameters, the recording " + count);
+            for (int k = 0; k < count; k++, p += 4) {
+                float v = map.getFloat(p);
+                if (Float.floatToIntBits(v) != Float.floatToIntBits(store.get(k)))
+                    store.set(k, v);
+            }
+            if (enabled != filters.get(i).isEnabled())
+                differing++;
+        }
+        return differing;
+    }
+
+    /**
+     * Returns the sample rate of the recorded blocks.
+     *
+     * @return The sample rate in Hz
+     */
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns the channels of the recorded interleaved PCM16 blocks.
+     *
+     * @return The channel count
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Returns when the recording started.
+     *
+     * @return Milliseconds since the epoch
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Returns the seed to give the replay chain with
+     * {@link FlightRecorder#seed(StereoFilterChain, long)}.
+     *
+     * @return The seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package voiceprotector.recorder;
+
+/**
+ * The kinds of records in a {@link FlightRecorder} file.
+ */
+public enum RecordKind {
+
+    /**
+     * An interleaved PCM block as it entered the chain
+     */
+    CAPTURED,
+
+    /**
+     * An interleaved PCM block as it left the chain
+     */
+    PROCESSED,
+
+    /**
+     * The parameter values and enabled state of every filter of the chain,
+     * valid from the next captured block
+     */
+    PARAMETERS;
+
+    /**
+     * All kinds, indexed by their code
+     */
+    private static final RecordKind[] VALUES = values();
+
+    /**
+     * Returns the kind stored under a code.
+     *
+     * @param code The code written by {@link #ordinal()}
+     * @return The kind, or null if the code is invalid
+     */
+    static RecordKind of(int code) {
+        return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,186 @@
+package voiceprotector.recorder;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.StereoFilterChain;
+import voiceprotector.daemon.ChainConfig;
+import voiceprotector.metrics.LatencyHistogram;
+import voiceprotector.offline.ChunkedProcessor;
+
+/**
+ * Command-line tool that feeds a {@link FlightRecorder} file through a filter
+ * chain again and checks that every block comes out bit for bit as it was
+ * recorded. It reproduces the recorded block sizes, parameter changes and
+ * noise seeds, so a session that went wrong can be replayed under a profiler
+ * or used as a regression test after a change to the filters. The exit code
+ * is 1 if any block differs.
+ * <p>
+ * Usage: {@code ReplayMain [-c config.properties] [--from seconds] [--realtime] recording}
+ * <p>
+ * The configuration must describe the recorded chain (see
+ * {@link ChainConfig}); without {@code -c} it is the default chain. Started
+ * with {@code --from} after the beginning of the stream, the chunkable
+ * filters are moved to the stream position and the preceding
+ * {@link ChunkedProcessor#warmupFrames warm-up} frames are processed but not
+ * compared. Filters that cannot be chunked carry state that only a replay from
+ * the beginning of the stream rebuilds; their output is still compared but may
+ * differ. With {@code --realtime}, blocks are delivered at their recorded
+ * times instead of as fast as possible.
+ */
+public class ReplayMain {
+
+    /**
+     * Replays a recording and prints the timing and comparison.
+     *
+     * @param args Options followed by the recording file
+     * @throws Exception If the recording cannot be read or does not match the
+     *                   configuration
+     */
+    public static void main(String[] args) throws Exception {
+        Properties props = new Properties();
+        double fromSeconds = 0;
+        boolean realTime = false;
+        Path file = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-c" -> props = ChainConfig.load(Path.of(args[++i]));
+                case "--from" -> fromSeconds = Double.parseDouble(args[++i]);
+                case "--realtime" -> realTime = true;
+                default -> file = Path.of(args[i]);
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage: ReplayMain [-c config.properties] [--from seconds] [--realtime] recording");
+            System.exit(2);
+        }
+
+        FlightRecording recording = new FlightRecording(file);
+        StereoFilterChain chain = new ChainConfig(props).getChain();
+        int channels = chain.getChannelLayout().getChannels();
+        if (channels != recording.getChannels())
+            throw new IllegalArgumentException("The recording has " + recording.getChannels()
+                    + " channels, the configuration " + channels);
+        chain.setSampleRate(recording.getSampleRate());
+        FlightRecorder.seed(chain, recording.getSeed());
+
+        List<FlightRecording.Entry> entries = recording.getEntries();
+        Map<Long, FlightRecording.Entry> processed = new HashMap<>();
+        long startFrame = -1;
+        long startNanos = 0;
+        long from = (long) (fromSeconds * 1e9);
+        // The ring may have overwritten the parameters of the oldest blocks
+        long parametersNanos = -1;
+        for (FlightRecording.Entry e : entries) {
+            if (e.kind() == RecordKind.PARAMETERS) {
+                parametersNanos = e.nanos();
+                break;
+            }
+        }
+        if (parametersNanos < 0)
+            System.out.println("Note: the recording holds no parameters; the configured values are used");
+        else
+            from = Math.max(from, parametersNanos);
+        int maxLength = 0;
+        for (FlightRecording.Entry e : entries) {
+            if (e.kind() == RecordKind.PROCESSED) {
+                processed.put(e.frame(), e);
+            } else if (e.kind() == RecordKind.CAPTURED) {
+                maxLength = Math.max(maxLength, e.length());
+                if (startFrame < 0 && e.nanos() >= from) {
+                    startFrame = e.frame();
+                    startNanos = e.nanos();
+                }
+            }
+        }
+        if (startFrame < 0) {
+            System.err.println(
+                    "No captured audio in " + file + (fromSeconds > 0 ? " after " + fromSeconds + " s" : ""));
+            System.exit(1);
+        }
+        // As the live loop, which prepares the chain for its largest block
+        chain.prepare(new AudioFormat(recording.getSampleRate(), 16, channels, true, false),
+                maxLength / (2 * channels));
+
+        // Begin early enough to rebuild the state of the first compared block
+        int warmup = ChunkedProcessor.warmupFrames(chain);
+        long compareFrom = startFrame;
+        long beginNanos = startNanos;
+        if (startFrame > 0) {
+            if (warmup < 0) {
+                System.out.println("Note: a filter of the chain cannot be moved in the stream; "
+                        + "blocks before frame " + startFrame + " are not replayed and later ones may differ");
+                ChunkedProcessor.seek(chain, startFrame);
+            } else {
+                for (FlightRecording.Entry e : entries) {
+                    if (e.kind() == RecordKind.CAPTURED && e.frame() >= startFrame - warmup
+                            && e.nanos() >= parametersNanos) {
+                        beginNanos = e.nanos();
+                        compareFrom = Math.max(startFrame, e.frame() > 0 ? e.frame() + warmup : 0);
+                        ChunkedProcessor.seek(chain, e.frame());
+                        break;
+                    }
+                }
+            }
+        }
+
+        ReplaySource source = new ReplaySource(recording, beginNanos, realTime, chain);
+        LatencyHistogram times = new LatencyHistogram();
+        byte[] block = new byte[maxLength];
+        byte[] expected = new byte[maxLength];
+        long blocks = 0;
+        long frames = 0;
+        long compared = 0;
+        long differing = 0;
+        long firstDifference = -1;
+        boolean enabledWarned = false;
+        int frameBytes = 2 * channels;
+
+        long wall = System.nanoTime();
+        int n;
+        while ((n = source.read(block, 0, block.length)) > 0) {
+            if (source.getEnabledMismatches() > 0 && !enabledWarned) {
+                enabledWarned = true;
+                System.out.println("Note: " + source.getEnabledMismatches()
+                        + " filter(s) were enabled differently in the recording; output will differ");
+            }
+            long t0 = System.nanoTime();
+            chain.processInterleaved(block, n);
+            times.record(System.nanoTime() - t0);
+            blocks++;
+            frames += n / frameBytes;
+
+            long frame = source.getBlockFrame();
+            FlightRecording.Entry e = processed.get(frame);
+            if (frame >= compareFrom && e != null && e.length() == n) {
+                recording.read(e, expected);
+                compared++;
+                if (!Arrays.equals(block, 0, n, expected, 0, n)) {
+                    differing++;
+                    if (firstDifference < 0)
+                        firstDifference = frame;
+                }
+            }
+        }
+        wall = System.nanoTime() - wall;
+
+        double audioSeconds = frames / (double) recording.getSampleRate();
+        System.out.printf("Replayed %d blocks (%.2f s of audio) in %.2f s, %.1fx real time%n", blocks,
+                audioSeconds, wall / 1e9, audioSeconds / (wall / 1e9));
+        System.out.printf("Processing per block: p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                times.quantile(0.5) / 1e3, times.quantile(0.99) / 1e3, times.getMax() / 1e3);
+        System.out.printf("Compared %d blocks from %.2f s: %s%n", compared,
+                compareFrom / (double) recording.getSampleRate(), differing == 0 ? "all identical"
+                        : String.format("%d differ, the first at %.3f s", differing,
+                                firstDifference / (double) recording.getSampleRate()));
+        if (differing > 0)
+            System.exit(1);
+    }
+}
\ No newline at end of file
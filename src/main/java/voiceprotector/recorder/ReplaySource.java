@@ -0,0 +1,187 @@
+package voiceprotector.recorder;
+
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import voiceprotector.StereoFilterChain;
+import voiceprotector.pipeline.AudioInput;
+
+/**
+ * ReplaySource is an {@link AudioInput} that serves the captured blocks of a
+ * {@link FlightRecording}, so a recorded session can drive
+ * {@link voiceprotector.pipeline.PipelinedStereoEngine} or any other consumer
+ * of a capture line. A read never crosses a recorded block boundary, so a
+ * caller that asks for at least the recorded block size gets the blocks as
+ * they were captured. It can be paced by the recorded timestamps, reproducing
+ * the timing of the session, or run as fast as possible.
+ * <p>
+ * If a chain is given, the recorded parameter changes are applied to it as
+ * the blocks they precede are read. The chain sees them exactly in step only
+ * if it processes each block before the next one is read.
+ */
+public class ReplaySource implements AudioInput {
+
+    /**
+     * The recording
+     */
+    private final FlightRecording recording;
+
+    /**
+     * Its entries
+     */
+    private final List<FlightRecording.Entry> entries;
+
+    /**
+     * The chain to apply parameter records to, or null
+     */
+    private final StereoFilterChain chain;
+
+    /**
+     * Whether reads are paced by the recorded timestamps
+     */
+    private final boolean realTime;
+
+    /**
+     * Index of the next entry to look at
+     */
+    private int next;
+
+    /**
+     * The captured block being served
+     */
+    private byte[] block = new byte[0];
+
+    /**
+     * Valid bytes in block
+     */
+    private int blockLength;
+
+    /**
+     * Bytes of block already served
+     */
+    private int blockPosition;
+
+    /**
+     * Stream position of the block being served
+     */
+    private long blockFrame = -1;
+
+    /**
+     * Number of filters whose enabled state differed from the last applied
+     * parameter record
+     */
+    private int enabledMismatches;
+
+    /**
+     * Recorded time of the first served block
+     */
+    private long firstNanos = -1;
+
+    /**
+     * Wall-clock time of the first read
+     */
+    private long startNanos;
+
+    /**
+     * Creates a source that starts at the first captured block at or after a
+     * time.
+     *
+     * @param recording The recording
+     * @param fromNanos The start time since the recorder was created
+     * @param realTime  true to deliver blocks at their recorded times, false
+     *                  to deliver them as fast as they are read
+     * @param chain     The chain to apply recorded parameters to, or null
+     */
+    public ReplaySource(FlightRecording recording, long fromNanos, boolean realTime, StereoFilterChain chain) {
+        this.recording = recording;
+        this.entries = recording.getEntries();
+        this.realTime = realTime;
+        this.chain = chain;
+        this.next = recording.seek(fromNanos);
+        // Start with the parameters in effect at the first block
+        if (chain != null) {
+            for (int i = next - 1; i >= 0; i--) {
+                if (entries.get(i).kind() == RecordKind.PARAMETERS) {
+                    enabledMismatches = recording.applyParameters(entries.get(i), chain);
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+        if (blockPosition >= blockLength && !nextBlock())
+            return -1;
+        int n = Math.min(len, blockLength - blockPosition);
+        System.arraycopy(block, blockPosition, b, off, n);
+        blockPosition += n;
+        return n;
+    }
+
+    /**
+     * Loads the next captured block, applying the parameter records before it
+     * and waiting for its recorded time if paced.
+     *
+     * @return false at the end of the recording
+     */
+    private boolean nextBlock() {
+        while (next < entries.size()) {
+            FlightRecording.Entry e = entries.get(next++);
+            if (e.kind() == RecordKind.PARAMETERS && chain != null) {
+                enabledMismatches = recording.applyParameters(e, chain);
+            } else if (e.kind() == RecordKind.CAPTURED) {
+                if (realTime) {
+                    if (firstNanos < 0) {
+                        firstNanos = e.nanos();
+                        startNanos = System.nanoTime();
+                    }
+                    long due = startNanos + e.nanos() - firstNanos;
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                if (block.length < e.length())
+                    block = new byte[e.length()];
+                recording.read(e, block);
+                blockLength = e.length();
+                blockPosition = 0;
+                blockFrame = e.frame();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the recorded stream position of the block served last.
+     *
+     * @return The frame, -1 before the first read
+     */
+    public synchronized long getBlockFrame() {
+        return blockFrame;
+    }
+
+    /**
+     * Returns how many filters of the chain were enabled differently from the
+     * recording at the last applied parameter record. Enabled states cannot be
+     * set through {@link voiceprotector.StereoAudioFilter}, so they are only
+     * compared.
+     *
+     * @return The number of filters
+     */
+    public synchronized int getEnabledMismatches() {
+        return enabledMismatches;
+    }
+
+    /**
+     * Returns the entry index the source will look at next, for progress
+     * reports.
+     *
+     * @return The index into {@link FlightRecording#getEntries()}
+     */
+    public synchronized int getPosition() {
+        return next;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,141 @@
+package voiceprotector.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AdmissionController measures the CPU time the DSP workers spend on the filter
+ * chains and decides whether the server has headroom for another session. Two
+ * measurements are combined:
+ * <ul>
+ * <li>the worker load, the share of the pool's wall-clock time spent
+ * processing, sampled every {@link #SAMPLE_MILLIS} ms;</li>
+ * <li>the cost of one real-time stream, the processing time per second of
+ * audio over the server's lifetime.</li>
+ * </ul>
+ * A session is admitted while both the current load scaled by one more session
+ * and the cost of one more real-time stream per existing session stay below the
+ * configured maximum load. The second estimate does not depend on whether the
+ * connected sessions are already streaming, so a burst of connections cannot
+ * slip in before the load rises.
+ */
+final class AdmissionController {
+
+    /**
+     * Interval between load samples
+     */
+    static final long SAMPLE_MILLIS = 500;
+
+    /**
+     * Number of DSP workers
+     */
+    private final int workers;
+
+    /**
+     * Largest acceptable load (0-1)
+     */
+    private final double maxLoad;
+
+    /**
+     * Largest number of sessions
+     */
+    private final int maxSessions;
+
+    /**
+     * Processing time of all workers in nanoseconds
+     */
+    private final LongAdder busyNanos = new LongAdder();
+
+    /**
+     * Audio processed by all workers in frames
+     */
+    private final LongAdder audioFrames = new LongAdder();
+
+    /**
+     * Busy time at the last sample
+     */
+    private long lastBusy;
+
+    /**
+     * Time of the last sample
+     */
+    private long lastSample = System.nanoTime();
+
+    /**
+     * Smoothed worker load
+     */
+    private volatile double load;
+
+    /**
+     * Creates a controller.
+     *
+     * @param workers     The number of DSP workers
+     * @param maxLoad     The largest acceptable worker load (0-1)
+     * @param maxSessions The largest number of sessions
+     */
+    AdmissionController(int workers, double maxLoad, int maxSessions) {
+        this.workers = workers;
+        this.maxLoad = maxLoad;
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * Records one processed block.
+     *
+     * @param nanos  The processing time
+     * @param frames The block length in frames
+     */
+    void recordBlock(long nanos, int frames) {
+        busyNanos.add(nanos);
+        audioFrames.add(frames);
+    }
+
+    /**
+     * Updates the smoothed load; called every {@link #SAMPLE_MILLIS} ms.
+     */
+    synchronized void sample() {
+        long now = System.nanoTime();
+        long busy = busyNanos.sum();
+        double current = (busy - lastBusy) / ((double) (now - lastSample) * workers);
+        load = load == 0 ? current : 0.5 * load + 0.5 * current;
+        lastBusy = busy;
+        lastSample = now;
+    }
+
+    /**
+     * Decides whether another session fits.
+     *
+     * @param sessions The number of sessions already running
+     * @return true to admit the session
+     */
+    boolean admit(int sessions) {
+        if (sessions >= maxSessions)
+            return false;
+        if (sessions == 0)
+            return true;
+        double byLoad = load * (sessions + 1) / sessions;
+        double byCost = (sessions + 1) * getStreamCost() / workers;
+        return Math.max(byLoad, byCost) <= maxLoad;
+    }
+
+    /**
+     * Returns the smoothed worker load.
+     *
+     * @return The share of the pool busy processing (0-1)
+     */
+    double getLoad() {
+        return load;
+    }
+
+    /**
+     * Returns the measured cost of one real-time stream.
+     *
+     * @return Seconds of processing per second of audio, 0 before the first block
+     */
+    double getStreamCost() {
+        long frames = audioFrames.sum();
+        if (frames == 0)
+            return 0;
+        double audioNanos = frames * 1e9 / SessionProtocol.SAMPLE_RATE;
+        return busyNanos.sum() / audioNanos;
+    }
+}
\ No newline at end of file
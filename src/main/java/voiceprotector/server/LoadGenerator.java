@@ -0,0 +1,219 @@
+package voiceprotector.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.metrics.LatencyHistogram;
+
+/**
+ * Drives a {@link SessionServer} over loopback with many simulated callers.
+ * <p>
+ * Usage:
+ * {@code LoadGenerator [-h host] [-p port] [-n sessions] [-s seconds] [-b blockFrames] [-r rampMillis] [-e workers]}
+ * <p>
+ * Every caller opens its own session and sends speech-like audio paced in real
+ * time, one block per block duration, and measures the round trip of every
+ * block. Callers start {@code rampMillis} apart so admission control sees the
+ * load grow. With {@code -e}, a server with the given number of workers is
+ * started in this process first. At the end the generator prints how many
+ * sessions were admitted, the round-trip percentiles and how many blocks came
+ * back later than one block duration (a real-time client would have glitched).
+ */
+public class LoadGenerator {
+
+    /**
+     * Round-trip times of all blocks
+     */
+    private final LatencyHistogram roundTrips = new LatencyHistogram();
+
+    /**
+     * Blocks answered later than one block duration
+     */
+    private final AtomicLong late = new AtomicLong();
+
+    /**
+     * Sessions that were admitted
+     */
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    /**
+     * Sessions turned away
+     */
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    /**
+     * Sessions that failed with an I/O error
+     */
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * Runs the load test.
+     *
+     * @param args Options
+     * @throws Exception If the test cannot be run
+     */
+    public static void main(String[] args) throws Exception {
+        String host = "127.0.0.1";
+        int port = 7465;
+        int sessions = 100;
+        int seconds = 20;
+        int blockFrames = 480;
+        int rampMillis = 20;
+        int embeddedWorkers = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-h" -> host = args[++i];
+                case "-p" -> port = Integer.parseInt(args[++i]);
+                case "-n" -> sessions = Integer.parseInt(args[++i]);
+                case "-s" -> seconds = Integer.parseInt(args[++i]);
+                case "-b" -> blockFrames = Integer.parseInt(args[++i]);
+                case "-r" -> rampMillis = Integer.parseInt(args[++i]);
+                case "-e" -> embeddedWorkers = Integer.parseInt(args[++i]);
+                default -> {
+                    System.err.println("Usage: LoadGenerator [-h host] [-p port] [-n sessions] [-s seconds] "
+                            + "[-b blockFrames] [-r rampMillis] [-e workers]");
+                    System.exit(2);
+                }
+            }
+        }
+
+        SessionServer server = null;
+        if (embeddedWorkers > 0) {
+            server = new SessionServer(ServerMain::defaultChain, embeddedWorkers, 0.7, 10_000);
+            port = server.start(0);
+            System.out.println("Embedded server on port " + port + " with " + embeddedWorkers + " workers");
+        }
+
+        LoadGenerator generator = new LoadGenerator();
+        long start = System.nanoTime();
+        generator.run(host, port, sessions, seconds, blockFrames, rampMillis);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        generator.printSummary(blockFrames, elapsed);
+        if (server != null) {
+            System.out.println("Server: " + server.report());
+            server.stop();
+        }
+    }
+
+    /**
+     * Starts the callers and waits for all of them to finish.
+     *
+     * @param host        The server host
+     * @param port        The server port
+     * @param sessions    The number of callers
+     * @param seconds     How long each caller streams
+     * @param blockFrames Frames per block
+     * @param rampMillis  Delay between caller starts
+     * @throws InterruptedException If interrupted while waiting
+     */
+    void run(String host, int port, int sessions, int seconds, int blockFrames, int rampMillis)
+            throws InterruptedException {
+        byte[] speech = speech(blockFrames * 100);
+        List<Thread> callers = new ArrayList<>();
+        for (int s = 0; s < sessions; s++) {
+            int offset = (s * 7919 % 100) * blockFrames * SessionProtocol.FRAME_BYTES;
+            Thread caller = new Thread(() -> caller(host, port, seconds, blockFrames, speech, offset),
+                    "vp-caller-" + s);
+            caller.setDaemon(true);
+            caller.start();
+            callers.add(caller);
+            Thread.sleep(rampMillis);
+        }
+        for (Thread caller : callers)
+            caller.join();
+    }
+
+    /**
+     * One simulated caller: streams in real time and records round trips.
+     *
+     * @param host        The server host
+     * @param port        The server port
+     * @param seconds     How long to stream
+     * @param blockFrames Frames per block
+     * @param speech      The looped test signal
+     * @param offset      Start position in the signal, in bytes
+     */
+    private void caller(String host, int port, int seconds, int blockFrames, byte[] speech, int offset) {
+        int blockBytes = blockFrames * SessionProtocol.FRAME_BYTES;
+        long blockNanos = blockFrames * 1_000_000_000L / SessionProtocol.SAMPLE_RATE;
+        long blocks = (long) seconds * SessionProtocol.SAMPLE_RATE / blockFrames;
+        byte[] block = new byte[blockBytes];
+
+        try (SessionClient client = SessionClient.connect(host, port)) {
+            accepted.incrementAndGet();
+            long next = System.nanoTime();
+            int position = offset;
+            for (long b = 0; b < blocks; b++) {
+                System.arraycopy(speech, position, block, 0, blockBytes);
+                position = (position + blockBytes) % speech.length;
+
+                long sent = System.nanoTime();
+                client.process(block, blockBytes);
+                long rtt = System.nanoTime() - sent;
+                roundTrips.record(rtt);
+                if (rtt > blockNanos)
+                    late.incrementAndGet();
+
+                next += blockNanos;
+                long wait = next - System.nanoTime();
+                if (wait > 0)
+                    LockSupport.parkNanos(wait);
+            }
+        } catch (SessionRejectedException e) {
+            rejected.incrementAndGet();
+        } catch (IOException e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Prints the results.
+     *
+     * @param blockFrames Frames per block
+     * @param elapsed     Wall-clock duration of the test in seconds
+     */
+    void printSummary(int blockFrames, double elapsed) {
+        long count = roundTrips.getCount();
+        System.out.printf("Sessions: %d admitted, %d rejected, %d failed%n", accepted.get(), rejected.get(),
+                failed.get());
+        System.out.printf("Blocks: %d of %d frames in %.1f s, %.0f blocks/s%n", count, blockFrames, elapsed,
+                count / elapsed);
+        System.out.printf("Round trip: p50 %.2f ms, p99 %.2f ms, max %.2f ms; %d late (%.3f%%)%n",
+                roundTrips.quantile(0.5) / 1e6, roundTrips.quantile(0.99) / 1e6, roundTrips.getMax() / 1e6,
+                late.get(), count == 0 ? 0 : late.get() * 100.0 / count);
+    }
+
+    /**
+     * Creates a looped speech-like test signal: a gliding voiced tone with a few
+     * harmonics, syllable-rate amplitude modulation and a little noise.
+     *
+     * @param frames The signal length in frames
+     * @return Interleaved 16-bit little-endian stereo PCM
+     */
+    private static byte[] speech(int frames) {
+        short[][] samples = new short[2][frames];
+        SplittableRandom rnd = new SplittableRandom(7);
+        double phase = 0;
+        for (int i = 0; i < frames; i++) {
+            double t = i / (double) SessionProtocol.SAMPLE_RATE;
+            double pitch = 140 + 30 * Math.sin(2 * Math.PI * 0.7 * t);
+            phase += 2 * Math.PI * pitch / SessionProtocol.SAMPLE_RATE;
+            double voiced = Math.sin(phase) + 0.5 * Math.sin(2 * phase) + 0.25 * Math.sin(3 * phase);
+            double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * 4 * t);
+            double v = 6000 * envelope * voiced + 200 * (rnd.nextDouble() * 2 - 1);
+            samples[0][i] = AudioUtils.clip16((int) v);
+            samples[1][i] = samples[0][i];
+        }
+        byte[] pcm = new byte[frames * SessionProtocol.FRAME_BYTES];
+        AudioUtils.encodePCM16Stereo(samples, frames, pcm);
+        return pcm;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,75 @@
+package voiceprotector.server;
+
+import voiceprotector.StereoFilterChain;
+import voiceprotector.filters.AIFormantScramblerStereo;
+import voiceprotector.filters.ChaoticPhaseStereo;
+import voiceprotector.filters.LPCWarpStereo;
+import voiceprotector.filters.NoiseFilterStereo;
+import voiceprotector.filters.SpectralHoleStereo;
+import voiceprotector.filters.XorObfuscationStereo;
+
+/**
+ * Command-line entry point for running VoiceSecure as a central processing
+ * server.
+ * <p>
+ * Usage:
+ * {@code ServerMain [-p port] [-w workers] [-l maxLoad] [-m maxSessions]}
+ * <p>
+ * Listens on the loopback interface (default port 7465) with one DSP worker per
+ * core, admits sessions while the measured worker load stays below 70% and
+ * prints a status line every 10 seconds.
+ */
+public class ServerMain {
+
+    /**
+     * Starts the server and reports its state until the process is stopped.
+     *
+     * @param args Options
+     * @throws Exception If the server cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 7465;
+        int workers = Runtime.getRuntime().availableProcessors();
+        double maxLoad = 0.7;
+        int maxSessions = 1000;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p" -> port = Integer.parseInt(args[++i]);
+                case "-w" -> workers = Integer.parseInt(args[++i]);
+                case "-l" -> maxLoad = Double.parseDouble(args[++i]);
+                case "-m" -> maxSessions = Integer.parseInt(args[++i]);
+                default -> {
+                    System.err.println("Usage: ServerMain [-p port] [-w workers] [-l maxLoad] [-m maxSessions]");
+                    System.exit(2);
+                }
+            }
+        }
+
+        SessionServer server = new SessionServer(ServerMain::defaultChain, workers, maxLoad, maxSessions);
+        int bound = server.start(port);
+        System.out.println("Listening on 127.0.0.1:" + bound + " with " + workers + " DSP workers");
+
+        while (true) {
+            Thread.sleep(10_000);
+            System.out.println(server.report());
+        }
+    }
+
+    /**
+     * Creates the same filter chain as {@link voiceprotector.Main} for one
+     * session.
+     *
+     * @return A new chain with its own filter state
+     */
+    static StereoFilterChain defaultChain() {
+        StereoFilterChain chain = new StereoFilterChain();
+        chain.add(new XorObfuscationStereo());
+        chain.add(new NoiseFilterStereo());
+        chain.add(new AIFormantScramblerStereo());
+        chain.add(new LPCWarpStereo());
+        chain.add(new ChaoticPhaseStereo());
+        chain.add(new SpectralHoleStereo());
+        return chain;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,173 @@
+package voiceprotector.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import voiceprotector.StereoFilterChain;
+
+/**
+ * Session is one client stream on the {@link SessionServer}: its socket, its own
+ * filter chain and a small pool of block buffers. The connection's reader thread
+ * fills free blocks and queues them as ready; a DSP worker processes ready
+ * blocks and queues them as processed; the connection's writer thread sends
+ * them back and frees them. The {@link #scheduled} flag makes sure at most one
+ * worker handles a session at a time, so the chain is never used concurrently
+ * and answers stay in order. A client that reads slowly only stalls its own
+ * writer; once all blocks wait to be sent, its reader stops reading.
+ */
+final class Session {
+
+    /**
+     * Blocks buffered per session
+     */
+    static final int QUEUE_BLOCKS = 4;
+
+    /**
+     * Queued as processed after the last block, tells the writer to finish
+     */
+    static final Block END = new Block();
+
+    /**
+     * A reusable PCM buffer.
+     */
+    static final class Block {
+
+        /**
+         * The PCM bytes, grown to the largest block seen
+         */
+        byte[] data = new byte[0];
+
+        /**
+         * Valid bytes in data
+         */
+        int length;
+
+        /**
+         * Makes room for a block.
+         *
+         * @param bytes The block length in bytes
+         */
+        void ensure(int bytes) {
+            if (data.length < bytes)
+                data = new byte[bytes];
+            length = bytes;
+        }
+    }
+
+    /**
+     * The session id
+     */
+    final int id;
+
+    /**
+     * The connection
+     */
+    final Socket socket;
+
+    /**
+     * Reads requests (reader thread only)
+     */
+    final DataInputStream in;
+
+    /**
+     * Writes answers (writer thread only)
+     */
+    final DataOutputStream out;
+
+    /**
+     * The session's own filter chain (the scheduled worker only)
+     */
+    final StereoFilterChain chain;
+
+    /**
+     * Blocks the reader may fill
+     */
+    final ArrayBlockingQueue<Block> free = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+
+    /**
+     * Blocks waiting for a worker
+     */
+    final ArrayBlockingQueue<Block> ready = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+
+    /**
+     * Blocks waiting to be sent, and {@link #END}
+     */
+    final ArrayBlockingQueue<Block> processed = new ArrayBlockingQueue<>(QUEUE_BLOCKS + 1);
+
+    /**
+     * Set while the session is in the run queue or being processed
+     */
+    final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Set once the session has been closed
+     */
+    final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Set once {@link #END} has been queued
+     */
+    final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * Set by the reader after the last block has been queued
+     */
+    volatile boolean closing;
+
+    /**
+     * Creates a session.
+     *
+     * @param id     The session id
+     * @param socket The connection
+     * @param in     The request stream
+     * @param chain  The session's filter chain
+     * @throws IOException If the output stream cannot be opened
+     */
+    Session(int id, Socket socket, DataInputStream in, StereoFilterChain chain) throws IOException {
+        this.id = id;
+        this.socket = socket;
+        this.in = in;
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 16384));
+        this.chain = chain;
+        for (int i = 0; i < QUEUE_BLOCKS; i++)
+            free.add(new Block());
+    }
+
+    /**
+     * Opens the request stream of a connection.
+     *
+     * @param socket The connection
+     * @return A buffered data stream
+     * @throws IOException If the stream cannot be opened
+     */
+    static DataInputStream input(Socket socket) throws IOException {
+        return new DataInputStream(new BufferedInputStream(socket.getInputStream(), 16384));
+    }
+
+    /**
+     * Lets the writer finish after the blocks queued so far. Only the first
+     * call has an effect.
+     */
+    void finish() {
+        if (finished.compareAndSet(false, true))
+            processed.add(END);
+    }
+
+    /**
+     * Sends the answer to one block.
+     *
+     * @param block The processed block
+     * @throws IOException If the client is gone
+     */
+    void write(Block block) throws IOException {
+        out.writeInt(block.length / SessionProtocol.FRAME_BYTES);
+        out.write(block.data, 0, block.length);
+        out.flush();
+    }
+}
\ No newline at end of file
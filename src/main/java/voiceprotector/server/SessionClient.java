@@ -0,0 +1,144 @@
+package voiceprotector.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * SessionClient is one stream on a {@link SessionServer}. Blocks are sent with
+ * {@link #send} and their processed answers read with {@link #receive}, in the
+ * same order; {@link #process} does both for one block. Not thread-safe.
+ */
+public class SessionClient implements Closeable {
+
+    /**
+     * The connection
+     */
+    private final Socket socket;
+
+    /**
+     * Reads answers
+     */
+    private final DataInputStream in;
+
+    /**
+     * Writes requests
+     */
+    private final DataOutputStream out;
+
+    /**
+     * The session id assigned by the server
+     */
+    private final int sessionId;
+
+    /**
+     * Opens a session.
+     *
+     * @param socket The connected socket
+     * @throws IOException If the handshake fails or the server rejects the
+     *                     session ({@link SessionRejectedException})
+     */
+    private SessionClient(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 16384));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 16384));
+
+        out.writeInt(SessionProtocol.MAGIC);
+        out.writeInt(SessionProtocol.SAMPLE_RATE);
+        out.flush();
+        int status = in.readInt();
+        int id = in.readInt();
+        if (status != SessionProtocol.ACCEPTED) {
+            socket.close();
+            throw new SessionRejectedException(status);
+        }
+        sessionId = id;
+    }
+
+    /**
+     * Connects to a server and opens a session.
+     *
+     * @param host The server host, normally "127.0.0.1"
+     * @param port The server port
+     * @return The open session
+     * @throws IOException If the connection fails or the server rejects the
+     *                     session ({@link SessionRejectedException})
+     */
+    public static SessionClient connect(String host, int port) throws IOException {
+        Socket socket = new Socket(host, port);
+        try {
+            return new SessionClient(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends one block.
+     *
+     * @param pcm    Interleaved 16-bit little-endian stereo PCM
+     * @param length The number of bytes, a multiple of 4
+     * @throws IOException If the connection fails
+     */
+    public void send(byte[] pcm, int length) throws IOException {
+        out.writeInt(length / SessionProtocol.FRAME_BYTES);
+        out.write(pcm, 0, length);
+        out.flush();
+    }
+
+    /**
+     * Reads the answer to the oldest block sent.
+     *
+     * @param pcm Receives the processed PCM
+     * @return The number of bytes read
+     * @throws IOException If the connection fails
+     */
+    public int receive(byte[] pcm) throws IOException {
+        int length = in.readInt() * SessionProtocol.FRAME_BYTES;
+        in.readFully(pcm, 0, length);
+        return length;
+    }
+
+    /**
+     * Sends one block and replaces it with the processed answer.
+     *
+     * @param pcm    Interleaved 16-bit little-endian stereo PCM
+     * @param length The number of bytes, a multiple of 4
+     * @throws IOException If the connection fails
+     */
+    public void process(byte[] pcm, int length) throws IOException {
+        send(pcm, length);
+        receive(pcm);
+    }
+
+    /**
+     * Returns the session id assigned by the server.
+     *
+     * @return The id
+     */
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Ends the session and closes the connection.
+     *
+     * @throws IOException If the connection cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.writeInt(SessionProtocol.END);
+            out.flush();
+        } catch (IOException e) {
+            // The server is gone already
+        }
+        socket.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+package voiceprotector.server;
+
+/**
+ * SessionProtocol defines the binary protocol between {@link SessionServer} and
+ * {@link SessionClient}. All integers are big-endian 32-bit.
+ * <ol>
+ * <li>The client opens a TCP connection and sends {@link #MAGIC} and its sample
+ * rate, which must be {@link #SAMPLE_RATE}.</li>
+ * <li>The server answers with a status ({@link #ACCEPTED}, {@link #REJECTED}
+ * when admission control turns the session away, or {@link #BAD_REQUEST}) and
+ * the session id (0 unless accepted). A rejected connection is closed.</li>
+ * <li>The client sends blocks: a frame count of 1 to
+ * {@link #MAX_BLOCK_FRAMES}, followed by that many frames of interleaved 16-bit
+ * little-endian stereo PCM. The server answers every block, in order, with the
+ * same frame count and the processed PCM.</li>
+ * <li>A frame count of {@link #END} ends the session.</li>
+ * </ol>
+ * Clients may send several blocks before reading the answers; the server
+ * buffers {@link Session#QUEUE_BLOCKS} per session and stops reading when that
+ * is full.
+ */
+public final class SessionProtocol {
+
+    /**
+     * Handshake magic, "VPS1"
+     */
+    public static final int MAGIC = 0x56505331;
+
+    /**
+     * The only supported sample rate
+     */
+    public static final int SAMPLE_RATE = 48000;
+
+    /**
+     * Bytes per frame of 16-bit stereo
+     */
+    public static final int FRAME_BYTES = 4;
+
+    /**
+     * Largest block in frames
+     */
+    public static final int MAX_BLOCK_FRAMES = 8192;
+
+    /**
+     * Status: the session was created
+     */
+    public static final int ACCEPTED = 0;
+
+    /**
+     * Status: the server has no headroom for another session
+     */
+    public static final int REJECTED = 1;
+
+    /**
+     * Status: wrong magic or unsupported format
+     */
+    public static final int BAD_REQUEST = 2;
+
+    /**
+     * Frame count that ends a session
+     */
+    public static final int END = 0;
+
+    private SessionProtocol() {
+    }
+}
\ No newline at end of file
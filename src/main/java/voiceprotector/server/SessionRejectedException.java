@@ -0,0 +1,39 @@
+package voiceprotector.server;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link SessionClient#connect} when the server turns the session
+ * away, either because admission control found no headroom or because the
+ * request was invalid.
+ */
+public class SessionRejectedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The status sent by the server
+     */
+    private final int status;
+
+    /**
+     * Creates the exception.
+     *
+     * @param status The status sent by the server
+     */
+    public SessionRejectedException(int status) {
+        super(status == SessionProtocol.REJECTED ? "Server has no headroom for another session"
+                : "Server refused the request (status " + status + ")");
+        this.status = status;
+    }
+
+    /**
+     * Returns the status sent by the server.
+     *
+     * @return {@link SessionProtocol#REJECTED} or
+     *         {@link SessionProtocol#BAD_REQUEST}
+     */
+    public int getStatus() {
+        return status;
+    }
+}
\ No newline at end of file
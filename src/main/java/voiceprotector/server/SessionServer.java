@@ -0,0 +1,463 @@
+package voiceprotector.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.sound.sampled.AudioFormat;
+
+import voiceprotector.StereoFilterChain;
+
+/**
+ * SessionServer hosts many independent voice streams. Clients connect over a
+ * loopback TCP socket and speak {@link SessionProtocol}; every accepted
+ * connection becomes a {@link Session} with its own filter chain, so filter
+ * state never leaks between streams.
+ * <p>
+ * Threads:
+ * <ul>
+ * <li>one acceptor;</li>
+ * <li>one reader per connection, which only parses blocks and queues them
+ * (blocking I/O, mostly parked);</li>
+ * <li>one writer per connection, which sends the processed blocks back
+ * (blocking I/O, mostly parked), so a client that reads slowly never holds up
+ * a DSP worker;</li>
+ * <li>a fixed pool of DSP workers sharing one FIFO run queue of sessions. A
+ * worker runs a single block of a session and then requeues the session behind
+ * all others that are waiting, so every stream gets its turn regardless of how
+ * fast its client sends.</li>
+ * </ul>
+ * New sessions pass an {@link AdmissionController}, which turns them away when
+ * the measured DSP load leaves no headroom for another real-time stream.
+ */
+public class SessionServer {
+
+    /**
+     * Poll interval of idle workers, to notice {@link #stop()}
+     */
+    private static final long WORKER_POLL_MILLIS = 100;
+
+    /**
+     * Creates the filter chain of each session
+     */
+    private final Supplier<StereoFilterChain> chainFactory;
+
+    /**
+     * Number of DSP workers
+     */
+    private final int workers;
+
+    /**
+     * Admission control and load measurement
+     */
+    private final AdmissionController admission;
+
+    /**
+     * Sessions with queued blocks, in arrival order
+     */
+    private final LinkedBlockingQueue<Session> runQueue = new LinkedBlockingQueue<>();
+
+    /**
+     * Open sessions by id
+     */
+    private final Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Source of session ids
+     */
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    /**
+     * Sessions admitted so far
+     */
+    private final AtomicLong admitted = new AtomicLong();
+
+    /**
+     * Sessions turned away so far
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Blocks processed so far
+     */
+    private final AtomicLong blocksProcessed = new AtomicLong();
+
+    /**
+     * The listening socket
+     */
+    private ServerSocket serverSocket;
+
+    /**
+     * Samples the load
+     */
+    private ScheduledExecutorService sampler;
+
+    /**
+     * Cleared by {@link #stop()}
+     */
+    private volatile boolean running;
+
+    /**
+     * Creates a server.
+     *
+     * @param chainFactory Creates the filter chain of each session
+     * @param workers      The number of DSP worker threads
+     * @param maxLoad      The largest worker load (0-1) at which new sessions are
+     *                     still admitted
+     * @param maxSessions  The largest number of concurrent sessions
+     */
+    public SessionServer(Supplier<StereoFilterChain> chainFactory, int workers, double maxLoad,
+            int maxSessions) {
+        if (workers < 1)
+            throw new IllegalArgumentException("At least one worker is required");
+        this.chainFactory = chainFactory;
+        this.workers = workers;
+        this.admission = new AdmissionController(workers, maxLoad, maxSessions);
+    }
+
+    /**
+     * Starts listening on the loopback interface.
+     *
+     * @param port The TCP port, or 0 for any free port
+     * @return The port the server listens on
+     * @throws IOException If the socket cannot be bound
+     */
+    public synchronized int start(int port) throws IOException {
+        if (running)
+            throw new IllegalStateException("Server already running");
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 256);
+        running = true;
+
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::workerLoop, "vp-dsp-" + i);
+            worker.setDaemon(true);
+            worker.setPriority(Thread.MAX_PRIORITY);
+            worker.start();
+        }
+        Thread acceptor = new Thread(this::acceptLoop, "vp-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vp-load");
+            t.setDaemon(true);
+            return t;
+        });
+        sampler.scheduleAtFixedRate(admission::sample, AdmissionController.SAMPLE_MILLIS,
+                AdmissionController.SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting, closes all sessions and lets the workers and writers
+     * exit.
+     *
+     * @throws IOException If the listening socket cannot be closed
+     */
+    public synchronized void stop() throws IOException {
+        running = false;
+        if (sampler != null)
+            sampler.shutdownNow();
+        if (serverSocket != null)
+            serverSocket.close();
+        for (Session s : sessions.values()) {
+            close(s);
+            s.finish();
+        }
+    }
+
+    /**
+     * Accepts connections and hands each to its own reader thread.
+     */
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread reader = new Thread(() -> serve(socket), "vp-session-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running)
+                    System.err.println("Accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Performs the handshake, starts the writer and then reads the blocks of
+     * one connection.
+     *
+     * @param socket The connection
+     */
+    private void serve(Socket socket) {
+        Session session = null;
+        try {
+            DataInputStream in = Session.input(socket);
+            session = handshake(socket, in);
+            if (session == null) {
+                socket.close();
+                return;
+            }
+            Session writing = session;
+            Thread writer = new Thread(() -> writeLoop(writing), "vp-session-writer");
+            writer.setDaemon(true);
+            writer.start();
+
+            while (true) {
+                int frames = in.readInt();
+                if (frames == SessionProtocol.END)
+                    break;
+                if (frames < 0 || frames > SessionProtocol.MAX_BLOCK_FRAMES)
+                    throw new IOException("Invalid block of " + frames + " frames");
+
+                Session.Block block = session.free.take();
+                block.ensure(frames * SessionProtocol.FRAME_BYTES);
+                in.readFully(block.data, 0, block.length);
+                session.ready.add(block);
+                schedule(session);
+            }
+        } catch (IOException e) {
+            // Client gone or protocol error: end the session after the queued blocks
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (session != null) {
+                session.closing = true;
+                schedule(session);
+            }
+        }
+    }
+
+    /**
+     * Reads the client hello, applies admission control and answers.
+     *
+     * @param socket The connection
+     * @param in     The request stream
+     * @return The new session, or null if the client was turned away
+     * @throws IOException If the connection fails
+     */
+    private Session handshake(Socket socket, DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        int sampleRate = in.readInt();
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+        if (magic != SessionProtocol.MAGIC || sampleRate != SessionProtocol.SAMPLE_RATE) {
+            out.writeInt(SessionProtocol.BAD_REQUEST);
+            out.writeInt(0);
+            out.flush();
+            return null;
+        }
+
+        Session session;
+        synchronized (this) {
+            if (!running || !admission.admit(sessions.size())) {
+                rejected.incrementAndGet();
+                out.writeInt(SessionProtocol.REJECTED);
+                out.writeInt(0);
+                out.flush();
+                return null;
+            }
+            session = new Session(nextId.getAndIncrement(), socket, in, chainFactory.get());
+            sessions.put(session.id, session);
+            admitted.incrementAndGet();
+        }
+        // Allocate the chain's buffers here, not on a DSP worker
+        session.chain.prepare(new AudioFormat(SessionProtocol.SAMPLE_RATE, 16, 2, true, false),
+                SessionProtocol.MAX_BLOCK_FRAMES);
+        out.writeInt(SessionProtocol.ACCEPTED);
+        out.writeInt(session.id);
+        out.flush();
+        return session;
+    }
+
+    /**
+     * Puts a session into the run queue unless it is already there or being
+     * processed.
+     *
+     * @param session The session
+     */
+    private void schedule(Session session) {
+        if (session.scheduled.compareAndSet(false, true))
+            runQueue.add(session);
+    }
+
+    /**
+     * DSP worker: processes one block of the session at the head of the run
+     * queue, hands it to the session's writer, then requeues the session at the
+     * tail if it has more.
+     */
+    private void workerLoop() {
+        while (running) {
+            Session session;
+            try {
+                session = runQueue.poll(WORKER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (session == null)
+                continue;
+
+            Session.Block block = session.ready.poll();
+            if (block != null) {
+                long t0 = System.nanoTime();
+                session.chain.processInterleaved(block.data, block.length);
+                admission.recordBlock(System.nanoTime() - t0, block.length / SessionProtocol.FRAME_BYTES);
+                blocksProcessed.incrementAndGet();
+                session.processed.add(block);
+            }
+
+            session.scheduled.set(false);
+            // Read 'closing' before looking at the queue: once it is set, no more blocks arrive
+            boolean closing = session.closing;
+            if (!session.ready.isEmpty())
+                schedule(session);
+            else if (closing)
+                session.finish();
+        }
+    }
+
+    /**
+     * Writer of one connection: sends the processed blocks in order and frees
+     * them, and closes the session after the last one.
+     *
+     * @param session The session
+     */
+    private void writeLoop(Session session) {
+        boolean failed = false;
+        try {
+            while (true) {
+                Session.Block block = session.processed.take();
+                if (block == Session.END)
+                    break;
+                if (!failed) {
+                    try {
+                        session.write(block);
+                    } catch (IOException e) {
+                        // The reader sees the broken connection and ends the session
+                        failed = true;
+                        closeSocket(session);
+                    }
+                }
+                session.free.add(block);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(session);
+        }
+    }
+
+    /**
+     * Closes a session and forgets it.
+     *
+     * @param session The session
+     */
+    private void close(Session session) {
+        if (session.closed.compareAndSet(false, true)) {
+            sessions.remove(session.id);
+            closeSocket(session);
+        }
+    }
+
+    /**
+     * Closes the connection of a session.
+     *
+     * @param session The session
+     */
+    private static void closeSocket(Session session) {
+        try {
+            session.socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * Returns the number of open sessions.
+     *
+     * @return The session count
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns the number of sessions admitted since the start.
+     *
+     * @return The admitted count
+     */
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    /**
+     * Returns the number of sessions turned away by admission control.
+     *
+     * @return The rejected count
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the number of blocks processed since the start.
+     *
+     * @return The block count
+     */
+    public long getBlocksProcessed() {
+        return blocksProcessed.get();
+    }
+
+    /**
+     * Returns the smoothed DSP worker load.
+     *
+     * @return The share of the worker pool busy processing (0-1)
+     */
+    public double getLoad() {
+        return admission.getLoad();
+    }
+
+    /**
+     * Returns the measured cost of one real-time stream.
+     *
+     * @return Seconds of processing per second of audio
+     */
+    public double getStreamCost() {
+        return admission.getStreamCost();
+    }
+
+    /**
+     * Returns the number of DSP workers.
+     *
+     * @return The worker count
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Describes the current state, e.g. for a status line.
+     *
+     * @return Sessions, load and counters
+     */
+    public String report() {
+        return String.format("%d sessions (%d admitted, %d rejected), load %.0f%% of %d workers, "
+                + "%.2f%% of a core per stream, %d blocks", getSessionCount(), getAdmitted(), getRejected(),
+                getLoad() * 100, workers, getStreamCost() * 100, getBlocksProcessed());
+    }
+}
\ No newline at end of file
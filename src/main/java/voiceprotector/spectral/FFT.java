@@ -0,0 +1,148 @@
+package voiceprotector.spectral;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FFT is a precomputed plan for an in-place radix-2 complex FFT of one size.
+ * The bit-reversal permutation and twiddle factors are computed once in the
+ * constructor; transforms do not allocate. Plans hold no mutable state, so
+ * {@link #forSize(int)} shares one plan per size between all users.
+ */
+public class FFT {
+
+    /**
+     * Shared plans by size
+     */
+    private static final Map<Integer, FFT> PLANS = new ConcurrentHashMap<>();
+
+    /**
+     * The transform size, a power of two
+     */
+    private final int size;
+
+    /**
+     * Bit-reversed index of every index
+     */
+    private final int[] reverse;
+
+    /**
+     * cos(2 PI k / size) for k < size / 2
+     */
+    private final float[] cos;
+
+    /**
+     * sin(2 PI k / size) for k < size / 2
+     */
+    private final float[] sin;
+
+    /**
+     * Creates a plan.
+     *
+     * @param size The transform size, a power of two of at least 2
+     */
+    public FFT(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("FFT size must be a power of two: " + size);
+        this.size = size;
+
+        int bits = Integer.numberOfTrailingZeros(size);
+        reverse = new int[size];
+        for (int i = 0; i < size; i++) {
+            reverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+
+        cos = new float[size / 2];
+        sin = new float[size / 2];
+        for (int k = 0; k < size / 2; k++) {
+            cos[k] = (float) Math.cos(2 * Math.PI * k / size);
+            sin[k] = (float) Math.sin(2 * Math.PI * k / size);
+        }
+    }
+
+    /**
+     * Returns the shared plan for a size, creating it on first use.
+     *
+     * @param size The transform size, a power of two of at least 2
+     * @return The plan
+     */
+    public static FFT forSize(int size) {
+        FFT plan = PLANS.get(size);
+        return plan != null ? plan : PLANS.computeIfAbsent(size, FFT::new);
+    }
+
+    /**
+     * Returns the transform size.
+     *
+     * @return The size
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Computes the forward transform in place (no scaling).
+     *
+     * @param re The real parts
+     * @param im The imaginary parts
+     */
+    public void forward(float[] re, float[] im) {
+        transform(re, im, -1);
+    }
+
+    /**
+     * Computes the inverse transform in place, scaled by 1 / size so that
+     * inverse(forward(x)) == x.
+     *
+     * @param re The real parts
+     * @param im The imaginary parts
+     */
+    public void inverse(float[] re, float[] im) {
+        transform(re, im, 1);
+        float scale = 1.0f / size;
+        for (int i = 0; i < size; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    /**
+     * Iterative decimation-in-time butterflies.
+     *
+     * @param re   The real parts
+     * @param im   The imaginary parts
+     * @param sign -1 for forward, 1 for inverse
+     */
+    private void transform(float[] re, float[] im, int sign) {
+        for (int i = 0; i < size; i++) {
+            int j = reverse[i];
+            if (j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        for (int len = 2; len <= size; len <<= 1) {
+            int half = len >> 1;
+            int stride = size / len;
+            for (int start = 0; start < size; start += len) {
+                for (int k = 0, t = 0; k < half; k++, t += stride) {
+                    float wr = cos[t];
+                    float wi = sign * sin[t];
+                    int a = start + k;
+                    int b = a + half;
+                    float xr = re[b] * wr - im[b] * wi;
+                    float xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
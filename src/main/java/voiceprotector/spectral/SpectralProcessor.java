@@ -0,0 +1,24 @@
+package voiceprotector.spectral;
+
+/**
+ * Callback of {@link StftEngine} that modifies one STFT frame.
+ * <p>
+ * The engine transforms the left and right channels together as one complex
+ * signal {@code L + iR}, so the spectrum passed in is {@code Z = FFT(L + iR)}.
+ * Multiplying bin {@code k} and bin {@code size - k} by the same real gain
+ * applies that gain to both channels independently. For other processing, use
+ * {@link StftEngine#unpack} and {@link StftEngine#pack} to work on the channel
+ * spectra separately.
+ */
+@FunctionalInterface
+public interface SpectralProcessor {
+
+    /**
+     * Modifies the spectrum of one frame in place.
+     *
+     * @param re   The real parts, size entries
+     * @param im   The imaginary parts, size entries
+     * @param size The FFT size
+     */
+    void processFrame(float[] re, float[] im, int size);
+}
\ No newline at end of file
@@ -0,0 +1,261 @@
+package voiceprotector.spectral;
+
+import java.util.Arrays;
+
+/**
+ * StftEngine is a streaming short-time Fourier transform with overlap-add
+ * resynthesis for stereo audio. Input of any block length is pushed through a
+ * FIFO; every {@code hopSize} samples a frame of {@code frameSize} samples is
+ * windowed, transformed, handed to a {@link SpectralProcessor}, transformed
+ * back, windowed again and overlap-added into the output.
+ * <p>
+ * The FFT plan, windows and all buffers are allocated in the constructor; no
+ * allocation happens while processing. Both channels share one complex FFT
+ * (see {@link SpectralProcessor}). The analysis and synthesis windows are
+ * square-root periodic Hann windows, with the synthesis window normalized so
+ * that an unmodified spectrum reproduces the input exactly for any hop up to
+ * half the frame. The output is the processed input delayed by
+ * {@link #getLatencyFrames()} samples, independent of the block sizes used.
+ */
+public class StftEngine {
+
+    /**
+     * Samples per frame (FFT size)
+     */
+    private final int frameSize;
+
+    /**
+     * Samples between frames
+     */
+    private final int hopSize;
+
+    /**
+     * The FFT plan
+     */
+    private final FFT fft;
+
+    /**
+     * Analysis window
+     */
+    private final float[] analysis;
+
+    /**
+     * Synthesis window, including the overlap-add normalization
+     */
+    private final float[] synthesis;
+
+    /**
+     * The last frameSize input samples per channel; the newest hop is being
+     * filled
+     */
+    private final float[][] input;
+
+    /**
+     * Overlap-add accumulator per channel
+     */
+    private final float[][] accumulator;
+
+    /**
+     * Finished output of the last frame, played out during the next hop
+     */
+    private final float[][] ready;
+
+    /**
+     * FFT work buffer, real part (left channel)
+     */
+    private final float[] re;
+
+    /**
+     * FFT work buffer, imaginary part (right channel)
+     */
+    private final float[] im;
+
+    /**
+     * The spectral modification
+     */
+    private final SpectralProcessor processor;
+
+    /**
+     * Samples pushed into the current hop
+     */
+    private int phase;
+
+    /**
+     * Creates an engine.
+     *
+     * @param frameSize The frame (FFT) size, a power of two
+     * @param hopSize   Samples between frames, at most frameSize / 2
+     * @param processor The spectral modification
+     */
+    public StftEngine(int frameSize, int hopSize, SpectralProcessor processor) {
+        if (hopSize < 1 || hopSize > frameSize / 2)
+            throw new IllegalArgumentException("Hop size must be between 1 and frameSize / 2: " + hopSize);
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.fft = FFT.forSize(frameSize);
+        this.processor = processor;
+
+        analysis = new float[frameSize];
+        synthesis = new float[frameSize];
+        for (int n = 0; n < frameSize; n++) {
+            analysis[n] = (float) Math.sqrt(0.5 - 0.5 * Math.cos(2 * Math.PI * n / frameSize));
+        }
+        // Sum of window products over all frames overlapping each position of a hop
+        double[] overlap = new double[hopSize];
+        for (int n = 0; n < frameSize; n++) {
+            overlap[n % hopSize] += (double) analysis[n] * analysis[n];
+        }
+        for (int n = 0; n < frameSize; n++) {
+            synthesis[n] = (float) (analysis[n] / overlap[n % hopSize]);
+        }
+
+        input = new float[2][frameSize];
+        accumulator = new float[2][frameSize];
+        ready = new float[2][hopSize];
+        re = new float[frameSize];
+        im = new float[frameSize];
+    }
+
+    /**
+     * Processes a block in place. Each output sample is the processed input from
+     * {@link #getLatencyFrames()} samples earlier.
+     *
+     * @param samples Planar samples; channels 0 and 1 are processed
+     * @param frames  The number of samples per channel
+     */
+    public void process(float[][] samples, int frames) {
+        float[] L = samples[0];
+        float[] R = samples[1];
+        int offset = frameSize - hopSize;
+
+        for (int i = 0; i < frames;) {
+            int n = Math.min(frames - i, hopSize - phase);
+
+            System.arraycopy(L, i, input[0], offset + phase, n);
+            System.arraycopy(R, i, input[1], offset + phase, n);
+            System.arraycopy(ready[0], phase, L, i, n);
+            System.arraycopy(ready[1], phase, R, i, n);
+
+            phase += n;
+            i += n;
+            if (phase == hopSize) {
+                runFrame();
+                phase = 0;
+            }
+        }
+    }
+
+    /**
+     * Transforms, processes and resynthesizes the frame in the input FIFO, then
+     * advances the FIFO and accumulator by one hop.
+     */
+    private void runFrame() {
+        for (int n = 0; n < frameSize; n++) {
+            re[n] = input[0][n] * analysis[n];
+            im[n] = input[1][n] * analysis[n];
+        }
+
+        fft.forward(re, im);
+        processor.processFrame(re, im, frameSize);
+        fft.inverse(re, im);
+
+        float[] accL = accumulator[0];
+        float[] accR = accumulator[1];
+        for (int n = 0; n < frameSize; n++) {
+            accL[n] += re[n] * synthesis[n];
+            accR[n] += im[n] * synthesis[n];
+        }
+
+        int keep = frameSize - hopSize;
+        for (int ch = 0; ch < 2; ch++) {
+            System.arraycopy(accumulator[ch], 0, ready[ch], 0, hopSize);
+            System.arraycopy(accumulator[ch], hopSize, accumulator[ch], 0, keep);
+            Arrays.fill(accumulator[ch], keep, frameSize, 0f);
+            System.arraycopy(input[ch], hopSize, input[ch], 0, keep);
+        }
+    }
+
+    /**
+     * Clears all history and aligns the frame grid to a stream position, so the
+     * engine behaves as if it had processed the stream from position 0 with
+     * silence before the given position.
+     *
+     * @param frame The stream position of the next sample
+     */
+    public void reset(long frame) {
+        for (int ch = 0; ch < 2; ch++) {
+            Arrays.fill(input[ch], 0f);
+            Arrays.fill(accumulator[ch], 0f);
+            Arrays.fill(ready[ch], 0f);
+        }
+        phase = (int) (frame % hopSize);
+    }
+
+    /**
+     * Returns the delay between input and output.
+     *
+     * @return The latency in samples (equal to the frame size)
+     */
+    public int getLatencyFrames() {
+        return frameSize;
+    }
+
+    /**
+     * Returns the frame (FFT) size.
+     *
+     * @return Samples per frame
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * Returns the hop size.
+     *
+     * @return Samples between frames
+     */
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    /**
+     * Splits the packed spectrum {@code Z = FFT(L + iR)} into the spectra of the
+     * two channels.
+     *
+     * @param re   Packed real parts
+     * @param im   Packed imaginary parts
+     * @param size The FFT size
+     * @param lRe  Left channel real parts (output)
+     * @param lIm  Left channel imaginary parts (output)
+     * @param rRe  Right channel real parts (output)
+     * @param rIm  Right channel imaginary parts (output)
+     */
+    public static void unpack(float[] re, float[] im, int size, float[] lRe, float[] lIm, float[] rRe, float[] rIm) {
+        for (int k = 0; k < size; k++) {
+            int m = (size - k) & (size - 1);
+            lRe[k] = 0.5f * (re[k] + re[m]);
+            lIm[k] = 0.5f * (im[k] - im[m]);
+            rRe[k] = 0.5f * (im[k] + im[m]);
+            rIm[k] = -0.5f * (re[k] - re[m]);
+        }
+    }
+
+    /**
+     * Combines two channel spectra into the packed spectrum
+     * {@code Z = L + iR}.
+     *
+     * @param lRe  Left channel real parts
+     * @param lIm  Left channel imaginary parts
+     * @param rRe  Right channel real parts
+     * @param rIm  Right channel imaginary parts
+     * @param size The FFT size
+     * @param re   Packed real parts (output)
+     * @param im   Packed imaginary parts (output)
+     */
+    public static void pack(float[] lRe, float[] lIm, float[] rRe, float[] rIm, int size, float[] re, float[] im) {
+        for (int k = 0; k < size; k++) {
+            re[k] = lRe[k] - rIm[k];
+            im[k] = lIm[k] + rRe[k];
+        }
+    }
+}
\ No newline at end of file
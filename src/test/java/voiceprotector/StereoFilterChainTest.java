@@ -0,0 +1,143 @@
+package voiceprotector;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import voiceprotector.filters.AIFormantScramblerStereo;
+import voiceprotector.filters.ChaoticPhaseStereo;
+import voiceprotector.filters.LPCWarpStereo;
+import voiceprotector.filters.NoiseFilterStereo;
+import voiceprotector.filters.SpectralHoleStereo;
+import voiceprotector.filters.SpectralNotchStereo;
+import voiceprotector.filters.XorObfuscationStereo;
+import voiceprotector.noise.NoiseColor;
+
+/**
+ * Checks that a prepared chain processes blocks without allocating, also when
+ * the block size changes from block to block as with a 44.1 kHz device or a
+ * growing block size, and when the noise switches to a color it has not used
+ * before.
+ */
+class StereoFilterChainTest {
+
+    /**
+     * The largest block the chain is prepared for
+     */
+    private static final int MAX_FRAMES = 1024;
+
+    /**
+     * Block sizes cycled through, all at most {@link #MAX_FRAMES}
+     */
+    private static final int[] SIZES = { 278, 279, 480, 1024, 64, 1000, 441 };
+
+    /**
+     * Blocks per measured round
+     */
+    private static final int BLOCKS = 2000;
+
+    /**
+     * Rounds; the compiler settles during the first ones, the last is measured
+     */
+    private static final int ROUNDS = 4;
+
+    /**
+     * The allocation counter of the test thread
+     */
+    private final com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    /**
+     * Random test signal, fixed seed so failures repeat
+     */
+    private final Random random = new Random(20240612);
+
+    /**
+     * Builds a chain of the built-in filters and prepares it for stereo blocks
+     * of up to {@link #MAX_FRAMES} frames.
+     *
+     * @param floatProcessing true for the floating-point mode
+     * @param noise           The noise filter of the chain
+     * @return The prepared chain
+     */
+    private static StereoFilterChain chain(boolean floatProcessing, NoiseFilterStereo noise) {
+        StereoFilterChain chain = new StereoFilterChain();
+        chain.add(new XorObfuscationStereo());
+        chain.add(noise);
+        chain.add(new AIFormantScramblerStereo());
+        chain.add(new SpectralHoleStereo());
+        chain.add(new ChaoticPhaseStereo());
+        chain.add(new LPCWarpStereo());
+        chain.add(new SpectralNotchStereo());
+        chain.setFloatProcessing(floatProcessing);
+        chain.prepare(new AudioFormat(48000f, 16, 2, true, false), MAX_FRAMES);
+        return chain;
+    }
+
+    /**
+     * Selects the noise color of a round: white and pink alternate, and the
+     * measured last round switches to speech noise, which was not used before.
+     *
+     * @param noise The noise filter
+     * @param round The round
+     */
+    private static void color(NoiseFilterStereo noise, int round) {
+        noise.setColor(round == ROUNDS - 1 ? NoiseColor.SPEECH : round % 2 == 0 ? NoiseColor.WHITE : NoiseColor.PINK);
+    }
+
+    /**
+     * Returns the bytes allocated by the test thread so far.
+     *
+     * @return The allocated bytes
+     */
+    private long allocated() {
+        return mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    void interleavedBlocksOfChangingSizeDoNotAllocate() {
+        for (boolean floatProcessing : new boolean[] { false, true }) {
+            NoiseFilterStereo noise = new NoiseFilterStereo();
+            StereoFilterChain chain = chain(floatProcessing, noise);
+            byte[] data = new byte[MAX_FRAMES * 4];
+            random.nextBytes(data);
+
+            long bytes = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                color(noise, round);
+                long before = allocated();
+                for (int b = 0; b < BLOCKS; b++)
+                    chain.processInterleaved(data, SIZES[b % SIZES.length] * 4);
+                bytes = allocated() - before;
+            }
+            Assertions.assertEquals(0, bytes, "float=" + floatProcessing);
+        }
+    }
+
+    @Test
+    void rangesOfChangingSizeDoNotAllocate() {
+        for (boolean floatProcessing : new boolean[] { false, true }) {
+            NoiseFilterStereo noise = new NoiseFilterStereo();
+            StereoFilterChain chain = chain(floatProcessing, noise);
+            short[][] samples = new short[2][MAX_FRAMES + 64];
+            for (short[] channel : samples) {
+                for (int i = 0; i < channel.length; i++)
+                    channel[i] = (short) random.nextInt(65536);
+            }
+
+            long bytes = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                color(noise, round);
+                long before = allocated();
+                for (int b = 0; b < BLOCKS; b++)
+                    chain.process(samples, b % 64, SIZES[b % SIZES.length]);
+                bytes = allocated() - before;
+            }
+            Assertions.assertEquals(0, bytes, "float=" + floatProcessing);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,292 @@
+package voiceprotector.device;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.prefs.AbstractPreferences;
+import java.util.prefs.Preferences;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.TargetDataLine;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures device startup headlessly: the registry enumerates fake mixers
+ * whose drivers take {@link #DRIVER_MILLIS} to list their lines, the way slow
+ * virtual devices do. The scan must overlap the probes, and a remembered mixer
+ * must open before the scan has finished.
+ */
+class DeviceRegistryTest {
+
+    /**
+     * Fake mixers; mixers with an even index capture, the others play
+     */
+    private static final int MIXERS = 64;
+
+    /**
+     * How long a fake driver takes to list its capture or its playback lines
+     */
+    private static final long DRIVER_MILLIS = 25;
+
+    /**
+     * The format every fake line supports
+     */
+    private static final AudioFormat FORMAT = new AudioFormat(48000, 16, 2, true, false);
+
+    /**
+     * Time a scan that probes one mixer after the other would take: every probe
+     * lists the capture and the playback lines
+     */
+    private static final long SEQUENTIAL_MILLIS = MIXERS * 2 * DRIVER_MILLIS;
+
+    /**
+     * Line listings served by the fake drivers
+     */
+    private final AtomicInteger listings = new AtomicInteger();
+
+    /**
+     * The fake mixers
+     */
+    private final Mixer[] mixers = new Mixer[MIXERS];
+
+    /**
+     * The fake sound system
+     */
+    private final MixerSource source = new MixerSource() {
+
+        @Override
+        public Mixer.Info[] getMixerInfo() {
+            Mixer.Info[] infos = new Mixer.Info[MIXERS];
+            for (int i = 0; i < MIXERS; i++)
+                infos[i] = mixers[i].getMixerInfo();
+            return infos;
+        }
+
+        @Override
+        public Mixer getMixer(Mixer.Info info) {
+            return mixers[((FakeInfo) info).index];
+        }
+    };
+
+    /**
+     * Creates the fake mixers.
+     */
+    DeviceRegistryTest() {
+        for (int i = 0; i < MIXERS; i++)
+            mixers[i] = mixer(i, i % 2 == 0 ? TargetDataLine.class : SourceDataLine.class);
+    }
+
+    /**
+     * Creates a fake mixer with one kind of line.
+     *
+     * @param index     The position in the mixer list
+     * @param lineClass {@link TargetDataLine} or {@link SourceDataLine}
+     * @return The mixer
+     */
+    private Mixer mixer(int index, Class<? extends DataLine> lineClass) {
+        FakeInfo info = new FakeInfo(index);
+        DataLine.Info line = new DataLine.Info(lineClass, FORMAT);
+        return (Mixer) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Mixer.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getMixerInfo" -> info;
+                    case "getSourceLineInfo", "getTargetLineInfo" -> {
+                        if (args != null)
+                            yield new Line.Info[0];
+                        Thread.sleep(DRIVER_MILLIS);
+                        listings.incrementAndGet();
+                        boolean target = method.getName().equals("getTargetLineInfo");
+                        yield target == (lineClass == TargetDataLine.class) ? new Line.Info[] { line }
+                                : new Line.Info[0];
+                    }
+                    case "isLineSupported" -> line.matches((Line.Info) args[0]);
+                    case "getLine" -> {
+                        if (!line.matches((Line.Info) args[0]))
+                            throw new IllegalArgumentException("Line not supported");
+                        yield line(lineClass);
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> info.getName();
+                    default -> defaultValue(method.getReturnType());
+                });
+    }
+
+    /**
+     * Creates a fake line that opens and closes without doing anything.
+     *
+     * @param lineClass {@link TargetDataLine} or {@link SourceDataLine}
+     * @return The line
+     */
+    private static Line line(Class<? extends DataLine> lineClass) {
+        boolean[] open = new boolean[1];
+        return (Line) Proxy.newProxyInstance(DeviceRegistryTest.class.getClassLoader(), new Class<?>[] { lineClass },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "open" -> {
+                        open[0] = true;
+                        yield null;
+                    }
+                    case "close" -> {
+                        open[0] = false;
+                        yield null;
+                    }
+                    case "isOpen" -> open[0];
+                    case "getFormat" -> FORMAT;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> lineClass.getSimpleName();
+                    default -> defaultValue(method.getReturnType());
+                });
+    }
+
+    /**
+     * Returns what an unused fake method answers.
+     *
+     * @param type The return type
+     * @return false, {@link AudioSystem#NOT_SPECIFIED}, 0 or null
+     */
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class)
+            return false;
+        if (type == int.class)
+            return AudioSystem.NOT_SPECIFIED;
+        if (type == long.class)
+            return 0L;
+        if (type == float.class)
+            return 0f;
+        return null;
+    }
+
+    @Test
+    void scanProbesMixersConcurrently() {
+        try (DeviceRegistry registry = new DeviceRegistry(source, FORMAT, null)) {
+            List<AudioDevice> devices = registry.getDevices();
+            Assertions.assertEquals(MIXERS, devices.size());
+            Assertions.assertEquals(MIXERS * 2, listings.get());
+            Assertions.assertTrue(devices.get(0).canCapture() && devices.get(1).canPlay());
+            Assertions.assertTrue(registry.getScanMillis() < SEQUENTIAL_MILLIS / 2,
+                    "scan took " + registry.getScanMillis() + " ms, one mixer after the other takes "
+                            + SEQUENTIAL_MILLIS + " ms");
+        }
+    }
+
+    @Test
+    void firstStartOpensTheFirstMixerAndRemembersIt() throws LineUnavailableException {
+        Preferences choices = new MemoryPreferences();
+        try (DeviceRegistry registry = new DeviceRegistry(source, FORMAT, choices)) {
+            TargetDataLine mic = registry.openCapture("microphone", d -> true, FORMAT, AudioSystem.NOT_SPECIFIED);
+            SourceDataLine out = registry.openPlayback("output", d -> true, FORMAT, AudioSystem.NOT_SPECIFIED);
+            Assertions.assertTrue(mic.isOpen() && out.isOpen());
+            Assertions.assertEquals("fake 0", choices.get("microphone", null));
+            Assertions.assertEquals("fake 1", choices.get("output", null));
+        }
+    }
+
+    @Test
+    void rememberedMixerOpensBeforeTheScanFinishes() throws LineUnavailableException {
+        Preferences choices = new MemoryPreferences();
+        choices.put("microphone", "fake " + (MIXERS - 2));
+        long t0 = System.nanoTime();
+        try (DeviceRegistry registry = new DeviceRegistry(source, FORMAT, choices)) {
+            TargetDataLine mic = registry.openCapture("microphone", d -> d.name().startsWith("fake "), FORMAT,
+                    AudioSystem.NOT_SPECIFIED);
+            double startupMillis = (System.nanoTime() - t0) / 1e6;
+            Assertions.assertTrue(mic.isOpen());
+            Assertions.assertEquals(-1, registry.getScanMillis(), "opened only after the scan");
+            Assertions.assertTrue(startupMillis < SEQUENTIAL_MILLIS / 2, "startup took " + startupMillis + " ms");
+            Assertions.assertEquals("fake " + (MIXERS - 2), choices.get("microphone", null));
+        }
+    }
+
+    /**
+     * Description of a fake mixer.
+     */
+    private static final class FakeInfo extends Mixer.Info {
+
+        /**
+         * The position in the mixer list
+         */
+        final int index;
+
+        /**
+         * Creates the description.
+         *
+         * @param index The position in the mixer list
+         */
+        FakeInfo(int index) {
+            super("fake " + index, "test", "headless fake mixer", "1");
+            this.index = index;
+        }
+    }
+
+    /**
+     * Preferences kept in memory, so the test leaves the user preferences
+     * alone.
+     */
+    private static final class MemoryPreferences extends AbstractPreferences {
+
+        /**
+         * The stored values
+         */
+        private final Map<String, String> values = new HashMap<>();
+
+        /**
+         * Creates an empty root node.
+         */
+        MemoryPreferences() {
+            super(null, "");
+        }
+
+        @Override
+        protected void putSpi(String key, String value) {
+            values.put(key, value);
+        }
+
+        @Override
+        protected String getSpi(String key) {
+            return values.get(key);
+        }
+
+        @Override
+        protected void removeSpi(String key) {
+            values.remove(key);
+        }
+
+        @Override
+        protected void removeNodeSpi() {
+            values.clear();
+        }
+
+        @Override
+        protected String[] keysSpi() {
+            return values.keySet().toArray(new String[0]);
+        }
+
+        @Override
+        protected String[] childrenNamesSpi() {
+            return new String[0];
+        }
+
+        @Override
+        protected AbstractPreferences childSpi(String name) {
+            throw new UnsupportedOperationException("No child nodes");
+        }
+
+        @Override
+        protected void syncSpi() {
+        }
+
+        @Override
+        protected void flushSpi() {
+        }
+    }
+}
\ No newline at end of file
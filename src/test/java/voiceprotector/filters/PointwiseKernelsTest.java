@@ -0,0 +1,186 @@
+package voiceprotector.filters;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the vectorized kernels match the scalar ones bit for bit, on
+ * lengths that do and do not fill whole vectors, at offsets into larger arrays
+ * and on samples and gains that clip, and that the kernels the filters end up
+ * with do not allocate.
+ */
+class PointwiseKernelsTest {
+
+    /**
+     * The reference kernels
+     */
+    private final PointwiseKernels scalar = new ScalarKernels();
+
+    /**
+     * The kernels under test
+     */
+    private final PointwiseKernels vector = new VectorKernels();
+
+    /**
+     * Random lengths, samples and parameters; fixed seed so failures repeat
+     */
+    private final Random random = new Random(20240611);
+
+    /**
+     * Returns random samples with full-scale values mixed in.
+     *
+     * @param n The number of samples
+     * @return The samples
+     */
+    private short[] samples(int n) {
+        short[] x = new short[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = switch (random.nextInt(8)) {
+                case 0 -> Short.MAX_VALUE;
+                case 1 -> Short.MIN_VALUE;
+                default -> (short) random.nextInt(65536);
+            };
+        }
+        return x;
+    }
+
+    /**
+     * Returns a random ramp base, including values that amplify and invert.
+     *
+     * @return The base
+     */
+    private float base() {
+        return (random.nextFloat() - 0.5f) * 6f;
+    }
+
+    @Test
+    void shortKernelsMatchScalar() {
+        for (int round = 0; round < 500; round++) {
+            int n = random.nextInt(1100);
+            short[] x = samples(n);
+            int[] noise = new int[n];
+            float[] mod = new float[n];
+            boolean[] mask = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                noise[i] = random.nextInt(80001) - 40000;
+                mod[i] = random.nextFloat() * 2f - 1f;
+                mask[i] = random.nextBoolean();
+            }
+            int step = 1 + random.nextInt(8);
+            short xorValue = (short) random.nextInt(65536);
+            short[] pattern = new short[n];
+            for (int i = 0; i < n; i += step)
+                pattern[i] = xorValue;
+            float base = base();
+            float inc = random.nextBoolean() ? 0f : (random.nextFloat() - 0.5f) * 0.01f;
+
+            // The range sits inside a larger array; samples around it must stay untouched
+            int off = random.nextInt(40);
+            short[] a = samples(off + n + random.nextInt(40));
+            System.arraycopy(x, 0, a, off, n);
+            short[] b = a.clone();
+            short[] outside = a.clone();
+            vector.xor(a, off, n, step, xorValue, pattern);
+            scalar.xor(b, off, n, step, xorValue, pattern);
+            Assertions.assertArrayEquals(b, a, "xor, n=" + n);
+            vector.addNoise(a, off, noise, n);
+            scalar.addNoise(b, off, noise, n);
+            Assertions.assertArrayEquals(b, a, "addNoise, n=" + n);
+            vector.attenuate(a, off, mask, base, inc, n);
+            scalar.attenuate(b, off, mask, base, inc, n);
+            Assertions.assertArrayEquals(b, a, "attenuate, n=" + n + ", base=" + base);
+            vector.modulate(a, off, mod, base, inc, n);
+            scalar.modulate(b, off, mod, base, inc, n);
+            Assertions.assertArrayEquals(b, a, "modulate, n=" + n + ", base=" + base);
+            System.arraycopy(outside, off, a, off, n);
+            Assertions.assertArrayEquals(outside, a, "outside the range, n=" + n + ", off=" + off);
+        }
+    }
+
+    @Test
+    void floatKernelsMatchScalar() {
+        for (int round = 0; round < 500; round++) {
+            int n = random.nextInt(1100);
+            float[] x = new float[n];
+            float[] noise = new float[n];
+            float[] mod = new float[n];
+            boolean[] mask = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = (random.nextFloat() - 0.5f) * 80000f;
+                noise[i] = (random.nextFloat() - 0.5f) * 2000f;
+                mod[i] = random.nextFloat() * 2f - 1f;
+                mask[i] = random.nextBoolean();
+            }
+            float base = base();
+            float inc = (random.nextFloat() - 0.5f) * 0.01f;
+
+            float[] a = x.clone();
+            float[] b = x.clone();
+            vector.addNoise(a, noise, n);
+            scalar.addNoise(b, noise, n);
+            vector.attenuate(a, mask, base, inc, n);
+            scalar.attenuate(b, mask, base, inc, n);
+            vector.modulate(a, mod, base, inc, n);
+            scalar.modulate(b, mod, base, inc, n);
+            Assertions.assertArrayEquals(b, a, "n=" + n);
+        }
+    }
+
+    @Test
+    void truncationMatchesIntCastAtEveryBoundary() {
+        // Products just around every integer, both signs, and beyond 16 bits
+        int n = 4096;
+        short[] x = new short[n];
+        float[] mod = new float[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = (short) (i % 2 == 0 ? 32767 - i : -32768 + i);
+            mod[i] = (float) (i - n / 2) / n;
+        }
+        for (float base : new float[] { 0f, 0.5f, 1f, -1f, 1.0000001f, 3f, -3f }) {
+            short[] a = x.clone();
+            short[] b = x.clone();
+            vector.modulate(a, 0, mod, base, 0f, n);
+            scalar.modulate(b, 0, mod, base, 0f, n);
+            Assertions.assertArrayEquals(b, a, "base=" + base);
+        }
+    }
+
+    @Test
+    void vectorKernelsAreSelectedUnlessDisabledOrAbsent() {
+        boolean vector = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                && !"false".equals(System.getProperty("voiceprotector.simd"));
+        Assertions.assertEquals(vector, PointwiseKernels.selected().name().startsWith("vector"),
+                KernelSelector.describe());
+    }
+
+    @Test
+    void selectedKernelsDoNotAllocate() {
+        PointwiseKernels k = PointwiseKernels.selected();
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        int n = 480;
+        short[] x = samples(n);
+        int[] noise = new int[n];
+        float[] mod = new float[n];
+        boolean[] mask = new boolean[n];
+        Arrays.fill(mask, 0, n / 2, true);
+        Arrays.fill(mod, 0.5f);
+        short[] pattern = new short[n];
+        long allocated = 0;
+        for (int round = 0; round < 2; round++) {
+            long before = mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < 20_000; i++) {
+                k.xor(x, 0, n, 2, (short) 1, pattern);
+                k.addNoise(x, 0, noise, n);
+                k.attenuate(x, 0, mask, 0.2f, 0f, n);
+                k.modulate(x, 0, mod, 0.1f, 0f, n);
+            }
+            allocated = mx.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        }
+        Assertions.assertEquals(0, allocated, "kernels " + KernelSelector.describe() + " allocated");
+    }
+}
\ No newline at end of file
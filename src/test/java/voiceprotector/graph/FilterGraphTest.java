@@ -0,0 +1,158 @@
+package voiceprotector.graph;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import voiceprotector.StereoAudioFilter;
+import voiceprotector.StereoFilterChain;
+import voiceprotector.filters.AIFormantScramblerStereo;
+import voiceprotector.filters.ChaoticPhaseStereo;
+import voiceprotector.filters.NoiseFilterStereo;
+import voiceprotector.filters.SpectralNotchStereo;
+import voiceprotector.filters.XorObfuscationStereo;
+
+/**
+ * Checks that a graph gives the output of the equivalent chain, and that the
+ * nodes of a level give the same output in parallel as one after the other.
+ * The block size changes from block to block, and the blocks are ranges of
+ * larger arrays.
+ */
+class FilterGraphTest {
+
+    /**
+     * The pool the parallel graph runs on
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    /**
+     * The largest block the graphs are prepared for
+     */
+    private static final int MAX_FRAMES = 1024;
+
+    /**
+     * Block sizes cycled through, all at most {@link #MAX_FRAMES}
+     */
+    private static final int[] SIZES = { 278, 279, 480, 1024, 64, 1000, 441, 1 };
+
+    /**
+     * Blocks processed per test
+     */
+    private static final int BLOCKS = 200;
+
+    /**
+     * The processing format
+     */
+    private static final AudioFormat FORMAT = new AudioFormat(48000f, 16, 2, true, false);
+
+    @AfterAll
+    static void shutdown() {
+        POOL.shutdown();
+    }
+
+    /**
+     * Creates the filters of the tests, configured the same way every time.
+     *
+     * @return Noise, XOR, formant scrambler, notch and chaotic phase filters
+     */
+    private static StereoAudioFilter[] filters() {
+        NoiseFilterStereo noise = new NoiseFilterStereo();
+        noise.setSeed(42);
+        noise.setAmplitude(300);
+        return new StereoAudioFilter[] { noise, new XorObfuscationStereo(), new AIFormantScramblerStereo(),
+                new SpectralNotchStereo(), new ChaoticPhaseStereo() };
+    }
+
+    @Test
+    void linearGraphMatchesChain() {
+        StereoFilterChain chain = new StereoFilterChain();
+        for (StereoAudioFilter f : filters())
+            chain.add(f);
+        chain.prepare(FORMAT, MAX_FRAMES);
+
+        FilterGraph graph = new FilterGraph(2, POOL);
+        graph.setOutput(graph.chain(graph.input(), filters()));
+        graph.prepare(FORMAT, MAX_FRAMES);
+        Assertions.assertEquals(chain.getLatencyFrames(), graph.getLatencyFrames());
+
+        compare(chain::process, graph::process);
+    }
+
+    @Test
+    void diamondGraphRunsTheSameInParallel() {
+        FilterGraph serial = diamond();
+        serial.setParallelThreshold(Integer.MAX_VALUE);
+        FilterGraph parallel = diamond();
+        parallel.setParallelThreshold(0);
+        Assertions.assertEquals(serial.getLatencyFrames(), parallel.getLatencyFrames());
+
+        compare(serial::process, parallel::process);
+    }
+
+    /**
+     * Builds a graph that splits the input into two branches of different
+     * latency, mixes them and filters the mix, and prepares it.
+     *
+     * @return The prepared graph
+     */
+    private static FilterGraph diamond() {
+        StereoAudioFilter[] f = filters();
+        FilterGraph graph = new FilterGraph(2, POOL);
+        FilterGraph.Node fast = graph.chain(graph.input(), f[0], f[4]);
+        FilterGraph.Node slow = graph.chain(graph.input(), f[1], f[2]);
+        FilterGraph.Node mix = graph.mix(new float[] { 0.6f, 0.5f }, fast, slow);
+        graph.setOutput(graph.add(f[3], mix));
+        graph.prepare(FORMAT, MAX_FRAMES);
+        Assertions.assertEquals(4, graph.getLevelCount());
+        return graph;
+    }
+
+    /**
+     * Feeds the same random blocks of changing size to two processors, each
+     * block a range of arrays larger than the largest block, and checks that
+     * the arrays are identical afterwards.
+     *
+     * @param expected The reference processor
+     * @param actual   The processor under test
+     */
+    private static void compare(Processor expected, Processor actual) {
+        Random random = new Random(20240612);
+        int margin = 7;
+        short[][] a = new short[2][MAX_FRAMES + 2 * margin];
+        short[][] b = new short[2][MAX_FRAMES + 2 * margin];
+        for (int block = 0; block < BLOCKS; block++) {
+            int frames = SIZES[block % SIZES.length];
+            int offset = block % 2 == 0 ? 0 : margin;
+            for (int ch = 0; ch < 2; ch++) {
+                for (int i = 0; i < a[ch].length; i++)
+                    a[ch][i] = (short) (random.nextInt(20001) - 10000);
+                System.arraycopy(a[ch], 0, b[ch], 0, a[ch].length);
+            }
+            expected.process(a, offset, frames);
+            actual.process(b, offset, frames);
+            for (int ch = 0; ch < 2; ch++)
+                Assertions.assertArrayEquals(a[ch], b[ch], "block " + block + ", channel " + ch);
+        }
+    }
+
+    /**
+     * Processes a range of planar samples in place.
+     */
+    @FunctionalInterface
+    private interface Processor {
+
+        /**
+         * Processes a range of each channel.
+         *
+         * @param samples Planar samples
+         * @param offset  The first frame of the range
+         * @param length  The number of frames
+         */
+        void process(short[][] samples, int offset, int length);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,126 @@
+package voiceprotector.offline;
+
+import java.nio.ShortBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import voiceprotector.StereoFilterChain;
+import voiceprotector.filters.AIFormantScramblerStereo;
+import voiceprotector.filters.ChaoticPhaseStereo;
+import voiceprotector.filters.NoiseFilterStereo;
+import voiceprotector.filters.SpectralHoleStereo;
+import voiceprotector.filters.SpectralNotchStereo;
+import voiceprotector.filters.XorObfuscationStereo;
+
+/**
+ * Checks that processing a recording in parallel chunks gives exactly the
+ * output of one single-threaded pass, for chunk and block sizes that do not
+ * divide the recording and with a filter that needs warm-up frames.
+ */
+class ChunkedProcessorTest {
+
+    /**
+     * The pool the chunks run on
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    /**
+     * Frames in the test recording, not a multiple of any block or chunk size
+     */
+    private static final int FRAMES = 2 * 44100 + 777;
+
+    /**
+     * Sample rate of the test recording, not the filters' default
+     */
+    private static final float SAMPLE_RATE = 44100f;
+
+    @AfterAll
+    static void shutdown() {
+        POOL.shutdown();
+    }
+
+    /**
+     * Creates a chain of the chunkable filters. {@link SpectralNotchStereo}
+     * and {@link ChaoticPhaseStereo} need warm-up frames, the others seek to
+     * the chunk position.
+     *
+     * @return A new chain
+     */
+    private static StereoFilterChain chain() {
+        StereoFilterChain chain = new StereoFilterChain();
+        chain.add(new XorObfuscationStereo());
+        NoiseFilterStereo noise = new NoiseFilterStereo();
+        noise.setSeed(42);
+        noise.setAmplitude(300);
+        chain.add(noise);
+        chain.add(new AIFormantScramblerStereo());
+        chain.add(new SpectralNotchStereo());
+        chain.add(new ChaoticPhaseStereo());
+        chain.add(new SpectralHoleStereo());
+        return chain;
+    }
+
+    /**
+     * Returns a test recording: a sweep with noise.
+     *
+     * @param channels Channels per frame
+     * @return Interleaved samples
+     */
+    private static short[] recording(int channels) {
+        Random random = new Random(7);
+        short[] x = new short[FRAMES * channels];
+        for (int i = 0; i < FRAMES; i++) {
+            for (int ch = 0; ch < channels; ch++) {
+                double phase = i * (0.01 + i * 2e-7) * (ch + 1);
+                x[i * channels + ch] = (short) (9000 * Math.sin(phase) + random.nextInt(2001) - 1000);
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Processes a recording in one single-threaded pass, like
+     * {@link OfflineProcessor}.
+     *
+     * @param input       Interleaved input samples
+     * @param channels    Channels per frame
+     * @param blockFrames Frames per block
+     * @return Interleaved output samples
+     */
+    private static short[] serial(short[] input, int channels, int blockFrames) {
+        StereoFilterChain chain = chain();
+        ChunkedProcessor.prepare(chain, SAMPLE_RATE, blockFrames);
+        ChunkedProcessor.seek(chain, 0);
+        short[] output = new short[input.length];
+        new BlockRunner(chain, channels, blockFrames).run(ShortBuffer.wrap(input), ShortBuffer.wrap(output));
+        return output;
+    }
+
+    @Test
+    void chainNeedsWarmup() {
+        Assertions.assertTrue(ChunkedProcessor.warmupFrames(chain()) > 0);
+    }
+
+    @Test
+    void chunkedOutputEqualsSingleThreadedOutput() {
+        for (int channels : new int[] { 2, 1 }) {
+            short[] input = recording(channels);
+            for (int blockFrames : new int[] { 1024, 441 }) {
+                short[] expected = serial(input, channels, blockFrames);
+                Supplier<StereoFilterChain> factory = ChunkedProcessorTest::chain;
+                for (int chunkFrames : new int[] { 5000, 17_333, FRAMES - 1 }) {
+                    short[] output = new short[input.length];
+                    new ChunkedProcessor(factory, blockFrames, chunkFrames, POOL).process(input, output, channels,
+                            SAMPLE_RATE);
+                    Assertions.assertArrayEquals(expected, output,
+                            "channels=" + channels + ", block=" + blockFrames + ", chunk=" + chunkFrames);
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package voiceprotector.pipeline;
+
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import voiceprotector.AudioUtils;
+import voiceprotector.StereoFilterChain;
+import voiceprotector.filters.AIFormantScramblerStereo;
+import voiceprotector.filters.ChaoticPhaseStereo;
+import voiceprotector.filters.NoiseFilterStereo;
+import voiceprotector.filters.SpectralNotchStereo;
+import voiceprotector.filters.XorObfuscationStereo;
+
+/**
+ * Runs a seeded recording headlessly through the three pipeline stages and
+ * checks that the output is exactly what the chain gives when it processes
+ * the same blocks directly.
+ */
+class PipelinedStereoEngineTest {
+
+    /**
+     * Frames per block
+     */
+    private static final int BLOCK_FRAMES = 480;
+
+    /**
+     * Frames in the recording; the last block is short
+     */
+    private static final int FRAMES = 50 * BLOCK_FRAMES + 123;
+
+    /**
+     * Ring capacity in blocks, enough for the whole recording so no stage can
+     * drop a block however the threads are scheduled
+     */
+    private static final int RING_BLOCKS = 64;
+
+    /**
+     * Creates a prepared chain of seeded filters, configured the same way
+     * every time.
+     *
+     * @return The chain
+     */
+    private static StereoFilterChain chain() {
+        StereoFilterChain chain = new StereoFilterChain();
+        NoiseFilterStereo noise = new NoiseFilterStereo();
+        noise.setSeed(42);
+        noise.setAmplitude(300);
+        chain.add(noise);
+        chain.add(new XorObfuscationStereo());
+        chain.add(new AIFormantScramblerStereo());
+        chain.add(new SpectralNotchStereo());
+        chain.add(new ChaoticPhaseStereo());
+        chain.prepare(new AudioFormat(48000f, 16, 2, true, false), BLOCK_FRAMES);
+        return chain;
+    }
+
+    @Test
+    void pipelineOutputMatchesChain() throws InterruptedException {
+        Random random = new Random(20240612);
+        byte[] recording = new byte[FRAMES * 4];
+        for (int i = 0; i < recording.length; i += 2) {
+            int s = (int) (9000 * Math.sin(i * 0.003)) + random.nextInt(2001) - 1000;
+            recording[i] = (byte) s;
+            recording[i + 1] = (byte) (s >> 8);
+        }
+
+        MemoryAudioOutput output = new MemoryAudioOutput();
+        PipelinedStereoEngine engine = new PipelinedStereoEngine(chain(), new MemoryAudioInput(recording), output,
+                BLOCK_FRAMES * 4, RING_BLOCKS, 4);
+        engine.start();
+        engine.awaitCompletion();
+        Assertions.assertEquals(0, engine.getCaptureOverruns());
+        Assertions.assertEquals(0, engine.getOutputOverruns());
+        Assertions.assertEquals((FRAMES + BLOCK_FRAMES - 1) / BLOCK_FRAMES, engine.getBlocksProcessed());
+
+        StereoFilterChain chain = chain();
+        byte[] expected = new byte[recording.length];
+        short[][] block = new short[2][BLOCK_FRAMES];
+        for (int off = 0; off < recording.length; off += BLOCK_FRAMES * 4) {
+            int length = Math.min(BLOCK_FRAMES * 4, recording.length - off);
+            byte[] bytes = new byte[length];
+            System.arraycopy(recording, off, bytes, 0, length);
+            int frames = AudioUtils.decodePCM16Stereo(bytes, length, block);
+            chain.process(block, 0, frames);
+            AudioUtils.encodePCM16Stereo(block, frames, bytes);
+            System.arraycopy(bytes, 0, expected, off, length);
+        }
+        Assertions.assertArrayEquals(expected, output.toByteArray());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package voiceprotector.recorder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Records a seeded stream into a file too small for all of it and replays it:
+ * the blocks still in the file must come back byte for byte, also where the
+ * data ring wrapped around and overwrote the oldest blocks.
+ */
+class FlightRecorderTest {
+
+    /**
+     * Block sizes in frames cycled through while recording
+     */
+    private static final int[] SIZES = { 480, 441, 128, 1024, 1 };
+
+    @Test
+    void replayReturnsTheRecordedBytesAcrossTheRingWrap(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("session.vpfr");
+        Random random = new Random(20240612);
+        List<byte[]> captured = new ArrayList<>();
+        long recordedBytes = 0;
+        try (FlightRecorder recorder = new FlightRecorder(file, FlightRecorder.MIN_CAPACITY, 48000f, 2, 42)) {
+            while (recordedBytes < 2L * recorder.getDataCapacity()) {
+                byte[] block = new byte[SIZES[captured.size() % SIZES.length] * 4];
+                random.nextBytes(block);
+                recorder.recordCaptured(block, block.length);
+                // Processed records share the ring but must not be replayed
+                byte[] processed = block.clone();
+                for (int i = 0; i < processed.length; i++)
+                    processed[i] ^= 0x55;
+                recorder.recordProcessed(processed, processed.length);
+                captured.add(block);
+                recordedBytes += 2L * block.length;
+            }
+        }
+
+        FlightRecording recording = new FlightRecording(file);
+        List<FlightRecording.Entry> entries = recording.getEntries();
+        Assertions.assertEquals(48000f, recording.getSampleRate());
+        Assertions.assertEquals(2, recording.getChannels());
+        Assertions.assertEquals(42, recording.getSeed());
+        boolean wrapped = false;
+        int kept = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            wrapped |= i > 0 && entries.get(i).offset() < entries.get(i - 1).offset();
+            if (entries.get(i).kind() == RecordKind.CAPTURED)
+                kept++;
+        }
+        Assertions.assertTrue(wrapped, "the replayed records must span the end of the data ring");
+        Assertions.assertTrue(kept > 0 && kept < captured.size(), kept + " of " + captured.size() + " blocks kept");
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        long lastFrame = 0;
+        for (int i = 0; i < captured.size(); i++) {
+            if (i >= captured.size() - kept)
+                expected.write(captured.get(i), 0, captured.get(i).length);
+            if (i < captured.size() - 1)
+                lastFrame += captured.get(i).length / 4;
+        }
+
+        ReplaySource source = new ReplaySource(recording, 0, false, null);
+        ByteArrayOutputStream replayed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = source.read(buffer, 0, buffer.length)) >= 0)
+            replayed.write(buffer, 0, n);
+        Assertions.assertArrayEquals(expected.toByteArray(), replayed.toByteArray());
+        Assertions.assertEquals(lastFrame, source.getBlockFrame());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package voiceprotector.spectral;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the engine reconstructs its input when the spectrum is left
+ * unchanged: the output is the input delayed by the engine's latency, within
+ * one 16-bit step, for blocks of changing size that do not line up with the
+ * hops.
+ */
+class StftEngineTest {
+
+    /**
+     * The frame size
+     */
+    private static final int FRAME = 1024;
+
+    /**
+     * Block sizes cycled through
+     */
+    private static final int[] SIZES = { 278, 279, 480, 1024, 64, 1000, 441, 1 };
+
+    /**
+     * Samples per channel in the test signal
+     */
+    private static final int LENGTH = 48000;
+
+    @Test
+    void identityReturnsTheDelayedInput() {
+        for (int hop : new int[] { FRAME / 2, FRAME / 4, 100 }) {
+            StftEngine engine = new StftEngine(FRAME, hop, (re, im, size) -> {
+            });
+            int latency = engine.getLatencyFrames();
+
+            Random random = new Random(20240612);
+            float[][] x = new float[2][LENGTH];
+            for (int i = 0; i < LENGTH; i++) {
+                x[0][i] = (float) (9000 * Math.sin(i * 0.01)) + random.nextInt(2001) - 1000;
+                x[1][i] = random.nextInt(65536) - 32768;
+            }
+
+            float[][] block = new float[2][FRAME];
+            for (int pos = 0, b = 0; pos < LENGTH; b++) {
+                int frames = Math.min(SIZES[b % SIZES.length], LENGTH - pos);
+                for (int ch = 0; ch < 2; ch++)
+                    System.arraycopy(x[ch], pos, block[ch], 0, frames);
+                engine.process(block, frames);
+                for (int ch = 0; ch < 2; ch++) {
+                    for (int i = 0; i < frames; i++) {
+                        int t = pos + i - latency;
+                        float expected = t < 0 ? 0f : x[ch][t];
+                        Assertions.assertEquals(expected, block[ch][i], 1f,
+                                "hop " + hop + ", channel " + ch + ", sample " + (pos + i));
+                    }
+                }
+                pos += frames;
+            }
+        }
+    }
+}
\ No newline at end of file